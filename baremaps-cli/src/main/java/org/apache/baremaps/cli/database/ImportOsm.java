@@ -23,6 +23,7 @@ import java.nio.file.Path;
 import java.util.concurrent.Callable;
 import org.apache.baremaps.cli.Options;
 import org.apache.baremaps.workflow.WorkflowContext;
+import org.apache.baremaps.workflow.WorkflowContext.CoordinateMapLayout;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
@@ -45,13 +46,30 @@ public class ImportOsm implements Callable<Integer> {
       description = "The projection used by the database.")
   private int srid = 3857;
 
+  @Option(names = {"--two-pass"},
+      description = "Fill the caches in a first pass before building the geometries.")
+  private boolean twoPass = false;
+
+  @Option(names = {"--copy-writers"}, paramLabel = "COPY_WRITERS",
+      description = "The number of concurrent copies per table (block by block if not set). "
+          + "The database pool must provide 3 * COPY_WRITERS + 1 connections.")
+  private Integer copyWriters;
+
+  @Option(names = {"--coordinate-map"}, paramLabel = "LAYOUT", description = {
+      "The layout of the cache of the node coordinates (AUTO, DENSE or SPARSE). " +
+          "AUTO uses the sparse layout for the files smaller than about 1.1GB."})
+  private CoordinateMapLayout coordinateMapLayout = CoordinateMapLayout.AUTO;
+
   @Override
   public Integer call() throws Exception {
     new org.apache.baremaps.workflow.tasks.ImportOsmPbf(
         file.toAbsolutePath(),
         database,
         srid,
-        true).execute(new WorkflowContext());
+        true,
+        twoPass,
+        copyWriters,
+        coordinateMapLayout).execute(new WorkflowContext());
     return 0;
   }
 }
@@ -22,6 +22,7 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.util.concurrent.Callable;
 import org.apache.baremaps.cli.Options;
+import org.apache.baremaps.tilestore.postgres.TileEncoding;
 import org.apache.baremaps.workflow.WorkflowContext;
 import org.apache.baremaps.workflow.tasks.ExportVectorTiles;
 import org.slf4j.Logger;
@@ -57,13 +58,38 @@ public class Export implements Callable<Integer> {
       description = "The format of the repository.")
   private ExportVectorTiles.Format format = ExportVectorTiles.Format.FILE;
 
+  @Option(names = {"--encoding"}, paramLabel = "ENCODING",
+      description = "Where the tiles are encoded (POSTGIS or JAVA).")
+  private TileEncoding encoding = TileEncoding.POSTGIS;
+
+  @Option(names = {"--metatile-size"}, paramLabel = "METATILE_SIZE",
+      description = "The number of tiles on the side of the blocks of tiles generated at once.")
+  private int metatileSize = 1;
+
+  @Option(names = {"--resume"},
+      description = "Skip the tiles written by a previous interrupted export (FILE or MBTILES).")
+  private boolean resume = false;
+
+  @Option(names = {"--shard-count"}, paramLabel = "SHARD_COUNT",
+      description = "The number of workers among which the export is distributed.")
+  private int shardCount = 1;
+
+  @Option(names = {"--shard-index"}, paramLabel = "SHARD_INDEX",
+      description = "The index of the shard exported by this worker, starting at 0.")
+  private int shardIndex = 0;
+
   @Override
   public Integer call() throws Exception {
     new ExportVectorTiles(
         tileset.toAbsolutePath(),
         style.toAbsolutePath(),
         repository.toAbsolutePath(),
-        format).execute(new WorkflowContext());
+        format,
+        encoding,
+        metatileSize,
+        resume,
+        shardCount,
+        shardIndex).execute(new WorkflowContext());
     return 0;
   }
 }
@@ -23,7 +23,8 @@ import picocli.CommandLine;
 import picocli.CommandLine.Command;
 
 @Command(name = "map", description = "Map commands.",
-    subcommands = {Init.class, Export.class, Serve.class, Dev.class, MBTiles.class},
+    subcommands = {Init.class, Export.class, Serve.class, Dev.class, MBTiles.class,
+        PMTiles.class, Merge.class},
     sortOptions = false)
 public class Map implements Runnable {
 
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.cli.map;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.apache.baremaps.cli.Options;
+import org.apache.baremaps.pmtiles.PMTilesMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+@Command(name = "merge",
+    description = "Merge the pmtiles shards of a distributed export into a single archive.")
+public class Merge implements Callable<Integer> {
+
+  private static final Logger logger = LoggerFactory.getLogger(Merge.class);
+
+  @Mixin
+  private Options options;
+
+  @Option(names = {"--shard"}, paramLabel = "SHARD",
+      description = "A pmtiles shard (can be repeated).", required = true)
+  private List<Path> shards;
+
+  @Option(names = {"--output"}, paramLabel = "OUTPUT", description = "The merged pmtiles file.",
+      required = true)
+  private Path output;
+
+  @Override
+  public Integer call() throws Exception {
+    var start = System.currentTimeMillis();
+    PMTilesMerger.merge(shards, output.toAbsolutePath());
+    var stop = System.currentTimeMillis();
+    logger.info("Merged {} shards in {}s", shards.size(), (stop - start) / 1000);
+    return 0;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.cli.map;
+
+import static org.apache.baremaps.utils.ObjectMapperUtils.objectMapper;
+
+import com.linecorp.armeria.server.annotation.JacksonResponseConverterFunction;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import org.apache.baremaps.cli.Options;
+import org.apache.baremaps.config.ConfigReader;
+import org.apache.baremaps.maplibre.style.Style;
+import org.apache.baremaps.maplibre.tilejson.TileJSON;
+import org.apache.baremaps.server.StyleResource;
+import org.apache.baremaps.server.TileJSONResource;
+import org.apache.baremaps.server.TileResource;
+import org.apache.baremaps.tilestore.TileStore;
+import org.apache.baremaps.tilestore.pmtiles.PMTilesStore;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+@Command(name = "pmtiles",
+    description = "Start a server that serves the tiles of a memory-mapped pmtiles archive.")
+public class PMTiles implements Callable<Integer> {
+
+  @Mixin
+  private Options options;
+
+  @Option(names = {"--pmtiles"}, paramLabel = "PMTILES", description = "The pmtiles file.",
+      required = true)
+  private Path pmtilesPath;
+
+  @Option(names = {"--tilejson"}, paramLabel = "TILEJSON", description = "The tileJSON file.",
+      required = true)
+  private Path tileJSONPath;
+
+  @Option(names = {"--style"}, paramLabel = "STYLE", description = "The style file.",
+      required = true)
+  private Path stylePath;
+
+  @Option(names = {"--port"}, paramLabel = "PORT", description = "The port of the server.")
+  private int port = 9000;
+
+  @Override
+  public Integer call() throws Exception {
+    var objectMapper = objectMapper();
+    var configReader = new ConfigReader();
+
+    // The mapped archive is cached by the page cache of the operating system
+    try (var tileStore = new PMTilesStore(pmtilesPath)) {
+      var tileStoreSupplier = (Supplier<TileStore>) () -> tileStore;
+
+      // The tiles are served as they are stored, with the content coding of their compression
+      var tileEncoding = tileStore.getTileCompression().contentEncoding();
+
+      var style = objectMapper.readValue(configReader.read(stylePath), Style.class);
+      var styleSupplier = (Supplier<Style>) () -> style;
+
+      var tileJSON = objectMapper.readValue(configReader.read(tileJSONPath), TileJSON.class);
+      var tileJSONSupplier = (Supplier<TileJSON>) () -> tileJSON;
+
+      var jsonResponseConverter = new JacksonResponseConverterFunction(objectMapper);
+      Serve.serve(port, serverBuilder -> {
+        serverBuilder.annotatedService(new TileResource(tileStoreSupplier, tileEncoding),
+            jsonResponseConverter);
+        serverBuilder.annotatedService(new StyleResource(styleSupplier), jsonResponseConverter);
+        serverBuilder.annotatedService(new TileJSONResource(tileJSONSupplier),
+            jsonResponseConverter);
+      });
+    }
+    return 0;
+  }
+}
@@ -23,26 +23,43 @@ import com.github.benmanes.caffeine.cache.CaffeineSpec;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpMethod;
 import com.linecorp.armeria.server.Server;
+import com.linecorp.armeria.server.ServerBuilder;
 import com.linecorp.armeria.server.annotation.JacksonResponseConverterFunction;
 import com.linecorp.armeria.server.cors.CorsService;
 import com.linecorp.armeria.server.docs.DocService;
 import com.linecorp.armeria.server.file.FileService;
 import com.linecorp.armeria.server.file.HttpFile;
+import com.zaxxer.hikari.HikariDataSource;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import javax.sql.DataSource;
 import org.apache.baremaps.cli.Options;
 import org.apache.baremaps.config.ConfigReader;
 import org.apache.baremaps.maplibre.style.Style;
 import org.apache.baremaps.maplibre.tilejson.TileJSON;
 import org.apache.baremaps.maplibre.tileset.Tileset;
+import org.apache.baremaps.server.DirectTileCache;
 import org.apache.baremaps.server.SearchResource;
 import org.apache.baremaps.server.StyleResource;
 import org.apache.baremaps.server.TileJSONResource;
 import org.apache.baremaps.server.TileResource;
+import org.apache.baremaps.server.TileScheduler;
 import org.apache.baremaps.tilestore.TileCache;
+import org.apache.baremaps.tilestore.TieredTileCache;
 import org.apache.baremaps.tilestore.TileStore;
-import org.apache.baremaps.tilestore.postgres.PostgresTileStore;
+import org.apache.baremaps.tilestore.TileStoreException;
+import org.apache.baremaps.tilestore.file.TileLog;
+import org.apache.baremaps.tilestore.postgres.TileEncoding;
 import org.apache.baremaps.utils.PostgresUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +72,16 @@ public class Serve implements Callable<Integer> {
 
   private static final Logger logger = LoggerFactory.getLogger(Serve.class);
 
+  /**
+   * The query that lists the tables and the files that store them, which change when the tables
+   * are recreated, truncated or refreshed.
+   */
+  private static final String RELATIONS = """
+      SELECT c.oid::regclass::text || ':' || c.relfilenode
+      FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+      WHERE c.relkind IN ('r', 'm') AND n.nspname NOT IN ('pg_catalog', 'information_schema')
+      ORDER BY 1""";
+
   @Mixin
   private Options options;
 
@@ -64,6 +91,28 @@ public class Serve implements Callable<Integer> {
           "sets a 1GB cache whose entries expires after one hour."})
   private String cache = "";
 
+  @Option(names = {"--cache-directory"}, paramLabel = "CACHE_DIRECTORY", description = {
+      "The directory of a persistent disk cache that backs the heap cache."})
+  private Path cacheDirectory;
+
+  @Option(names = {"--cache-size"}, paramLabel = "CACHE_SIZE",
+      description = "The maximum size of the disk cache in bytes.")
+  private long cacheSize = 10L << 30;
+
+  @Option(names = {"--cache-ttl"}, paramLabel = "CACHE_TTL", description = {
+      "The number of seconds the tiles are kept by the disk cache (0 keeps them until evicted). " +
+          "The disk cache is also discarded when the tileset or the tables of the database are " +
+          "recreated, but not when the rows of the tables are updated in place."})
+  private long cacheTtl = 0;
+
+  @Option(names = {"--empty-tile-ttl"}, paramLabel = "EMPTY_TILE_TTL",
+      description = "The number of seconds the empty tiles are remembered by the cache.")
+  private long emptyTileTtl = TileCache.DEFAULT_EMPTY_TILE_TTL.toSeconds();
+
+  @Option(names = {"--direct-cache"}, description = {
+      "Keep the cached tiles in pooled off-heap buffers that are served without copying."})
+  private boolean directCache = false;
+
   @Option(names = {"--tileset"}, paramLabel = "TILESET", description = "The tileset file.",
       required = true)
   private Path tilesetPath;
@@ -76,23 +125,97 @@ public class Serve implements Callable<Integer> {
       required = false)
   private Path assetsPath;
 
+  @Option(names = {"--encoding"}, paramLabel = "ENCODING",
+      description = "Where the tiles are encoded (POSTGIS or JAVA).")
+  private TileEncoding encoding = TileEncoding.POSTGIS;
+
+  @Option(names = {"--metatile-size"}, paramLabel = "METATILE_SIZE",
+      description = "The number of tiles on the side of the blocks of tiles generated at once.")
+  private int metatileSize = 1;
+
+  @Option(names = {"--layer-threads"}, paramLabel = "LAYER_THREADS",
+      description = "The number of threads that query the layers of a tile concurrently.")
+  private int layerThreads = 0;
+
+  @Option(names = {"--zoom-concurrency"}, paramLabel = "ZOOM=LIMIT", description = {
+      "The maximum number of tiles read concurrently from the given zoom level onwards. " +
+          "For instance, '--zoom-concurrency 0=2 --zoom-concurrency 8=16' allows 2 concurrent " +
+          "reads per zoom level below 8 and 16 above. All the zoom levels share a total of " +
+          "reads equal to the sum of these limits, bounded by the size of the connection pool."})
+  private Map<Integer, Integer> zoomConcurrency =
+      new HashMap<>(Map.of(0, Runtime.getRuntime().availableProcessors()));
+
+  @Option(names = {"--queue-size"}, paramLabel = "QUEUE_SIZE",
+      description = "The maximum number of tile reads waiting per zoom level.")
+  private int queueSize = 1024;
+
+  @Option(names = {"--queue-timeout"}, paramLabel = "QUEUE_TIMEOUT",
+      description = "The maximum number of seconds a tile read waits before being rejected.")
+  private int queueTimeout = 30;
+
   @Option(names = {"--host"}, paramLabel = "HOST", description = "The host of the server.")
   private String host = "localhost";
 
   @Option(names = {"--port"}, paramLabel = "PORT", description = "The port of the server.")
   private int port = 9000;
 
+  private TileStore createTileCache(TileStore tileStore, CaffeineSpec caffeineSpec,
+      String fingerprint) throws TileStoreException {
+    if (cacheDirectory != null) {
+      var ttl = cacheTtl > 0 ? Duration.ofSeconds(cacheTtl) : null;
+      var tileLog = new TileLog(cacheDirectory, cacheSize, ttl, fingerprint);
+      return new TieredTileCache(tileStore, caffeineSpec, tileLog,
+          Duration.ofSeconds(emptyTileTtl));
+    } else if (directCache) {
+      return new DirectTileCache(tileStore, caffeineSpec, Duration.ofSeconds(emptyTileTtl));
+    } else {
+      return new TileCache(tileStore, caffeineSpec, Duration.ofSeconds(emptyTileTtl));
+    }
+  }
+
+  /**
+   * Returns a fingerprint of the tileset and of the tables of the database that changes when the
+   * cached tiles may be stale.
+   */
+  private static String fingerprint(String tileset, DataSource datasource)
+      throws NoSuchAlgorithmException, SQLException {
+    var digest = MessageDigest.getInstance("SHA-256");
+    digest.update(tileset.getBytes(StandardCharsets.UTF_8));
+    try (var connection = datasource.getConnection();
+        var statement = connection.createStatement();
+        var resultSet = statement.executeQuery(RELATIONS)) {
+      while (resultSet.next()) {
+        digest.update(resultSet.getString(1).getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Returns the total number of concurrent tile reads, i.e. the sum of the limits of the ranges of
+   * zoom levels, bounded by the size of the connection pool of the data source.
+   */
+  private int maxConcurrency(DataSource datasource) throws SQLException {
+    int limit = zoomConcurrency.values().stream().mapToInt(Integer::intValue).sum();
+    if (datasource.isWrapperFor(HikariDataSource.class)) {
+      limit = Math.min(limit, datasource.unwrap(HikariDataSource.class).getMaximumPoolSize());
+    }
+    return limit;
+  }
+
   @Override
   public Integer call() throws Exception {
     var objectMapper = objectMapper();
     var configReader = new ConfigReader();
     var caffeineSpec = CaffeineSpec.parse(cache);
-    var tileset = objectMapper.readValue(configReader.read(tilesetPath), Tileset.class);
+    var tilesetContent = configReader.read(tilesetPath);
+    var tileset = objectMapper.readValue(tilesetContent, Tileset.class);
     var datasource = PostgresUtils.createDataSourceFromObject(tileset.getDatabase());
+    var fingerprint = cacheDirectory != null ? fingerprint(tilesetContent, datasource) : null;
 
     try (
-        var tileStore = new PostgresTileStore(datasource, tileset);
-        var tileCache = new TileCache(tileStore, caffeineSpec)) {
+        var tileStore = encoding.createTileStore(datasource, tileset, metatileSize, layerThreads);
+        var tileCache = createTileCache(tileStore, caffeineSpec, fingerprint)) {
 
       var tileStoreSupplier = (Supplier<TileStore>) () -> tileCache;
 
@@ -102,47 +225,64 @@ public class Serve implements Callable<Integer> {
       var tileJSON = objectMapper.readValue(configReader.read(tilesetPath), TileJSON.class);
       var tileJSONSupplier = (Supplier<TileJSON>) () -> tileJSON;
 
-      var serverBuilder = Server.builder();
-      serverBuilder.http(port);
-
       var jsonResponseConverter = new JacksonResponseConverterFunction(objectMapper);
-      serverBuilder.annotatedService(new TileResource(tileStoreSupplier), jsonResponseConverter);
-      serverBuilder.annotatedService(new StyleResource(styleSupplier), jsonResponseConverter);
-      serverBuilder.annotatedService(new TileJSONResource(tileJSONSupplier), jsonResponseConverter);
-      serverBuilder.annotatedService(new SearchResource(datasource), jsonResponseConverter);
-
-      var index = HttpFile.of(ClassLoader.getSystemClassLoader(), "/static/server.html");
-      serverBuilder.service("/", index.asService());
-      serverBuilder.serviceUnder("/",
-          FileService.of(ClassLoader.getSystemClassLoader(), "/static"));
-
-      if (assetsPath != null) {
-        serverBuilder.serviceUnder("/assets", FileService.of(assetsPath));
-      }
+      zoomConcurrency.putIfAbsent(0, Runtime.getRuntime().availableProcessors());
+      var tileScheduler = new TileScheduler(tileStoreSupplier, zoomConcurrency,
+          maxConcurrency(datasource), queueSize, Duration.ofSeconds(queueTimeout));
+      serve(port, serverBuilder -> {
+        serverBuilder.annotatedService(new TileResource(tileStoreSupplier, tileScheduler),
+            jsonResponseConverter);
+        serverBuilder.annotatedService(new StyleResource(styleSupplier), jsonResponseConverter);
+        serverBuilder.annotatedService(new TileJSONResource(tileJSONSupplier),
+            jsonResponseConverter);
+        serverBuilder.annotatedService(new SearchResource(datasource), jsonResponseConverter);
+        if (assetsPath != null) {
+          serverBuilder.serviceUnder("/assets", FileService.of(assetsPath));
+        }
+      });
+    }
 
-      serverBuilder.decorator(CorsService.builderForAnyOrigin()
-          .allowRequestMethods(HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE,
-              HttpMethod.OPTIONS, HttpMethod.HEAD)
-          .allowRequestHeaders(HttpHeaderNames.ORIGIN, HttpHeaderNames.CONTENT_TYPE,
-              HttpHeaderNames.ACCEPT, HttpHeaderNames.AUTHORIZATION)
-          .allowCredentials()
-          .exposeHeaders(HttpHeaderNames.LOCATION)
-          .newDecorator());
+    return 0;
+  }
 
-      serverBuilder.serviceUnder("/docs", new DocService());
+  /**
+   * Starts a server on the given port with the viewer, the static files and the documentation of
+   * the map commands, and blocks until the JVM shuts down.
+   *
+   * @param port the port of the server
+   * @param services the function that adds the services of the command to the server
+   */
+  static void serve(int port, Consumer<ServerBuilder> services) {
+    var serverBuilder = Server.builder();
+    serverBuilder.http(port);
 
-      serverBuilder.disableServerHeader();
-      serverBuilder.disableDateHeader();
+    services.accept(serverBuilder);
 
-      var server = serverBuilder.build();
+    var index = HttpFile.of(ClassLoader.getSystemClassLoader(), "/static/server.html");
+    serverBuilder.service("/", index.asService());
+    serverBuilder.serviceUnder("/",
+        FileService.of(ClassLoader.getSystemClassLoader(), "/static"));
 
-      var startFuture = server.start();
-      startFuture.join();
+    serverBuilder.decorator(CorsService.builderForAnyOrigin()
+        .allowRequestMethods(HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE,
+            HttpMethod.OPTIONS, HttpMethod.HEAD)
+        .allowRequestHeaders(HttpHeaderNames.ORIGIN, HttpHeaderNames.CONTENT_TYPE,
+            HttpHeaderNames.ACCEPT, HttpHeaderNames.AUTHORIZATION)
+        .allowCredentials()
+        .exposeHeaders(HttpHeaderNames.LOCATION)
+        .newDecorator());
 
-      var shutdownFuture = server.closeOnJvmShutdown();
-      shutdownFuture.join();
-    }
+    serverBuilder.serviceUnder("/docs", new DocService());
 
-    return 0;
+    serverBuilder.disableServerHeader();
+    serverBuilder.disableDateHeader();
+
+    var server = serverBuilder.build();
+
+    var startFuture = server.start();
+    startFuture.join();
+
+    var shutdownFuture = server.closeOnJvmShutdown();
+    shutdownFuture.join();
   }
 }
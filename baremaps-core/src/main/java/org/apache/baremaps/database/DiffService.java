@@ -28,6 +28,7 @@ import java.util.concurrent.Callable;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import java.util.zip.GZIPInputStream;
+import org.apache.baremaps.database.function.ChangeGeometryPrefetcher;
 import org.apache.baremaps.database.postgres.HeaderRepository;
 import org.apache.baremaps.database.postgres.Repository;
 import org.apache.baremaps.openstreetmap.function.EntityGeometryBuilder;
@@ -54,6 +55,7 @@ public class DiffService implements Callable<List<TileCoord>> {
   private final Repository<Long, Relation> relationRepository;
   private final int srid;
   private final int zoom;
+  private final ChangeGeometryPrefetcher geometryPrefetcher;
 
   public DiffService(
       Map<Long, Coordinate> coordinateMap,
@@ -72,6 +74,7 @@ public class DiffService implements Callable<List<TileCoord>> {
     this.relationRepository = relationRepository;
     this.srid = srid;
     this.zoom = zoom;
+    this.geometryPrefetcher = new ChangeGeometryPrefetcher(coordinateMap, referenceMap);
   }
 
   @Override
@@ -138,8 +141,11 @@ public class DiffService implements Callable<List<TileCoord>> {
   }
 
   private Stream<Geometry> geometriesForNextVersion(Change change) {
+    geometryPrefetcher.accept(change);
+    var geometryBuilder = new EntityGeometryBuilder(
+        geometryPrefetcher.getCoordinateMap(), geometryPrefetcher.getReferenceMap());
     return change.getEntities().stream()
-        .map(consumeThenReturn(new EntityGeometryBuilder(coordinateMap, referenceMap)))
+        .map(consumeThenReturn(geometryBuilder))
         .flatMap(new EntityToGeometryMapper().andThen(Optional::stream));
   }
 
@@ -23,8 +23,10 @@ import de.bytefish.pgbulkinsert.pgsql.handlers.*;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Collection;
@@ -32,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBConstants;
 import org.postgresql.copy.PGCopyOutputStream;
 import org.postgresql.core.Oid;
 
@@ -110,10 +113,19 @@ public class CopyWriter implements AutoCloseable {
   public static final EnvelopeValueHandler ENVELOPE_HANDLER =
       new EnvelopeValueHandler();
 
+  /** The number of milliseconds between the unix epoch and the postgres epoch (2000-01-01). */
+  private static final long POSTGRES_EPOCH_MILLIS = 946_684_800_000L;
+
+  private static final int EWKB_SRID_FLAG = 0x20000000;
+
+  private static final int EWKB_POINT_SIZE = 1 + Integer.BYTES * 2 + Double.BYTES * 2;
+
+  private final OutputStream output;
+
   private final DataOutputStream data;
 
   /**
-   * Creates a new writer with the specified {@code PGCopyOutputStream}.
+   * Creates a new writer with the specified output stream, usually a {@code PGCopyOutputStream}.
    *
    * <p>
    * This code has been adapted from
@@ -125,7 +137,8 @@ public class CopyWriter implements AutoCloseable {
    *
    * @param data
    */
-  public CopyWriter(PGCopyOutputStream data) {
+  public CopyWriter(OutputStream data) {
+    this.output = data;
     this.data = new DataOutputStream(new BufferedOutputStream(data, 65536));
   }
 
@@ -253,6 +266,17 @@ public class CopyWriter implements AutoCloseable {
     INTEGER_HANDLER.handle(data, value);
   }
 
+  /**
+   * Writes a primitive integer value without boxing it.
+   *
+   * @param value the value
+   * @throws IOException
+   */
+  public void writeInteger(int value) throws IOException {
+    data.writeInt(Integer.BYTES);
+    data.writeInt(value);
+  }
+
   /**
    * Writes a list of integer values.
    *
@@ -271,6 +295,17 @@ public class CopyWriter implements AutoCloseable {
     LONG_HANDLER.handle(data, value);
   }
 
+  /**
+   * Writes a primitive long value without boxing it.
+   *
+   * @param value the value
+   * @throws IOException
+   */
+  public void writeLong(long value) throws IOException {
+    data.writeInt(Long.BYTES);
+    data.writeLong(value);
+  }
+
   /**
    * Writes a list of long values.
    *
@@ -307,6 +342,17 @@ public class CopyWriter implements AutoCloseable {
     DOUBLE_HANDLER.handle(data, value);
   }
 
+  /**
+   * Writes a primitive double value without boxing it.
+   *
+   * @param value the value
+   * @throws IOException
+   */
+  public void writeDouble(double value) throws IOException {
+    data.writeInt(Double.BYTES);
+    data.writeDouble(value);
+  }
+
   /**
    * Writes a list of double values.
    *
@@ -334,6 +380,17 @@ public class CopyWriter implements AutoCloseable {
     LOCAL_DATE_TIME_HANDLER.handle(data, value);
   }
 
+  /**
+   * Writes a timestamp without time zone expressed in milliseconds since the epoch in local time.
+   *
+   * @param localEpochMillis the local time in milliseconds since the epoch
+   * @throws IOException
+   */
+  public void writeTimestamp(long localEpochMillis) throws IOException {
+    data.writeInt(Long.BYTES);
+    data.writeLong((localEpochMillis - POSTGRES_EPOCH_MILLIS) * 1000);
+  }
+
   /**
    * Writes an inet adress value.
    *
@@ -370,6 +427,36 @@ public class CopyWriter implements AutoCloseable {
     JSONB_HANDLER.handle(data, value);
   }
 
+  /**
+   * Writes a value, such as a map of tags, as a jsonb value. The value is encoded once in the
+   * buffer of the {@link JsonbEncoder} of the current thread.
+   *
+   * @param value the value
+   * @throws IOException
+   */
+  public void writeJsonb(Map<String, ?> value) throws IOException {
+    if (value == null) {
+      writeNull();
+    } else {
+      JsonbEncoder.get().encode(value).writeTo(data);
+    }
+  }
+
+  /**
+   * Writes tags stored as indexes in a string table as a jsonb object.
+   *
+   * @param strings the string table
+   * @param keys the indexes of the keys
+   * @param values the indexes of the values
+   * @param from the index of the first tag (inclusive)
+   * @param to the index of the last tag (exclusive)
+   * @throws IOException
+   */
+  public void writeJsonb(String[] strings, int[] keys, int[] values, int from, int to)
+      throws IOException {
+    JsonbEncoder.get().encode(strings, keys, values, from, to).writeTo(data);
+  }
+
   /**
    * Writes a geometry value.
    *
@@ -379,6 +466,23 @@ public class CopyWriter implements AutoCloseable {
     GEOMETRY_HANDLER.handle(data, value);
   }
 
+  /**
+   * Writes a point geometry as an EWKB value without creating a geometry object.
+   *
+   * @param x the x coordinate
+   * @param y the y coordinate
+   * @param srid the SRID of the point
+   * @throws IOException
+   */
+  public void writePoint(double x, double y, int srid) throws IOException {
+    data.writeInt(EWKB_POINT_SIZE);
+    data.writeByte(WKBConstants.wkbNDR);
+    data.writeInt(Integer.reverseBytes(WKBConstants.wkbPoint | EWKB_SRID_FLAG));
+    data.writeInt(Integer.reverseBytes(srid));
+    data.writeLong(Long.reverseBytes(Double.doubleToLongBits(x)));
+    data.writeLong(Long.reverseBytes(Double.doubleToLongBits(y)));
+  }
+
   /**
    * Writes an envelope value.
    *
@@ -399,4 +503,20 @@ public class CopyWriter implements AutoCloseable {
     data.flush();
     data.close();
   }
+
+  /**
+   * Cancels the copy without writing the end of the rows, so that none of the rows written so far
+   * is committed. Only a {@code PGCopyOutputStream} can be cancelled.
+   *
+   * @throws IOException
+   */
+  public void abort() throws IOException {
+    if (output instanceof PGCopyOutputStream copy && copy.isActive()) {
+      try {
+        copy.cancelCopy();
+      } catch (SQLException e) {
+        throw new IOException(e);
+      }
+    }
+  }
 }
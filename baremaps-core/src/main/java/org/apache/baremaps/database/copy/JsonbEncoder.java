@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.copy;
+
+
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An encoder that writes json values as UTF-8 bytes in a reusable buffer, so that the length
+ * prefix of a jsonb value can be written before its bytes without serializing the value twice.
+ *
+ * <p>
+ * Strings, numbers, booleans, maps, iterables and arrays of objects are encoded directly, and the
+ * other values are delegated to Jackson. An encoder is not thread safe; {@link #get()} returns the
+ * encoder of the current thread.
+ */
+public final class JsonbEncoder {
+
+  private static final ThreadLocal<JsonbEncoder> ENCODERS =
+      ThreadLocal.withInitial(JsonbEncoder::new);
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static final byte[] HEX = {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+  private static final int JSONB_VERSION = 1;
+
+  private byte[] buffer = new byte[1024];
+
+  private int length = 0;
+
+  /**
+   * Constructs an encoder.
+   */
+  public JsonbEncoder() {
+    // Default constructor
+  }
+
+  /**
+   * Returns the encoder of the current thread.
+   *
+   * @return the encoder
+   */
+  public static JsonbEncoder get() {
+    return ENCODERS.get();
+  }
+
+  /**
+   * Returns the buffer that holds the encoded bytes.
+   *
+   * @return the buffer
+   */
+  public byte[] buffer() {
+    return buffer;
+  }
+
+  /**
+   * Returns the number of encoded bytes.
+   *
+   * @return the number of bytes
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Encodes a value, such as a map of tags, as json.
+   *
+   * @param value the value
+   * @return the encoder
+   */
+  public JsonbEncoder encode(Object value) {
+    length = 0;
+    writeValue(value);
+    return this;
+  }
+
+  /**
+   * Encodes a string that already contains json.
+   *
+   * @param json the json
+   * @return the encoder
+   */
+  public JsonbEncoder encodeJson(String json) {
+    length = 0;
+    writeUtf8(json, false);
+    return this;
+  }
+
+  /**
+   * Encodes tags stored as indexes in a string table as a json object, without creating a map.
+   *
+   * @param strings the string table
+   * @param keys the indexes of the keys
+   * @param values the indexes of the values
+   * @param from the index of the first tag (inclusive)
+   * @param to the index of the last tag (exclusive)
+   * @return the encoder
+   */
+  public JsonbEncoder encode(String[] strings, int[] keys, int[] values, int from, int to) {
+    length = 0;
+    writeByte('{');
+    for (int i = from; i < to; i++) {
+      if (i > from) {
+        writeByte(',');
+      }
+      writeString(strings[keys[i]]);
+      writeByte(':');
+      writeString(strings[values[i]]);
+    }
+    writeByte('}');
+    return this;
+  }
+
+  /**
+   * Writes the encoded bytes as a jsonb value of the binary copy protocol.
+   *
+   * @param data the output stream
+   * @throws IOException
+   */
+  public void writeTo(DataOutputStream data) throws IOException {
+    data.writeInt(length + 1);
+    data.writeByte(JSONB_VERSION);
+    data.write(buffer, 0, length);
+  }
+
+  private void writeValue(Object value) {
+    if (value == null) {
+      writeAscii("null");
+    } else if (value instanceof String string) {
+      writeString(string);
+    } else if (value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte) {
+      writeAscii(value.toString());
+    } else if (value instanceof Double number && Double.isFinite(number)) {
+      writeAscii(number.toString());
+    } else if (value instanceof Float number && Float.isFinite(number)) {
+      writeAscii(number.toString());
+    } else if (value instanceof Boolean bool) {
+      writeAscii(bool ? "true" : "false");
+    } else if (value instanceof Map<?, ?> map) {
+      writeMap(map);
+    } else if (value instanceof Iterable<?> iterable) {
+      writeByte('[');
+      boolean first = true;
+      for (Object element : iterable) {
+        if (!first) {
+          writeByte(',');
+        }
+        writeValue(element);
+        first = false;
+      }
+      writeByte(']');
+    } else if (value instanceof Object[] array) {
+      writeValue(Arrays.asList(array));
+    } else {
+      writeJackson(value);
+    }
+  }
+
+  private void writeMap(Map<?, ?> map) {
+    writeByte('{');
+    boolean first = true;
+    for (var entry : map.entrySet()) {
+      if (!first) {
+        writeByte(',');
+      }
+      writeString(String.valueOf(entry.getKey()));
+      writeByte(':');
+      writeValue(entry.getValue());
+      first = false;
+    }
+    writeByte('}');
+  }
+
+  private void writeJackson(Object value) {
+    try {
+      byte[] bytes = mapper.writeValueAsBytes(value);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, length, bytes.length);
+      length += bytes.length;
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private void writeString(String value) {
+    writeByte('"');
+    writeUtf8(value, true);
+    writeByte('"');
+  }
+
+  private void writeAscii(String value) {
+    int size = value.length();
+    ensureCapacity(size);
+    for (int i = 0; i < size; i++) {
+      buffer[length++] = (byte) value.charAt(i);
+    }
+  }
+
+  private void writeUtf8(String value, boolean escape) {
+    int size = value.length();
+    // A char is encoded in at most 6 bytes when escaped and 3 bytes otherwise
+    ensureCapacity(size * (escape ? 6 : 3));
+    byte[] bytes = buffer;
+    int position = length;
+    for (int i = 0; i < size; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (escape && (c < 0x20 || c == '"' || c == '\\')) {
+          position = writeEscape(bytes, position, c);
+        } else {
+          bytes[position++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        bytes[position++] = (byte) (0xC0 | (c >> 6));
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < size
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+        bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // Replace the unpaired surrogates as String.getBytes does
+        bytes[position++] = '?';
+      } else {
+        bytes[position++] = (byte) (0xE0 | (c >> 12));
+        bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    length = position;
+  }
+
+  private static int writeEscape(byte[] bytes, int position, char c) {
+    bytes[position++] = '\\';
+    switch (c) {
+      case '"' -> bytes[position++] = '"';
+      case '\\' -> bytes[position++] = '\\';
+      case '\b' -> bytes[position++] = 'b';
+      case '\f' -> bytes[position++] = 'f';
+      case '\n' -> bytes[position++] = 'n';
+      case '\r' -> bytes[position++] = 'r';
+      case '\t' -> bytes[position++] = 't';
+      default -> {
+        bytes[position++] = 'u';
+        bytes[position++] = '0';
+        bytes[position++] = '0';
+        bytes[position++] = HEX[c >> 4];
+        bytes[position++] = HEX[c & 0xF];
+      }
+    }
+    return position;
+  }
+
+  private void writeByte(char c) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) c;
+  }
+
+  private void ensureCapacity(int size) {
+    if (length + size > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + size));
+    }
+  }
+}
@@ -17,34 +17,17 @@
 
 package org.apache.baremaps.database.copy;
 
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.JsonSerializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializerProvider;
-import com.fasterxml.jackson.databind.module.SimpleModule;
 import de.bytefish.pgbulkinsert.pgsql.handlers.BaseValueHandler;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+/**
+ * A handler that writes jsonb values. Strings are considered to already contain json, and the
+ * other values are encoded as json. The values are encoded once in the buffer of a
+ * {@link JsonbEncoder}.
+ */
 public class JsonbValueHandler extends BaseValueHandler<Object> {
 
-  private static final ObjectMapper objectMapper;
-
-  static {
-    objectMapper = new ObjectMapper();
-    SimpleModule module = new SimpleModule();
-    module.addSerializer(String.class, new NoQuotesStringSerializer());
-    objectMapper.registerModule(module);
-  }
-
-  static class NoQuotesStringSerializer extends JsonSerializer<String> {
-    @Override
-    public void serialize(String value, JsonGenerator gen, SerializerProvider serializers)
-        throws IOException {
-      gen.writeRawValue(value);
-    }
-  }
-
   private final int jsonbProtocolVersion;
 
   public JsonbValueHandler() {
@@ -55,30 +38,25 @@ public class JsonbValueHandler extends BaseValueHandler<Object> {
     this.jsonbProtocolVersion = jsonbProtocolVersion;
   }
 
-  private static byte[] asJson(Object object) throws IOException {
-    try {
-      String value = objectMapper.writeValueAsString(object);
-      return value.getBytes("UTF-8");
-    } catch (Exception e) {
-      throw new IOException(e);
+  private static JsonbEncoder encode(Object value) {
+    var encoder = JsonbEncoder.get();
+    if (value instanceof String json) {
+      return encoder.encodeJson(json);
+    } else {
+      return encoder.encode(value);
     }
   }
 
   @Override
   protected void internalHandle(DataOutputStream buffer, Object value) throws IOException {
-    byte[] utf8Bytes = asJson(value);
-    buffer.writeInt(utf8Bytes.length + 1);
+    var encoder = encode(value);
+    buffer.writeInt(encoder.length() + 1);
     buffer.writeByte(jsonbProtocolVersion);
-    buffer.write(utf8Bytes);
+    buffer.write(encoder.buffer(), 0, encoder.length());
   }
 
   @Override
   public int getLength(Object value) {
-    try {
-      byte[] utf8Bytes = asJson(value);
-      return utf8Bytes.length;
-    } catch (IOException e) {
-      return 0;
-    }
+    return encode(value).length();
   }
 }
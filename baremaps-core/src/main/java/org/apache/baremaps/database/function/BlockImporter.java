@@ -20,6 +20,7 @@ package org.apache.baremaps.database.function;
 
 
 import java.util.function.Consumer;
+import org.apache.baremaps.database.postgres.DenseNodeRepository;
 import org.apache.baremaps.database.postgres.Repository;
 import org.apache.baremaps.openstreetmap.model.*;
 import org.apache.baremaps.openstreetmap.stream.StreamException;
@@ -28,7 +29,7 @@ import org.apache.baremaps.openstreetmap.stream.StreamException;
 public class BlockImporter implements Consumer<Block> {
 
   private final Repository<Long, Header> headerRepository;
-  private final Repository<Long, Node> nodeRepository;
+  private final DenseNodeRepository nodeRepository;
   private final Repository<Long, Way> wayRepository;
   private final Repository<Long, Relation> relationRepository;
 
@@ -42,7 +43,7 @@ public class BlockImporter implements Consumer<Block> {
    */
   public BlockImporter(
       Repository<Long, Header> headerRepository,
-      Repository<Long, Node> nodeRepository,
+      DenseNodeRepository nodeRepository,
       Repository<Long, Way> wayRepository,
       Repository<Long, Relation> relationRepository) {
     this.headerRepository = headerRepository;
@@ -57,7 +58,12 @@ public class BlockImporter implements Consumer<Block> {
       if (block instanceof HeaderBlock headerBlock) {
         headerRepository.put(headerBlock.getHeader());
       } else if (block instanceof DataBlock dataBlock) {
-        nodeRepository.copy(dataBlock.getDenseNodes());
+        if (dataBlock.getDenseNodeColumns() != null) {
+          // Copy the dense nodes from their columns to avoid creating node objects
+          nodeRepository.copy(dataBlock.getDenseNodeColumns());
+        } else {
+          nodeRepository.copy(dataBlock.getDenseNodes());
+        }
         nodeRepository.copy(dataBlock.getNodes());
         wayRepository.copy(dataBlock.getWays());
         relationRepository.copy(dataBlock.getRelations());
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.function;
+
+import java.util.*;
+import java.util.function.Consumer;
+import org.apache.baremaps.database.postgres.CoordinateMap;
+import org.apache.baremaps.database.postgres.ReferenceMap;
+import org.apache.baremaps.openstreetmap.model.Change;
+import org.apache.baremaps.openstreetmap.model.Change.ChangeType;
+import org.apache.baremaps.openstreetmap.model.Member.MemberType;
+import org.apache.baremaps.openstreetmap.model.Node;
+import org.apache.baremaps.openstreetmap.model.Relation;
+import org.apache.baremaps.openstreetmap.model.Way;
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * A consumer that prefetches the coordinates and references needed to build the geometries of the
+ * ways and relations of a change. The ids referenced by the change are resolved in a few batched
+ * queries and cached until the next change, so that the geometry builders do not query the
+ * database once per node or way.
+ *
+ * <p>
+ * The nodes and ways of the change itself take precedence over the cached values, which mirrors
+ * the state of the database once the change has been imported. The builders must use the maps
+ * returned by {@link #getCoordinateMap()} and {@link #getReferenceMap()}.
+ */
+public class ChangeGeometryPrefetcher implements Consumer<Change> {
+
+  private static final int BATCH_SIZE = 10_000;
+
+  private final Map<Long, Coordinate> coordinateMap;
+
+  private final Map<Long, List<Long>> referenceMap;
+
+  private final Map<Long, Coordinate> coordinateCache = new HashMap<>();
+
+  private final Map<Long, List<Long>> referenceCache = new HashMap<>();
+
+  /**
+   * Constructs a {@code ChangeGeometryPrefetcher}.
+   *
+   * @param coordinateMap the coordinate map
+   * @param referenceMap the reference map
+   */
+  public ChangeGeometryPrefetcher(
+      Map<Long, Coordinate> coordinateMap,
+      Map<Long, List<Long>> referenceMap) {
+    this.coordinateMap = coordinateMap;
+    this.referenceMap = referenceMap;
+  }
+
+  /**
+   * Returns a view of the coordinate map that reads the prefetched coordinates first.
+   *
+   * @return the coordinate map
+   */
+  public Map<Long, Coordinate> getCoordinateMap() {
+    return new CachedMap<>(coordinateCache, coordinateMap);
+  }
+
+  /**
+   * Returns a view of the reference map that reads the prefetched references first.
+   *
+   * @return the reference map
+   */
+  public Map<Long, List<Long>> getReferenceMap() {
+    return new CachedMap<>(referenceCache, referenceMap);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void accept(Change change) {
+    coordinateCache.clear();
+    referenceCache.clear();
+
+    // Collect the ids referenced by the ways and the relations of the change
+    Set<Long> nodeIds = new HashSet<>();
+    Set<Long> wayIds = new HashSet<>();
+    Map<Long, Coordinate> changedNodes = new HashMap<>();
+    Map<Long, List<Long>> changedWays = new HashMap<>();
+    boolean deleted = change.getType() == ChangeType.DELETE;
+    for (var entity : change.getEntities()) {
+      if (entity instanceof Node node) {
+        changedNodes.put(node.getId(),
+            deleted ? null : new Coordinate(node.getLon(), node.getLat()));
+      } else if (entity instanceof Way way) {
+        nodeIds.addAll(way.getNodes());
+        changedWays.put(way.getId(), deleted ? null : way.getNodes());
+      } else if (entity instanceof Relation relation) {
+        for (var member : relation.getMembers()) {
+          if (member.getType() == MemberType.WAY) {
+            wayIds.add(member.getRef());
+          }
+        }
+      }
+    }
+
+    // Resolve the references of the member ways and then the coordinates of all the nodes
+    wayIds.removeAll(changedWays.keySet());
+    prefetch(referenceMap, wayIds, referenceCache);
+    referenceCache.putAll(changedWays);
+    for (var references : referenceCache.values()) {
+      if (references != null) {
+        nodeIds.addAll(references);
+      }
+    }
+    nodeIds.removeAll(changedNodes.keySet());
+    prefetch(coordinateMap, nodeIds, coordinateCache);
+    coordinateCache.putAll(changedNodes);
+  }
+
+  private static <V> void prefetch(Map<Long, V> map, Set<Long> keys, Map<Long, V> cache) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    var list = new ArrayList<>(keys);
+    Collections.sort(list);
+    for (int start = 0; start < list.size(); start += BATCH_SIZE) {
+      var batch = list.subList(start, Math.min(start + BATCH_SIZE, list.size()));
+      var values = getAll(map, batch);
+      for (int i = 0; i < batch.size(); i++) {
+        cache.put(batch.get(i), values.get(i));
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> List<V> getAll(Map<Long, V> map, List<Long> keys) {
+    if (map instanceof CoordinateMap coordinateMap) {
+      return (List<V>) coordinateMap.getAll(keys);
+    } else if (map instanceof ReferenceMap referenceMap) {
+      return (List<V>) referenceMap.getAll(keys);
+    } else {
+      var values = new ArrayList<V>(keys.size());
+      for (var key : keys) {
+        values.add(map.get(key));
+      }
+      return values;
+    }
+  }
+
+  /**
+   * A read-only view of a map that reads the cached values first, including the cached absences,
+   * and falls back to the map for the keys that have not been prefetched.
+   */
+  private static class CachedMap<V> extends AbstractMap<Long, V> {
+
+    private final Map<Long, V> cache;
+
+    private final Map<Long, V> map;
+
+    private CachedMap(Map<Long, V> cache, Map<Long, V> map) {
+      this.cache = cache;
+      this.map = map;
+    }
+
+    @Override
+    public V get(Object key) {
+      if (cache.containsKey(key)) {
+        return cache.get(key);
+      }
+      return map.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<Long, V>> entrySet() {
+      return map.entrySet();
+    }
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.function;
+
+
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.apache.baremaps.database.copy.CopyWriter;
+import org.apache.baremaps.database.postgres.*;
+import org.apache.baremaps.openstreetmap.model.*;
+import org.apache.baremaps.openstreetmap.stream.StreamException;
+
+/**
+ * A consumer for importing OpenStreetMap blocks in a database with long-lived copies.
+ *
+ * <p>
+ * Each table is loaded by a configurable number of writer threads. A writer holds a single
+ * connection and a single copy for the whole import, and receives the entities of the blocks
+ * through a bounded queue, so that the tables are loaded concurrently and that the decoding of the
+ * blocks is throttled when the database falls behind. The rows only become visible once the
+ * importer is closed, and the copy of a writer that fails or is interrupted is cancelled. The data
+ * source must provide three connections per writer, and one more for the header (see
+ * {@link #requiredConnections(int)}), otherwise the writers would wait for each other's connections
+ * forever.
+ */
+public class CopyBlockImporter implements Consumer<Block>, AutoCloseable {
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private static final CopyTask END = writer -> {
+  };
+
+  private final DataSource dataSource;
+  private final HeaderRepository headerRepository;
+  private final ExecutorService executorService;
+  private final List<Future<?>> writers = new ArrayList<>();
+  private final CopyQueue nodeQueue;
+  private final CopyQueue wayQueue;
+  private final CopyQueue relationQueue;
+  private final NodeRepository nodeRepository;
+  private final WayRepository wayRepository;
+  private final RelationRepository relationRepository;
+
+  private volatile Throwable failure;
+
+  /**
+   * Constructs a {@code CopyBlockImporter}.
+   *
+   * @param dataSource the data source
+   * @param headerRepository the header table
+   * @param nodeRepository the node table
+   * @param wayRepository the way table
+   * @param relationRepository the relation table
+   * @param writersPerTable the number of writer threads per table
+   * @param queueCapacity the number of pending batches per table
+   */
+  public CopyBlockImporter(
+      DataSource dataSource,
+      HeaderRepository headerRepository,
+      NodeRepository nodeRepository,
+      WayRepository wayRepository,
+      RelationRepository relationRepository,
+      int writersPerTable,
+      int queueCapacity) {
+    if (writersPerTable < 1) {
+      throw new IllegalArgumentException("The number of writers must be positive");
+    }
+    checkDataSource(dataSource, writersPerTable);
+    this.dataSource = dataSource;
+    this.headerRepository = headerRepository;
+    this.nodeRepository = nodeRepository;
+    this.wayRepository = wayRepository;
+    this.relationRepository = relationRepository;
+    this.executorService = Executors.newFixedThreadPool(writersPerTable * 3);
+    this.nodeQueue = new CopyQueue(nodeRepository::copyWriter, writersPerTable, queueCapacity);
+    this.wayQueue = new CopyQueue(wayRepository::copyWriter, writersPerTable, queueCapacity);
+    this.relationQueue =
+        new CopyQueue(relationRepository::copyWriter, writersPerTable, queueCapacity);
+  }
+
+  /**
+   * Returns the number of connections held at the same time by an importer.
+   *
+   * @param writersPerTable the number of writer threads per table
+   * @return the number of connections
+   */
+  public static int requiredConnections(int writersPerTable) {
+    return 3 * writersPerTable + 1;
+  }
+
+  /**
+   * Checks that the pool of a data source can provide the connections held by an importer.
+   *
+   * @param dataSource the data source
+   * @param writersPerTable the number of writer threads per table
+   * @throws IllegalArgumentException if the pool is too small
+   */
+  public static void checkDataSource(DataSource dataSource, int writersPerTable) {
+    int required = requiredConnections(writersPerTable);
+    int available;
+    try {
+      if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+        return;
+      }
+      available = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+    } catch (SQLException e) {
+      return;
+    }
+    if (available < required) {
+      throw new IllegalArgumentException(String.format(
+          "%d copy writers per table require %d connections, but the pool of the data source "
+              + "only provides %d; reduce the number of writers or increase the pool size",
+          writersPerTable, required, available));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void accept(Block block) {
+    try {
+      if (block instanceof HeaderBlock headerBlock) {
+        headerRepository.put(headerBlock.getHeader());
+      } else if (block instanceof DataBlock dataBlock) {
+        var columns = dataBlock.getDenseNodeColumns();
+        if (columns != null && columns.size() > 0) {
+          nodeQueue.put(writer -> nodeRepository.copy(writer, columns));
+        } else if (columns == null && !dataBlock.getDenseNodes().isEmpty()) {
+          var denseNodes = dataBlock.getDenseNodes();
+          nodeQueue.put(writer -> nodeRepository.copy(writer, denseNodes));
+        }
+        if (!dataBlock.getNodes().isEmpty()) {
+          var nodes = dataBlock.getNodes();
+          nodeQueue.put(writer -> nodeRepository.copy(writer, nodes));
+        }
+        if (!dataBlock.getWays().isEmpty()) {
+          var ways = dataBlock.getWays();
+          wayQueue.put(writer -> wayRepository.copy(writer, ways));
+        }
+        if (!dataBlock.getRelations().isEmpty()) {
+          var relations = dataBlock.getRelations();
+          relationQueue.put(writer -> relationRepository.copy(writer, relations));
+        }
+      }
+    } catch (RepositoryException e) {
+      throw new StreamException(e);
+    }
+  }
+
+  /**
+   * Waits for the pending batches to be written and commits the copies.
+   *
+   * @throws RepositoryException if a writer failed
+   */
+  @Override
+  public void close() throws RepositoryException {
+    try {
+      nodeQueue.close();
+      wayQueue.close();
+      relationQueue.close();
+      for (var writer : writers) {
+        writer.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RepositoryException(e);
+    } catch (ExecutionException e) {
+      throw new RepositoryException(e.getCause());
+    } catch (StreamException e) {
+      throw new RepositoryException(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Writes rows in an ongoing copy.
+   */
+  @FunctionalInterface
+  private interface CopyTask {
+
+    void write(CopyWriter writer) throws RepositoryException;
+  }
+
+  /**
+   * Opens a copy on a connection.
+   */
+  @FunctionalInterface
+  private interface CopyOpener {
+
+    CopyWriter open(Connection connection) throws RepositoryException;
+  }
+
+  /**
+   * A bounded queue of batches shared by the writers of a table.
+   */
+  private class CopyQueue {
+
+    private final BlockingQueue<CopyTask> queue;
+
+    private final int writerCount;
+
+    private CopyQueue(CopyOpener opener, int writerCount, int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.writerCount = writerCount;
+      for (int i = 0; i < writerCount; i++) {
+        writers.add(executorService.submit(() -> write(opener)));
+      }
+    }
+
+    private void put(CopyTask task) {
+      try {
+        // Poll the failure of the writers to avoid blocking forever on a full queue
+        while (!queue.offer(task, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (failure != null) {
+            throw new StreamException(failure);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new StreamException(e);
+      }
+    }
+
+    private void close() {
+      for (int i = 0; i < writerCount; i++) {
+        put(END);
+      }
+    }
+
+    private Void write(CopyOpener opener) throws RepositoryException {
+      try (Connection connection = dataSource.getConnection()) {
+        CopyWriter writer = null;
+        try {
+          CopyTask task;
+          while ((task = queue.take()) != END) {
+            if (writer == null) {
+              writer = opener.open(connection);
+            }
+            task.write(writer);
+          }
+          if (writer != null) {
+            writer.close();
+          }
+        } catch (Exception e) {
+          if (writer != null) {
+            // Cancel the copy so that the rows of a failed import are not committed
+            try {
+              writer.abort();
+            } catch (IOException abortException) {
+              e.addSuppressed(abortException);
+            }
+          }
+          throw e;
+        }
+        return null;
+      } catch (Exception e) {
+        failure = e;
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        throw new RepositoryException(e);
+      }
+    }
+  }
+}
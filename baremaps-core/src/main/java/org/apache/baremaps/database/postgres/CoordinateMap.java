@@ -24,12 +24,13 @@ import java.util.*;
 import javax.sql.DataSource;
 import org.apache.baremaps.data.collection.DataCollectionException;
 import org.apache.baremaps.data.collection.DataMap;
+import org.apache.baremaps.openstreetmap.function.BulkCoordinateLookup;
 import org.locationtech.jts.geom.Coordinate;
 
 /**
  * A read-only {@link DataMap} for coordinates baked by OpenStreetMap nodes stored in PostgreSQL.
  */
-public class CoordinateMap extends PostgresMap<Long, Coordinate> {
+public class CoordinateMap extends PostgresMap<Long, Coordinate> implements BulkCoordinateLookup {
 
   private final DataSource dataSource;
 
@@ -142,6 +143,39 @@ public class CoordinateMap extends PostgresMap<Long, Coordinate> {
     }
   }
 
+  /**
+   * Looks up the coordinates of the specified nodes with a single query. The distinct ids are sent
+   * in ascending order so that the index of the table is scanned sequentially.
+   *
+   * @param ids the ids of the nodes
+   * @param xy the array of x and y values, of length {@code 2 * ids.length}
+   */
+  @Override
+  public void getAll(long[] ids, double[] xy) {
+    long[] sorted = Arrays.stream(ids).sorted().distinct().toArray();
+    double[] sortedXY = new double[sorted.length * 2];
+    Arrays.fill(sortedXY, Double.NaN);
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(selectIn)) {
+      statement.setArray(1, connection.createArrayOf("int8",
+          Arrays.stream(sorted).boxed().toArray()));
+      try (ResultSet result = statement.executeQuery()) {
+        while (result.next()) {
+          int index = Arrays.binarySearch(sorted, result.getLong(1));
+          sortedXY[2 * index] = result.getDouble(2);
+          sortedXY[2 * index + 1] = result.getDouble(3);
+        }
+      }
+    } catch (SQLException e) {
+      throw new DataCollectionException(e);
+    }
+    for (int i = 0; i < ids.length; i++) {
+      int index = Arrays.binarySearch(sorted, ids[i]);
+      xy[2 * i] = sortedXY[2 * index];
+      xy[2 * i + 1] = sortedXY[2 * index + 1];
+    }
+  }
+
   @Override
   protected Iterator<Long> keyIterator() {
     try (Connection connection = dataSource.getConnection();
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.postgres;
+
+
+
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
+import org.apache.baremaps.openstreetmap.model.Node;
+
+/**
+ * Provides an interface to a repository of nodes that imports the dense nodes of a block directly
+ * from their columns.
+ */
+public interface DenseNodeRepository extends Repository<Long, Node> {
+
+  /**
+   * Imports the dense nodes of a block into the repository using a fast copy interface, without
+   * creating {@code Node} objects.
+   *
+   * @param columns the columns of the dense nodes
+   * @throws RepositoryException If an exception occurs while copying
+   */
+  void copy(DenseNodeColumns columns) throws RepositoryException;
+}
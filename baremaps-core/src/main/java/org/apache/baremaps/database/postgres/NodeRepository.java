@@ -29,8 +29,10 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
 import javax.sql.DataSource;
 import org.apache.baremaps.database.copy.CopyWriter;
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
 import org.apache.baremaps.openstreetmap.model.Info;
 import org.apache.baremaps.openstreetmap.model.Node;
 import org.apache.baremaps.openstreetmap.utils.GeometryUtils;
@@ -41,7 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** Provides an implementation of the {@code NodeRepository} baked by Postgres. */
-public class NodeRepository implements Repository<Long, Node> {
+public class NodeRepository implements DenseNodeRepository {
 
   private static final Logger logger = LoggerFactory.getLogger(NodeRepository.class);
 
@@ -309,28 +311,122 @@ public class NodeRepository implements Repository<Long, Node> {
     if (values.isEmpty()) {
       return;
     }
-    try (Connection connection = dataSource.getConnection()) {
+    try (Connection connection = dataSource.getConnection();
+        CopyWriter writer = copyWriter(connection)) {
+      copy(writer, values);
+    } catch (IOException | SQLException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
+  /**
+   * Starts a copy of nodes on the specified connection. The rows can then be written with
+   * {@link #copy(CopyWriter, List)} or {@link #copy(CopyWriter, DenseNodeColumns)} until the writer
+   * is closed.
+   *
+   * @param connection the connection
+   * @return the copy writer
+   * @throws RepositoryException
+   */
+  public CopyWriter copyWriter(Connection connection) throws RepositoryException {
+    try {
       PGConnection pgConnection = connection.unwrap(PGConnection.class);
-      try (CopyWriter writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copy))) {
-        writer.writeHeader();
-        for (Node value : values) {
-          writer.startRow(9);
-          writer.writeLong(value.getId());
-          writer.writeInteger(value.getInfo().getVersion());
-          writer.writeInteger(value.getInfo().getUid());
-          writer.writeLocalDateTime(value.getInfo().getTimestamp());
-          writer.writeLong(value.getInfo().getChangeset());
-          writer.writeJsonb(JsonbMapper.toJson(value.getTags()));
-          writer.writeDouble(value.getLon());
-          writer.writeDouble(value.getLat());
-          writer.writeGeometry(value.getGeometry());
-        }
+      CopyWriter writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copy));
+      writer.writeHeader();
+      return writer;
+    } catch (IOException | SQLException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
+  /**
+   * Writes the rows of the specified nodes in an ongoing copy.
+   *
+   * @param writer the copy writer
+   * @param values the nodes
+   * @throws RepositoryException
+   */
+  public void copy(CopyWriter writer, List<Node> values) throws RepositoryException {
+    try {
+      for (Node value : values) {
+        writer.startRow(9);
+        writer.writeLong(value.getId());
+        writer.writeInteger(value.getInfo().getVersion());
+        writer.writeInteger(value.getInfo().getUid());
+        writer.writeLocalDateTime(value.getInfo().getTimestamp());
+        writer.writeLong(value.getInfo().getChangeset());
+        writer.writeJsonb(value.getTags());
+        writer.writeDouble(value.getLon());
+        writer.writeDouble(value.getLat());
+        writer.writeGeometry(value.getGeometry());
       }
+    } catch (IOException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
+  /**
+   * Copies the dense nodes of a block from their columns without creating {@code Node} objects.
+   * The tags are encoded directly from the string table of the block.
+   *
+   * @param columns the columns of the dense nodes
+   * @throws RepositoryException
+   */
+  @Override
+  public void copy(DenseNodeColumns columns) throws RepositoryException {
+    if (columns.size() == 0) {
+      return;
+    }
+    try (Connection connection = dataSource.getConnection();
+        CopyWriter writer = copyWriter(connection)) {
+      copy(writer, columns);
     } catch (IOException | SQLException e) {
       throw new RepositoryException(e);
     }
   }
 
+  /**
+   * Writes the rows of the dense nodes of a block in an ongoing copy.
+   *
+   * @param writer the copy writer
+   * @param columns the columns of the dense nodes
+   * @throws RepositoryException
+   */
+  public void copy(CopyWriter writer, DenseNodeColumns columns) throws RepositoryException {
+    try {
+      TimeZone timeZone = TimeZone.getDefault();
+      long[] ids = columns.getIds();
+      int[] versions = columns.getVersions();
+      int[] uids = columns.getUids();
+      long[] timestamps = columns.getTimestamps();
+      long[] changesets = columns.getChangesets();
+      double[] lons = columns.getLons();
+      double[] lats = columns.getLats();
+      int[] tagOffsets = columns.getTagOffsets();
+      int[] tagKeys = columns.getTagKeys();
+      int[] tagValues = columns.getTagValues();
+      String[] strings = columns.getStrings();
+      for (int i = 0; i < columns.size(); i++) {
+        writer.startRow(9);
+        writer.writeLong(ids[i]);
+        writer.writeInteger(versions[i]);
+        writer.writeInteger(uids[i]);
+        writer.writeTimestamp(timestamps[i] + timeZone.getOffset(timestamps[i]));
+        writer.writeLong(changesets[i]);
+        writer.writeJsonb(strings, tagKeys, tagValues, tagOffsets[i], tagOffsets[i + 1]);
+        writer.writeDouble(lons[i]);
+        writer.writeDouble(lats[i]);
+        if (columns.hasGeometries()) {
+          writer.writePoint(columns.getXs()[i], columns.getYs()[i], columns.getSrid());
+        } else {
+          writer.writeNull();
+        }
+      }
+    } catch (IOException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
   private Node getValue(ResultSet resultSet) throws SQLException, JsonProcessingException {
     long id = resultSet.getLong(1);
     int version = resultSet.getInt(2);
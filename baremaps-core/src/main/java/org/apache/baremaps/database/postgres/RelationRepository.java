@@ -302,29 +302,60 @@ public class RelationRepository implements Repository<Long, Relation> {
     if (values.isEmpty()) {
       return;
     }
-    try (Connection connection = dataSource.getConnection()) {
+    try (Connection connection = dataSource.getConnection();
+        CopyWriter writer = copyWriter(connection)) {
+      copy(writer, values);
+    } catch (IOException | SQLException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
+  /**
+   * Starts a copy of relations on the specified connection. The rows can then be written with
+   * {@link #copy(CopyWriter, List)} until the writer is closed.
+   *
+   * @param connection the connection
+   * @return the copy writer
+   * @throws RepositoryException
+   */
+  public CopyWriter copyWriter(Connection connection) throws RepositoryException {
+    try {
       PGConnection pgConnection = connection.unwrap(PGConnection.class);
-      try (CopyWriter writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copy))) {
-        writer.writeHeader();
-        for (Relation value : values) {
-          writer.startRow(10);
-          writer.writeLong(value.getId());
-          writer.writeInteger(value.getInfo().getVersion());
-          writer.writeInteger(value.getInfo().getUid());
-          writer.writeLocalDateTime(value.getInfo().getTimestamp());
-          writer.writeLong(value.getInfo().getChangeset());
-          writer.writeJsonb(JsonbMapper.toJson(value.getTags()));
-          writer.writeLongList(
-              value.getMembers().stream().map(Member::getRef).toList());
-          writer.writeIntegerList(value.getMembers().stream().map(Member::getType)
-              .map(MemberType::ordinal).toList());
-          writer
-              .write(value.getMembers().stream().map(Member::getRole).toList());
-          writer.writeGeometry(value.getGeometry());
-        }
+      CopyWriter writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copy));
+      writer.writeHeader();
+      return writer;
+    } catch (IOException | SQLException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
+  /**
+   * Writes the rows of the specified relations in an ongoing copy.
+   *
+   * @param writer the copy writer
+   * @param values the relations
+   * @throws RepositoryException
+   */
+  public void copy(CopyWriter writer, List<Relation> values) throws RepositoryException {
+    try {
+      for (Relation value : values) {
+        writer.startRow(10);
+        writer.writeLong(value.getId());
+        writer.writeInteger(value.getInfo().getVersion());
+        writer.writeInteger(value.getInfo().getUid());
+        writer.writeLocalDateTime(value.getInfo().getTimestamp());
+        writer.writeLong(value.getInfo().getChangeset());
+        writer.writeJsonb(value.getTags());
+        writer.writeLongList(
+            value.getMembers().stream().map(Member::getRef).toList());
+        writer.writeIntegerList(value.getMembers().stream().map(Member::getType)
+            .map(MemberType::ordinal).toList());
+        writer
+            .write(value.getMembers().stream().map(Member::getRole).toList());
+        writer.writeGeometry(value.getGeometry());
       }
-    } catch (IOException | SQLException ex) {
-      throw new RepositoryException(ex);
+    } catch (IOException e) {
+      throw new RepositoryException(e);
     }
   }
 
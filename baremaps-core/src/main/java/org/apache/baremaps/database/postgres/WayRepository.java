@@ -307,27 +307,58 @@ public class WayRepository implements Repository<Long, Way> {
     if (values.isEmpty()) {
       return;
     }
-    try (Connection connection = dataSource.getConnection()) {
+    try (Connection connection = dataSource.getConnection();
+        CopyWriter writer = copyWriter(connection)) {
+      copy(writer, values);
+    } catch (IOException | SQLException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
+  /**
+   * Starts a copy of ways on the specified connection. The rows can then be written with
+   * {@link #copy(CopyWriter, List)} until the writer is closed.
+   *
+   * @param connection the connection
+   * @return the copy writer
+   * @throws RepositoryException
+   */
+  public CopyWriter copyWriter(Connection connection) throws RepositoryException {
+    try {
       PGConnection pgConnection = connection.unwrap(PGConnection.class);
-      try (CopyWriter writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copy))) {
-        writer.writeHeader();
-        for (Way value : values) {
-          writer.startRow(8);
-          writer.writeLong(value.getId());
-          writer.writeInteger(value.getInfo().getVersion());
-          writer.writeInteger(value.getInfo().getUid());
-          writer.writeLocalDateTime(value.getInfo().getTimestamp());
-          writer.writeLong(value.getInfo().getChangeset());
-          writer.writeJsonb(JsonbMapper.toJson(value.getTags()));
-          writer.writeLongList(value.getNodes());
-          writer.writeGeometry(value.getGeometry());
-        }
-      }
+      CopyWriter writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copy));
+      writer.writeHeader();
+      return writer;
     } catch (IOException | SQLException e) {
       throw new RepositoryException(e);
     }
   }
 
+  /**
+   * Writes the rows of the specified ways in an ongoing copy.
+   *
+   * @param writer the copy writer
+   * @param values the ways
+   * @throws RepositoryException
+   */
+  public void copy(CopyWriter writer, List<Way> values) throws RepositoryException {
+    try {
+      for (Way value : values) {
+        writer.startRow(8);
+        writer.writeLong(value.getId());
+        writer.writeInteger(value.getInfo().getVersion());
+        writer.writeInteger(value.getInfo().getUid());
+        writer.writeLocalDateTime(value.getInfo().getTimestamp());
+        writer.writeLong(value.getInfo().getChangeset());
+        writer.writeJsonb(value.getTags());
+        writer.writeLongList(value.getNodes());
+        writer.writeGeometry(value.getGeometry());
+      }
+    } catch (IOException e) {
+      throw new RepositoryException(e);
+    }
+  }
+
   private Way getValue(ResultSet resultSet) throws SQLException, JsonProcessingException {
     long id = resultSet.getLong(1);
     int version = resultSet.getInt(2);
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.storage.postgres;
+
+
+import de.bytefish.pgbulkinsert.pgsql.handlers.*;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.baremaps.data.storage.*;
+import org.apache.baremaps.data.storage.DataColumn.Type;
+import org.apache.baremaps.database.copy.CopyWriter;
+import org.apache.baremaps.database.copy.EnvelopeValueHandler;
+import org.apache.baremaps.database.copy.GeometryValueHandler;
+import org.apache.baremaps.database.copy.JsonbValueHandler;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+/**
+ * A writer that streams {@link DataRow}s in a Postgres table with the binary copy protocol.
+ *
+ * <p>
+ * The columns written are the columns of the schema whose types are supported by Postgres. The rows
+ * are written in batches, each batch being a copy statement, and the transaction is committed every
+ * time the number of rows written since the last commit reaches the commit size. A failure
+ * therefore only rolls back the rows written since the last commit. A writer is not thread safe, as
+ * its value handlers hold state.
+ */
+public class PostgresCopyWriter {
+
+  /** The default number of rows written by a copy statement. */
+  public static final int DEFAULT_BATCH_SIZE = 100_000;
+
+  /** The default number of rows written between two commits. */
+  public static final int DEFAULT_COMMIT_SIZE = 1_000_000;
+
+  private final DataSchema schema;
+
+  private final List<DataColumn> columns;
+
+  private final List<BaseValueHandler> handlers;
+
+  private final int batchSize;
+
+  private final int commitSize;
+
+  /**
+   * Constructs a writer with the default batch and commit sizes.
+   *
+   * @param schema the schema of the table
+   */
+  public PostgresCopyWriter(DataSchema schema) {
+    this(schema, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_SIZE);
+  }
+
+  /**
+   * Constructs a writer.
+   *
+   * @param schema the schema of the table
+   * @param batchSize the number of rows written by a copy statement
+   * @param commitSize the number of rows written between two commits
+   */
+  public PostgresCopyWriter(DataSchema schema, int batchSize, int commitSize) {
+    if (batchSize < 1 || commitSize < 1) {
+      throw new IllegalArgumentException("The batch and commit sizes must be positive");
+    }
+    this.schema = schema;
+    this.columns = schema.columns().stream()
+        .filter(PostgresCopyWriter::isSupported)
+        .toList();
+    this.handlers = columns.stream()
+        .map(column -> getHandler(column.type()))
+        .toList();
+    this.batchSize = batchSize;
+    this.commitSize = commitSize;
+  }
+
+  /**
+   * Writes rows whose columns have the same names as the columns of the table.
+   *
+   * @param connection the connection
+   * @param rows the rows
+   * @return the number of rows written
+   */
+  public long write(Connection connection, Iterable<? extends DataRow> rows) {
+    return write(connection, rows, Map.of());
+  }
+
+  /**
+   * Writes rows whose columns are mapped to the columns of the table. The columns of the table
+   * that are not in the mapping are read from the columns of the rows with the same name.
+   *
+   * @param connection the connection
+   * @param rows the rows
+   * @param mapping the names of the columns of the rows by column of the table
+   * @return the number of rows written
+   */
+  public long write(Connection connection, Iterable<? extends DataRow> rows,
+      Map<String, String> mapping) {
+    var sourceColumns = columns.stream()
+        .map(column -> mapping.getOrDefault(column.name(), column.name()))
+        .toList();
+    try {
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        long count = write(connection, rows, sourceColumns);
+        connection.commit();
+        return count;
+      } catch (Exception e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    } catch (IOException | SQLException e) {
+      throw new DataStoreException(e);
+    }
+  }
+
+  private long write(Connection connection, Iterable<? extends DataRow> rows,
+      List<String> sourceColumns) throws IOException, SQLException {
+    var pgConnection = connection.unwrap(PGConnection.class);
+    var copyQuery = copy(schema, columns);
+    var indexes = new int[columns.size()];
+    DataSchema sourceSchema = null;
+    CopyWriter writer = null;
+    long count = 0;
+    try {
+      for (DataRow row : rows) {
+        // Resolve the indexes of the source columns once per schema
+        if (row.schema() != sourceSchema) {
+          sourceSchema = row.schema();
+          resolve(sourceSchema, sourceColumns, indexes);
+        }
+        if (writer == null) {
+          writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copyQuery));
+          writer.writeHeader();
+        }
+        writer.startRow(columns.size());
+        for (int i = 0; i < indexes.length; i++) {
+          var value = indexes[i] >= 0 ? row.get(indexes[i]) : row.get(sourceColumns.get(i));
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.write(handlers.get(i), value);
+          }
+        }
+        count++;
+        boolean commit = count % commitSize == 0;
+        if (commit || count % batchSize == 0) {
+          writer.close();
+          writer = null;
+        }
+        if (commit) {
+          connection.commit();
+        }
+      }
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+    return count;
+  }
+
+  private static void resolve(DataSchema sourceSchema, List<String> sourceColumns, int[] indexes) {
+    var names = sourceSchema.columns().stream().map(DataColumn::name).toList();
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = names.indexOf(sourceColumns.get(i));
+    }
+  }
+
+  /**
+   * Generate a copy query for the specified columns.
+   *
+   * @param schema the schema
+   * @param columns the columns
+   * @return the query
+   */
+  protected static String copy(DataSchema schema, List<DataColumn> columns) {
+    var builder = new StringBuilder();
+    builder.append("COPY \"");
+    builder.append(schema.name());
+    builder.append("\" (");
+    builder.append(columns.stream()
+        .map(column -> "\"" + column.name() + "\"")
+        .collect(Collectors.joining(", ")));
+    builder.append(") FROM STDIN BINARY");
+    return builder.toString();
+  }
+
+  /**
+   * Check if the column type is supported by postgres.
+   *
+   * @param column the column
+   * @return true if the column type is supported
+   */
+  protected static boolean isSupported(DataColumn column) {
+    return column.type() != null && PostgresTypeConversion.typeToName.containsKey(column.type());
+  }
+
+  /**
+   * Get the handler for a type. Handlers are used to write values to the copy stream. They are not
+   * thread safe and should not be reused or shared between threads.
+   *
+   * @param type the type
+   * @return the handler
+   */
+  protected static BaseValueHandler getHandler(Type type) {
+    return switch (type) {
+      case STRING -> new StringValueHandler();
+      case SHORT -> new ShortValueHandler<Short>();
+      case INTEGER -> new IntegerValueHandler<Integer>();
+      case LONG -> new LongValueHandler<Long>();
+      case FLOAT -> new FloatValueHandler<Float>();
+      case DOUBLE -> new DoubleValueHandler<Double>();
+      case INET4_ADDRESS -> new Inet4AddressValueHandler();
+      case INET6_ADDRESS -> new Inet6AddressValueHandler();
+      case LOCAL_DATE -> new LocalDateValueHandler();
+      case LOCAL_TIME -> new LocalTimeValueHandler();
+      case LOCAL_DATE_TIME -> new LocalDateTimeValueHandler();
+      case GEOMETRY, POINT, MULTIPOINT, LINESTRING, MULTILINESTRING, POLYGON, MULTIPOLYGON, GEOMETRYCOLLECTION -> new GeometryValueHandler();
+      case ENVELOPE -> new EnvelopeValueHandler();
+      case NESTED -> new JsonbValueHandler();
+      default -> throw new IllegalArgumentException("Unsupported type: " + type);
+    };
+  }
+}
@@ -18,7 +18,7 @@
 package org.apache.baremaps.storage.postgres;
 
 
-import de.bytefish.pgbulkinsert.pgsql.handlers.*;
+import de.bytefish.pgbulkinsert.pgsql.handlers.BaseValueHandler;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -27,14 +27,8 @@ import java.util.stream.Collectors;
 import javax.sql.DataSource;
 import org.apache.baremaps.data.storage.*;
 import org.apache.baremaps.data.storage.DataColumn.Type;
-import org.apache.baremaps.database.copy.CopyWriter;
-import org.apache.baremaps.database.copy.EnvelopeValueHandler;
-import org.apache.baremaps.database.copy.GeometryValueHandler;
-import org.apache.baremaps.database.copy.JsonbValueHandler;
 import org.apache.baremaps.database.metadata.DatabaseMetadata;
 import org.apache.baremaps.database.metadata.TableMetadata;
-import org.postgresql.PGConnection;
-import org.postgresql.copy.PGCopyOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,13 +45,31 @@ public class PostgresDataStore implements DataStore {
 
   private final DataSource dataSource;
 
+  private final int batchSize;
+
+  private final int commitSize;
+
   /**
    * Creates a postgres data store with the given data source.
    *
    * @param dataSource the data source
    */
   public PostgresDataStore(DataSource dataSource) {
+    this(dataSource, PostgresCopyWriter.DEFAULT_BATCH_SIZE,
+        PostgresCopyWriter.DEFAULT_COMMIT_SIZE);
+  }
+
+  /**
+   * Creates a postgres data store with the given data source and copy settings.
+   *
+   * @param dataSource the data source
+   * @param batchSize the number of rows written by a copy statement
+   * @param commitSize the number of rows written between two commits
+   */
+  public PostgresDataStore(DataSource dataSource, int batchSize, int commitSize) {
     this.dataSource = dataSource;
+    this.batchSize = batchSize;
+    this.commitSize = commitSize;
   }
 
   /**
@@ -84,7 +96,7 @@ public class PostgresDataStore implements DataStore {
       throw new DataStoreException("Table " + name + " does not exist.");
     }
     var schema = createSchema(tableMetadata.get());
-    return new PostgresDataTable(dataSource, schema);
+    return new PostgresDataTable(dataSource, schema, batchSize, commitSize);
   }
 
   /**
@@ -129,28 +141,9 @@ public class PostgresDataStore implements DataStore {
       }
 
       // Copy the data
-      var pgConnection = connection.unwrap(PGConnection.class);
-      var copyQuery = copy(schema);
-      logger.debug(copyQuery);
-      try (var writer = new CopyWriter(new PGCopyOutputStream(pgConnection, copyQuery))) {
-        writer.writeHeader();
-        var columns = getColumns(schema);
-        var handlers = getHandlers(schema);
-        for (DataRow row : table) {
-          writer.startRow(columns.size());
-          for (int i = 0; i < columns.size(); i++) {
-            var targetColumn = columns.get(i).name();
-            var sourceColumn = mapping.get(targetColumn);
-            var value = row.get(sourceColumn);
-            if (value == null) {
-              writer.writeNull();
-            } else {
-              var handler = handlers.get(i);
-              writer.write(handler, value);
-            }
-          }
-        }
-      }
+      var copyWriter = new PostgresCopyWriter(schema, batchSize, commitSize);
+      logger.debug(copy(schema));
+      copyWriter.write(connection, table, mapping);
     } catch (Exception e) {
       throw new DataStoreException(e);
     }
@@ -275,23 +268,7 @@ public class PostgresDataStore implements DataStore {
    * @return the handler
    */
   protected BaseValueHandler getHandler(Type type) {
-    return switch (type) {
-      case STRING -> new StringValueHandler();
-      case SHORT -> new ShortValueHandler<Short>();
-      case INTEGER -> new IntegerValueHandler<Integer>();
-      case LONG -> new LongValueHandler<Long>();
-      case FLOAT -> new FloatValueHandler<Float>();
-      case DOUBLE -> new DoubleValueHandler<Double>();
-      case INET4_ADDRESS -> new Inet4AddressValueHandler();
-      case INET6_ADDRESS -> new Inet6AddressValueHandler();
-      case LOCAL_DATE -> new LocalDateValueHandler();
-      case LOCAL_TIME -> new LocalTimeValueHandler();
-      case LOCAL_DATE_TIME -> new LocalDateTimeValueHandler();
-      case GEOMETRY, POINT, MULTIPOINT, LINESTRING, MULTILINESTRING, POLYGON, MULTIPOLYGON, GEOMETRYCOLLECTION -> new GeometryValueHandler();
-      case ENVELOPE -> new EnvelopeValueHandler();
-      case NESTED -> new JsonbValueHandler();
-      default -> throw new IllegalArgumentException("Unsupported type: " + type);
-    };
+    return PostgresCopyWriter.getHandler(type);
   }
 
   /**
@@ -301,6 +278,6 @@ public class PostgresDataStore implements DataStore {
    * @return true if the column type is supported
    */
   protected boolean isSupported(DataColumn column) {
-    return PostgresTypeConversion.typeToName.containsKey(column.type());
+    return PostgresCopyWriter.isSupported(column);
   }
 }
@@ -36,6 +36,10 @@ public class PostgresDataTable implements DataTable {
 
   private final DataSchema schema;
 
+  private final int batchSize;
+
+  private final int commitSize;
+
   /**
    * Constructs a table with a given name and a given schema.
    * 
@@ -43,8 +47,24 @@ public class PostgresDataTable implements DataTable {
    * @param schema the schema of the table
    */
   public PostgresDataTable(DataSource dataSource, DataSchema schema) {
+    this(dataSource, schema, PostgresCopyWriter.DEFAULT_BATCH_SIZE,
+        PostgresCopyWriter.DEFAULT_COMMIT_SIZE);
+  }
+
+  /**
+   * Constructs a table with a given name, a given schema and the settings of its copies.
+   *
+   * @param dataSource the data source
+   * @param schema the schema of the table
+   * @param batchSize the number of rows written by a copy statement
+   * @param commitSize the number of rows written between two commits
+   */
+  public PostgresDataTable(DataSource dataSource, DataSchema schema, int batchSize,
+      int commitSize) {
     this.dataSource = dataSource;
     this.schema = schema;
+    this.batchSize = batchSize;
+    this.commitSize = commitSize;
   }
 
   /**
@@ -106,17 +126,20 @@ public class PostgresDataTable implements DataTable {
   }
 
   /**
-   * {@inheritDoc}
+   * Adds the rows to the table with the binary copy protocol.
+   *
+   * <p>
+   * The addition is not atomic: the rows are committed every time the commit size is reached, so
+   * a failure only rolls back the rows added since the last commit and leaves the previous ones in
+   * the table.
+   *
+   * @param rows the rows
+   * @return true
    */
   @Override
   public boolean addAll(Iterable<? extends DataRow> rows) {
-    try (var connection = dataSource.getConnection();
-        var statement = connection.prepareStatement(insert(schema))) {
-      for (var row : rows) {
-        setParameters(statement, row);
-        statement.addBatch();
-      }
-      statement.executeBatch();
+    try (var connection = dataSource.getConnection()) {
+      new PostgresCopyWriter(schema, batchSize, commitSize).write(connection, rows);
       return true;
     } catch (SQLException e) {
       throw new DataStoreException(e);
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Coalesces the concurrent loads of the metatiles of a cache, so that a metatile is read once from
+ * the decorated store even if several of its tiles are missed at the same time.
+ *
+ * <p>
+ * The first thread that misses a tile of a metatile loads the whole metatile, and the threads that
+ * miss another tile of the same metatile in the meantime wait for its tiles. The loader must
+ * publish the tiles in the cache before returning, so that the tiles are found in the cache once
+ * the load is no longer in flight.
+ *
+ * @param <V> the type of the cached tiles
+ */
+public class MetatileLoader<V> {
+
+  private final int metatileSize;
+
+  private final Function<List<TileCoord>, Map<TileCoord, V>> loader;
+
+  private final Map<TileCoord, CompletableFuture<Map<TileCoord, V>>> loads =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a {@code MetatileLoader}.
+   *
+   * @param metatileSize the size of the metatiles
+   * @param loader the function that loads and caches the tiles of a metatile
+   */
+  public MetatileLoader(int metatileSize, Function<List<TileCoord>, Map<TileCoord, V>> loader) {
+    this.metatileSize = metatileSize;
+    this.loader = loader;
+  }
+
+  /**
+   * Returns the tiles of the metatile that contains a tile, either by loading the metatile or by
+   * waiting for the load of another thread.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the loaded tiles of the metatile
+   */
+  public Map<TileCoord, V> load(TileCoord tileCoord) {
+    var metatile = metatileSize > 1 ? tileCoord.metatile(metatileSize) : List.of(tileCoord);
+    var origin = metatile.get(0);
+    var future = new CompletableFuture<Map<TileCoord, V>>();
+    var inFlight = loads.putIfAbsent(origin, future);
+    if (inFlight != null) {
+      try {
+        return inFlight.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException cause ? cause : e;
+      }
+    }
+    try {
+      var tiles = loader.apply(metatile);
+      future.complete(tiles);
+      return tiles;
+    } catch (RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(origin, future);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore;
+
+
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.baremaps.tilestore.file.TileLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@code TileStore} decorator that caches the content of tiles in two tiers: a caffeine cache in
+ * the heap and a {@link TileLog} on a local disk.
+ *
+ * <p>
+ * The tiles read from the decorated store are written through to the disk tier, and the tiles
+ * evicted from the heap tier are demoted to the disk tier if it no longer holds them. A miss in the
+ * heap tier is served by the disk tier when possible and the tile is promoted back to the heap,
+ * and the concurrent misses of the tiles of a metatile are coalesced in a single read of the
+ * decorated store. As the disk tier persists across restarts, a restarted server serves warm
+ * tiles immediately. The tiles that expire from the heap tier are not demoted, and the disk tier
+ * applies its own time-to-live. The hits and misses of each tier are recorded.
+ *
+ * <p>
+ * As in {@link TileCache}, the empty tiles are recorded in a separate cache of sentinels in the
+ * heap, with their own time to live, and are never written to the disk tier where they would not
+ * expire.
+ */
+public class TieredTileCache implements TileStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(TieredTileCache.class);
+
+  private final TileStore tileStore;
+
+  private final TileLog tileLog;
+
+  private final Cache<TileCoord, ByteBuffer> cache;
+
+  private final Cache<TileCoord, Boolean> emptyTiles;
+
+  private final MetatileLoader<ByteBuffer> metatileLoader;
+
+  private final LongAdder heapHits = new LongAdder();
+
+  private final LongAdder diskHits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * The hits and misses of the tiers of the cache.
+   *
+   * @param heapHits the number of tiles served by the heap tier
+   * @param diskHits the number of tiles served by the disk tier
+   * @param misses the number of tiles served by neither tier, including the tiles whose read of
+   *        the decorated store was coalesced with the read of another tile of their metatile
+   */
+  public record Stats(long heapHits, long diskHits, long misses) {
+  }
+
+  /**
+   * Decorates the TileStore with a two-tier cache.
+   *
+   * @param tileStore the tile store
+   * @param spec the caffeine specification of the heap tier
+   * @param tileLog the tile log of the disk tier
+   */
+  public TieredTileCache(TileStore tileStore, CaffeineSpec spec, TileLog tileLog) {
+    this(tileStore, spec, tileLog, TileCache.DEFAULT_EMPTY_TILE_TTL);
+  }
+
+  /**
+   * Decorates the TileStore with a two-tier cache.
+   *
+   * @param tileStore the tile store
+   * @param spec the caffeine specification of the heap tier
+   * @param tileLog the tile log of the disk tier
+   * @param emptyTileTtl the time to live of the empty tiles
+   */
+  public TieredTileCache(TileStore tileStore, CaffeineSpec spec, TileLog tileLog,
+      Duration emptyTileTtl) {
+    this.tileStore = tileStore;
+    this.tileLog = tileLog;
+    this.emptyTiles = Caffeine.newBuilder()
+        .maximumSize(TileCache.EMPTY_TILE_CACHE_SIZE)
+        .expireAfterWrite(emptyTileTtl)
+        .build();
+    this.cache = Caffeine.from(spec)
+        .weigher((TileCoord tileCoord, ByteBuffer blob) -> 28 + blob.capacity())
+        .removalListener((TileCoord tileCoord, ByteBuffer blob, RemovalCause cause) -> {
+          // The expired tiles are stale and must not outlive their expiration on disk.
+          if ((cause == RemovalCause.SIZE || cause == RemovalCause.COLLECTED)
+              && tileCoord != null && blob != null
+              && !tileLog.contains(tileCoord)) {
+            demote(tileCoord, blob);
+          }
+        })
+        .build();
+    this.metatileLoader = new MetatileLoader<>(tileStore.metatileSize(), this::load);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ByteBuffer read(TileCoord tileCoord) throws TileStoreException {
+    if (emptyTiles.getIfPresent(tileCoord) != null) {
+      heapHits.increment();
+      return TileStore.emptyTile();
+    }
+    var buffer = cache.getIfPresent(tileCoord);
+    if (buffer != null) {
+      heapHits.increment();
+    } else {
+      buffer = tileLog.get(tileCoord);
+      if (buffer != null) {
+        diskHits.increment();
+        cache.put(tileCoord, buffer);
+      } else {
+        misses.increment();
+        buffer = metatileLoader.load(tileCoord).get(tileCoord);
+      }
+    }
+    if (buffer != null) {
+      return buffer.duplicate();
+    } else if (emptyTiles.getIfPresent(tileCoord) != null) {
+      return TileStore.emptyTile();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Reads a metatile from the decorated store and caches all its tiles in both tiers.
+   */
+  private Map<TileCoord, ByteBuffer> load(List<TileCoord> metatile) {
+    var tiles = new HashMap<TileCoord, ByteBuffer>();
+    try {
+      var blobs = tileStore.read(metatile);
+      for (int i = 0; i < metatile.size(); i++) {
+        var blob = blobs.get(i);
+        if (TileStore.isEmptyTile(blob)) {
+          emptyTiles.put(metatile.get(i), Boolean.TRUE);
+        } else if (blob != null) {
+          tiles.put(metatile.get(i), blob);
+          tileLog.put(metatile.get(i), blob);
+        }
+      }
+    } catch (TileStoreException e) {
+      logger.error("Unable to read the tile.", e);
+    }
+    cache.putAll(tiles);
+    return tiles;
+  }
+
+  private void demote(TileCoord tileCoord, ByteBuffer blob) {
+    try {
+      tileLog.put(tileCoord, blob);
+    } catch (TileStoreException e) {
+      logger.error("Unable to demote the tile.", e);
+    }
+  }
+
+  /**
+   * Returns the hits and misses of the tiers of the cache.
+   *
+   * @return the stats
+   */
+  public Stats stats() {
+    return new Stats(heapHits.sum(), diskHits.sum(), misses.sum());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(TileCoord tileCoord, ByteBuffer bytes) throws TileStoreException {
+    tileStore.write(tileCoord, bytes);
+    cache.invalidate(tileCoord);
+    emptyTiles.invalidate(tileCoord);
+    tileLog.remove(tileCoord);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void delete(TileCoord tileCoord) throws TileStoreException {
+    tileStore.delete(tileCoord);
+    cache.invalidate(tileCoord);
+    emptyTiles.invalidate(tileCoord);
+    tileLog.remove(tileCoord);
+  }
+
+  @Override
+  public void close() throws Exception {
+    var stats = stats();
+    logger.info("Served {} tiles from the heap, {} from the disk and {} from the store",
+        stats.heapHits(), stats.diskHits(), stats.misses());
+    tileStore.close();
+    cache.cleanUp();
+    emptyTiles.cleanUp();
+    tileLog.flush();
+    tileLog.close();
+  }
+}
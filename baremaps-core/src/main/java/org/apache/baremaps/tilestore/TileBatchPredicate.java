@@ -47,6 +47,17 @@ public class TileBatchPredicate implements Predicate<TileCoord> {
    */
   @Override
   public boolean test(TileCoord tileCoord) {
-    return batchArraySize <= 1 || tileCoord.index() % batchArraySize == batchArrayIndex;
+    return test(tileCoord.index());
+  }
+
+  /**
+   * Returns true if the element of the specified index belongs to the current batch, e.g. a block
+   * of tiles that must be exported by a single worker.
+   *
+   * @param index the index of the element
+   * @return the result
+   */
+  public boolean test(long index) {
+    return batchArraySize <= 1 || index % batchArraySize == batchArrayIndex;
   }
 }
@@ -24,19 +24,45 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.CaffeineSpec;
 import com.github.benmanes.caffeine.cache.Weigher;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.checkerframework.checker.index.qual.NonNegative;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** A {@code TileStore} decorator that uses caffeine to cache the content of tiles. */
+/**
+ * A {@code TileStore} decorator that uses caffeine to cache the content of tiles.
+ *
+ * <p>
+ * If the decorated store generates the tiles by metatiles, a miss loads the whole block of tiles
+ * that contains the requested tile and caches all of them. The concurrent misses of the tiles of a
+ * metatile are coalesced in a single read of the decorated store.
+ *
+ * <p>
+ * The empty tiles are not retained in the cache of the content of tiles. They are recorded in a
+ * separate cache of sentinels, with their own time to live, so that the tiles without features
+ * (oceans, empty rural areas, etc.) are not generated again on every request.
+ */
 public class TileCache implements TileStore {
 
   private static final Logger logger = LoggerFactory.getLogger(TileCache.class);
 
   private final TileStore tileStore;
 
+  /** The default time to live of the empty tiles. */
+  public static final Duration DEFAULT_EMPTY_TILE_TTL = Duration.ofHours(1);
+
+  /** The maximum number of empty tiles remembered by the cache. */
+  public static final long EMPTY_TILE_CACHE_SIZE = 1 << 20;
+
   private final Cache<TileCoord, ByteBuffer> cache;
 
+  private final Cache<TileCoord, Boolean> emptyTiles;
+
+  private final MetatileLoader<ByteBuffer> metatileLoader;
+
   /**
    * Decorates the TileStore with a cache.
    *
@@ -44,31 +70,94 @@ public class TileCache implements TileStore {
    * @param spec
    */
   public TileCache(TileStore tileStore, CaffeineSpec spec) {
+    this(tileStore, spec, DEFAULT_EMPTY_TILE_TTL);
+  }
+
+  /**
+   * Decorates the TileStore with a cache.
+   *
+   * @param tileStore the tile store
+   * @param spec the caffeine specification of the cache
+   * @param emptyTileTtl the time to live of the empty tiles
+   */
+  public TileCache(TileStore tileStore, CaffeineSpec spec, Duration emptyTileTtl) {
     this.tileStore = tileStore;
+    this.emptyTiles = Caffeine.newBuilder()
+        .maximumSize(EMPTY_TILE_CACHE_SIZE)
+        .expireAfterWrite(emptyTileTtl)
+        .build();
     this.cache = Caffeine.from(spec).weigher(new Weigher<TileCoord, ByteBuffer>() {
       @Override
       public @NonNegative int weigh(TileCoord tileCoord, ByteBuffer blob) {
         return 28 + blob.capacity();
       }
     }).build();
+    this.metatileLoader = new MetatileLoader<>(tileStore.metatileSize(), this::readMetatile);
   }
 
   /** {@inheritDoc} */
   @Override
   public ByteBuffer read(TileCoord tileCoord) throws TileStoreException {
-    var buffer = cache.get(tileCoord, t -> {
-      try {
-        return tileStore.read(t);
-      } catch (TileStoreException e) {
-        logger.error("Unable to read the tile.", e);
-        return null;
-      }
-    });
+    if (emptyTiles.getIfPresent(tileCoord) != null) {
+      return TileStore.emptyTile();
+    }
+    var buffer = cache.getIfPresent(tileCoord);
     if (buffer == null) {
-      return null;
-    } else {
+      buffer = metatileLoader.load(tileCoord).get(tileCoord);
+    }
+    if (buffer != null) {
       return buffer.duplicate();
+    } else if (emptyTiles.getIfPresent(tileCoord) != null) {
+      return TileStore.emptyTile();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the content of a tile if it is in the cache, without reading the decorated store.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the content of the tile, or null if the tile is not cached
+   */
+  public ByteBuffer readIfPresent(TileCoord tileCoord) {
+    if (emptyTiles.getIfPresent(tileCoord) != null) {
+      return TileStore.emptyTile();
+    }
+    var buffer = cache.getIfPresent(tileCoord);
+    return buffer != null ? buffer.duplicate() : null;
+  }
+
+  /**
+   * Returns the content of a tile that must be retained in the cache, or null if the tile is empty
+   * and has been recorded as such.
+   */
+  private ByteBuffer retain(TileCoord tileCoord, ByteBuffer buffer) {
+    if (TileStore.isEmptyTile(buffer)) {
+      emptyTiles.put(tileCoord, Boolean.TRUE);
+      return null;
+    }
+    return buffer;
+  }
+
+  /**
+   * Reads a metatile and caches all its tiles.
+   */
+  private Map<TileCoord, ByteBuffer> readMetatile(List<TileCoord> metatile) {
+    var tiles = new HashMap<TileCoord, ByteBuffer>();
+    try {
+      var blobs = tileStore.read(metatile);
+      for (int i = 0; i < metatile.size(); i++) {
+        var blob = retain(metatile.get(i), blobs.get(i));
+        if (blob != null) {
+          tiles.put(metatile.get(i), blob);
+        }
+      }
+    } catch (TileStoreException e) {
+      logger.error("Unable to read the metatile.", e);
     }
+    cache.putAll(tiles);
+    return tiles;
   }
 
   /** {@inheritDoc} */
@@ -76,6 +165,7 @@ public class TileCache implements TileStore {
   public void write(TileCoord tileCoord, ByteBuffer bytes) throws TileStoreException {
     tileStore.write(tileCoord, bytes);
     cache.invalidate(tileCoord);
+    emptyTiles.invalidate(tileCoord);
   }
 
   /** {@inheritDoc} */
@@ -83,11 +173,13 @@ public class TileCache implements TileStore {
   public void delete(TileCoord tileCoord) throws TileStoreException {
     tileStore.delete(tileCoord);
     cache.invalidate(tileCoord);
+    emptyTiles.invalidate(tileCoord);
   }
 
   @Override
   public void close() throws Exception {
     tileStore.close();
     cache.cleanUp();
+    emptyTiles.cleanUp();
   }
 }
@@ -23,11 +23,22 @@ import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.math.IntMath;
 import com.google.common.math.LongMath;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringJoiner;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.baremaps.pmtiles.PMTiles;
 import org.locationtech.jts.geom.Envelope;
 
 /** A {@code TileCoord} represents tile coordinate based on a square extent within a projection. */
@@ -125,6 +136,143 @@ public final class TileCoord implements Comparable<TileCoord> {
     return count;
   }
 
+  /**
+   * Returns a stream of the blocks of tiles of a given size that overlap with an envelope. Each
+   * block only contains the tile coordinates that overlap with the envelope.
+   *
+   * @param envelope the envelope
+   * @param minzoom the minimum zoom level
+   * @param maxzoom the maximum zoom level
+   * @param size the number of tiles on the side of a block
+   * @return the stream of blocks
+   */
+  public static Stream<List<TileCoord>> metatiles(Envelope envelope, int minzoom, int maxzoom,
+      int size) {
+    return IntStream.rangeClosed(minzoom, maxzoom).boxed().flatMap(zoom -> {
+      TileCoord min = min(envelope, zoom);
+      TileCoord max = max(envelope, zoom);
+      return IntStream.rangeClosed(min.y() / size, max.y() / size).boxed()
+          .flatMap(my -> IntStream.rangeClosed(min.x() / size, max.x() / size)
+              .mapToObj(mx -> block(zoom,
+                  Math.max(mx * size, min.x()), Math.max(my * size, min.y()),
+                  Math.min(mx * size + size - 1, max.x()),
+                  Math.min(my * size + size - 1, max.y()))));
+    });
+  }
+
+  /**
+   * Returns a stream of the blocks of tiles of a given size that overlap with an envelope, in the
+   * order of the tile ids of the PMTiles specification, i.e. by zoom level and along a Hilbert
+   * curve. As the Hilbert curve is hierarchical, the tiles of an aligned block are contiguous on
+   * the curve, and the concatenation of the blocks is sorted by tile id.
+   *
+   * @param envelope the envelope
+   * @param minzoom the minimum zoom level
+   * @param maxzoom the maximum zoom level
+   * @param size the number of tiles on the side of a block, a power of 2
+   * @return the stream of blocks
+   */
+  public static Stream<List<TileCoord>> hilbertMetatiles(Envelope envelope, int minzoom,
+      int maxzoom, int size) {
+    if (Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("The size of the blocks must be a power of 2");
+    }
+    int sizeShift = Integer.numberOfTrailingZeros(size);
+    return IntStream.rangeClosed(minzoom, maxzoom).boxed().flatMap(zoom -> {
+      TileCoord min = min(envelope, zoom);
+      TileCoord max = max(envelope, zoom);
+      int level = Math.max(0, zoom - sizeShift);
+      int shift = zoom - level;
+      return hilbert(level, min.x() >> shift, min.y() >> shift, max.x() >> shift,
+          max.y() >> shift).map(parent -> {
+            var block = block(zoom,
+                Math.max(parent.x() << shift, min.x()), Math.max(parent.y() << shift, min.y()),
+                Math.min(((parent.x() + 1) << shift) - 1, max.x()),
+                Math.min(((parent.y() + 1) << shift) - 1, max.y()));
+            block.sort(Comparator.comparingLong(TileCoord::hilbertIndex));
+            return block;
+          });
+    });
+  }
+
+  /**
+   * Returns the tiles of a zoom level within a range of columns and rows, along the Hilbert curve.
+   * The quadtree is traversed depth-first, the children of a tile being visited in the order of
+   * their tile ids, and the tiles outside the range are pruned.
+   */
+  private static Stream<TileCoord> hilbert(int level, int minX, int minY, int maxX, int maxY) {
+    var iterator = new Iterator<TileCoord>() {
+
+      private final Deque<TileCoord> stack = new ArrayDeque<>(List.of(new TileCoord(0, 0, 0)));
+
+      private TileCoord next = advance();
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public TileCoord next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        var tile = next;
+        next = advance();
+        return tile;
+      }
+
+      private TileCoord advance() {
+        while (!stack.isEmpty()) {
+          var tile = stack.pop();
+          int shift = level - tile.z;
+          if (((long) tile.x + 1 << shift) - 1 < minX || (long) tile.x << shift > maxX
+              || ((long) tile.y + 1 << shift) - 1 < minY || (long) tile.y << shift > maxY) {
+            continue;
+          }
+          if (tile.z == level) {
+            return tile;
+          }
+          var children = new TileCoord[] {
+              new TileCoord(2 * tile.x, 2 * tile.y, tile.z + 1),
+              new TileCoord(2 * tile.x + 1, 2 * tile.y, tile.z + 1),
+              new TileCoord(2 * tile.x, 2 * tile.y + 1, tile.z + 1),
+              new TileCoord(2 * tile.x + 1, 2 * tile.y + 1, tile.z + 1)};
+          Arrays.sort(children, Comparator.comparingLong(TileCoord::hilbertIndex).reversed());
+          for (var child : children) {
+            stack.push(child);
+          }
+        }
+        return null;
+      }
+    };
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+  }
+
+  private static List<TileCoord> block(int z, int minX, int minY, int maxX, int maxY) {
+    var block = new ArrayList<TileCoord>((maxX - minX + 1) * (maxY - minY + 1));
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        block.add(new TileCoord(x, y, z));
+      }
+    }
+    return block;
+  }
+
+  /**
+   * Returns the tile coordinates of the block of tiles of a given size that contains this tile.
+   *
+   * @param size the number of tiles on the side of the block
+   * @return the tile coordinates of the block
+   */
+  public List<TileCoord> metatile(int size) {
+    int minX = x / size * size;
+    int minY = y / size * size;
+    int side = 1 << z;
+    return block(z, minX, minY, Math.min(minX + size, side) - 1, Math.min(minY + size, side) - 1);
+  }
+
   /**
    * Returns the tile coordinate at a given longitude, latitude, and zoom.
    *
@@ -154,6 +302,16 @@ public final class TileCoord implements Comparable<TileCoord> {
     return offset + position;
   }
 
+  /**
+   * Returns the id of the tile in a PMTiles archive, i.e. its position along the Hilbert curves of
+   * the successive zoom levels.
+   *
+   * @return the tile id
+   */
+  public long hilbertIndex() {
+    return PMTiles.zxyToTileId(z, x, y);
+  }
+
   /**
    * Returns the x coordinate of the tile coordinate.
    *
@@ -26,6 +26,27 @@ import java.util.List;
 /** Represents a store for tiles. */
 public interface TileStore extends AutoCloseable {
 
+  /**
+   * Returns the content of an empty tile. The stores that generate tiles return this zero-length
+   * buffer for the tiles without features, so that they can be recognised without being
+   * decompressed and decoded.
+   *
+   * @return the content of an empty tile
+   */
+  static ByteBuffer emptyTile() {
+    return ByteBuffer.allocate(0).asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns true if the content of a tile is empty.
+   *
+   * @param blob the content of the tile
+   * @return true if the tile has no content
+   */
+  static boolean isEmptyTile(ByteBuffer blob) {
+    return blob != null && !blob.hasRemaining();
+  }
+
   /**
    * Reads the content of a tile.
    *
@@ -50,6 +71,16 @@ public interface TileStore extends AutoCloseable {
     return blobs;
   }
 
+  /**
+   * Returns the number of tiles on the side of the blocks of tiles (or metatiles) that the store
+   * reads more efficiently together with {@link #read(List)}.
+   *
+   * @return the size of the metatiles
+   */
+  default int metatileSize() {
+    return 1;
+  }
+
   /**
    * Writes the content of a tile.
    *
@@ -0,0 +1,498 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.file;
+
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStoreException;
+
+/**
+ * A persistent log of tiles stored on disk, used as the second tier of a tile cache.
+ *
+ * <p>
+ * The tiles are appended to segment files of a directory. Each record holds the coordinates of
+ * the tile, the length and checksum of its content, the time at which it was written and the
+ * content itself, and a negative length marks a removed tile. The positions of the latest records
+ * are kept in an in-memory index that is rebuilt by scanning the segments when the log is opened,
+ * so that the tiles survive restarts. When the size of the segments exceeds the maximum size, the
+ * oldest segments are deleted with their tiles. Reads can be performed concurrently, and writes
+ * are serialized.
+ *
+ * <p>
+ * The tiles older than the time-to-live of the log are ignored, so that they are generated again.
+ * The log also stores a fingerprint of the source of the tiles, e.g. of the tileset and of the
+ * database, and discards all its tiles when it is opened with a different fingerprint.
+ */
+public class TileLog implements AutoCloseable {
+
+  /**
+   * The default size of the segments.
+   */
+  public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final String FINGERPRINT_FILE = "fingerprint";
+
+  /** The version of the format of the records, which is part of the fingerprint. */
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int HEADER_SIZE = 5 * Integer.BYTES + Long.BYTES;
+
+  private final Path directory;
+
+  private final long maxSize;
+
+  private final long segmentSize;
+
+  private final Duration ttl;
+
+  private final Deque<Segment> segments = new ArrayDeque<>();
+
+  private final Map<TileCoord, Location> index = new ConcurrentHashMap<>();
+
+  private long size = 0;
+
+  private Segment current;
+
+  /**
+   * A segment of the log. As a file channel is closed for all its users when a thread blocked on
+   * it is interrupted, the channel of a segment is reopened until the segment is closed.
+   */
+  private static final class Segment {
+
+    private final long id;
+
+    private final Path path;
+
+    private volatile FileChannel channel;
+
+    private volatile boolean closed;
+
+    private Segment(long id, Path path, FileChannel channel) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+    }
+
+    private long id() {
+      return id;
+    }
+
+    private Path path() {
+      return path;
+    }
+
+    private boolean isClosed() {
+      return closed;
+    }
+
+    private FileChannel channel() throws IOException {
+      var current = channel;
+      return current.isOpen() ? current : reopen();
+    }
+
+    private synchronized FileChannel reopen() throws IOException {
+      if (closed) {
+        throw new ClosedChannelException();
+      }
+      if (!channel.isOpen()) {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+      return channel;
+    }
+
+    private synchronized void close() throws IOException {
+      closed = true;
+      channel.close();
+    }
+  }
+
+  private record Location(Segment segment, long position, int length, long timestamp) {
+  }
+
+  /**
+   * Opens or creates a {@code TileLog} with segments of 64MB.
+   *
+   * @param directory the directory of the segments
+   * @param maxSize the maximum size of the segments in bytes
+   * @throws TileStoreException if the log cannot be opened
+   */
+  public TileLog(Path directory, long maxSize) throws TileStoreException {
+    this(directory, maxSize, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Opens or creates a {@code TileLog}.
+   *
+   * @param directory the directory of the segments
+   * @param maxSize the maximum size of the segments in bytes
+   * @param segmentSize the size above which a new segment is started
+   * @throws TileStoreException if the log cannot be opened
+   */
+  public TileLog(Path directory, long maxSize, long segmentSize) throws TileStoreException {
+    this(directory, maxSize, segmentSize, null, "");
+  }
+
+  /**
+   * Opens or creates a {@code TileLog} with segments of 64MB.
+   *
+   * @param directory the directory of the segments
+   * @param maxSize the maximum size of the segments in bytes
+   * @param ttl the time-to-live of the tiles, or null if the tiles never expire
+   * @param fingerprint the fingerprint of the source of the tiles
+   * @throws TileStoreException if the log cannot be opened
+   */
+  public TileLog(Path directory, long maxSize, Duration ttl, String fingerprint)
+      throws TileStoreException {
+    this(directory, maxSize, DEFAULT_SEGMENT_SIZE, ttl, fingerprint);
+  }
+
+  /**
+   * Opens or creates a {@code TileLog}.
+   *
+   * @param directory the directory of the segments
+   * @param maxSize the maximum size of the segments in bytes
+   * @param segmentSize the size above which a new segment is started
+   * @param ttl the time-to-live of the tiles, or null if the tiles never expire
+   * @param fingerprint the fingerprint of the source of the tiles
+   * @throws TileStoreException if the log cannot be opened
+   */
+  public TileLog(Path directory, long maxSize, long segmentSize, Duration ttl, String fingerprint)
+      throws TileStoreException {
+    if (maxSize < segmentSize) {
+      throw new IllegalArgumentException("The maximum size must exceed the segment size");
+    }
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.segmentSize = segmentSize;
+    this.ttl = ttl;
+    try {
+      Files.createDirectories(directory);
+      checkFingerprint(FORMAT_VERSION + "\n" + fingerprint);
+      try (Stream<Path> files = Files.list(directory)) {
+        var paths = files
+            .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+            .sorted()
+            .toList();
+        for (var path : paths) {
+          var name = path.getFileName().toString();
+          var id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+          var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+          var segment = new Segment(id, path, channel);
+          segments.addLast(segment);
+          size += scan(segment);
+        }
+      }
+      if (segments.isEmpty()) {
+        current = createSegment(0);
+      } else {
+        current = segments.getLast();
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new TileStoreException("Unable to open the tile log", e);
+    }
+  }
+
+  /**
+   * Deletes the segments if they have been written with another fingerprint, and records the
+   * fingerprint of the log.
+   */
+  private void checkFingerprint(String fingerprint) throws IOException {
+    var path = directory.resolve(FINGERPRINT_FILE);
+    if (Files.exists(path) && Files.readString(path, StandardCharsets.UTF_8).equals(fingerprint)) {
+      return;
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      for (var file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.writeString(path, fingerprint, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Scans the records of a segment into the index and truncates the incomplete or corrupted records
+   * at its end.
+   */
+  private long scan(Segment segment) throws IOException {
+    var channel = segment.channel();
+    var header = ByteBuffer.allocate(HEADER_SIZE);
+    long position = 0;
+    long end = channel.size();
+    while (position + HEADER_SIZE <= end) {
+      header.clear();
+      readFully(channel, header, position);
+      header.flip();
+      var tileCoord = new TileCoord(header.getInt(4), header.getInt(8), header.getInt(0));
+      int length = header.getInt(12);
+      int checksum = header.getInt(16);
+      long timestamp = header.getLong(20);
+      if (length < 0) {
+        index.remove(tileCoord);
+        position += HEADER_SIZE;
+        continue;
+      }
+      if (position + HEADER_SIZE + length > end) {
+        break;
+      }
+      var data = ByteBuffer.allocate(length);
+      readFully(channel, data, position + HEADER_SIZE);
+      if (checksum(data.array()) != checksum) {
+        break;
+      }
+      index.put(tileCoord, new Location(segment, position + HEADER_SIZE, length, timestamp));
+      position += HEADER_SIZE + length;
+    }
+    if (position < end) {
+      channel.truncate(position);
+    }
+    return position;
+  }
+
+  /**
+   * Returns the content of a tile.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the content of the tile, or null if the tile is not in the log or has expired
+   */
+  public ByteBuffer get(TileCoord tileCoord) {
+    var location = index.get(tileCoord);
+    if (location == null) {
+      return null;
+    }
+    if (isExpired(location)) {
+      index.remove(tileCoord, location);
+      return null;
+    }
+    // An interrupted thread would close the channel for the other readers
+    if (Thread.currentThread().isInterrupted()) {
+      return null;
+    }
+    var segment = location.segment();
+    var buffer = ByteBuffer.allocate(location.length());
+    while (true) {
+      try {
+        readFully(segment.channel(), buffer.clear(), location.position());
+        return buffer.flip();
+      } catch (ClosedByInterruptException e) {
+        // This thread has been interrupted while reading
+        return null;
+      } catch (ClosedChannelException e) {
+        // Another reader has been interrupted or the segment has been evicted
+        if (segment.isClosed()) {
+          return null;
+        }
+      } catch (IOException e) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Returns true if the log contains a tile.
+   *
+   * @param tileCoord the tile coordinate
+   * @return true if the tile is in the log
+   */
+  public boolean contains(TileCoord tileCoord) {
+    var location = index.get(tileCoord);
+    return location != null && !isExpired(location);
+  }
+
+  private boolean isExpired(Location location) {
+    return ttl != null && System.currentTimeMillis() - location.timestamp() >= ttl.toMillis();
+  }
+
+  /**
+   * Appends the content of a tile to the log.
+   *
+   * @param tileCoord the tile coordinate
+   * @param blob the content of the tile
+   * @throws TileStoreException if the tile cannot be written
+   */
+  public synchronized void put(TileCoord tileCoord, ByteBuffer blob) throws TileStoreException {
+    var data = new byte[blob.remaining()];
+    blob.duplicate().get(data);
+    var location = append(tileCoord, data.length, checksum(data), System.currentTimeMillis(), data);
+    index.put(tileCoord, location);
+  }
+
+  /**
+   * Removes a tile from the log.
+   *
+   * @param tileCoord the tile coordinate
+   * @throws TileStoreException if the tile cannot be removed
+   */
+  public synchronized void remove(TileCoord tileCoord) throws TileStoreException {
+    if (index.remove(tileCoord) != null) {
+      append(tileCoord, -1, 0, 0, new byte[0]);
+    }
+  }
+
+  private Location append(TileCoord tileCoord, int length, int checksum, long timestamp,
+      byte[] data) throws TileStoreException {
+    long position = -1;
+    try {
+      position = current.channel().size();
+      if (position >= segmentSize) {
+        current = createSegment(current.id() + 1);
+        position = 0;
+      }
+      var buffer = ByteBuffer.allocate(HEADER_SIZE + data.length)
+          .putInt(tileCoord.z())
+          .putInt(tileCoord.x())
+          .putInt(tileCoord.y())
+          .putInt(length)
+          .putInt(checksum)
+          .putLong(timestamp)
+          .put(data)
+          .flip();
+      while (buffer.hasRemaining()) {
+        current.channel().write(buffer, position + buffer.position());
+      }
+      size += HEADER_SIZE + data.length;
+      var location = new Location(current, position + HEADER_SIZE, length, timestamp);
+      evict();
+      return location;
+    } catch (IOException e) {
+      if (position >= 0) {
+        truncate(current, position);
+      }
+      throw new TileStoreException("Unable to write in the tile log", e);
+    }
+  }
+
+  /**
+   * Removes the incomplete record at the end of a segment, so that the following records are not
+   * discarded by the next scan. The interruption of the thread is suspended during the truncation.
+   */
+  private static void truncate(Segment segment, long position) {
+    boolean interrupted = Thread.interrupted();
+    try {
+      var channel = segment.channel();
+      if (channel.size() > position) {
+        channel.truncate(position);
+      }
+    } catch (IOException e) {
+      // The incomplete record will be truncated by the next scan
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private Segment createSegment(long id) throws IOException {
+    var path = directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    var segment = new Segment(id, path, channel);
+    segments.addLast(segment);
+    return segment;
+  }
+
+  /**
+   * Deletes the oldest segments and their tiles while the log exceeds its maximum size.
+   */
+  private void evict() throws IOException {
+    while (size > maxSize && segments.size() > 1) {
+      var oldest = segments.removeFirst();
+      size -= oldest.channel().size();
+      index.values().removeIf(location -> location.segment() == oldest);
+      oldest.close();
+      Files.deleteIfExists(oldest.path());
+    }
+  }
+
+  /**
+   * Returns the number of tiles in the log.
+   *
+   * @return the number of tiles
+   */
+  public long count() {
+    return index.size();
+  }
+
+  /**
+   * Returns the size of the segments of the log in bytes.
+   *
+   * @return the size
+   */
+  public synchronized long size() {
+    return size;
+  }
+
+  /**
+   * Forces the segments of the log to the storage device.
+   *
+   * @throws TileStoreException if the segments cannot be forced
+   */
+  public synchronized void flush() throws TileStoreException {
+    try {
+      current.channel().force(false);
+    } catch (IOException e) {
+      throw new TileStoreException(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws TileStoreException {
+    try {
+      for (var segment : segments) {
+        segment.close();
+      }
+      index.clear();
+    } catch (IOException e) {
+      throw new TileStoreException(e);
+    }
+  }
+
+  private static int checksum(byte[] data) {
+    var crc = new CRC32();
+    crc.update(data);
+    return (int) crc.getValue();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of segment");
+      }
+    }
+  }
+}
@@ -48,7 +48,7 @@ public class MBTilesStore implements TileStore {
       "CREATE TABLE IF NOT EXISTS tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB, PRIMARY KEY (zoom_level, tile_column, tile_row))";
 
   private static final String CREATE_INDEX_TILES =
-      "CREATE UNIQUE INDEX tile_index on tiles (zoom_level, tile_column, tile_row)";
+      "CREATE UNIQUE INDEX IF NOT EXISTS tile_index on tiles (zoom_level, tile_column, tile_row)";
 
   private static final String SELECT_METADATA = "SELECT name, value FROM metadata";
 
@@ -58,7 +58,7 @@ public class MBTilesStore implements TileStore {
   private static final String INSERT_METADATA = "INSERT INTO metadata (name, value) VALUES (?, ?)";
 
   private static final String INSERT_TILE =
-      "INSERT INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)";
+      "INSERT OR REPLACE INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)";
 
   private static final String DELETE_TILE =
       "DELETE FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?";
@@ -120,17 +120,26 @@ public class MBTilesStore implements TileStore {
    */
   @Override
   public void write(List<TileEntry> tileEntries) throws TileStoreException {
-    try (
-        Connection connection = dataSource.getConnection();
-        PreparedStatement statement = connection.prepareStatement(INSERT_TILE)) {
-      for (TileEntry tileEntry : tileEntries) {
-        TileCoord tileCoord = tileEntry.getTileCoord();
-        ByteBuffer byteBuffer = tileEntry.getByteBuffer();
-        statement.setInt(1, tileCoord.z());
-        statement.setInt(2, tileCoord.x());
-        statement.setInt(3, reverseY(tileCoord.y(), tileCoord.z()));
-        statement.setBytes(4, byteBuffer.array());
-        statement.execute();
+    try (Connection connection = dataSource.getConnection()) {
+      // The tiles are committed at once, so that the batch is either entirely written or not
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try (PreparedStatement statement = connection.prepareStatement(INSERT_TILE)) {
+        for (TileEntry tileEntry : tileEntries) {
+          TileCoord tileCoord = tileEntry.getTileCoord();
+          ByteBuffer byteBuffer = tileEntry.getByteBuffer();
+          statement.setInt(1, tileCoord.z());
+          statement.setInt(2, tileCoord.x());
+          statement.setInt(3, reverseY(tileCoord.y(), tileCoord.z()));
+          statement.setBytes(4, byteBuffer.array());
+          statement.execute();
+        }
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
       }
     } catch (SQLException e) {
       throw new TileStoreException(e);
@@ -169,6 +178,40 @@ public class MBTilesStore implements TileStore {
     }
   }
 
+  /**
+   * Checks the integrity of the SQLite database, e.g. before appending tiles to a database that
+   * has been left by an interrupted export.
+   *
+   * @throws TileStoreException if the database is corrupted
+   */
+  public void checkIntegrity() throws TileStoreException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("PRAGMA quick_check")) {
+      String result = resultSet.next() ? resultSet.getString(1) : null;
+      if (!"ok".equals(result)) {
+        throw new TileStoreException("The database is corrupted: " + result);
+      }
+    } catch (SQLException ex) {
+      throw new TileStoreException(ex);
+    }
+  }
+
+  /**
+   * Merges the write-ahead log into the database file and switches back to a rollback journal, so
+   * that the database can be distributed as a single file.
+   *
+   * @throws TileStoreException
+   */
+  public void closeJournal() throws TileStoreException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA journal_mode=DELETE");
+    } catch (SQLException ex) {
+      throw new TileStoreException(ex);
+    }
+  }
+
   /**
    * Reads the MBTiles metadata.
    *
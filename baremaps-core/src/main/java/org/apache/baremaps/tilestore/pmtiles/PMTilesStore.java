@@ -24,16 +24,46 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 import org.apache.baremaps.maplibre.tileset.Tileset;
+import org.apache.baremaps.pmtiles.Compression;
+import org.apache.baremaps.pmtiles.PMTilesReader;
 import org.apache.baremaps.pmtiles.PMTilesWriter;
 import org.apache.baremaps.tilestore.TileCoord;
 import org.apache.baremaps.tilestore.TileStore;
 import org.apache.baremaps.tilestore.TileStoreException;
 
+/**
+ * A {@code TileStore} backed by a PMTiles archive. A store created from a tileset writes a new
+ * archive, while a store created from an existing archive reads its tiles.
+ */
 public class PMTilesStore implements TileStore {
 
   private final PMTilesWriter writer;
 
+  private final PMTilesReader reader;
+
+  /**
+   * Opens an existing archive in read mode.
+   *
+   * @param path the path of the archive
+   * @throws TileStoreException if the archive cannot be opened
+   */
+  public PMTilesStore(Path path) throws TileStoreException {
+    this.writer = null;
+    try {
+      this.reader = new PMTilesReader(path);
+    } catch (IOException e) {
+      throw new TileStoreException(e);
+    }
+  }
+
+  /**
+   * Creates a new archive in write mode.
+   *
+   * @param path the path of the archive
+   * @param tileset the tileset that describes the archive
+   */
   public PMTilesStore(Path path, Tileset tileset) {
+    this.reader = null;
     try {
       var metadata = new HashMap<String, Object>();
       metadata.put("name", tileset.getName());
@@ -66,13 +96,31 @@ public class PMTilesStore implements TileStore {
     }
   }
 
+  /**
+   * Returns the compression of the tiles of an archive opened in read mode.
+   *
+   * @return the compression of the tiles
+   */
+  public Compression getTileCompression() {
+    if (reader == null) {
+      throw new UnsupportedOperationException("The archive is opened in write mode");
+    }
+    return reader.getTileCompression();
+  }
+
   @Override
   public ByteBuffer read(TileCoord tileCoord) throws TileStoreException {
-    throw new UnsupportedOperationException();
+    if (reader == null) {
+      throw new UnsupportedOperationException("The archive is opened in write mode");
+    }
+    return reader.getTile(tileCoord.z(), tileCoord.x(), tileCoord.y());
   }
 
   @Override
   public void write(TileCoord tileCoord, ByteBuffer blob) throws TileStoreException {
+    if (writer == null) {
+      throw new UnsupportedOperationException("The archive is opened in read mode");
+    }
     try {
       writer.setTile(tileCoord.z(), tileCoord.x(), tileCoord.y(), blob.array());
     } catch (IOException e) {
@@ -88,6 +136,10 @@ public class PMTilesStore implements TileStore {
   @Override
   public void close() throws TileStoreException {
     try {
+      if (reader != null) {
+        reader.close();
+        return;
+      }
       writer.write();
     } catch (IOException e) {
       throw new TileStoreException(e);
@@ -19,11 +19,21 @@ package org.apache.baremaps.tilestore.postgres;
 
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPOutputStream;
 import javax.sql.DataSource;
 import org.apache.baremaps.maplibre.tileset.Tileset;
@@ -37,6 +47,23 @@ import org.slf4j.LoggerFactory;
  * A read-only {@code TileStore} implementation that uses the PostgreSQL to generate vector tiles.
  * This {@code TileStore} combines the input queries, identifies common table expressions (CTE), and
  * generates a single optimized sql that hits the database.
+ *
+ * <p>
+ * When a metatile size greater than one is specified, the tiles read together with
+ * {@link #read(List)} are grouped in blocks of N×N tiles. The rows of each layer are fetched once
+ * for the envelope of a block and all the tiles of the block are generated by the same query.
+ *
+ * <p>
+ * When a number of layer threads is specified, the layers of a single tile are generated
+ * concurrently on separate connections and their MVT blobs are concatenated in Java, so that the
+ * latency of a tile is bounded by its slowest layer rather than by the sum of its layers. The
+ * durations of the layer queries are recorded in the {@link QueryStatistics} of the store. The pool
+ * of the datasource should provide a connection for each layer thread.
+ *
+ * <p>
+ * The statements are executed as named server-side statements with a
+ * {@link PreparedStatementCache}, so that the statement cache of each connection can reuse the
+ * parsed and planned queries.
  */
 public class PostgresTileStore implements TileStore {
 
@@ -46,6 +73,14 @@ public class PostgresTileStore implements TileStore {
 
   private final Tileset tileset;
 
+  private final int metatileSize;
+
+  private final ExecutorService layerExecutor;
+
+  private final QueryStatistics statistics = new QueryStatistics();
+
+  private final PreparedStatementCache statements = new PreparedStatementCache();
+
   /**
    * Constructs a {@code PostgresTileStore}.
    *
@@ -53,8 +88,46 @@ public class PostgresTileStore implements TileStore {
    * @param tileset the tileset
    */
   public PostgresTileStore(DataSource datasource, Tileset tileset) {
+    this(datasource, tileset, 1);
+  }
+
+  /**
+   * Constructs a {@code PostgresTileStore} that generates the tiles by blocks.
+   *
+   * @param datasource the datasource
+   * @param tileset the tileset
+   * @param metatileSize the number of tiles on the side of a block
+   */
+  public PostgresTileStore(DataSource datasource, Tileset tileset, int metatileSize) {
+    this(datasource, tileset, metatileSize, 0);
+  }
+
+  /**
+   * Constructs a {@code PostgresTileStore} that generates the tiles by blocks and the layers of
+   * the single tiles concurrently.
+   *
+   * @param datasource the datasource
+   * @param tileset the tileset
+   * @param metatileSize the number of tiles on the side of a block
+   * @param layerThreads the number of threads that execute the layer queries, or 0 to generate all
+   *        the layers of a tile with a single query
+   */
+  public PostgresTileStore(DataSource datasource, Tileset tileset, int metatileSize,
+      int layerThreads) {
+    if (metatileSize < 1) {
+      throw new IllegalArgumentException("The metatile size must be positive");
+    }
+    if (layerThreads < 0) {
+      throw new IllegalArgumentException("The number of layer threads must be positive");
+    }
     this.datasource = datasource;
     this.tileset = tileset;
+    this.metatileSize = metatileSize;
+    this.layerExecutor = layerThreads > 0 ? Executors.newFixedThreadPool(layerThreads, runnable -> {
+      var thread = new Thread(runnable, "postgres-tile-layer");
+      thread.setDaemon(true);
+      return thread;
+    }) : null;
   }
 
   /**
@@ -62,6 +135,16 @@ public class PostgresTileStore implements TileStore {
    */
   private Map<Integer, Query> cache = new ConcurrentHashMap<>();
 
+  /**
+   * A cache of layer queries.
+   */
+  private Map<Integer, Map<String, Query>> layerCache = new ConcurrentHashMap<>();
+
+  /**
+   * A cache of metatile queries.
+   */
+  private Map<Integer, Query> metatileCache = new ConcurrentHashMap<>();
+
   /**
    * A record that holds the sql of a prepared statement and the number of parameters.
    * 
@@ -73,6 +156,10 @@ public class PostgresTileStore implements TileStore {
 
   @Override
   public ByteBuffer read(TileCoord tileCoord) throws TileStoreException {
+    if (layerExecutor != null) {
+      return readLayers(tileCoord);
+    }
+
     var start = System.currentTimeMillis();
 
     // Prepare and cache the query
@@ -81,7 +168,7 @@ public class PostgresTileStore implements TileStore {
     // Fetch and compress the tile data
     try (var connection = datasource.getConnection();
         ByteArrayOutputStream data = new ByteArrayOutputStream();
-        var statement = connection.prepareStatement(query.sql())) {
+        var statement = statements.prepareStatement(connection, query.sql())) {
 
       // Set the parameters for the tile
       for (int i = 0; i < query.parameters(); i += 3) {
@@ -93,11 +180,13 @@ public class PostgresTileStore implements TileStore {
       // Log the sql query
       logger.debug("Executing sql for tile {}: {}", tileCoord, statement);
 
+      int size = 0;
       try (ResultSet resultSet = statement.executeQuery();
           OutputStream gzip = new GZIPOutputStream(data)) {
         while (resultSet.next()) {
           byte[] bytes = resultSet.getBytes(1);
           gzip.write(bytes);
+          size += bytes.length;
         }
       } catch (Exception e) {
         throw new TileStoreException(String.format("Failed to execute statement: %s", statement),
@@ -111,6 +200,11 @@ public class PostgresTileStore implements TileStore {
         logger.warn("Executed sql for tile {} in {} ms", tileCoord, duration);
       }
 
+      // The layers without features are encoded as empty byte arrays
+      if (size == 0) {
+        return TileStore.emptyTile();
+      }
+
       return ByteBuffer.wrap(data.toByteArray());
 
     } catch (Exception e) {
@@ -118,6 +212,236 @@ public class PostgresTileStore implements TileStore {
     }
   }
 
+  /**
+   * Reads a tile by executing the queries of its layers concurrently.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the content of the tile
+   * @throws TileStoreException
+   */
+  protected ByteBuffer readLayers(TileCoord tileCoord) throws TileStoreException {
+    var start = System.currentTimeMillis();
+
+    // Prepare and cache the queries of the layers
+    var layerQueries = layerCache.computeIfAbsent(tileCoord.z(), z -> {
+      var statements = new LinkedHashMap<String, Query>();
+      prepareLayerQueries(tileset, z).forEach((layer, query) -> statements.put(layer,
+          new Query("SELECT " + query.sql() + " AS mvtLayer", query.parameters())));
+      return statements;
+    });
+
+    // Execute the queries of the layers concurrently
+    var futures = new ArrayList<Future<byte[]>>(layerQueries.size());
+    for (var entry : layerQueries.entrySet()) {
+      futures.add(layerExecutor.submit(
+          () -> readLayer(tileCoord, entry.getKey(), entry.getValue())));
+    }
+
+    // Concatenate the layers in the order of the tileset and compress the tile data
+    try (var data = new ByteArrayOutputStream()) {
+      int size = 0;
+      try (OutputStream gzip = new GZIPOutputStream(data)) {
+        for (var future : futures) {
+          byte[] bytes = future.get();
+          gzip.write(bytes);
+          size += bytes.length;
+        }
+      }
+
+      // Log slow tiles (> 10s)
+      long duration = System.currentTimeMillis() - start;
+      if (duration > 10_000) {
+        logger.warn("Executed sql for tile {} in {} ms", tileCoord, duration);
+      }
+
+      if (size == 0) {
+        return TileStore.emptyTile();
+      }
+
+      return ByteBuffer.wrap(data.toByteArray());
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new TileStoreException(e);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw new TileStoreException(e.getCause());
+    } catch (IOException e) {
+      throw new TileStoreException(e);
+    }
+  }
+
+  private byte[] readLayer(TileCoord tileCoord, String layer, Query query) throws SQLException {
+    var start = System.nanoTime();
+    try (var connection = datasource.getConnection();
+        var statement = statements.prepareStatement(connection, query.sql())) {
+      for (int i = 0; i < query.parameters(); i += 3) {
+        statement.setInt(i + 1, tileCoord.z());
+        statement.setInt(i + 2, tileCoord.x());
+        statement.setInt(i + 3, tileCoord.y());
+      }
+      logger.debug("Executing sql for layer {} of tile {}: {}", layer, tileCoord, statement);
+      try (var resultSet = statement.executeQuery()) {
+        byte[] bytes = resultSet.next() ? resultSet.getBytes(1) : null;
+        return bytes == null ? new byte[0] : bytes;
+      }
+    } finally {
+      long duration = System.nanoTime() - start;
+      statistics.record(layer, duration);
+      logger.debug("Executed sql for layer {} of tile {} in {} ms", layer, tileCoord,
+          duration / 1_000_000);
+    }
+  }
+
+  /**
+   * Returns the statistics of the layer queries executed concurrently.
+   *
+   * @return the statistics
+   */
+  public QueryStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Returns the cache of the prepared statements, which counts the first uses of the queries per
+   * connection.
+   *
+   * @return the prepared statement cache
+   */
+  public PreparedStatementCache getPreparedStatements() {
+    return statements;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int metatileSize() {
+    return metatileSize;
+  }
+
+  /**
+   * Reads the content of a list of tiles. The tiles that belong to the same metatile are generated
+   * together.
+   *
+   * @param tileCoords the tile coordinates
+   * @return the content of the tiles
+   * @throws TileStoreException
+   */
+  @Override
+  public List<ByteBuffer> read(List<TileCoord> tileCoords) throws TileStoreException {
+    if (metatileSize == 1) {
+      return TileStore.super.read(tileCoords);
+    }
+
+    var tiles = new HashMap<TileCoord, ByteBuffer>();
+    for (var metatile : groupByMetatile(tileCoords, metatileSize)) {
+      if (metatile.size() == 1) {
+        tiles.put(metatile.get(0), read(metatile.get(0)));
+      } else {
+        tiles.putAll(readMetatile(metatile));
+      }
+    }
+
+    var blobs = new ArrayList<ByteBuffer>(tileCoords.size());
+    for (var tileCoord : tileCoords) {
+      blobs.add(tiles.get(tileCoord));
+    }
+    return blobs;
+  }
+
+  /**
+   * Groups a list of tile coordinates by the blocks of tiles of a given size that contain them.
+   *
+   * @param tileCoords the tile coordinates
+   * @param size the number of tiles on the side of a block
+   * @return the groups of tile coordinates
+   */
+  protected static Collection<List<TileCoord>> groupByMetatile(List<TileCoord> tileCoords,
+      int size) {
+    var metatiles = new LinkedHashMap<TileCoord, List<TileCoord>>();
+    for (var tileCoord : tileCoords) {
+      var key = new TileCoord(tileCoord.x() / size, tileCoord.y() / size, tileCoord.z());
+      metatiles.computeIfAbsent(key, k -> new ArrayList<>()).add(tileCoord);
+    }
+    return metatiles.values();
+  }
+
+  /**
+   * Reads the tiles of a block with a single query.
+   *
+   * @param tileCoords the tile coordinates of the block, at the same zoom level
+   * @return the content of the tiles
+   * @throws TileStoreException
+   */
+  protected Map<TileCoord, ByteBuffer> readMetatile(List<TileCoord> tileCoords)
+      throws TileStoreException {
+    var start = System.currentTimeMillis();
+    int z = tileCoords.get(0).z();
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (var tileCoord : tileCoords) {
+      minX = Math.min(minX, tileCoord.x());
+      minY = Math.min(minY, tileCoord.y());
+      maxX = Math.max(maxX, tileCoord.x());
+      maxY = Math.max(maxY, tileCoord.y());
+    }
+
+    // Prepare and cache the query
+    var query = metatileCache.computeIfAbsent(z, zoom -> prepareMetatileQuery(tileset, zoom));
+
+    // The envelope of the block with the margin of the tiles
+    var envelope = PostgresVectorTileStore.metatileEnvelope(tileCoords);
+
+    try (var connection = datasource.getConnection();
+        var statement = statements.prepareStatement(connection, query.sql())) {
+
+      // Set the parameters for the envelope of the block and for the tiles
+      int index = 1;
+      for (int i = 0; i < query.parameters() - 6; i += 4) {
+        statement.setDouble(index++, envelope.getMinX());
+        statement.setDouble(index++, envelope.getMinY());
+        statement.setDouble(index++, envelope.getMaxX());
+        statement.setDouble(index++, envelope.getMaxY());
+      }
+      statement.setInt(index++, z);
+      statement.setInt(index++, z);
+      statement.setInt(index++, minX);
+      statement.setInt(index++, maxX);
+      statement.setInt(index++, minY);
+      statement.setInt(index, maxY);
+
+      logger.debug("Executing sql for metatile {}: {}", tileCoords.get(0), statement);
+
+      var tiles = new HashMap<TileCoord, ByteBuffer>();
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          var tileCoord = new TileCoord(resultSet.getInt(1), resultSet.getInt(2), z);
+          byte[] bytes = resultSet.getBytes(3);
+          if (bytes == null || bytes.length == 0) {
+            tiles.put(tileCoord, TileStore.emptyTile());
+            continue;
+          }
+          var data = new ByteArrayOutputStream();
+          try (OutputStream gzip = new GZIPOutputStream(data)) {
+            gzip.write(bytes);
+          }
+          tiles.put(tileCoord, ByteBuffer.wrap(data.toByteArray()));
+        }
+      }
+
+      // Log slow queries (> 10s)
+      long duration = System.currentTimeMillis() - start;
+      if (duration > 10_000) {
+        logger.warn("Executed sql for metatile {} in {} ms", tileCoords.get(0), duration);
+      }
+
+      return tiles;
+    } catch (SQLException | IOException e) {
+      throw new TileStoreException(e);
+    }
+  }
+
   /**
    * Prepare the sql query for a given tileset and zoom level.
    *
@@ -125,7 +449,6 @@ public class PostgresTileStore implements TileStore {
    * @param zoom the zoom level
    * @return
    */
-  @SuppressWarnings("squid:S3776")
   protected static Query prepareQuery(Tileset tileset, int zoom) {
     // Initialize a builder for the tile sql
     var tileSql = new StringBuilder();
@@ -133,10 +456,45 @@ public class PostgresTileStore implements TileStore {
 
     // Iterate over the layers and keep track of the number of layers and parameters included in the
     // final sql
-    var layers = tileset.getVectorLayers();
     var layerCount = 0;
     var paramCount = 0;
-    for (var layer : layers) {
+    for (var layerQuery : prepareLayerQueries(tileset, zoom).values()) {
+
+      // Add the concatenation between layer queries
+      if (layerCount > 0) {
+        tileSql.append(" || ");
+      }
+
+      // Add the layer sql to the mvt sql
+      tileSql.append(layerQuery.sql());
+
+      // Increase the layer count and the parameter count
+      layerCount++;
+      paramCount += layerQuery.parameters();
+    }
+
+    // Add the tail of the tile sql
+    var tileQueryTail = " AS mvtTile";
+    tileSql.append(tileQueryTail);
+
+    // Format the sql query
+    var sql = tileSql.toString().replace("\n", " ");
+
+    return new Query(sql, paramCount);
+  }
+
+  /**
+   * Prepare the sql expressions that generate the MVT blob of each layer for a given tileset and
+   * zoom level. The layers without queries at this zoom level are omitted.
+   *
+   * @param tileset the tileset
+   * @param zoom the zoom level
+   * @return the sql expressions indexed by layer id, in the order of the layers
+   */
+  @SuppressWarnings("squid:S3776")
+  protected static Map<String, Query> prepareLayerQueries(Tileset tileset, int zoom) {
+    var layerQueries = new LinkedHashMap<String, Query>();
+    for (var layer : tileset.getVectorLayers()) {
 
       // Initialize a builder for the layer sql
       var layerSql = new StringBuilder();
@@ -147,6 +505,7 @@ public class PostgresTileStore implements TileStore {
       // sql
       var queries = layer.getQueries();
       var queryCount = 0;
+      var paramCount = 0;
       for (var query : queries) {
 
         // Only include the sql if the zoom level is in the range
@@ -182,28 +541,69 @@ public class PostgresTileStore implements TileStore {
 
       // Only include the layer sql if queries were included for this layer
       if (queryCount > 0) {
+        layerQueries.put(layer.getId(), new Query(layerSql.toString(), paramCount));
+      }
+    }
+    return layerQueries;
+  }
 
-        // Add the concatenation between layer queries
+  /**
+   * Prepare the sql query that generates the tiles of a block for a given tileset and zoom level.
+   * The rows of each layer are fetched once for the envelope of the block in a materialized common
+   * table expression and are then distributed among the tiles of the block.
+   *
+   * @param tileset the tileset
+   * @param zoom the zoom level
+   * @return the query
+   */
+  protected static Query prepareMetatileQuery(Tileset tileset, int zoom) {
+    var layerSql = new StringBuilder();
+    var tileSql = new StringBuilder();
+    var layerCount = 0;
+    var paramCount = 0;
+    for (var layer : tileset.getVectorLayers()) {
+      var queryCount = 0;
+      var querySql = new StringBuilder();
+      for (var query : layer.getQueries()) {
+        if (query.getMinzoom() <= zoom && zoom < query.getMaxzoom()) {
+          if (queryCount > 0) {
+            querySql.append(" UNION ALL ");
+          }
+          var sql = query.getSql().trim()
+              .replaceAll("\\s+", " ")
+              .replace(";", "")
+              .replace("?", "??")
+              .replace("$zoom", String.valueOf(zoom));
+          querySql.append(String.format(
+              "SELECT t.geom, t.tags - 'id' AS tags, t.id AS id FROM (%s) AS t "
+                  + "WHERE t.geom IS NOT NULL AND t.geom && ST_MakeEnvelope(?, ?, ?, ?, 3857)",
+              sql));
+          paramCount += 4;
+          queryCount++;
+        }
+      }
+      if (queryCount > 0) {
+        layerSql.append(String.format("layer%d AS MATERIALIZED (%s), ", layerCount, querySql));
         if (layerCount > 0) {
           tileSql.append(" || ");
         }
-
-        // Add the layer sql to the mvt sql
-        tileSql.append(layerSql);
-
-        // Increase the layer count
+        tileSql.append(String.format(
+            "(SELECT ST_AsMVT(mvtGeom.*, '%s') FROM (SELECT ST_AsMVTGeom(l.geom, tile.envelope) AS geom, l.tags AS tags, l.id AS id "
+                + "FROM layer%d AS l WHERE l.geom && tile.margin) AS mvtGeom)",
+            layer.getId(), layerCount));
         layerCount++;
       }
     }
-
-    // Add the tail of the tile sql
-    var tileQueryTail = " AS mvtTile";
-    tileSql.append(tileQueryTail);
-
-    // Format the sql query
-    var sql = tileSql.toString().replace("\n", " ");
-
-    return new Query(sql, paramCount);
+    if (layerCount == 0) {
+      tileSql.append("''::bytea");
+    }
+    var sql = String.format(
+        "WITH %stile AS (SELECT x, y, ST_TileEnvelope(?, x, y) AS envelope, "
+            + "ST_TileEnvelope(?, x, y, margin => (64.0/4096)) AS margin "
+            + "FROM generate_series(?, ?) AS x, generate_series(?, ?) AS y) "
+            + "SELECT tile.x, tile.y, %s AS mvtTile FROM tile",
+        layerSql, tileSql);
+    return new Query(sql, paramCount + 6);
   }
 
   /**
@@ -224,6 +624,13 @@ public class PostgresTileStore implements TileStore {
 
   @Override
   public void close() throws Exception {
-    // do nothing
+    logger.info("Prepared {} statements, {} of which were already prepared on their connection",
+        statements.firstUses() + statements.repeatedUses(), statements.repeatedUses());
+    if (layerExecutor != null) {
+      layerExecutor.shutdownNow();
+      statistics.snapshot().forEach((layer, summary) -> logger.info(
+          "Executed {} queries for layer {} (mean: {} ms, max: {} ms)",
+          summary.count(), layer, Math.round(summary.meanTime()), Math.round(summary.maxTime())));
+    }
   }
 }
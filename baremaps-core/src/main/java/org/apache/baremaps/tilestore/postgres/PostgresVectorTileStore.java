@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.postgres;
+
+
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import javax.sql.DataSource;
+import org.apache.baremaps.maplibre.tileset.Tileset;
+import org.apache.baremaps.maplibre.vectortile.Feature;
+import org.apache.baremaps.maplibre.vectortile.Layer;
+import org.apache.baremaps.maplibre.vectortile.Tile;
+import org.apache.baremaps.maplibre.vectortile.VectorTileEncoder;
+import org.apache.baremaps.maplibre.vectortile.VectorTileFunctions;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStore;
+import org.apache.baremaps.tilestore.TileStoreException;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Lineal;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.Puntal;
+import org.locationtech.jts.geom.util.GeometryFixer;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-only {@code TileStore} implementation that encodes the vector tiles in Java.
+ *
+ * <p>
+ * Contrary to the {@link PostgresTileStore}, which relies on {@code ST_AsMVT}, the database only
+ * performs the indexed scans of the tile envelope and returns the geometries as WKB along with
+ * their tags and ids. The geometries are then clipped, simplified and quantized with
+ * {@link VectorTileFunctions#asVectorTileGeom} and encoded with the {@link VectorTileEncoder} by
+ * the threads that read the tiles, so that the encoding scales with the application nodes rather
+ * than with the database. The geometries of the queries are expected to be in EPSG:3857.
+ *
+ * <p>
+ * When a metatile size greater than one is specified, the rows of the tiles read together with
+ * {@link #read(List)} are fetched once for each block of N×N tiles and split in Java.
+ */
+public class PostgresVectorTileStore implements TileStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(PostgresVectorTileStore.class);
+
+  /**
+   * The extent of the tiles.
+   */
+  public static final int EXTENT = 4096;
+
+  /**
+   * The buffer of the tiles, in tile units.
+   */
+  public static final int BUFFER = 256;
+
+  private static final double WORLD_SIZE = 2 * 20037508.342789244;
+
+  private static final double MARGIN = 64.0 / 4096;
+
+  private static final int FETCH_SIZE = 1000;
+
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  private static final PrecisionModel TILE_PRECISION = new PrecisionModel(1.0);
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static final TypeReference<Map<String, Object>> TAGS_TYPE = new TypeReference<>() {};
+
+  private final DataSource datasource;
+
+  private final Tileset tileset;
+
+  private final int metatileSize;
+
+  private final Map<Integer, Query> cache = new ConcurrentHashMap<>();
+
+  private final PreparedStatementCache statements = new PreparedStatementCache();
+
+  /**
+   * A record that holds the sql of a prepared statement, the names of the layers and the number of
+   * parameters.
+   *
+   * @param sql
+   * @param layers
+   * @param parameters
+   */
+  protected record Query(String sql, List<String> layers, int parameters) {
+  }
+
+  /**
+   * A row returned by the query of a layer.
+   */
+  private record Row(Geometry geometry, Map<String, Object> tags, long id) {
+  }
+
+  /**
+   * Constructs a {@code PostgresVectorTileStore}.
+   *
+   * @param datasource the datasource
+   * @param tileset the tileset
+   */
+  public PostgresVectorTileStore(DataSource datasource, Tileset tileset) {
+    this(datasource, tileset, 1);
+  }
+
+  /**
+   * Constructs a {@code PostgresVectorTileStore} that generates the tiles by blocks.
+   *
+   * @param datasource the datasource
+   * @param tileset the tileset
+   * @param metatileSize the number of tiles on the side of a block
+   */
+  public PostgresVectorTileStore(DataSource datasource, Tileset tileset, int metatileSize) {
+    if (metatileSize < 1) {
+      throw new IllegalArgumentException("The metatile size must be positive");
+    }
+    this.datasource = datasource;
+    this.tileset = tileset;
+    this.metatileSize = metatileSize;
+  }
+
+  @Override
+  public ByteBuffer read(TileCoord tileCoord) throws TileStoreException {
+    return readMetatile(List.of(tileCoord)).get(tileCoord);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int metatileSize() {
+    return metatileSize;
+  }
+
+  /**
+   * Reads the content of a list of tiles. The rows of the tiles that belong to the same metatile
+   * are fetched once and split in Java.
+   *
+   * @param tileCoords the tile coordinates
+   * @return the content of the tiles
+   * @throws TileStoreException
+   */
+  @Override
+  public List<ByteBuffer> read(List<TileCoord> tileCoords) throws TileStoreException {
+    var tiles = new HashMap<TileCoord, ByteBuffer>();
+    for (var metatile : PostgresTileStore.groupByMetatile(tileCoords, metatileSize)) {
+      tiles.putAll(readMetatile(metatile));
+    }
+    var blobs = new ArrayList<ByteBuffer>(tileCoords.size());
+    for (var tileCoord : tileCoords) {
+      blobs.add(tiles.get(tileCoord));
+    }
+    return blobs;
+  }
+
+  /**
+   * Reads the tiles of a block with a single query.
+   *
+   * @param tileCoords the tile coordinates of the block, at the same zoom level
+   * @return the content of the tiles
+   * @throws TileStoreException
+   */
+  protected Map<TileCoord, ByteBuffer> readMetatile(List<TileCoord> tileCoords)
+      throws TileStoreException {
+    var start = System.currentTimeMillis();
+
+    // Prepare and cache the query
+    var query = cache.computeIfAbsent(tileCoords.get(0).z(), z -> prepareQuery(tileset, z));
+
+    // Fetch the rows of the layers for the envelope of the block
+    var envelope = metatileEnvelope(tileCoords);
+    var rows = new ArrayList<List<Row>>();
+    for (int i = 0; i < query.layers().size(); i++) {
+      rows.add(new ArrayList<>());
+    }
+    if (!query.layers().isEmpty()) {
+      fetch(query, envelope, rows);
+    }
+
+    // Split, encode and compress the tiles
+    var encoder = new VectorTileEncoder();
+    var tiles = new HashMap<TileCoord, ByteBuffer>();
+    for (var tileCoord : tileCoords) {
+      var tileEnvelope = envelope(tileCoord);
+      var tileGeometry = GEOMETRY_FACTORY.toGeometry(tileEnvelope);
+      var margin = new Envelope(tileEnvelope);
+      margin.expandBy(tileEnvelope.getWidth() * MARGIN);
+      var layers = new ArrayList<Layer>();
+      for (int i = 0; i < query.layers().size(); i++) {
+        var features = new ArrayList<Feature>();
+        for (var row : rows.get(i)) {
+          if (!margin.intersects(row.geometry().getEnvelopeInternal())) {
+            continue;
+          }
+          var geometry = asTileGeometry(row.geometry(), tileGeometry);
+          if (geometry != null) {
+            features.add(new Feature(row.id(), row.tags(), geometry));
+          }
+        }
+        if (!features.isEmpty()) {
+          layers.add(new Layer(query.layers().get(i), EXTENT, features));
+        }
+      }
+      tiles.put(tileCoord, compress(encoder.encodeTileToBytes(new Tile(layers))));
+    }
+
+    // Log slow tiles (> 10s)
+    long duration = System.currentTimeMillis() - start;
+    if (duration > 10_000) {
+      logger.warn("Generated tile {} in {} ms", tileCoords.get(0), duration);
+    }
+
+    return tiles;
+  }
+
+  private void fetch(Query query, Envelope envelope, List<List<Row>> rows)
+      throws TileStoreException {
+    try (var connection = datasource.getConnection()) {
+      // Disable the auto-commit so that the rows are fetched with a cursor
+      connection.setAutoCommit(false);
+      try (var statement = statements.prepareStatement(connection, query.sql())) {
+        statement.setFetchSize(FETCH_SIZE);
+        for (int i = 0; i < query.parameters(); i += 4) {
+          statement.setDouble(i + 1, envelope.getMinX());
+          statement.setDouble(i + 2, envelope.getMinY());
+          statement.setDouble(i + 3, envelope.getMaxX());
+          statement.setDouble(i + 4, envelope.getMaxY());
+        }
+        logger.debug("Executing sql for envelope {}: {}", envelope, statement);
+        try (var resultSet = statement.executeQuery()) {
+          var reader = new WKBReader(GEOMETRY_FACTORY);
+          while (resultSet.next()) {
+            var geometry = reader.read(resultSet.getBytes(2));
+            var json = resultSet.getString(3);
+            var tags = json == null ? Map.<String, Object>of() : readTags(json);
+            rows.get(resultSet.getInt(1)).add(new Row(geometry, tags, resultSet.getLong(4)));
+          }
+        }
+      } finally {
+        connection.rollback();
+      }
+    } catch (SQLException | IOException | ParseException e) {
+      throw new TileStoreException(e);
+    }
+  }
+
+  private static Map<String, Object> readTags(String json) throws IOException {
+    var tags = new LinkedHashMap<String, Object>();
+    for (var entry : objectMapper.readValue(json, TAGS_TYPE).entrySet()) {
+      var value = entry.getValue();
+      if (value == null) {
+        continue;
+      }
+      if (value instanceof Map || value instanceof List) {
+        value = objectMapper.writeValueAsString(value);
+      }
+      tags.put(entry.getKey(), value);
+    }
+    return tags;
+  }
+
+  private static ByteBuffer compress(byte[] bytes) throws TileStoreException {
+    // A tile without layers is encoded as an empty byte array
+    if (bytes.length == 0) {
+      return TileStore.emptyTile();
+    }
+    try (var data = new ByteArrayOutputStream()) {
+      try (OutputStream gzip = new GZIPOutputStream(data)) {
+        gzip.write(bytes);
+      }
+      return ByteBuffer.wrap(data.toByteArray());
+    } catch (IOException e) {
+      throw new TileStoreException(e);
+    }
+  }
+
+  /**
+   * Returns the envelope of a tile in EPSG:3857, as computed by {@code ST_TileEnvelope}.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the envelope
+   */
+  protected static Envelope envelope(TileCoord tileCoord) {
+    double size = WORLD_SIZE / (1L << tileCoord.z());
+    double minX = -WORLD_SIZE / 2 + tileCoord.x() * size;
+    double maxY = WORLD_SIZE / 2 - tileCoord.y() * size;
+    return new Envelope(minX, minX + size, maxY - size, maxY);
+  }
+
+  /**
+   * Returns the envelope in EPSG:3857 of a block of tiles, expanded by the margin of the queries.
+   *
+   * @param tileCoords the tile coordinates of the block, at the same zoom level
+   * @return the envelope
+   */
+  protected static Envelope metatileEnvelope(List<TileCoord> tileCoords) {
+    var envelope = new Envelope();
+    for (var tileCoord : tileCoords) {
+      envelope.expandToInclude(envelope(tileCoord));
+    }
+    envelope.expandBy(envelope(tileCoords.get(0)).getWidth() * MARGIN);
+    return envelope;
+  }
+
+  /**
+   * Transforms a geometry into the coordinate space of a tile in the way of
+   * {@code ST_AsMVTGeom}: the geometry is clipped to the buffered tile, simplified, snapped to the
+   * integer grid of the tile and the components that collapse are removed.
+   *
+   * @param geometry the geometry in EPSG:3857
+   * @param envelope the envelope of the tile
+   * @return the geometry of the tile, or null if the geometry is empty in the tile
+   */
+  protected static Geometry asTileGeometry(Geometry geometry, Geometry envelope) {
+    int dimension = geometry.getDimension();
+    Geometry tileGeometry;
+    try {
+      tileGeometry = VectorTileFunctions.asVectorTileGeom(geometry, envelope, EXTENT, BUFFER, true);
+    } catch (RuntimeException e) {
+      // The overlay can fail on invalid geometries
+      tileGeometry = VectorTileFunctions.asVectorTileGeom(
+          GeometryFixer.fix(geometry), envelope, EXTENT, BUFFER, true);
+    }
+    if (dimension > 0) {
+      tileGeometry = DouglasPeuckerSimplifier.simplify(tileGeometry, 0.5);
+    }
+    tileGeometry = GeometryPrecisionReducer.reduce(tileGeometry, TILE_PRECISION);
+    tileGeometry = extract(tileGeometry, dimension);
+    return tileGeometry == null || tileGeometry.isEmpty() ? null : tileGeometry;
+  }
+
+  /**
+   * Extracts the components of a given dimension from the collections produced by the overlays.
+   */
+  private static Geometry extract(Geometry geometry, int dimension) {
+    if (geometry instanceof Puntal || geometry instanceof Lineal
+        || geometry instanceof Polygonal) {
+      return geometry.getDimension() == dimension ? geometry : null;
+    }
+    if (geometry instanceof GeometryCollection collection) {
+      var components = new ArrayList<Geometry>();
+      for (int i = 0; i < collection.getNumGeometries(); i++) {
+        var component = collection.getGeometryN(i);
+        if (component.getDimension() == dimension && !component.isEmpty()) {
+          components.add(component);
+        }
+      }
+      return components.isEmpty() ? null : GEOMETRY_FACTORY.buildGeometry(components);
+    }
+    return null;
+  }
+
+  /**
+   * Prepares the sql query for a given tileset and zoom level. The rows of all the layers that
+   * intersect an envelope are returned by a single statement, prefixed with the index of their
+   * layer.
+   *
+   * @param tileset the tileset
+   * @param zoom the zoom level
+   * @return the query
+   */
+  protected static Query prepareQuery(Tileset tileset, int zoom) {
+    var sql = new StringBuilder();
+    var layers = new ArrayList<String>();
+    var paramCount = 0;
+    for (var layer : tileset.getVectorLayers()) {
+      var queryCount = 0;
+      for (var query : layer.getQueries()) {
+        if (query.getMinzoom() <= zoom && zoom < query.getMaxzoom()) {
+          if (paramCount > 0) {
+            sql.append(" UNION ALL ");
+          }
+          var querySql = query.getSql().trim()
+              .replaceAll("\\s+", " ")
+              .replace(";", "")
+              .replace("?", "??")
+              .replace("$zoom", String.valueOf(zoom));
+          sql.append(String.format(
+              "SELECT %d AS layer, ST_AsBinary(t.geom) AS geom, t.tags - 'id' AS tags, t.id AS id "
+                  + "FROM (%s) AS t WHERE t.geom IS NOT NULL "
+                  + "AND t.geom && ST_MakeEnvelope(?, ?, ?, ?, 3857)",
+              layers.size(), querySql));
+          paramCount += 4;
+          queryCount++;
+        }
+      }
+      if (queryCount > 0) {
+        layers.add(layer.getId());
+      }
+    }
+    return new Query(sql.toString(), List.copyOf(layers), paramCount);
+  }
+
+  /**
+   * This operation is not supported.
+   */
+  @Override
+  public void write(TileCoord tileCoord, ByteBuffer blob) {
+    throw new UnsupportedOperationException("The postgis tile store is read only");
+  }
+
+  /**
+   * This operation is not supported.
+   */
+  @Override
+  public void delete(TileCoord tileCoord) {
+    throw new UnsupportedOperationException("The postgis tile store is read only");
+  }
+
+  /**
+   * Returns the cache of the prepared statements, which counts the first uses of the queries per
+   * connection.
+   *
+   * @return the prepared statement cache
+   */
+  public PreparedStatementCache getPreparedStatements() {
+    return statements;
+  }
+
+  @Override
+  public void close() throws Exception {
+    logger.info("Prepared {} statements, {} of which were already prepared on their connection",
+        statements.firstUses() + statements.repeatedUses(), statements.repeatedUses());
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.postgres;
+
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.postgresql.PGConnection;
+import org.postgresql.PGStatement;
+
+/**
+ * Prepares the statements of the tile queries as named server-side statements.
+ *
+ * <p>
+ * The pooled connections are created with a high {@code prepareThreshold}, so the long generated
+ * tile queries used to be parsed and planned again for most of the tiles. The statements prepared
+ * with this class are server-prepared on their first execution, and the PostgreSQL driver keeps
+ * them in the statement cache of the physical connection, from which they can be reused when the
+ * same query is prepared again on that connection.
+ *
+ * <p>
+ * The class tracks the queries that have been prepared on each physical connection, and counts the
+ * first uses of a query per connection and the repeated uses. As the statement cache of the driver
+ * is bounded and may have evicted a statement, a repeated use is not guaranteed to skip the
+ * parsing and planning of the query.
+ */
+public class PreparedStatementCache {
+
+  private final Map<Object, Set<String>> prepared =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private final LongAdder firstUses = new LongAdder();
+
+  private final LongAdder repeatedUses = new LongAdder();
+
+  /**
+   * Constructs a {@code PreparedStatementCache}.
+   */
+  public PreparedStatementCache() {
+    // Default constructor
+  }
+
+  /**
+   * Prepares a statement that is executed as a named server-side statement.
+   *
+   * @param connection the connection
+   * @param sql the sql of the statement
+   * @return the statement
+   * @throws SQLException if a database access error occurs
+   */
+  public PreparedStatement prepareStatement(Connection connection, String sql)
+      throws SQLException {
+    var statement = connection.prepareStatement(sql);
+    if (statement.isWrapperFor(PGStatement.class)) {
+      statement.unwrap(PGStatement.class).setPrepareThreshold(1);
+    }
+    if (connection.isWrapperFor(PGConnection.class)) {
+      var physicalConnection = connection.unwrap(PGConnection.class);
+      var queries = prepared.computeIfAbsent(physicalConnection,
+          c -> ConcurrentHashMap.newKeySet());
+      if (queries.add(sql)) {
+        firstUses.increment();
+      } else {
+        repeatedUses.increment();
+      }
+    }
+    return statement;
+  }
+
+  /**
+   * Returns the number of statements whose query had already been prepared on the same connection.
+   *
+   * @return the number of repeated uses per connection
+   */
+  public long repeatedUses() {
+    return repeatedUses.sum();
+  }
+
+  /**
+   * Returns the number of statements whose query was prepared for the first time on their
+   * connection.
+   *
+   * @return the number of first uses per connection
+   */
+  public long firstUses() {
+    return firstUses.sum();
+  }
+
+  /**
+   * Returns the ratio of the statements whose query had already been prepared on the same
+   * connection.
+   *
+   * @return the ratio of repeated uses
+   */
+  public double repeatedUseRatio() {
+    long total = repeatedUses() + firstUses();
+    return total == 0 ? 0 : (double) repeatedUses() / total;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.postgres;
+
+
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the number of executions and the durations of named queries, such as the queries of the
+ * layers of a tileset. The statistics can be recorded concurrently.
+ */
+public class QueryStatistics {
+
+  private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+  /**
+   * A summary of the executions of a query.
+   *
+   * @param count the number of executions
+   * @param totalTime the total duration in milliseconds
+   * @param maxTime the maximum duration in milliseconds
+   */
+  public record Summary(long count, double totalTime, double maxTime) {
+
+    /**
+     * Returns the mean duration of the executions in milliseconds.
+     *
+     * @return the mean duration
+     */
+    public double meanTime() {
+      return count == 0 ? 0 : totalTime / count;
+    }
+  }
+
+  private static class Timer {
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+  }
+
+  /**
+   * Constructs a {@code QueryStatistics}.
+   */
+  public QueryStatistics() {
+    // Default constructor
+  }
+
+  /**
+   * Records an execution of a query.
+   *
+   * @param name the name of the query
+   * @param nanos the duration of the execution in nanoseconds
+   */
+  public void record(String name, long nanos) {
+    var timer = timers.computeIfAbsent(name, n -> new Timer());
+    timer.count.increment();
+    timer.total.add(nanos);
+    timer.max.accumulate(nanos);
+  }
+
+  /**
+   * Returns a summary of the executions of a query.
+   *
+   * @param name the name of the query
+   * @return the summary
+   */
+  public Summary get(String name) {
+    var timer = timers.get(name);
+    return timer == null ? new Summary(0, 0, 0) : summary(timer);
+  }
+
+  /**
+   * Returns the summaries of the executions of all the queries, sorted by name.
+   *
+   * @return the summaries
+   */
+  public Map<String, Summary> snapshot() {
+    var snapshot = new TreeMap<String, Summary>();
+    timers.forEach((name, timer) -> snapshot.put(name, summary(timer)));
+    return snapshot;
+  }
+
+  /**
+   * Clears the statistics.
+   */
+  public void clear() {
+    timers.clear();
+  }
+
+  private static Summary summary(Timer timer) {
+    double millis = TimeUnit.MILLISECONDS.toNanos(1);
+    return new Summary(timer.count.sum(), timer.total.sum() / millis, timer.max.get() / millis);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.postgres;
+
+import javax.sql.DataSource;
+import org.apache.baremaps.maplibre.tileset.Tileset;
+import org.apache.baremaps.tilestore.TileStore;
+
+/**
+ * The place where the vector tiles generated from a PostgreSQL database are encoded.
+ */
+public enum TileEncoding {
+
+  /**
+   * The tiles are encoded by PostGIS with {@code ST_AsMVT}.
+   */
+  POSTGIS,
+
+  /**
+   * The tiles are encoded in Java from the raw geometries returned by PostgreSQL.
+   */
+  JAVA;
+
+  /**
+   * Creates a tile store that encodes the tiles of a tileset.
+   *
+   * @param datasource the datasource
+   * @param tileset the tileset
+   * @return the tile store
+   */
+  public TileStore createTileStore(DataSource datasource, Tileset tileset) {
+    return createTileStore(datasource, tileset, 1);
+  }
+
+  /**
+   * Creates a tile store that encodes the tiles of a tileset by blocks of tiles.
+   *
+   * @param datasource the datasource
+   * @param tileset the tileset
+   * @param metatileSize the number of tiles on the side of a block
+   * @return the tile store
+   */
+  public TileStore createTileStore(DataSource datasource, Tileset tileset, int metatileSize) {
+    return createTileStore(datasource, tileset, metatileSize, 0);
+  }
+
+  /**
+   * Creates a tile store that encodes the tiles of a tileset by blocks of tiles and that generates
+   * the layers of the single tiles concurrently.
+   *
+   * @param datasource the datasource
+   * @param tileset the tileset
+   * @param metatileSize the number of tiles on the side of a block
+   * @param layerThreads the number of threads that execute the layer queries, or 0 to disable the
+   *        concurrent execution of the layers
+   * @return the tile store
+   */
+  public TileStore createTileStore(DataSource datasource, Tileset tileset, int metatileSize,
+      int layerThreads) {
+    return switch (this) {
+      case POSTGIS -> new PostgresTileStore(datasource, tileset, metatileSize, layerThreads);
+      case JAVA -> {
+        if (layerThreads > 0) {
+          throw new IllegalArgumentException(
+              "The concurrent execution of the layers requires the POSTGIS encoding");
+        }
+        yield new PostgresVectorTileStore(datasource, tileset, metatileSize);
+      }
+    };
+  }
+}
@@ -106,6 +106,9 @@ public final class PostgresUtils {
     config.setMaximumPoolSize(poolSize);
     config.addDataSourceProperty("allowMultiQueries", true);
     config.addDataSourceProperty("prepareThreshold", 100);
+    // Keep the prepared statements of the generated tile queries of every zoom level and layer
+    config.addDataSourceProperty("preparedStatementCacheQueries", 1024);
+    config.addDataSourceProperty("preparedStatementCacheSizeMiB", 32);
 
     return new HikariDataSource(config);
   }
@@ -160,6 +163,9 @@ public final class PostgresUtils {
 
     config.addDataSourceProperty("allowMultiQueries", true);
     config.addDataSourceProperty("prepareThreshold", 100);
+    // Keep the prepared statements of the generated tile queries of every zoom level and layer
+    config.addDataSourceProperty("preparedStatementCacheQueries", 1024);
+    config.addDataSourceProperty("preparedStatementCacheSizeMiB", 32);
 
     return new HikariDataSource(config);
   }
@@ -50,13 +50,27 @@ public final class SqliteUtils {
    * @return the SQLite data source
    */
   public static DataSource createDataSource(Path path, boolean readOnly) {
+    return createDataSource(path, readOnly, false);
+  }
+
+  /**
+   * Create a SQLite data source. A durable data source uses a write-ahead log and synchronizes it
+   * with the disk, so that the committed transactions survive a crash of the process, whereas the
+   * other data sources disable the journal for speed.
+   *
+   * @param path the path to the SQLite database
+   * @param readOnly whether the database is read-only
+   * @param durable whether the committed transactions must survive a crash
+   * @return the SQLite data source
+   */
+  public static DataSource createDataSource(Path path, boolean readOnly, boolean durable) {
     var sqliteConfig = new SQLiteConfig();
     sqliteConfig.setReadOnly(readOnly);
     sqliteConfig.setCacheSize(-1000000);
     sqliteConfig.setPageSize(65536);
-    sqliteConfig.setJournalMode(JournalMode.OFF);
+    sqliteConfig.setJournalMode(durable ? JournalMode.WAL : JournalMode.OFF);
     sqliteConfig.setLockingMode(LockingMode.EXCLUSIVE);
-    sqliteConfig.setSynchronous(SynchronousMode.OFF);
+    sqliteConfig.setSynchronous(durable ? SynchronousMode.NORMAL : SynchronousMode.OFF);
     sqliteConfig.setTempStore(TempStore.MEMORY);
 
     var sqliteDataSource = new SQLiteDataSource();
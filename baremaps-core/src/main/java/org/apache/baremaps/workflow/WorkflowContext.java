@@ -22,13 +22,16 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.AbstractMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.sql.DataSource;
 import org.apache.baremaps.data.collection.*;
 import org.apache.baremaps.data.memory.MemoryMappedDirectory;
 import org.apache.baremaps.data.type.*;
+import org.apache.baremaps.openstreetmap.function.BulkCoordinateLookup;
 import org.apache.baremaps.utils.FileUtils;
 import org.apache.baremaps.utils.PostgresUtils;
 import org.locationtech.jts.geom.Coordinate;
@@ -38,6 +41,47 @@ import org.locationtech.jts.geom.Coordinate;
  */
 public class WorkflowContext {
 
+  /**
+   * The approximate number of bytes used by a node in a PBF file, ways and relations included.
+   */
+  private static final long BYTES_PER_NODE = 8;
+
+  /**
+   * The approximate range of the node ids of OpenStreetMap, i.e. the highest node id of the planet
+   * (about 12 billion in 2024). The ids are allocated sequentially by the OpenStreetMap database
+   * and the extracts keep the ids of the planet, so the range of an extract is that of the planet.
+   * The header of a PBF file does not record the range of its ids, so it cannot be derived without
+   * decoding the file. An outdated value only biases the automatic layout towards the sparse one.
+   */
+  private static final long NODE_ID_RANGE = 12_000_000_000L;
+
+  /**
+   * The density of node ids below which the sparse layout uses less memory than the dense one.
+   *
+   * <p>
+   * The dense layout uses 8 bytes per id of the range. The sparse layout uses pages of 256 ids
+   * (2KB) and about 100 bytes of bookkeeping per page, and only allocates the pages that contain a
+   * node. With ids spread uniformly, a density {@code d} touches a fraction {@code 1 - (1 - d)^256}
+   * of the pages, so the sparse layout is smaller as long as this fraction is below 2048 / 2148,
+   * i.e. for densities below about 1.2%. This corresponds to about 140 million nodes, or a PBF file
+   * of about 1.1GB.
+   */
+  private static final double SPARSE_MAX_DENSITY = 0.012;
+
+  /**
+   * The layouts of the coordinate map.
+   */
+  public enum CoordinateMapLayout {
+    /** Selects the layout from the density of the node ids estimated from the size of the file. */
+    AUTO,
+    /** Indexes the coordinates directly by node id. */
+    DENSE,
+    /** Only allocates the pages of node ids actually present. */
+    SPARSE
+  }
+
+  private static final int SPARSE_SEGMENT_SIZE = 1 << 26;
+
   private final Path dataDir;
 
   private final Path cacheDir;
@@ -64,33 +108,114 @@ public class WorkflowContext {
   }
 
   public Map<Long, Coordinate> getCoordinateMap() throws IOException {
-    return DataConversions.asMap(getMemoryAlignedDataMap("coordinates", new LonLatDataType()));
+    var dataMap = getMemoryAlignedDataMap("coordinates", new LonLatDataType());
+    return new CoordinateMapAdapter(dataMap, dataMap::getAll);
+  }
+
+  /**
+   * Returns the coordinate map best suited to the specified OSM PBF file.
+   *
+   * @param path the OSM PBF file
+   * @return the coordinate map
+   * @throws IOException
+   */
+  public Map<Long, Coordinate> getCoordinateMap(Path path) throws IOException {
+    return getCoordinateMap(path, CoordinateMapLayout.AUTO);
+  }
+
+  /**
+   * Returns a coordinate map for the specified OSM PBF file. The sparse layout only allocates the
+   * pages of node ids actually present, while the dense layout is indexed directly by node id. In
+   * the automatic mode, the sparse layout is selected when the density of the node ids, estimated
+   * from the size of the file, is below the crossover point of the two layouts (see
+   * {@link #SPARSE_MAX_DENSITY}), i.e. for files smaller than about 1.1GB.
+   *
+   * @param path the OSM PBF file
+   * @param layout the layout of the coordinate map
+   * @return the coordinate map
+   * @throws IOException
+   */
+  public Map<Long, Coordinate> getCoordinateMap(Path path, CoordinateMapLayout layout)
+      throws IOException {
+    boolean sparse = switch (layout) {
+      case AUTO -> estimateNodeDensity(path) < SPARSE_MAX_DENSITY;
+      case DENSE -> false;
+      case SPARSE -> true;
+    };
+    if (sparse) {
+      var dataMap = getSparseDataMap("coordinates-sparse", new LonLatDataType());
+      return new CoordinateMapAdapter(dataMap, dataMap::getAll);
+    }
+    return getCoordinateMap();
+  }
+
+  private static double estimateNodeDensity(Path path) throws IOException {
+    return (double) (Files.size(path) / BYTES_PER_NODE) / NODE_ID_RANGE;
   }
 
   public Map<Long, List<Long>> getReferenceMap() throws IOException {
     return DataConversions.asMap(getMonotonicDataMap("references", new LongListDataType()));
   }
 
-  public <T> DataMap<Long, T> getMemoryAlignedDataMap(String name, FixedSizeDataType<T> dataType)
-      throws IOException {
+  /**
+   * Returns an empty reference map whose values can be appended concurrently by the workers of an
+   * import, before their keys are added in increasing order.
+   *
+   * @return the reference map
+   * @throws IOException
+   */
+  public MonotonicDataMap<List<Long>> getConcurrentReferenceMap() throws IOException {
+    var mapDir = cacheDir.resolve("references");
+    if (Files.exists(mapDir)) {
+      FileUtils.deleteRecursively(mapDir);
+    }
+    return getMonotonicDataMap("references", new LongListDataType(), true);
+  }
+
+  public <T> MemoryAlignedDataMap<T> getMemoryAlignedDataMap(String name,
+      FixedSizeDataType<T> dataType) throws IOException {
     var coordinateDir = Files.createDirectories(cacheDir.resolve(name));
     return new MemoryAlignedDataMap<>(
         dataType,
         new MemoryMappedDirectory(coordinateDir));
   }
 
+  public <T> SparseDataMap<T> getSparseDataMap(String name, FixedSizeDataType<T> dataType)
+      throws IOException {
+    var mapDir = Files.createDirectories(cacheDir.resolve(name));
+    return new SparseDataMap<>(
+        dataType,
+        new MemoryMappedDirectory(mapDir, SPARSE_SEGMENT_SIZE));
+  }
+
   public <T> DataMap<Long, T> getMonotonicDataMap(String name, DataType<T> dataType)
       throws IOException {
+    return getMonotonicDataMap(name, dataType, false);
+  }
+
+  /**
+   * Returns a monotonic data map whose values are appended to a log in the specified mode.
+   *
+   * @param name the name of the map in the cache
+   * @param dataType the data type of the values
+   * @param concurrent whether the values are appended to the log without locking
+   * @return the map
+   * @throws IOException
+   */
+  public <T> MonotonicDataMap<T> getMonotonicDataMap(String name, DataType<T> dataType,
+      boolean concurrent) throws IOException {
     var mapDir = Files.createDirectories(cacheDir.resolve(name));
     var keysDir = Files.createDirectories(mapDir.resolve("keys"));
     var valuesDir = Files.createDirectories(mapDir.resolve("values"));
+    var offsetsDir = Files.createDirectories(mapDir.resolve("offsets"));
     return new MonotonicDataMap<>(
-        new MemoryAlignedDataList<>(
-            new PairDataType<>(new LongDataType(), new LongDataType()),
+        new LongLongMonotonicIndex(
+            new MemoryMappedDirectory(offsetsDir),
             new MemoryMappedDirectory(keysDir)),
         new AppendOnlyLog<>(
             dataType,
-            new MemoryMappedDirectory(valuesDir)));
+            new MemoryMappedDirectory(valuesDir),
+            concurrent));
   }
 
   public void cleanCache() throws IOException {
@@ -100,4 +225,45 @@ public class WorkflowContext {
   public void cleanData() throws IOException {
     FileUtils.deleteRecursively(dataDir);
   }
+
+  /**
+   * A map of coordinates backed by a {@link DataMap} that looks up the coordinates of ways in bulk.
+   */
+  private static class CoordinateMapAdapter extends AbstractMap<Long, Coordinate>
+      implements BulkCoordinateLookup {
+
+    private final DataMap<Long, Coordinate> dataMap;
+
+    private final BulkCoordinateLookup lookup;
+
+    private CoordinateMapAdapter(DataMap<Long, Coordinate> dataMap, BulkCoordinateLookup lookup) {
+      this.dataMap = dataMap;
+      this.lookup = lookup;
+    }
+
+    @Override
+    public Coordinate get(Object key) {
+      return dataMap.get(key);
+    }
+
+    @Override
+    public Coordinate put(Long key, Coordinate value) {
+      return dataMap.put(key, value);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return dataMap.containsKey(key);
+    }
+
+    @Override
+    public void getAll(long[] ids, double[] xy) {
+      lookup.getAll(ids, xy);
+    }
+
+    @Override
+    public Set<Entry<Long, Coordinate>> entrySet() {
+      return DataConversions.asMap(dataMap).entrySet();
+    }
+  }
 }
@@ -18,7 +18,6 @@
 package org.apache.baremaps.workflow.tasks;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -68,7 +67,7 @@ public class CreateGeocoderOpenStreetMap implements Task {
   public void execute(WorkflowContext context) throws Exception {
     var path = file.toAbsolutePath();
 
-    var coordinateMap = context.getCoordinateMap();
+    var coordinateMap = context.getCoordinateMap(path);
     var referenceMap = context.getReferenceMap();
 
     var directory = FSDirectory.open(indexDirectory);
@@ -98,8 +97,8 @@ public class CreateGeocoderOpenStreetMap implements Task {
         .setCoordinateMap(coordinateMap)
         .setReferenceMap(referenceMap);
 
-    try (var input = Files.newInputStream(path)) {
-      StreamUtils.batch(reader.read(input)).forEach(importer);
+    try (var entities = reader.read(path)) {
+      StreamUtils.batch(entities).forEach(importer);
     }
   }
 
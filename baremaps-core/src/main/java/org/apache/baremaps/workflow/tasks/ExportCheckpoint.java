@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.workflow.tasks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the chunks of an export that have been written to the target, so that an interrupted
+ * export can be resumed.
+ *
+ * <p>
+ * The progress is stored in a sidecar file. The first line contains a fingerprint of the export
+ * (bounds, zoom levels, block and chunk sizes, and a hash of the layers and of the encoding) and
+ * each following line contains the index of a completed chunk. A chunk is recorded only once all
+ * its tiles have been written, so that a crash of the process at any point leaves the file
+ * consistent with the target. The tiles are not synchronized with the disk before their chunk is
+ * recorded, so a crash of the system or a power loss may lose the tiles of recorded chunks.
+ *
+ * <p>
+ * As the blocks of tiles are read concurrently, the tiles of several chunks may be in flight at
+ * once. The checkpoint therefore counts the tiles added and written for each chunk, and records a
+ * chunk once it has been sealed, i.e. all its tiles have been added, and all its tiles have been
+ * written.
+ */
+class ExportCheckpoint implements Closeable {
+
+  private final Path path;
+
+  private final BitSet completed;
+
+  private final FileChannel channel;
+
+  private final Map<Integer, Long> pending = new HashMap<>();
+
+  private final BitSet sealed = new BitSet();
+
+  private ExportCheckpoint(Path path, BitSet completed, FileChannel channel) {
+    this.path = path;
+    this.completed = completed;
+    this.channel = channel;
+  }
+
+  /**
+   * Opens the checkpoint of an export.
+   *
+   * @param path the path of the sidecar file
+   * @param fingerprint the fingerprint of the export
+   * @param resume whether the completed chunks of a previous export should be kept
+   * @return the checkpoint
+   * @throws IOException
+   */
+  public static ExportCheckpoint open(Path path, String fingerprint, boolean resume)
+      throws IOException {
+    var completed = new BitSet();
+    if (resume && Files.exists(path)) {
+      // The last element is either empty or a line truncated by a crash, and is ignored
+      String content = Files.readString(path, StandardCharsets.UTF_8);
+      String[] lines = content.split("\n", -1);
+      if (lines.length < 2 || !lines[0].equals(fingerprint)) {
+        throw new IllegalStateException(
+            "The checkpoint " + path + " does not match the export and cannot be resumed");
+      }
+      for (int i = 1; i < lines.length - 1; i++) {
+        completed.set(Integer.parseInt(lines[i]));
+      }
+      // Cut the truncated line off, so that it is not prefixed to the next completed chunk
+      long length = content.substring(0, content.lastIndexOf('\n') + 1)
+          .getBytes(StandardCharsets.UTF_8).length;
+      var channel = FileChannel.open(path, StandardOpenOption.WRITE);
+      channel.truncate(length);
+      channel.position(length);
+      return new ExportCheckpoint(path, completed, channel);
+    }
+    var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    var checkpoint = new ExportCheckpoint(path, completed, channel);
+    checkpoint.append(fingerprint);
+    return checkpoint;
+  }
+
+  /**
+   * Returns true if the specified chunk has been completed.
+   *
+   * @param chunk the index of the chunk
+   * @return true if the chunk has been completed
+   */
+  public synchronized boolean isCompleted(int chunk) {
+    return completed.get(chunk);
+  }
+
+  /**
+   * Returns the number of completed chunks.
+   *
+   * @return the number of completed chunks
+   */
+  public synchronized int completedCount() {
+    return completed.cardinality();
+  }
+
+  /**
+   * Marks the specified chunk as completed and persists the progress.
+   *
+   * @param chunk the index of the chunk
+   * @throws IOException
+   */
+  public synchronized void complete(int chunk) throws IOException {
+    if (!completed.get(chunk)) {
+      append(Integer.toString(chunk));
+      completed.set(chunk);
+    }
+  }
+
+  /**
+   * Records that tiles of the specified chunk are being exported.
+   *
+   * @param chunk the index of the chunk
+   * @param tiles the number of tiles
+   */
+  public synchronized void add(int chunk, long tiles) {
+    pending.merge(chunk, tiles, Long::sum);
+  }
+
+  /**
+   * Records that all the tiles of the specified chunk have been added, and completes the chunk if
+   * they have all been written.
+   *
+   * @param chunk the index of the chunk
+   * @throws IOException
+   */
+  public synchronized void seal(int chunk) throws IOException {
+    sealed.set(chunk);
+    completeIfWritten(chunk);
+  }
+
+  /**
+   * Records that tiles of the specified chunk have been written, and completes the chunk if it has
+   * been sealed and all its tiles have been written.
+   *
+   * @param chunk the index of the chunk
+   * @param tiles the number of tiles
+   * @throws IOException
+   */
+  public synchronized void written(int chunk, long tiles) throws IOException {
+    pending.merge(chunk, -tiles, Long::sum);
+    completeIfWritten(chunk);
+  }
+
+  private void completeIfWritten(int chunk) throws IOException {
+    if (sealed.get(chunk) && pending.getOrDefault(chunk, 0L) == 0) {
+      pending.remove(chunk);
+      sealed.clear(chunk);
+      complete(chunk);
+    }
+  }
+
+  /**
+   * Closes and deletes the sidecar file once the export has succeeded.
+   *
+   * @throws IOException
+   */
+  public void delete() throws IOException {
+    close();
+    Files.deleteIfExists(path);
+  }
+
+  private void append(String line) throws IOException {
+    var buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    channel.force(false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    if (channel.isOpen()) {
+      channel.close();
+    }
+  }
+}
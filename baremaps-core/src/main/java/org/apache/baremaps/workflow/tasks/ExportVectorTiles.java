@@ -22,11 +22,16 @@ import static org.apache.baremaps.utils.ObjectMapperUtils.objectMapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.sql.DataSource;
 import org.apache.baremaps.config.ConfigReader;
 import org.apache.baremaps.maplibre.style.Style;
@@ -38,7 +43,7 @@ import org.apache.baremaps.tilestore.*;
 import org.apache.baremaps.tilestore.file.FileTileStore;
 import org.apache.baremaps.tilestore.mbtiles.MBTilesStore;
 import org.apache.baremaps.tilestore.pmtiles.PMTilesStore;
-import org.apache.baremaps.tilestore.postgres.PostgresTileStore;
+import org.apache.baremaps.tilestore.postgres.TileEncoding;
 import org.apache.baremaps.utils.SqliteUtils;
 import org.apache.baremaps.workflow.Task;
 import org.apache.baremaps.workflow.WorkflowContext;
@@ -54,6 +59,9 @@ public class ExportVectorTiles implements Task {
 
   private static final Logger logger = LoggerFactory.getLogger(ExportVectorTiles.class);
 
+  /** The minimum number of tiles of the chunks recorded by the checkpoint. */
+  private static final int CHUNK_SIZE = 1 << 16;
+
   public enum Format {
     FILE,
     MBTILES,
@@ -68,6 +76,16 @@ public class ExportVectorTiles implements Task {
 
   private Format format;
 
+  private TileEncoding encoding = TileEncoding.POSTGIS;
+
+  private int metatileSize = 1;
+
+  private boolean resume = false;
+
+  private int shardCount = 1;
+
+  private int shardIndex = 0;
+
   /**
    * Constructs a {@code ExportVectorTiles}.
    */
@@ -89,11 +107,85 @@ public class ExportVectorTiles implements Task {
     this.format = format;
   }
 
+  /**
+   * Constructs a {@code ExportVectorTiles}.
+   *
+   * @param tileset the tileset
+   * @param repository the repository
+   * @param format the format
+   * @param encoding the place where the tiles are encoded
+   */
+  public ExportVectorTiles(Path tileset, Path style, Path repository, Format format,
+      TileEncoding encoding) {
+    this(tileset, style, repository, format);
+    this.encoding = encoding;
+  }
+
+  /**
+   * Constructs a {@code ExportVectorTiles}.
+   *
+   * @param tileset the tileset
+   * @param repository the repository
+   * @param format the format
+   * @param encoding the place where the tiles are encoded
+   * @param metatileSize the number of tiles on the side of the blocks generated at once
+   */
+  public ExportVectorTiles(Path tileset, Path style, Path repository, Format format,
+      TileEncoding encoding, int metatileSize) {
+    this(tileset, style, repository, format, encoding);
+    this.metatileSize = metatileSize;
+  }
+
+  /**
+   * Constructs a {@code ExportVectorTiles}.
+   *
+   * @param tileset the tileset
+   * @param repository the repository
+   * @param format the format
+   * @param encoding the place where the tiles are encoded
+   * @param metatileSize the number of tiles on the side of the blocks generated at once
+   * @param resume whether the chunks completed by a previous export should be skipped
+   */
+  public ExportVectorTiles(Path tileset, Path style, Path repository, Format format,
+      TileEncoding encoding, int metatileSize, boolean resume) {
+    this(tileset, style, repository, format, encoding, metatileSize);
+    this.resume = resume;
+  }
+
+  /**
+   * Constructs a {@code ExportVectorTiles} that only exports a shard of the tiles, so that an
+   * export can be distributed across several workers. The shards are disjoint and can be merged
+   * with {@code PMTilesMerger} when exported as pmtiles archives.
+   *
+   * @param tileset the tileset
+   * @param repository the repository of the shard
+   * @param format the format
+   * @param encoding the place where the tiles are encoded
+   * @param metatileSize the number of tiles on the side of the blocks generated at once
+   * @param resume whether the chunks completed by a previous export should be skipped
+   * @param shardCount the number of shards
+   * @param shardIndex the index of the shard exported by this worker
+   */
+  @SuppressWarnings("squid:S107")
+  public ExportVectorTiles(Path tileset, Path style, Path repository, Format format,
+      TileEncoding encoding, int metatileSize, boolean resume, int shardCount, int shardIndex) {
+    this(tileset, style, repository, format, encoding, metatileSize, resume);
+    if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+      throw new IllegalArgumentException("The shard index must be between 0 and the shard count");
+    }
+    this.shardCount = shardCount;
+    this.shardIndex = shardIndex;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void execute(WorkflowContext context) throws Exception {
+    if (resume && format == Format.PMTILES) {
+      throw new IllegalArgumentException("The pmtiles exports cannot be resumed");
+    }
+
     var configReader = new ConfigReader();
     var objectMapper = objectMapper();
 
@@ -136,38 +228,177 @@ public class ExportVectorTiles implements Task {
               tilesetObject.getBounds().get(1), tilesetObject.getBounds().get(3))
           : new Envelope(-180, 180, -85.0511, 85.0511);
 
-      var count = TileCoord.count(envelope, tilesetObject.getMinzoom(), tilesetObject.getMaxzoom());
+      var count = TileCoord.count(envelope, tilesetObject.getMinzoom(), tilesetObject.getMaxzoom())
+          / shardCount;
       var start = System.currentTimeMillis();
 
-      var tileCoordIterator =
-          TileCoord.iterator(envelope, tilesetObject.getMinzoom(), tilesetObject.getMaxzoom());
-      var tileCoordStream =
-          StreamUtils.stream(tileCoordIterator).peek(new ProgressLogger<>(count, 5000));
-
-      var bufferedTileEntryStream = StreamUtils.bufferInCompletionOrder(tileCoordStream, tile -> {
+      // Read the tiles by blocks so that the source can generate its metatiles at once. The
+      // pmtiles archives are written in the order of the tile ids, so that they are clustered
+      // and that the runs of identical tiles are encoded once, through a bounded reorder buffer.
+      int blockSize = sourceTileStore.metatileSize();
+      boolean clustered = format == Format.PMTILES && Integer.bitCount(blockSize) == 1;
+      var metatileStream = clustered
+          ? TileCoord.hilbertMetatiles(envelope, tilesetObject.getMinzoom(),
+              tilesetObject.getMaxzoom(), blockSize)
+          : TileCoord.metatiles(envelope, tilesetObject.getMinzoom(),
+              tilesetObject.getMaxzoom(), blockSize);
+
+      Function<Block, BlockEntries> readMetatile = block -> {
         try {
-          return new TileEntry(tile, sourceTileStore.read(tile));
+          var tiles = block.tiles();
+          var blobs = sourceTileStore.read(tiles);
+          var entries = new ArrayList<TileEntry>(tiles.size());
+          for (int i = 0; i < tiles.size(); i++) {
+            entries.add(new TileEntry(tiles.get(i), blobs.get(i)));
+          }
+          return new BlockEntries(block.chunk(), entries);
         } catch (TileStoreException e) {
           throw new WorkflowException(e);
         }
-      }, 1000);
-
-      var partitionedTileEntryStream = StreamUtils.partition(bufferedTileEntryStream, 1000);
-      partitionedTileEntryStream.forEach(batch -> {
-        try {
-          targetTileStore.write(batch);
-        } catch (TileStoreException e) {
-          throw new WorkflowException(e);
+      };
+
+      // The blocks are grouped in chunks of tiles and the completed chunks are recorded in a
+      // sidecar file, so that an interrupted export can skip them when it is resumed. The chunks
+      // are numbered in the order of the blocks, which only depends on the fingerprint. The
+      // fingerprint also covers the layers and the encoding, which determine the content of the
+      // tiles of the completed chunks.
+      var fingerprint = String.join(",", format.name(), contentHash(tilesetObject),
+          Integer.toString(tilesetObject.getMinzoom()),
+          Integer.toString(tilesetObject.getMaxzoom()),
+          Double.toString(envelope.getMinX()), Double.toString(envelope.getMinY()),
+          Double.toString(envelope.getMaxX()), Double.toString(envelope.getMaxY()),
+          Integer.toString(blockSize), Integer.toString(CHUNK_SIZE),
+          shardIndex + "/" + shardCount);
+      var progressLogger = new ProgressLogger<Object>(count, 5000);
+      int bufferSize = Math.max(1, 1000 / (blockSize * blockSize));
+      try (var checkpoint = ExportCheckpoint.open(checkpointPath(), fingerprint, resume)) {
+        if (checkpoint.completedCount() > 0) {
+          logger.info("Resuming the export after {} completed chunks",
+              checkpoint.completedCount());
         }
-      });
+        // The chunks are distributed in a round-robin fashion among the shards, so that each
+        // worker renders whole blocks and gets its share of the dense and sparse areas
+        var shardPredicate = new TileBatchPredicate(shardCount, shardIndex);
+        var blockStream = blocks(metatileStream, checkpoint, shardPredicate, progressLogger);
+
+        // A single buffered stream spans the chunks, so that the reads never drain
+        var blockEntriesStream = clustered
+            ? StreamUtils.bufferInSourceOrder(blockStream, readMetatile, bufferSize)
+            : StreamUtils.bufferInCompletionOrder(blockStream, readMetatile, bufferSize);
+        StreamUtils.partition(blockEntriesStream, bufferSize).forEach(batch -> {
+          try {
+            // The viewers render the missing tiles as empty tiles
+            var entries = batch.stream()
+                .flatMap(blockEntries -> blockEntries.entries().stream())
+                .peek(progressLogger)
+                .filter(entry -> !TileStore.isEmptyTile(entry.getByteBuffer()))
+                .toList();
+            if (!entries.isEmpty()) {
+              targetTileStore.write(entries);
+            }
+            for (var blockEntries : batch) {
+              checkpoint.written(blockEntries.chunk(), blockEntries.entries().size());
+            }
+          } catch (TileStoreException | IOException e) {
+            throw new WorkflowException(e);
+          }
+        });
+        if (targetTileStore instanceof MBTilesStore mbtilesStore) {
+          mbtilesStore.closeJournal();
+        }
+        checkpoint.delete();
+      }
 
       var stop = System.currentTimeMillis();
       logger.info("Exported {} tiles in {}s", count, (stop - start) / 1000);
     }
   }
 
+  /**
+   * Numbers the blocks by chunks of at least {@link #CHUNK_SIZE} tiles and returns the blocks of
+   * the chunks that belong to the shard and that have not been completed. The tiles of the
+   * returned blocks are added to the checkpoint, and each chunk is sealed once its last block has
+   * been returned.
+   */
+  private static Stream<Block> blocks(Stream<List<TileCoord>> metatiles,
+      ExportCheckpoint checkpoint, TileBatchPredicate shardPredicate,
+      ProgressLogger<Object> progressLogger) {
+    var source = metatiles.iterator();
+    var iterator = new Iterator<Block>() {
+
+      private int chunk = 0;
+
+      private long chunkTiles = 0;
+
+      private boolean exported = false;
+
+      private Block next;
+
+      @Override
+      public boolean hasNext() {
+        try {
+          while (next == null && source.hasNext()) {
+            var tiles = source.next();
+            if (chunkTiles >= CHUNK_SIZE) {
+              seal();
+              chunk++;
+              chunkTiles = 0;
+            }
+            chunkTiles += tiles.size();
+            if (!shardPredicate.test(chunk)) {
+              continue;
+            }
+            if (checkpoint.isCompleted(chunk)) {
+              tiles.forEach(progressLogger);
+              continue;
+            }
+            exported = true;
+            checkpoint.add(chunk, tiles.size());
+            next = new Block(chunk, tiles);
+          }
+          if (next == null) {
+            seal();
+          }
+          return next != null;
+        } catch (IOException e) {
+          throw new WorkflowException(e);
+        }
+      }
+
+      @Override
+      public Block next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        var block = next;
+        next = null;
+        return block;
+      }
+
+      private void seal() throws IOException {
+        if (exported) {
+          checkpoint.seal(chunk);
+          exported = false;
+        }
+      }
+    };
+    return StreamUtils.stream(iterator);
+  }
+
+  /**
+   * A block of tiles and the index of its chunk.
+   */
+  private record Block(int chunk, List<TileCoord> tiles) {
+  }
+
+  /**
+   * The tiles of a block and the index of its chunk.
+   */
+  private record BlockEntries(int chunk, List<TileEntry> entries) {
+  }
+
   private TileStore sourceTileStore(Tileset tileset, DataSource datasource) {
-    return new PostgresTileStore(datasource, tileset);
+    return encoding.createTileStore(datasource, tileset, metatileSize);
   }
 
   private TileStore targetTileStore(Tileset source) throws TileStoreException, IOException {
@@ -175,9 +406,16 @@ public class ExportVectorTiles implements Task {
       case FILE:
         return new FileTileStore(repository.resolve("tiles"));
       case MBTILES:
-        Files.deleteIfExists(repository);
-        var dataSource = SqliteUtils.createDataSource(repository, false);
+        boolean append = resume && Files.exists(repository);
+        if (!append) {
+          Files.deleteIfExists(repository);
+        }
+        // The tiles are committed before their chunks are checkpointed
+        var dataSource = SqliteUtils.createDataSource(repository, false, true);
         var tilesStore = new MBTilesStore(dataSource);
+        if (append) {
+          tilesStore.checkIntegrity();
+        }
         tilesStore.initializeDatabase();
         tilesStore.writeMetadata(metadata(source));
         return tilesStore;
@@ -189,6 +427,25 @@ public class ExportVectorTiles implements Task {
     }
   }
 
+  /**
+   * Returns a hash of the layers of the tileset, including their queries, and of the encoding of
+   * the tiles.
+   */
+  private String contentHash(Tileset tileset)
+      throws JsonProcessingException, NoSuchAlgorithmException {
+    var digest = MessageDigest.getInstance("SHA-256");
+    digest.update(objectMapper().writeValueAsBytes(tileset.getVectorLayers()));
+    digest.update(encoding.name().getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private Path checkpointPath() {
+    return switch (format) {
+      case FILE -> repository.resolve("tiles.progress");
+      case MBTILES, PMTILES -> repository.resolveSibling(repository.getFileName() + ".progress");
+    };
+  }
+
   private Map<String, String> metadata(Tileset tileset) throws JsonProcessingException {
     var metadata = new HashMap<String, String>();
 
@@ -240,6 +497,8 @@ public class ExportVectorTiles implements Task {
         .add("tileset=" + tileset)
         .add("repository=" + repository)
         .add("format=" + format)
+        .add("resume=" + resume)
+        .add("shard=" + shardIndex + "/" + shardCount)
         .toString();
   }
 }
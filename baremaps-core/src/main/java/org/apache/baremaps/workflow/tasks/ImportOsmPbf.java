@@ -18,31 +18,55 @@
 package org.apache.baremaps.workflow.tasks;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.apache.baremaps.data.collection.DataConversions;
+import org.apache.baremaps.data.collection.MonotonicDataMap;
 import org.apache.baremaps.database.function.BlockImporter;
+import org.apache.baremaps.database.function.CopyBlockImporter;
 import org.apache.baremaps.database.postgres.*;
-import org.apache.baremaps.openstreetmap.model.Node;
+import org.apache.baremaps.openstreetmap.function.BlockEntitiesHandler;
+import org.apache.baremaps.openstreetmap.function.CoordinateMapBuilder;
+import org.apache.baremaps.openstreetmap.function.DenseNodeGeometryBuilder;
+import org.apache.baremaps.openstreetmap.function.EntityGeometryBuilder;
+import org.apache.baremaps.openstreetmap.function.EntityProjectionTransformer;
+import org.apache.baremaps.openstreetmap.function.ReferenceMapBuilder;
+import org.apache.baremaps.openstreetmap.model.Block;
+import org.apache.baremaps.openstreetmap.model.DataBlock;
 import org.apache.baremaps.openstreetmap.model.Relation;
 import org.apache.baremaps.openstreetmap.model.Way;
 import org.apache.baremaps.openstreetmap.pbf.PbfBlockReader;
 import org.apache.baremaps.openstreetmap.stream.StreamUtils;
 import org.apache.baremaps.workflow.Task;
 import org.apache.baremaps.workflow.WorkflowContext;
+import org.apache.baremaps.workflow.WorkflowContext.CoordinateMapLayout;
 import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Import an OSM PBF file into a database.
  */
 public class ImportOsmPbf implements Task {
 
+  private static final Logger logger = LoggerFactory.getLogger(ImportOsmPbf.class);
+
+  private static final int COPY_QUEUE_CAPACITY = 64;
+
   private Path file;
   private Object database;
   private Integer databaseSrid;
   private Boolean replaceExisting;
+  private Boolean twoPass = false;
+  private Integer copyWriters;
+  private CoordinateMapLayout coordinateMapLayout = CoordinateMapLayout.AUTO;
 
   /**
    * Constructs a {@code ImportOsmPbf}.
@@ -61,10 +85,30 @@ public class ImportOsmPbf implements Task {
    */
   public ImportOsmPbf(Path file, Object database,
       Integer databaseSrid, Boolean replaceExisting) {
+    this(file, database, databaseSrid, replaceExisting, false, null, CoordinateMapLayout.AUTO);
+  }
+
+  /**
+   * Constructs an {@code ImportOsmPbf}.
+   *
+   * @param file the OSM PBF file
+   * @param database the database
+   * @param databaseSrid the database SRID
+   * @param replaceExisting whether to replace the existing tables
+   * @param twoPass whether to fill the caches in a first pass before building the geometries
+   * @param copyWriters the number of long-lived copies per table, or null to copy block by block
+   * @param coordinateMapLayout the layout of the coordinate map
+   */
+  public ImportOsmPbf(Path file, Object database,
+      Integer databaseSrid, Boolean replaceExisting, Boolean twoPass, Integer copyWriters,
+      CoordinateMapLayout coordinateMapLayout) {
     this.file = file;
     this.database = database;
     this.databaseSrid = databaseSrid;
     this.replaceExisting = replaceExisting;
+    this.twoPass = twoPass;
+    this.copyWriters = copyWriters;
+    this.coordinateMapLayout = coordinateMapLayout;
   }
 
   /**
@@ -76,6 +120,10 @@ public class ImportOsmPbf implements Task {
 
     // Initialize the repositories
     var datasource = context.getDataSource(database);
+    if (copyWriters != null && copyWriters > 0) {
+      // Fail before dropping the tables if the pool cannot feed the writers
+      CopyBlockImporter.checkDataSource(datasource, copyWriters);
+    }
     var headerRepository = new HeaderRepository(datasource);
     var nodeRepository = new NodeRepository(datasource);
     var wayRepository = new WayRepository(datasource);
@@ -95,18 +143,40 @@ public class ImportOsmPbf implements Task {
       relationRepository.create();
     }
 
-    var coordinateMap = context.getCoordinateMap();
-    var referenceMap = context.getReferenceMap();
+    var coordinateMap = context.getCoordinateMap(path,
+        coordinateMapLayout != null ? coordinateMapLayout : CoordinateMapLayout.AUTO);
+    var referenceMap = context.getConcurrentReferenceMap();
 
-    execute(
-        path,
-        coordinateMap,
-        referenceMap,
-        headerRepository,
-        nodeRepository,
-        wayRepository,
-        relationRepository,
-        databaseSrid);
+    if (copyWriters != null && copyWriters > 0) {
+      try (var importer = new CopyBlockImporter(
+          datasource,
+          headerRepository,
+          nodeRepository,
+          wayRepository,
+          relationRepository,
+          copyWriters,
+          COPY_QUEUE_CAPACITY)) {
+        importBlocks(path, coordinateMap, referenceMap, importer);
+      }
+    } else {
+      importBlocks(path, coordinateMap, referenceMap, new BlockImporter(
+          headerRepository,
+          nodeRepository,
+          wayRepository,
+          relationRepository));
+    }
+  }
+
+  private void importBlocks(
+      Path path,
+      Map<Long, Coordinate> coordinateMap,
+      MonotonicDataMap<List<Long>> referenceMap,
+      Consumer<Block> importer) throws IOException {
+    if (Boolean.TRUE.equals(twoPass)) {
+      executeTwoPass(path, coordinateMap, referenceMap, importer, databaseSrid);
+    } else {
+      execute(path, coordinateMap, DataConversions.asMap(referenceMap), importer, databaseSrid);
+    }
   }
 
   /**
@@ -127,10 +197,38 @@ public class ImportOsmPbf implements Task {
       Map<Long, Coordinate> coordinateMap,
       Map<Long, List<Long>> referenceMap,
       HeaderRepository headerRepository,
-      Repository<Long, Node> nodeRepository,
+      DenseNodeRepository nodeRepository,
       Repository<Long, Way> wayRepository,
       Repository<Long, Relation> relationRepository,
       Integer databaseSrid) throws IOException {
+    execute(
+        path,
+        coordinateMap,
+        referenceMap,
+        new BlockImporter(
+            headerRepository,
+            nodeRepository,
+            wayRepository,
+            relationRepository),
+        databaseSrid);
+  }
+
+  /**
+   * Imports an OSM PBF file into a database with the specified block importer.
+   *
+   * @param path the OSM PBF file
+   * @param coordinateMap the coordinate map
+   * @param referenceMap the reference map
+   * @param importer the block importer
+   * @param databaseSrid the database SRID
+   * @throws IOException
+   */
+  public static void execute(
+      Path path,
+      Map<Long, Coordinate> coordinateMap,
+      Map<Long, List<Long>> referenceMap,
+      Consumer<Block> importer,
+      Integer databaseSrid) throws IOException {
 
     // configure the block reader
     var reader = new PbfBlockReader()
@@ -139,19 +237,195 @@ public class ImportOsmPbf implements Task {
         .setCoordinateMap(coordinateMap)
         .setReferenceMap(referenceMap);
 
-    // configure the block importer
-    var importer = new BlockImporter(
-        headerRepository,
-        nodeRepository,
-        wayRepository,
-        relationRepository);
-
     // Stream and process the blocks
-    try (var input = Files.newInputStream(path)) {
-      StreamUtils.batch(reader.read(input)).forEach(importer);
+    try (var blocks = reader.read(path)) {
+      StreamUtils.batch(blocks).forEach(importer);
     }
   }
 
+  /**
+   * Imports an OSM PBF file into a database in two passes. The first pass only fills the coordinate
+   * and reference maps from the nodes and ways: the blocks are decoded by the bounded pool of the
+   * block reader, which also writes the coordinates concurrently, and the references of each block
+   * are sorted and flushed in source order. The second pass builds the geometries of all the
+   * entities fully in parallel against the read-only maps and imports them.
+   *
+   * <p>
+   * The coordinate map must support concurrent writes of distinct keys, as is the case of a
+   * {@code MemoryAlignedDataMap}, and the reference map must accept monotonic insertions.
+   *
+   * @param path the OSM PBF file
+   * @param coordinateMap the coordinate map
+   * @param referenceMap the reference map
+   * @param headerRepository the header repository
+   * @param nodeRepository the node repository
+   * @param wayRepository the way repository
+   * @param relationRepository the relation repository
+   * @param databaseSrid the database SRID
+   * @throws IOException
+   */
+  public static void executeTwoPass(
+      Path path,
+      Map<Long, Coordinate> coordinateMap,
+      Map<Long, List<Long>> referenceMap,
+      HeaderRepository headerRepository,
+      DenseNodeRepository nodeRepository,
+      Repository<Long, Way> wayRepository,
+      Repository<Long, Relation> relationRepository,
+      Integer databaseSrid) throws IOException {
+    executeTwoPass(
+        path,
+        coordinateMap,
+        referenceMap,
+        new BlockImporter(
+            headerRepository,
+            nodeRepository,
+            wayRepository,
+            relationRepository),
+        databaseSrid);
+  }
+
+  /**
+   * Imports an OSM PBF file into a database in two passes with the specified block importer.
+   *
+   * @param path the OSM PBF file
+   * @param coordinateMap the coordinate map
+   * @param referenceMap the reference map
+   * @param importer the block importer
+   * @param databaseSrid the database SRID
+   * @throws IOException
+   */
+  public static void executeTwoPass(
+      Path path,
+      Map<Long, Coordinate> coordinateMap,
+      Map<Long, List<Long>> referenceMap,
+      Consumer<Block> importer,
+      Integer databaseSrid) throws IOException {
+    var referenceMapBuilder = new ReferenceMapBuilder(referenceMap);
+    executeTwoPass(path, coordinateMap, referenceMap,
+        ways -> () -> ways.forEach(referenceMapBuilder), importer, databaseSrid);
+  }
+
+  /**
+   * Imports an OSM PBF file into a database in two passes with the specified block importer. In the
+   * first pass, the references of the ways are appended to the reference map by the workers that
+   * decode the blocks, so its log of values should be in concurrent mode, and only their keys are
+   * added in source order.
+   *
+   * @param path the OSM PBF file
+   * @param coordinateMap the coordinate map
+   * @param referenceMap the reference map
+   * @param importer the block importer
+   * @param databaseSrid the database SRID
+   * @throws IOException
+   */
+  public static void executeTwoPass(
+      Path path,
+      Map<Long, Coordinate> coordinateMap,
+      MonotonicDataMap<List<Long>> referenceMap,
+      Consumer<Block> importer,
+      Integer databaseSrid) throws IOException {
+    executeTwoPass(path, coordinateMap, DataConversions.asMap(referenceMap), ways -> {
+      var ids = new long[ways.size()];
+      var positions = new long[ways.size()];
+      for (int i = 0; i < ways.size(); i++) {
+        ids[i] = ways.get(i).getId();
+        positions[i] = referenceMap.append(ways.get(i).getNodes());
+      }
+      return () -> {
+        for (int i = 0; i < ids.length; i++) {
+          referenceMap.putPosition(ids[i], positions[i]);
+        }
+      };
+    }, importer, databaseSrid);
+  }
+
+  /**
+   * Imports an OSM PBF file into a database in two passes. The reference writer is called by the
+   * decoding threads of the block reader with the sorted ways of a block, and the returned task is
+   * run in source order.
+   */
+  private static void executeTwoPass(
+      Path path,
+      Map<Long, Coordinate> coordinateMap,
+      Map<Long, List<Long>> referenceMap,
+      Function<List<Way>, Runnable> referenceWriter,
+      Consumer<Block> importer,
+      Integer databaseSrid) throws IOException {
+
+    // First pass: fill the caches with the nodes and the ways
+    var start = System.currentTimeMillis();
+    var cachedNodes = new AtomicLong();
+    var cachedWays = new AtomicLong();
+    var coordinateMapBuilder = new CoordinateMapBuilder(coordinateMap);
+    try (var referenceWriters = new PbfBlockReader().read(path, block -> {
+      if (!(block instanceof DataBlock dataBlock)) {
+        return referenceWriter.apply(List.of());
+      }
+      var columns = dataBlock.getDenseNodeColumns();
+      if (columns != null) {
+        coordinateMapBuilder.acceptDenseNodes(columns);
+        cachedNodes.addAndGet(columns.size());
+      } else {
+        dataBlock.getDenseNodes().forEach(coordinateMapBuilder);
+        cachedNodes.addAndGet(dataBlock.getDenseNodes().size());
+      }
+      dataBlock.getNodes().forEach(coordinateMapBuilder);
+      cachedNodes.addAndGet(dataBlock.getNodes().size());
+      var ways = new ArrayList<>(dataBlock.getWays());
+      ways.sort(Comparator.comparing(Way::getId));
+      cachedWays.addAndGet(ways.size());
+      return referenceWriter.apply(ways);
+    })) {
+      referenceWriters.forEach(Runnable::run);
+    }
+    logThroughput("Pass 1 (caches)", start, cachedNodes.get() + cachedWays.get());
+
+    // Second pass: build the geometries against the read-only caches and import the entities
+    start = System.currentTimeMillis();
+    var importedEntities = new AtomicLong();
+    var geometryHandler = ThreadLocal.withInitial(
+        () -> createGeometryHandler(coordinateMap, referenceMap, databaseSrid));
+    try (var blocks = new PbfBlockReader().read(path)) {
+      StreamUtils.batch(blocks).forEach(block -> {
+        geometryHandler.get().accept(block);
+        importer.accept(block);
+        if (block instanceof DataBlock dataBlock) {
+          importedEntities.addAndGet(countEntities(dataBlock));
+        }
+      });
+    }
+    logThroughput("Pass 2 (geometries and import)", start, importedEntities.get());
+  }
+
+  /**
+   * Creates a handler that builds the geometries of the entities of a block with read-only caches.
+   * The handler is not thread-safe, as the projection transformer holds state.
+   */
+  private static Consumer<Block> createGeometryHandler(
+      Map<Long, Coordinate> coordinateMap,
+      Map<Long, List<Long>> referenceMap,
+      int srid) {
+    var entityHandler = new EntityGeometryBuilder(coordinateMap, referenceMap)
+        .andThen(new EntityProjectionTransformer(4326, srid));
+    return new BlockEntitiesHandler(entityHandler, new DenseNodeGeometryBuilder(srid));
+  }
+
+  private static long countEntities(DataBlock dataBlock) {
+    var columns = dataBlock.getDenseNodeColumns();
+    long denseNodes = columns != null ? columns.size() : dataBlock.getDenseNodes().size();
+    return denseNodes
+        + dataBlock.getNodes().size()
+        + dataBlock.getWays().size()
+        + dataBlock.getRelations().size();
+  }
+
+  private static void logThroughput(String phase, long start, long entities) {
+    var duration = Math.max(1, System.currentTimeMillis() - start);
+    logger.info("{}: {} entities in {} ms ({} entities/s)",
+        phase, entities, duration, entities * 1000 / duration);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -162,6 +436,9 @@ public class ImportOsmPbf implements Task {
         .add("database=" + database)
         .add("databaseSrid=" + databaseSrid)
         .add("replaceExisting=" + replaceExisting)
+        .add("twoPass=" + twoPass)
+        .add("copyWriters=" + copyWriters)
+        .add("coordinateMapLayout=" + coordinateMapLayout)
         .toString();
   }
 }
@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.StringJoiner;
 import java.util.zip.GZIPInputStream;
 import org.apache.baremaps.database.function.ChangeElementsImporter;
+import org.apache.baremaps.database.function.ChangeGeometryPrefetcher;
 import org.apache.baremaps.database.postgres.*;
 import org.apache.baremaps.openstreetmap.function.*;
 import org.apache.baremaps.openstreetmap.model.Header;
@@ -139,25 +140,29 @@ public class UpdateOsmDatabase implements Task {
     logger.info("Updating the database with the changeset: {}", changeUrl);
 
     // Process the changeset and update the database
+    var prefetchGeometries = new ChangeGeometryPrefetcher(coordinateMap, referenceMap);
+
     var buildNodeGeometry = new NodeGeometryBuilder();
     var reprojectNodeGeometry = new EntityProjectionTransformer(4326, databaseSrid);
     var prepareNodeGeometry =
         new ChangeEntitiesHandler(buildNodeGeometry.andThen(reprojectNodeGeometry));
     var importNodes = new ChangeElementsImporter<>(Node.class, nodeRepository);
 
-    var buildWayGeometry = new WayGeometryBuilder(coordinateMap);
+    var buildWayGeometry = new WayGeometryBuilder(prefetchGeometries.getCoordinateMap());
     var reprojectWayGeometry = new EntityProjectionTransformer(4326, databaseSrid);
     var prepareWayGeometry =
         new ChangeEntitiesHandler(buildWayGeometry.andThen(reprojectWayGeometry));
     var importWays = new ChangeElementsImporter<>(Way.class, wayRepository);
 
-    var buildRelationGeometry = new RelationMultiPolygonBuilder(coordinateMap, referenceMap);
+    var buildRelationGeometry = new RelationMultiPolygonBuilder(
+        prefetchGeometries.getCoordinateMap(), prefetchGeometries.getReferenceMap());
     var reprojectRelationGeometry = new EntityProjectionTransformer(4326, databaseSrid);
     var prepareRelationGeometry =
         new ChangeEntitiesHandler(buildRelationGeometry.andThen(reprojectRelationGeometry));
     var importRelations = new ChangeElementsImporter<>(Relation.class, relationRepository);
 
-    var entityProcessor = prepareNodeGeometry
+    var entityProcessor = prefetchGeometries
+        .andThen(prepareNodeGeometry)
         .andThen(importNodes)
         .andThen(prepareWayGeometry)
         .andThen(importWays)
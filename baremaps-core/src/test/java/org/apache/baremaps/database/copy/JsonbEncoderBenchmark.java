@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.copy;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.baremaps.openstreetmap.model.DataBlock;
+import org.apache.baremaps.openstreetmap.model.Node;
+import org.apache.baremaps.openstreetmap.model.Relation;
+import org.apache.baremaps.openstreetmap.model.Way;
+import org.apache.baremaps.openstreetmap.pbf.PbfBlockReader;
+import org.apache.baremaps.testing.TestFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cost of writing the tags of the entities of a PBF file as jsonb values in a copy
+ * stream, with the former double Jackson serialization and with the {@link JsonbEncoder}. The file
+ * can be set with the {@code baremaps.benchmark.pbf} system property and defaults to the sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonbEncoderBenchmark {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static final ObjectMapper rawMapper = new ObjectMapper()
+      .registerModule(new SimpleModule().addSerializer(String.class, new RawStringSerializer()));
+
+  private final List<Map<String, Object>> tags = new ArrayList<>();
+
+  private final List<DataBlock> blocks = new ArrayList<>();
+
+  private DataOutputStream data;
+
+  private CopyWriter writer;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    var path = Path.of(System.getProperty("baremaps.benchmark.pbf",
+        TestFiles.SAMPLE_OSM_PBF.toString()));
+    try (var stream = new PbfBlockReader().read(path)) {
+      stream.filter(DataBlock.class::isInstance)
+          .map(DataBlock.class::cast)
+          .forEach(blocks::add);
+    }
+    for (var block : blocks) {
+      var columns = block.getDenseNodeColumns();
+      if (columns != null) {
+        for (int i = 0; i < columns.size(); i++) {
+          tags.add(columns.getTags(i));
+        }
+      }
+      block.getDenseNodes().stream().map(Node::getTags).forEach(tags::add);
+      block.getNodes().stream().map(Node::getTags).forEach(tags::add);
+      block.getWays().stream().map(Way::getTags).forEach(tags::add);
+      block.getRelations().stream().map(Relation::getTags).forEach(tags::add);
+    }
+    data = new DataOutputStream(OutputStream.nullOutputStream());
+    writer = new CopyWriter(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void jackson() throws IOException {
+    for (var value : tags) {
+      // The tags were serialized to a string and then serialized again by the value handler
+      var json = mapper.writeValueAsString(value);
+      var bytes = rawMapper.writeValueAsString(json).getBytes(StandardCharsets.UTF_8);
+      data.writeInt(bytes.length + 1);
+      data.writeByte(1);
+      data.write(bytes);
+    }
+  }
+
+  @Benchmark
+  public void encoder() throws IOException {
+    for (var value : tags) {
+      writer.writeJsonb(value);
+    }
+  }
+
+  @Benchmark
+  public void encoderWithDenseColumns() throws IOException {
+    for (var block : blocks) {
+      var columns = block.getDenseNodeColumns();
+      if (columns == null) {
+        continue;
+      }
+      var offsets = columns.getTagOffsets();
+      for (int i = 0; i < columns.size(); i++) {
+        writer.writeJsonb(columns.getStrings(), columns.getTagKeys(), columns.getTagValues(),
+            offsets[i], offsets[i + 1]);
+      }
+    }
+  }
+
+  private static class RawStringSerializer extends JsonSerializer<String> {
+    @Override
+    public void serialize(String value, JsonGenerator gen, SerializerProvider serializers)
+        throws IOException {
+      gen.writeRawValue(value);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    var options = new OptionsBuilder()
+        .include(JsonbEncoderBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.copy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class JsonbEncoderTest {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static String toString(JsonbEncoder encoder) {
+    return new String(encoder.buffer(), 0, encoder.length(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void encodeMap() throws IOException {
+    var map = new LinkedHashMap<String, Object>();
+    map.put("name", "Café \"Le Zébre\"");
+    map.put("name:zh", "北京 😀");
+    map.put("note", "line\nbreak\ttab\\slash/\u0001");
+    map.put("integer", 42);
+    map.put("double", 4.2);
+    map.put("boolean", true);
+    map.put("null", null);
+    map.put("list", List.of("a", 1));
+    map.put("map", Map.of("key", "value"));
+    var encoder = new JsonbEncoder().encode(map);
+    assertEquals(mapper.writeValueAsString(map), toString(encoder));
+    assertArrayEquals(mapper.writeValueAsString(map).getBytes(StandardCharsets.UTF_8),
+        Arrays.copyOf(encoder.buffer(), encoder.length()));
+  }
+
+  @Test
+  void encodeTags() throws IOException {
+    var strings = new String[] {"", "highway", "residential", "name", "Rue \"du\" Lac"};
+    var encoder = new JsonbEncoder().encode(strings, new int[] {1, 3}, new int[] {2, 4}, 0, 2);
+    assertEquals("{\"highway\":\"residential\",\"name\":\"Rue \\\"du\\\" Lac\"}",
+        toString(encoder));
+    assertEquals("{}", toString(encoder.encode(strings, new int[0], new int[0], 0, 0)));
+  }
+
+  @Test
+  void encodeJson() {
+    var encoder = new JsonbEncoder().encodeJson("{\"name\":\"é\"}");
+    assertEquals("{\"name\":\"é\"}", toString(encoder));
+  }
+
+  @Test
+  void writeTo() throws IOException {
+    var encoder = new JsonbEncoder().encode(Map.of("a", "b"));
+    var output = new ByteArrayOutputStream();
+    encoder.writeTo(new DataOutputStream(output));
+    var buffer = ByteBuffer.wrap(output.toByteArray());
+    assertEquals(encoder.length() + 1, buffer.getInt());
+    assertEquals(1, buffer.get());
+    assertEquals("{\"a\":\"b\"}",
+        new String(output.toByteArray(), 5, encoder.length(), StandardCharsets.UTF_8));
+  }
+}
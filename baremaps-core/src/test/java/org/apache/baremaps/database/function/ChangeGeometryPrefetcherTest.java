@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.baremaps.openstreetmap.model.Change;
+import org.apache.baremaps.openstreetmap.model.Change.ChangeType;
+import org.apache.baremaps.openstreetmap.model.Info;
+import org.apache.baremaps.openstreetmap.model.Member;
+import org.apache.baremaps.openstreetmap.model.Member.MemberType;
+import org.apache.baremaps.openstreetmap.model.Node;
+import org.apache.baremaps.openstreetmap.model.Relation;
+import org.apache.baremaps.openstreetmap.model.Way;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+class ChangeGeometryPrefetcherTest {
+
+  private static final Info INFO = new Info(0, LocalDateTime.of(2020, 1, 1, 0, 0), 0, 0);
+
+  @Test
+  void prefetch() {
+    Map<Long, Coordinate> coordinates = new HashMap<>();
+    coordinates.put(1L, new Coordinate(1, 1));
+    coordinates.put(2L, new Coordinate(2, 2));
+    coordinates.put(3L, new Coordinate(3, 3));
+    Map<Long, List<Long>> references = new HashMap<>();
+    references.put(10L, List.of(1L, 2L));
+    references.put(11L, List.of(2L, 3L));
+
+    var prefetcher = new ChangeGeometryPrefetcher(coordinates, references);
+    prefetcher.accept(new Change(ChangeType.MODIFY, List.of(
+        new Node(3L, INFO, Map.of(), 4d, 4d),
+        new Way(10L, INFO, Map.of(), List.of(1L, 3L)),
+        new Relation(20L, INFO, Map.of(), List.of(
+            new Member(10L, MemberType.WAY, "outer"),
+            new Member(11L, MemberType.WAY, "outer"))))));
+
+    // The backing maps are no longer read for the prefetched keys
+    coordinates.clear();
+    references.clear();
+
+    var coordinateMap = prefetcher.getCoordinateMap();
+    assertEquals(new Coordinate(1, 1), coordinateMap.get(1L));
+    assertEquals(new Coordinate(2, 2), coordinateMap.get(2L));
+    assertEquals(new Coordinate(4, 4), coordinateMap.get(3L));
+    var referenceMap = prefetcher.getReferenceMap();
+    assertEquals(List.of(1L, 3L), referenceMap.get(10L));
+    assertEquals(List.of(2L, 3L), referenceMap.get(11L));
+  }
+
+  @Test
+  void prefetchDeletions() {
+    Map<Long, Coordinate> coordinates = new HashMap<>();
+    coordinates.put(1L, new Coordinate(1, 1));
+    Map<Long, List<Long>> references = new HashMap<>();
+
+    var prefetcher = new ChangeGeometryPrefetcher(coordinates, references);
+    prefetcher.accept(new Change(ChangeType.DELETE, List.of(
+        new Node(1L, INFO, Map.of(), 1d, 1d))));
+
+    assertNull(prefetcher.getCoordinateMap().get(1L));
+    assertFalse(prefetcher.getCoordinateMap().containsKey(1L));
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.database.function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+
+class CopyBlockImporterTest {
+
+  @Test
+  void checkDataSource() {
+    try (var dataSource = new HikariDataSource()) {
+      dataSource.setMaximumPoolSize(7);
+      assertDoesNotThrow(() -> CopyBlockImporter.checkDataSource(dataSource, 2));
+      var error = assertThrows(IllegalArgumentException.class,
+          () -> CopyBlockImporter.checkDataSource(dataSource, 3));
+      assertTrue(error.getMessage().contains("10 connections"));
+    }
+  }
+}
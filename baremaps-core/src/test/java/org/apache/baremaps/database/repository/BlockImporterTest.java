@@ -28,6 +28,7 @@ import java.sql.SQLException;
 import javax.sql.DataSource;
 import org.apache.baremaps.database.PostgresContainerTest;
 import org.apache.baremaps.database.function.BlockImporter;
+import org.apache.baremaps.database.function.CopyBlockImporter;
 import org.apache.baremaps.database.postgres.*;
 import org.apache.baremaps.openstreetmap.pbf.PbfBlockReader;
 import org.apache.baremaps.utils.PostgresUtils;
@@ -78,4 +79,25 @@ class BlockImporterTest extends PostgresContainerTest {
       }
     }
   }
+
+  @Test
+  @Tag("integration")
+  void copy() throws RepositoryException, IOException {
+    // Import data with one long-lived copy per table and a connection for the header
+    var copyDataSource = PostgresUtils.createDataSource(jdbcUrl(), 4);
+    try (InputStream inputStream = Files.newInputStream(SAMPLE_OSM_PBF);
+        var blockImporter = new CopyBlockImporter(copyDataSource, headerRepository,
+            nodeRepository, wayRepository, relationRepository, 1, 4)) {
+      new PbfBlockReader().read(inputStream).forEach(blockImporter);
+    }
+
+    // Check node importation
+    for (long i = 1; i <= 36; i++) {
+      var exists = false;
+      exists |= nodeRepository.get(i) != null;
+      exists |= wayRepository.get(i) != null;
+      exists |= relationRepository.get(i) != null;
+      assertTrue(exists);
+    }
+  }
 }
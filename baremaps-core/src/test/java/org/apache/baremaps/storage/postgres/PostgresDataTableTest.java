@@ -88,4 +88,28 @@ class PostgresDataTableTest extends PostgresContainerTest {
     assertTrue(added);
     assertEquals(7, table.size());
   }
+
+  @Test
+  @Tag("integration")
+  void addAllInBatches() {
+    var table = new PostgresDataStore(dataSource(), 1, 2).get("mock");
+    var rowType = table.schema();
+    var added = table.addAll(List.of(
+        new DataRowImpl(rowType,
+            List.of("string", 6, 6.0, 6.0f, GEOMETRY_FACTORY.createPoint(new Coordinate(6, 6)))),
+        new DataRowImpl(rowType,
+            List.of("string", 7, 7.0, 7.0f, GEOMETRY_FACTORY.createPoint(new Coordinate(7, 7)))),
+        new DataRowImpl(rowType,
+            List.of("string", 8, 8.0, 8.0f, GEOMETRY_FACTORY.createPoint(new Coordinate(8, 8))))));
+    assertTrue(added);
+    assertEquals(8, table.size());
+  }
+
+  @Test
+  @Tag("integration")
+  void addNoRows() {
+    var table = schema.get("mock");
+    assertTrue(table.addAll(List.of()));
+    assertEquals(5, table.size());
+  }
 }
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.baremaps.tilestore.file.TileLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TieredTileCacheTest {
+
+  @TempDir
+  Path directory;
+
+  private static class CountingTileStore implements TileStore {
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    public ByteBuffer read(TileCoord tileCoord) {
+      reads.incrementAndGet();
+      return ByteBuffer.wrap(tileCoord.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void write(TileCoord tileCoord, ByteBuffer blob) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(TileCoord tileCoord) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      // do nothing
+    }
+  }
+
+  private static class EmptyTileStore extends CountingTileStore {
+
+    @Override
+    public ByteBuffer read(TileCoord tileCoord) {
+      super.read(tileCoord);
+      return TileStore.emptyTile();
+    }
+  }
+
+  private static class MetatileStore implements TileStore {
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    public ByteBuffer read(TileCoord tileCoord) {
+      return ByteBuffer.wrap(tileCoord.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public List<ByteBuffer> read(List<TileCoord> tileCoords) throws TileStoreException {
+      reads.incrementAndGet();
+      try {
+        // Leave time for the other threads to miss the tiles of the metatile
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TileStoreException(e);
+      }
+      return tileCoords.stream().map(this::read).toList();
+    }
+
+    @Override
+    public int metatileSize() {
+      return 4;
+    }
+
+    @Override
+    public void write(TileCoord tileCoord, ByteBuffer blob) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(TileCoord tileCoord) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      // do nothing
+    }
+  }
+
+  @Test
+  void survivesRestart() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var tileCoord = new TileCoord(1, 2, 3);
+
+    var store = new CountingTileStore();
+    try (var cache = new TieredTileCache(store, spec, new TileLog(directory, 1 << 20, 1 << 10))) {
+      cache.read(tileCoord);
+      cache.read(tileCoord);
+      assertEquals(new TieredTileCache.Stats(1, 0, 1), cache.stats());
+    }
+
+    var restarted = new CountingTileStore();
+    try (var cache =
+        new TieredTileCache(restarted, spec, new TileLog(directory, 1 << 20, 1 << 10))) {
+      var blob = cache.read(tileCoord);
+      assertEquals(tileCoord.toString(), StandardCharsets.UTF_8.decode(blob).toString());
+      assertEquals(0, restarted.reads.get());
+      assertEquals(new TieredTileCache.Stats(0, 1, 0), cache.stats());
+    }
+  }
+
+  @Test
+  void expiredTilesAreRead() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000,expireAfterWrite=PT0.2S");
+    var tileCoord = new TileCoord(1, 2, 3);
+
+    var store = new CountingTileStore();
+    var tileLog = new TileLog(directory, 1 << 20, 1 << 10, Duration.ofMillis(200), "");
+    try (var cache = new TieredTileCache(store, spec, tileLog)) {
+      cache.read(tileCoord);
+      Thread.sleep(300);
+      cache.read(tileCoord);
+      assertEquals(2, store.reads.get());
+      assertEquals(new TieredTileCache.Stats(0, 0, 2), cache.stats());
+    }
+  }
+
+  @Test
+  void keepEmptyTilesOffDisk() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var tileCoord = new TileCoord(1, 2, 3);
+
+    CountingTileStore store = new EmptyTileStore();
+    var tileLog = new TileLog(directory, 1 << 20, 1 << 10);
+    try (var cache = new TieredTileCache(store, spec, tileLog)) {
+      assertTrue(TileStore.isEmptyTile(cache.read(tileCoord)));
+      assertTrue(TileStore.isEmptyTile(cache.read(tileCoord)));
+      assertEquals(1, store.reads.get());
+      assertFalse(tileLog.contains(tileCoord));
+    }
+  }
+
+  @Test
+  void expireEmptyTiles() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var tileCoord = new TileCoord(1, 2, 3);
+
+    CountingTileStore store = new EmptyTileStore();
+    try (var cache = new TieredTileCache(store, spec,
+        new TileLog(directory, 1 << 20, 1 << 10), Duration.ZERO)) {
+      cache.read(tileCoord);
+      cache.read(tileCoord);
+      assertEquals(2, store.reads.get());
+    }
+  }
+
+  @Test
+  void coalesceMetatileReads() throws Exception {
+    var store = new MetatileStore();
+    var metatile = new TileCoord(0, 0, 3).metatile(4);
+    var executor = Executors.newFixedThreadPool(metatile.size());
+    try (var cache = new TieredTileCache(store, CaffeineSpec.parse("maximumWeight=1000000"),
+        new TileLog(directory, 1 << 20, 1 << 10))) {
+      var start = new CountDownLatch(1);
+      var futures = new ArrayList<Future<ByteBuffer>>();
+      for (var tileCoord : metatile) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          return cache.read(tileCoord);
+        }));
+      }
+      start.countDown();
+      for (int i = 0; i < metatile.size(); i++) {
+        assertEquals(store.read(metatile.get(i)), futures.get(i).get());
+      }
+      assertEquals(1, store.reads.get());
+      assertEquals(new TieredTileCache.Stats(0, 0, metatile.size()), cache.stats());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
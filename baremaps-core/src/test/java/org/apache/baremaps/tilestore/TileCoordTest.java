@@ -18,7 +18,10 @@
 package org.apache.baremaps.tilestore;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.HashSet;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.locationtech.jts.geom.Envelope;
 
@@ -53,4 +56,41 @@ class TileCoordTest {
     assertEquals(TileCoord.count(envelope, minZoom, maxZoom),
         TileCoord.list(envelope, minZoom, maxZoom).size());
   }
+
+  @Test
+  void metatile() {
+    assertEquals(List.of(
+        new TileCoord(4, 2, 3), new TileCoord(5, 2, 3),
+        new TileCoord(4, 3, 3), new TileCoord(5, 3, 3)),
+        new TileCoord(5, 3, 3).metatile(2));
+    assertEquals(List.of(new TileCoord(0, 0, 0)), new TileCoord(0, 0, 0).metatile(4));
+  }
+
+  @Test
+  void metatiles() {
+    Envelope envelope = new Envelope(9.471078, 9.636217, 47.04774, 47.27128);
+    var tiles = new HashSet<TileCoord>();
+    TileCoord.metatiles(envelope, 12, 14, 4).forEach(block -> {
+      assertEquals(1, block.stream().map(t -> t.metatile(4)).distinct().count());
+      tiles.addAll(block);
+    });
+    assertEquals(new HashSet<>(TileCoord.list(envelope, 12, 14)), tiles);
+  }
+
+  @Test
+  void hilbertMetatiles() {
+    Envelope envelope = new Envelope(9.471078, 9.636217, 47.04774, 47.27128);
+    for (int size : new int[] {1, 4}) {
+      var tiles = TileCoord.hilbertMetatiles(envelope, 0, 14, size)
+          .flatMap(List::stream)
+          .toList();
+      for (int i = 1; i < tiles.size(); i++) {
+        assertTrue(tiles.get(i - 1).hilbertIndex() < tiles.get(i).hilbertIndex());
+      }
+      assertEquals(new HashSet<>(TileCoord.list(envelope, 0, 14)), new HashSet<>(tiles));
+    }
+    var world = new Envelope(-180, 180, -85.0511, 85.0511);
+    assertEquals(TileCoord.count(world, 0, 6),
+        TileCoord.hilbertMetatiles(world, 0, 6, 8).mapToLong(List::size).sum());
+  }
 }
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStoreException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TileLogTest {
+
+  @TempDir
+  Path directory;
+
+  private static ByteBuffer blob(String value) {
+    return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String string(ByteBuffer buffer) {
+    return StandardCharsets.UTF_8.decode(buffer).toString();
+  }
+
+  @Test
+  void putGetRemove() throws TileStoreException {
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10)) {
+      var tileCoord = new TileCoord(1, 2, 3);
+      log.put(tileCoord, blob("a"));
+      log.put(tileCoord, blob("b"));
+      assertEquals("b", string(log.get(tileCoord)));
+      assertEquals(1, log.count());
+      log.remove(tileCoord);
+      assertFalse(log.contains(tileCoord));
+      assertNull(log.get(tileCoord));
+    }
+  }
+
+  @Test
+  void reopen() throws Exception {
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10)) {
+      for (int x = 0; x < 100; x++) {
+        log.put(new TileCoord(x, 0, 10), blob("tile-" + x));
+      }
+      log.remove(new TileCoord(0, 0, 10));
+    }
+
+    // Simulate an interrupted write at the end of the last segment
+    try (var files = Files.list(directory)) {
+      var last = files.filter(file -> file.toString().endsWith(".log"))
+          .sorted().reduce((a, b) -> b).orElseThrow();
+      try (var channel = FileChannel.open(last, StandardOpenOption.APPEND)) {
+        channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 1, 0, 0}));
+      }
+    }
+
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10)) {
+      assertEquals(99, log.count());
+      assertNull(log.get(new TileCoord(0, 0, 10)));
+      assertEquals("tile-42", string(log.get(new TileCoord(42, 0, 10))));
+      log.put(new TileCoord(100, 0, 10), blob("tile-100"));
+      assertEquals("tile-100", string(log.get(new TileCoord(100, 0, 10))));
+    }
+  }
+
+  @Test
+  void evict() throws TileStoreException {
+    try (var log = new TileLog(directory, 4 << 10, 1 << 10)) {
+      var content = "x".repeat(100);
+      for (int x = 0; x < 200; x++) {
+        log.put(new TileCoord(x, 0, 10), blob(content));
+      }
+      assertTrue(log.size() <= 5 << 10);
+      assertTrue(log.count() < 200);
+      assertFalse(log.contains(new TileCoord(0, 0, 10)));
+      assertTrue(log.contains(new TileCoord(199, 0, 10)));
+    }
+  }
+
+  @Test
+  void expire() throws Exception {
+    var tileCoord = new TileCoord(1, 2, 3);
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10, Duration.ofMillis(200), "")) {
+      log.put(tileCoord, blob("a"));
+      assertEquals("a", string(log.get(tileCoord)));
+      Thread.sleep(300);
+      assertFalse(log.contains(tileCoord));
+      assertNull(log.get(tileCoord));
+      log.put(tileCoord, blob("b"));
+      assertEquals("b", string(log.get(tileCoord)));
+    }
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10, Duration.ofMillis(200), "")) {
+      Thread.sleep(300);
+      assertNull(log.get(tileCoord));
+    }
+  }
+
+  @Test
+  void fingerprint() throws TileStoreException {
+    var tileCoord = new TileCoord(1, 2, 3);
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10, null, "a")) {
+      log.put(tileCoord, blob("a"));
+    }
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10, null, "a")) {
+      assertEquals("a", string(log.get(tileCoord)));
+    }
+    try (var log = new TileLog(directory, 1 << 20, 1 << 10, null, "b")) {
+      assertEquals(0, log.count());
+      assertNull(log.get(tileCoord));
+    }
+  }
+
+  @Test
+  void interruptReaders() throws Exception {
+    var tileCoord = new TileCoord(1, 2, 3);
+    var content = "x".repeat(1 << 20);
+    try (var log = new TileLog(directory, 16 << 20, 4 << 20)) {
+      log.put(tileCoord, blob(content));
+      for (int i = 0; i < 20; i++) {
+        var reader = new Thread(() -> {
+          while (!Thread.currentThread().isInterrupted()) {
+            log.get(tileCoord);
+          }
+        });
+        reader.start();
+        Thread.sleep(5);
+        reader.interrupt();
+        reader.join();
+        assertEquals(content, string(log.get(tileCoord)));
+      }
+      log.put(new TileCoord(4, 5, 6), blob("a"));
+      assertEquals("a", string(log.get(new TileCoord(4, 5, 6))));
+    }
+  }
+}
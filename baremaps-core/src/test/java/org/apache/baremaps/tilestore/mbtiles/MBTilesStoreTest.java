@@ -18,32 +18,35 @@
 package org.apache.baremaps.tilestore.mbtiles;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.apache.baremaps.tilestore.TileCoord;
 import org.apache.baremaps.tilestore.TileDataSchemaTest;
-import org.apache.baremaps.utils.FileUtils;
-import org.junit.jupiter.api.AfterEach;
+import org.apache.baremaps.tilestore.TileEntry;
+import org.apache.baremaps.utils.SqliteUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.sqlite.SQLiteDataSource;
 
 class MBTilesStoreTest extends TileDataSchemaTest {
 
+  @TempDir
+  Path directory;
+
   Path file;
 
   @BeforeEach
   void before() throws IOException {
-    file = Files.createTempFile(Paths.get("."), "baremaps_", ".tmp");
-  }
-
-  @AfterEach
-  void after() throws IOException {
-    FileUtils.deleteRecursively(file);
+    // The journal files of the database are created next to it in the temporary directory
+    file = Files.createTempFile(directory, "baremaps_", ".tmp");
   }
 
   @Override
@@ -70,4 +73,21 @@ class MBTilesStoreTest extends TileDataSchemaTest {
     assertEquals(1, m2.size());
     assertEquals("test", m2.get("test"));
   }
+
+  @Test
+  void appendToDurableDatabase() throws Exception {
+    var tileCoord = new TileCoord(1, 2, 3);
+    var tileStore = new MBTilesStore(SqliteUtils.createDataSource(file, false, true));
+    tileStore.initializeDatabase();
+    tileStore.write(List.of(new TileEntry(tileCoord, ByteBuffer.wrap(new byte[] {1}))));
+
+    // A resumed export checks the database and rewrites the tiles of its incomplete chunks
+    tileStore.checkIntegrity();
+    tileStore.initializeDatabase();
+    tileStore.write(List.of(new TileEntry(tileCoord, ByteBuffer.wrap(new byte[] {2}))));
+    tileStore.closeJournal();
+
+    assertEquals(ByteBuffer.wrap(new byte[] {2}), tileStore.read(tileCoord));
+    assertFalse(Files.exists(Path.of(file + "-wal")));
+  }
 }
@@ -43,4 +43,39 @@ class PostgresTileStoreTest {
         "SELECT (SELECT ST_AsMVT(mvtGeom.*, 'a') FROM (SELECT ST_AsMVTGeom(t.geom, ST_TileEnvelope(?, ?, ?)) AS geom, t.tags - 'id' AS tags, t.id AS id FROM (SELECT id, tags, geom FROM table) AS t WHERE t.geom IS NOT NULL AND t.geom && ST_TileEnvelope(?, ?, ?, margin => (64.0/4096))) AS mvtGeom) || (SELECT ST_AsMVT(mvtGeom.*, 'b') FROM (SELECT ST_AsMVTGeom(t.geom, ST_TileEnvelope(?, ?, ?)) AS geom, t.tags - 'id' AS tags, t.id AS id FROM (SELECT id, tags, geom FROM table) AS t WHERE t.geom IS NOT NULL AND t.geom && ST_TileEnvelope(?, ?, ?, margin => (64.0/4096))) AS mvtGeom) AS mvtTile",
         query.sql());
   }
+
+  @Test
+  void prepareMetatileQuery() {
+    var tileset = new Tileset();
+    tileset.setMinzoom(0);
+    tileset.setMaxzoom(20);
+    tileset.setVectorLayers(List.of(
+        new TilesetLayer("a", Map.of(), "", 0, 20,
+            List.of(new TilesetQuery(0, 20, "SELECT id, tags, geom FROM table"))),
+        new TilesetLayer("b", Map.of(), "", 0, 20,
+            List.of(new TilesetQuery(0, 20, "SELECT id, tags, geom FROM table")))));
+    var query = PostgresTileStore.prepareMetatileQuery(tileset, 10);
+    assertEquals(
+        "WITH layer0 AS MATERIALIZED (SELECT t.geom, t.tags - 'id' AS tags, t.id AS id FROM (SELECT id, tags, geom FROM table) AS t WHERE t.geom IS NOT NULL AND t.geom && ST_MakeEnvelope(?, ?, ?, ?, 3857)), layer1 AS MATERIALIZED (SELECT t.geom, t.tags - 'id' AS tags, t.id AS id FROM (SELECT id, tags, geom FROM table) AS t WHERE t.geom IS NOT NULL AND t.geom && ST_MakeEnvelope(?, ?, ?, ?, 3857)), tile AS (SELECT x, y, ST_TileEnvelope(?, x, y) AS envelope, ST_TileEnvelope(?, x, y, margin => (64.0/4096)) AS margin FROM generate_series(?, ?) AS x, generate_series(?, ?) AS y) SELECT tile.x, tile.y, (SELECT ST_AsMVT(mvtGeom.*, 'a') FROM (SELECT ST_AsMVTGeom(l.geom, tile.envelope) AS geom, l.tags AS tags, l.id AS id FROM layer0 AS l WHERE l.geom && tile.margin) AS mvtGeom) || (SELECT ST_AsMVT(mvtGeom.*, 'b') FROM (SELECT ST_AsMVTGeom(l.geom, tile.envelope) AS geom, l.tags AS tags, l.id AS id FROM layer1 AS l WHERE l.geom && tile.margin) AS mvtGeom) AS mvtTile FROM tile",
+        query.sql());
+    assertEquals(14, query.parameters());
+  }
+
+  @Test
+  void prepareLayerQueries() {
+    var tileset = new Tileset();
+    tileset.setMinzoom(0);
+    tileset.setMaxzoom(20);
+    tileset.setVectorLayers(List.of(
+        new TilesetLayer("a", Map.of(), "", 0, 20,
+            List.of(new TilesetQuery(0, 20, "SELECT id, tags, geom FROM table"))),
+        new TilesetLayer("b", Map.of(), "", 0, 20,
+            List.of(new TilesetQuery(12, 20, "SELECT id, tags, geom FROM table")))));
+    var queries = PostgresTileStore.prepareLayerQueries(tileset, 10);
+    assertEquals(List.of("a"), List.copyOf(queries.keySet()));
+    assertEquals(
+        "(SELECT ST_AsMVT(mvtGeom.*, 'a') FROM (SELECT ST_AsMVTGeom(t.geom, ST_TileEnvelope(?, ?, ?)) AS geom, t.tags - 'id' AS tags, t.id AS id FROM (SELECT id, tags, geom FROM table) AS t WHERE t.geom IS NOT NULL AND t.geom && ST_TileEnvelope(?, ?, ?, margin => (64.0/4096))) AS mvtGeom)",
+        queries.get("a").sql());
+    assertEquals(6, queries.get("a").parameters());
+  }
 }
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.postgres;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.baremaps.maplibre.tileset.Tileset;
+import org.apache.baremaps.maplibre.tileset.TilesetLayer;
+import org.apache.baremaps.maplibre.tileset.TilesetQuery;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+class PostgresVectorTileStoreTest {
+
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  @Test
+  void prepareQuery() {
+    var tileset = new Tileset();
+    tileset.setMinzoom(0);
+    tileset.setMaxzoom(20);
+    tileset.setVectorLayers(List.of(
+        new TilesetLayer("a", Map.of(), "", 0, 20,
+            List.of(new TilesetQuery(0, 20, "SELECT id, tags, geom FROM table"))),
+        new TilesetLayer("b", Map.of(), "", 0, 20,
+            List.of(new TilesetQuery(12, 20, "SELECT id, tags, geom FROM table"))),
+        new TilesetLayer("c", Map.of(), "", 0, 20,
+            List.of(new TilesetQuery(0, 20, "SELECT id, tags, geom FROM table")))));
+    var query = PostgresVectorTileStore.prepareQuery(tileset, 10);
+    assertEquals(
+        "SELECT 0 AS layer, ST_AsBinary(t.geom) AS geom, t.tags - 'id' AS tags, t.id AS id FROM (SELECT id, tags, geom FROM table) AS t WHERE t.geom IS NOT NULL AND t.geom && ST_MakeEnvelope(?, ?, ?, ?, 3857) UNION ALL SELECT 1 AS layer, ST_AsBinary(t.geom) AS geom, t.tags - 'id' AS tags, t.id AS id FROM (SELECT id, tags, geom FROM table) AS t WHERE t.geom IS NOT NULL AND t.geom && ST_MakeEnvelope(?, ?, ?, ?, 3857)",
+        query.sql());
+    assertEquals(List.of("a", "c"), query.layers());
+    assertEquals(8, query.parameters());
+  }
+
+  @Test
+  void envelope() {
+    var world = PostgresVectorTileStore.envelope(new TileCoord(0, 0, 0));
+    assertEquals(-20037508.342789244, world.getMinX(), 1e-6);
+    assertEquals(20037508.342789244, world.getMaxY(), 1e-6);
+    var tile = PostgresVectorTileStore.envelope(new TileCoord(1, 0, 1));
+    assertEquals(new Envelope(0, 20037508.342789244, 0, 20037508.342789244), tile);
+  }
+
+  @Test
+  void metatileEnvelope() {
+    var envelope = PostgresVectorTileStore.metatileEnvelope(new TileCoord(1, 1, 1).metatile(2));
+    var margin = 20037508.342789244 * 64 / 4096;
+    assertEquals(new Envelope(
+        -20037508.342789244 - margin, 20037508.342789244 + margin,
+        -20037508.342789244 - margin, 20037508.342789244 + margin), envelope);
+  }
+
+  @Test
+  void asTileGeometry() {
+    var envelope = GEOMETRY_FACTORY.toGeometry(new Envelope(0, 4096, 0, 4096));
+
+    // A point is moved to the coordinate space of the tile
+    var point = PostgresVectorTileStore.asTileGeometry(
+        GEOMETRY_FACTORY.createPoint(new Coordinate(10.2, 4000.4)), envelope);
+    assertEquals(GEOMETRY_FACTORY.createPoint(new Coordinate(10, 96)), point);
+
+    // A point outside of the buffer is removed
+    assertNull(PostgresVectorTileStore.asTileGeometry(
+        GEOMETRY_FACTORY.createPoint(new Coordinate(-1000, 10)), envelope));
+
+    // A polygon is clipped to the buffer of the tile
+    var polygon = PostgresVectorTileStore.asTileGeometry(
+        GEOMETRY_FACTORY.toGeometry(new Envelope(-1000, 1000, 1000, 5000)), envelope);
+    assertTrue(polygon instanceof Polygon);
+    assertEquals(new Envelope(-256, 1000, -256, 3096), polygon.getEnvelopeInternal());
+
+    // A line that collapses on the grid is removed
+    assertNull(PostgresVectorTileStore.asTileGeometry(
+        GEOMETRY_FACTORY.createLineString(new Coordinate[] {
+            new Coordinate(100.1, 100.1), new Coordinate(100.2, 100.2)}),
+        envelope));
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.postgres;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import org.apache.baremaps.database.PostgresContainerTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGStatement;
+
+class PreparedStatementCacheTest extends PostgresContainerTest {
+
+  @Test
+  @Tag("integration")
+  void prepareStatement() throws SQLException {
+    var cache = new PreparedStatementCache();
+    try (var connection = dataSource().getConnection()) {
+      for (int i = 0; i < 3; i++) {
+        try (var statement = cache.prepareStatement(connection, "SELECT ?::int")) {
+          assertTrue(statement.unwrap(PGStatement.class).isUseServerPrepare());
+          statement.setInt(1, i);
+          try (var resultSet = statement.executeQuery()) {
+            assertTrue(resultSet.next());
+            assertEquals(i, resultSet.getInt(1));
+          }
+        }
+      }
+    }
+    assertEquals(1, cache.firstUses());
+    assertEquals(2, cache.repeatedUses());
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.tilestore.postgres;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class QueryStatisticsTest {
+
+  @Test
+  void record() {
+    var statistics = new QueryStatistics();
+    statistics.record("b", 3_000_000);
+    statistics.record("a", 1_000_000);
+    statistics.record("a", 3_000_000);
+
+    var a = statistics.get("a");
+    assertEquals(2, a.count());
+    assertEquals(4.0, a.totalTime());
+    assertEquals(3.0, a.maxTime());
+    assertEquals(2.0, a.meanTime());
+    assertEquals(0, statistics.get("c").count());
+    assertEquals(List.of("a", "b"), List.copyOf(statistics.snapshot().keySet()));
+
+    statistics.clear();
+    assertEquals(0, statistics.snapshot().size());
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.workflow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.baremaps.workflow.WorkflowContext.CoordinateMapLayout;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+
+class WorkflowContextTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void selectCoordinateMapLayout() throws Exception {
+    var file = Files.write(directory.resolve("extract.osm.pbf"), new byte[1024]);
+
+    var context = new WorkflowContext(directory.resolve("data"), directory.resolve("auto"));
+    var coordinateMap = context.getCoordinateMap(file);
+    coordinateMap.put(10_000_000_000L, new Coordinate(1, 2));
+    assertEquals(1, coordinateMap.get(10_000_000_000L).getX(), 1e-6);
+    assertTrue(Files.exists(directory.resolve("auto/coordinates-sparse")));
+    assertFalse(Files.exists(directory.resolve("auto/coordinates")));
+
+    var dense = new WorkflowContext(directory.resolve("data"), directory.resolve("dense"));
+    dense.getCoordinateMap(file, CoordinateMapLayout.DENSE);
+    assertTrue(Files.exists(directory.resolve("dense/coordinates")));
+    assertFalse(Files.exists(directory.resolve("dense/coordinates-sparse")));
+  }
+}
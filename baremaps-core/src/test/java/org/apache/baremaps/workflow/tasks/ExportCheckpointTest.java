@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.workflow.tasks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExportCheckpointTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void resume() throws IOException {
+    var path = directory.resolve("tiles.mbtiles.progress");
+    try (var checkpoint = ExportCheckpoint.open(path, "fingerprint", true)) {
+      checkpoint.complete(0);
+      checkpoint.complete(2);
+    }
+    // Simulate a line truncated by a crash
+    Files.writeString(path, "1", StandardOpenOption.APPEND);
+    try (var checkpoint = ExportCheckpoint.open(path, "fingerprint", true)) {
+      assertTrue(checkpoint.isCompleted(0));
+      assertFalse(checkpoint.isCompleted(1));
+      assertTrue(checkpoint.isCompleted(2));
+      assertEquals(2, checkpoint.completedCount());
+      checkpoint.complete(5);
+    }
+    // Simulate a non-numeric fragment
+    Files.writeString(path, "1x", StandardOpenOption.APPEND);
+    try (var checkpoint = ExportCheckpoint.open(path, "fingerprint", true)) {
+      var completed = new ArrayList<Integer>();
+      for (int chunk = 0; chunk < 32; chunk++) {
+        if (checkpoint.isCompleted(chunk)) {
+          completed.add(chunk);
+        }
+      }
+      assertEquals(List.of(0, 2, 5), completed);
+      checkpoint.delete();
+    }
+    assertFalse(Files.exists(path));
+  }
+
+  @Test
+  void restart() throws IOException {
+    var path = directory.resolve("tiles.mbtiles.progress");
+    try (var checkpoint = ExportCheckpoint.open(path, "fingerprint", false)) {
+      checkpoint.complete(0);
+    }
+    try (var checkpoint = ExportCheckpoint.open(path, "fingerprint", false)) {
+      assertEquals(0, checkpoint.completedCount());
+    }
+  }
+
+  @Test
+  void mismatch() throws IOException {
+    var path = directory.resolve("tiles.mbtiles.progress");
+    try (var checkpoint = ExportCheckpoint.open(path, "fingerprint", false)) {
+      checkpoint.complete(0);
+    }
+    assertThrows(IllegalStateException.class,
+        () -> ExportCheckpoint.open(path, "other", true));
+  }
+
+  @Test
+  void completeWrittenChunks() throws IOException {
+    var path = directory.resolve("tiles.mbtiles.progress");
+    try (var checkpoint = ExportCheckpoint.open(path, "fingerprint", false)) {
+      checkpoint.add(0, 10);
+      checkpoint.add(1, 5);
+      checkpoint.seal(0);
+      checkpoint.written(1, 5);
+      assertEquals(0, checkpoint.completedCount());
+
+      // The chunks are completed once sealed and written, in any order
+      checkpoint.written(0, 4);
+      assertFalse(checkpoint.isCompleted(0));
+      checkpoint.written(0, 6);
+      assertTrue(checkpoint.isCompleted(0));
+      assertFalse(checkpoint.isCompleted(1));
+      checkpoint.seal(1);
+      assertTrue(checkpoint.isCompleted(1));
+    }
+  }
+}
@@ -28,8 +28,12 @@ import java.util.Map;
 import org.apache.baremaps.data.collection.AppendOnlyLog;
 import org.apache.baremaps.data.collection.DataConversions;
 import org.apache.baremaps.data.collection.IndexedDataMap;
+import org.apache.baremaps.data.collection.LongLongMonotonicIndex;
+import org.apache.baremaps.data.collection.MemoryAlignedDataMap;
+import org.apache.baremaps.data.collection.MonotonicDataMap;
 import org.apache.baremaps.data.memory.OnHeapMemory;
 import org.apache.baremaps.data.type.CoordinateDataType;
+import org.apache.baremaps.data.type.LonLatDataType;
 import org.apache.baremaps.data.type.LongListDataType;
 import org.apache.baremaps.database.postgres.CoordinateMap;
 import org.apache.baremaps.database.postgres.HeaderRepository;
@@ -119,4 +123,34 @@ class ImportUpdateSampleTest extends PostgresRepositoryTest {
     assertNull(nodeRepository.get(20L));
     assertNull(nodeRepository.get(36L));
   }
+
+  @Test
+  @Tag("integration")
+  void sampleTwoPass() throws Exception {
+    int srid = 4326;
+
+    // Initialize the repositories
+    HeaderRepository headerRepository = new HeaderRepository(dataSource());
+    NodeRepository nodeRepository = new NodeRepository(dataSource());
+    WayRepository wayRepository = new WayRepository(dataSource());
+    RelationRepository relationRepository = new RelationRepository(dataSource());
+
+    // Initialize data maps that support concurrent and monotonic insertions
+    Map<Long, Coordinate> coordinateMap = DataConversions.asMap(
+        new MemoryAlignedDataMap<>(new LonLatDataType(), new OnHeapMemory()));
+    Map<Long, List<Long>> referenceMap = DataConversions.asMap(
+        new MonotonicDataMap<>(
+            new LongLongMonotonicIndex(new OnHeapMemory(), new OnHeapMemory()),
+            new AppendOnlyLog<>(new LongListDataType(), new OnHeapMemory())));
+
+    // Import the sample data
+    ImportOsmPbf.executeTwoPass(TestFiles.SAMPLE_OSM_PBF, coordinateMap, referenceMap,
+        headerRepository, nodeRepository, wayRepository, relationRepository, srid);
+    assertEquals(0, headerRepository.selectLatest().getReplicationSequenceNumber());
+    assertGeometryEquals(NODE_POINT_1, nodeRepository.get(1L).getGeometry(), 100);
+    assertGeometryEquals(WAY_LINESTRING_4, wayRepository.get(4L).getGeometry(), 100);
+    assertGeometryEquals(WAY_POLYGON_9, wayRepository.get(9L).getGeometry(), 100);
+    assertGeometryEquals(RELATION_MULTIPOLYGON_20, relationRepository.get(20L).getGeometry(), 100);
+    assertGeometryEquals(RELATION_MULTIPOLYGON_36, relationRepository.get(36L).getGeometry(), 100);
+  }
 }
@@ -23,6 +23,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.apache.baremaps.data.memory.Memory;
@@ -34,6 +37,19 @@ import org.apache.baremaps.data.type.DataType;
  * log and can be accessed by their position in the {@link Memory}. Appending elements to the log is
  * thread-safe.
  *
+ * <p>
+ * By default, the space of each element is reserved under a lock. In concurrent mode, each writer
+ * thread instead claims a whole chunk of memory with an atomic increment of the offset and appends
+ * its elements to this chunk without synchronization. The elements of a chunk are contiguous, but
+ * the elements of different threads are interleaved by chunk in the memory.
+ *
+ * <p>
+ * In concurrent mode, each chunk starts with a header that holds the end of its elements and their
+ * number. The owner thread updates this header after each append, so that a log opened on a memory
+ * that already contains chunks, such as a memory-mapped directory, recovers its elements and
+ * appends the new ones after them. A log must be reopened in the mode it has been written with, and
+ * only once its writer threads are done.
+ *
  * @param <E> The type of the data.
  */
 public class AppendOnlyLog<E> implements DataCollection<E> {
@@ -46,6 +62,18 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
 
   private Lock lock = new ReentrantLock();
 
+  private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  private static final int CHUNK_HEADER_SIZE = 2 * Long.BYTES;
+
+  private final boolean concurrent;
+  private final long chunkSize;
+  private final AtomicLong chunkOffset = new AtomicLong();
+  private final LongAdder chunkedSize = new LongAdder();
+  private final ConcurrentSkipListMap<Long, Chunk> chunks = new ConcurrentSkipListMap<>();
+  private final ThreadLocal<Chunk> currentChunk = new ThreadLocal<>();
+  private volatile int generation = 0;
+
   /**
    * Constructs an {@link AppendOnlyLog}.
    *
@@ -62,11 +90,51 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
    * @param memory the memory
    */
   public AppendOnlyLog(DataType<E> dataType, Memory<?> memory) {
+    this(dataType, memory, false);
+  }
+
+  /**
+   * Constructs an append only log.
+   *
+   * @param dataType the data type
+   * @param memory the memory
+   * @param concurrent whether the writer threads append to their own chunks without locking
+   */
+  public AppendOnlyLog(DataType<E> dataType, Memory<?> memory, boolean concurrent) {
     this.dataType = dataType;
     this.memory = memory;
     this.segmentSize = memory.segmentSize();
     this.offset = Long.BYTES;
     this.size = memory.segment(0).getLong(0);
+    this.concurrent = concurrent;
+    this.chunkSize = Math.min(DEFAULT_CHUNK_SIZE, segmentSize);
+    if (concurrent) {
+      recoverChunks();
+    }
+  }
+
+  /**
+   * Recovers the chunks already written in the memory from their headers. The chunks are claimed
+   * in increasing order, so the first chunk whose header is empty ends the log.
+   */
+  private void recoverChunks() {
+    long start = 0;
+    while (true) {
+      ByteBuffer segment = memory.segment((int) (start / segmentSize));
+      int base = (int) (start % segmentSize);
+      long limit = segment.getLong(base);
+      if (limit == 0) {
+        break;
+      }
+      long count = segment.getLong(base + Long.BYTES);
+      Chunk chunk = new Chunk(generation, segment, start, start + chunkSize);
+      chunk.limit = limit;
+      chunk.count = count;
+      chunks.put(start, chunk);
+      chunkedSize.add(count);
+      start += chunkSize;
+    }
+    chunkOffset.set(start);
   }
 
   /**
@@ -80,6 +148,9 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
     if (valueSize > segmentSize) {
       throw new DataCollectionException("The value is too big to fit in a segment");
     }
+    if (concurrent) {
+      return addChunked(value, valueSize);
+    }
 
     lock.lock();
     long position = offset;
@@ -101,6 +172,34 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
     return position;
   }
 
+  private long addChunked(E value, int valueSize) {
+    if (valueSize > chunkSize - CHUNK_HEADER_SIZE) {
+      throw new DataCollectionException("The value is too big to fit in a chunk");
+    }
+    Chunk chunk = currentChunk.get();
+    if (chunk == null || chunk.generation != generation || chunk.limit + valueSize > chunk.end) {
+      chunk = claimChunk();
+      currentChunk.set(chunk);
+    }
+    long position = chunk.limit;
+    dataType.write(chunk.segment, (int) (position % segmentSize), value);
+    chunk.count++;
+    chunk.writeHeader(position + valueSize);
+    // Publish the value to the iterators with the volatile write of the limit
+    chunk.limit = position + valueSize;
+    chunkedSize.increment();
+    return position;
+  }
+
+  private Chunk claimChunk() {
+    long start = chunkOffset.getAndAdd(chunkSize);
+    ByteBuffer segment = memory.segment((int) (start / segmentSize));
+    Chunk chunk = new Chunk(generation, segment, start, start + chunkSize);
+    chunk.writeHeader(chunk.limit);
+    chunks.put(start, chunk);
+    return chunk;
+  }
+
   /**
    * Returns a values at the specified position in the memory.
    *
@@ -123,13 +222,19 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
 
   /** {@inheritDoc} */
   public long size() {
-    return size;
+    return concurrent ? chunkedSize.sum() : size;
   }
 
   /** {@inheritDoc} */
   public void clear() {
     try {
       memory.clear();
+      if (concurrent) {
+        generation++;
+        chunks.clear();
+        chunkOffset.set(0);
+        chunkedSize.reset();
+      }
     } catch (IOException e) {
       throw new DataCollectionException(e);
     }
@@ -143,10 +248,45 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
    */
   @Override
   public AppendOnlyLogIterator iterator() {
+    if (concurrent) {
+      return new AppendOnlyLogIterator(chunks.values().stream()
+          .map(chunk -> new long[] {chunk.start, chunk.limit})
+          .toArray(long[][]::new));
+    }
     final long size = size();
     return new AppendOnlyLogIterator(size);
   }
 
+  /**
+   * A chunk of memory claimed by a writer thread in concurrent mode. Only the owner thread writes
+   * to the chunk, and the iterators only read the elements below its limit.
+   */
+  private final class Chunk {
+
+    private final int generation;
+    private final ByteBuffer segment;
+    private final long base;
+    private final long start;
+    private final long end;
+    private volatile long limit;
+    private long count;
+
+    private Chunk(int generation, ByteBuffer segment, long base, long end) {
+      this.generation = generation;
+      this.segment = segment;
+      this.base = base;
+      this.start = base + CHUNK_HEADER_SIZE;
+      this.end = end;
+      this.limit = start;
+    }
+
+    private void writeHeader(long limit) {
+      int offset = (int) (base % segmentSize);
+      segment.putLong(offset, limit);
+      segment.putLong(offset + Long.BYTES, count);
+    }
+  }
+
   /**
    * An iterator over the values of the log that can be used to iterate over the values of the log
    * and to get the current position in the memory.
@@ -159,15 +299,37 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
 
     private long position;
 
+    private final long[][] chunkRanges;
+
+    private int chunkIndex;
+
     private AppendOnlyLogIterator(long size) {
       this.size = size;
+      this.chunkRanges = null;
       index = 0;
       position = Long.BYTES;
     }
 
+    private AppendOnlyLogIterator(long[][] chunkRanges) {
+      this.size = -1;
+      this.chunkRanges = chunkRanges;
+      this.chunkIndex = 0;
+      this.position = chunkRanges.length > 0 ? chunkRanges[0][0] : Long.BYTES;
+    }
+
     @Override
     public boolean hasNext() {
-      return index < size;
+      if (chunkRanges == null) {
+        return index < size;
+      }
+      // Skip the unused tails of the chunks
+      while (chunkIndex < chunkRanges.length && position >= chunkRanges[chunkIndex][1]) {
+        chunkIndex++;
+        if (chunkIndex < chunkRanges.length) {
+          position = chunkRanges[chunkIndex][0];
+        }
+      }
+      return chunkIndex < chunkRanges.length;
     }
 
     @Override
@@ -175,6 +337,12 @@ public class AppendOnlyLog<E> implements DataCollection<E> {
       if (!hasNext()) {
         throw new NoSuchElementException();
       }
+      if (chunkRanges != null) {
+        ByteBuffer segment = memory.segment((int) (position / segmentSize));
+        int segmentOffset = (int) (position % segmentSize);
+        position += dataType.size(segment, segmentOffset);
+        return dataType.read(segment, segmentOffset);
+      }
       long segmentIndex = position / segmentSize;
       long segmentOffset = position % segmentSize;
 
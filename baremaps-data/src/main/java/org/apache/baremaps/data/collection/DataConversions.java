@@ -248,6 +248,16 @@ public class DataConversions {
       return map.put(key, value);
     }
 
+    @Override
+    public V get(Object key) {
+      return map.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return map.containsKey(key);
+    }
+
     @Override
     public Set<Entry<K, V>> entrySet() {
       return new AbstractSet<>() {
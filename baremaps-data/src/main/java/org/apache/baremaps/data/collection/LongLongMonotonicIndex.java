@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.data.collection;
+
+
+
+import java.io.IOException;
+import org.apache.baremaps.data.memory.Memory;
+import org.apache.baremaps.data.memory.OffHeapMemory;
+
+/**
+ * An index that maps monotonically increasing long keys to long positions without boxing.
+ *
+ * <p>
+ * The keys and positions are stored as pairs of longs in a memory. The keys are grouped in chunks
+ * of 256 consecutive values and the index of the first entry of each chunk is stored in a second
+ * memory, so that a lookup only searches the entries of a single chunk.
+ *
+ * <p>
+ * This code has been adapted from Planetiler (Apache license).
+ *
+ * <p>
+ * Copyright (c) Planetiler.
+ */
+public class LongLongMonotonicIndex {
+
+  private static final int CHUNK_SHIFT = 8;
+
+  private static final int ENTRY_SHIFT = 4;
+
+  private static final int OFFSET_SHIFT = 3;
+
+  private final Memory offsets;
+
+  private final Memory entries;
+
+  private final long offsetSegmentShift;
+
+  private final long offsetSegmentMask;
+
+  private final long entrySegmentShift;
+
+  private final long entrySegmentMask;
+
+  private long chunkCount = 0;
+
+  private long size = 0;
+
+  /**
+   * Constructs a {@link LongLongMonotonicIndex} backed by off-heap memory.
+   */
+  public LongLongMonotonicIndex() {
+    this(new OffHeapMemory(), new OffHeapMemory());
+  }
+
+  /**
+   * Constructs a {@link LongLongMonotonicIndex}.
+   *
+   * @param offsets the memory of the chunk offsets
+   * @param entries the memory of the key and position pairs
+   */
+  public LongLongMonotonicIndex(Memory offsets, Memory entries) {
+    if (offsets.segmentSize() < Long.BYTES || entries.segmentSize() < 2 * Long.BYTES) {
+      throw new DataCollectionException("The segment size is too small for the index");
+    }
+    this.offsets = offsets;
+    this.entries = entries;
+    this.offsetSegmentShift = offsets.segmentShift();
+    this.offsetSegmentMask = offsets.segmentMask();
+    this.entrySegmentShift = entries.segmentShift();
+    this.entrySegmentMask = entries.segmentMask();
+  }
+
+  /**
+   * Adds a key and its position to the index. The keys must be added in increasing order.
+   *
+   * @param key the key
+   * @param position the position
+   */
+  public void putLong(long key, long position) {
+    long chunk = key >>> CHUNK_SHIFT;
+    while (chunkCount <= chunk) {
+      writeOffset(chunkCount++, size);
+    }
+    long address = size << ENTRY_SHIFT;
+    var segment = entries.segment((int) (address >>> entrySegmentShift));
+    int offset = (int) (address & entrySegmentMask);
+    segment.putLong(offset, key);
+    segment.putLong(offset + Long.BYTES, position);
+    size++;
+  }
+
+  /**
+   * Returns the position associated with the specified key.
+   *
+   * @param key the key
+   * @return the position, or -1 if the key is not in the index
+   */
+  public long getPosition(long key) {
+    long chunk = key >>> CHUNK_SHIFT;
+    if (key < 0 || chunk >= chunkCount) {
+      return -1;
+    }
+    long lo = readOffset(chunk);
+    long hi = chunk + 1 < chunkCount ? readOffset(chunk + 1) : size;
+    long length = hi - lo;
+    if (length <= 0) {
+      return -1;
+    }
+    // Branch-free search of the last entry whose key is lower than or equal to the key
+    long base = lo;
+    while (length > 1) {
+      long half = length >>> 1;
+      base = keyAt(base + half) <= key ? base + half : base;
+      length -= half;
+    }
+    return keyAt(base) == key ? positionAt(base) : -1;
+  }
+
+  /**
+   * Returns the key of the entry at the specified index.
+   *
+   * @param index the index of the entry
+   * @return the key
+   */
+  public long keyAt(long index) {
+    long address = index << ENTRY_SHIFT;
+    return entries.segment((int) (address >>> entrySegmentShift))
+        .getLong((int) (address & entrySegmentMask));
+  }
+
+  /**
+   * Returns the position of the entry at the specified index.
+   *
+   * @param index the index of the entry
+   * @return the position
+   */
+  public long positionAt(long index) {
+    long address = index << ENTRY_SHIFT;
+    return entries.segment((int) (address >>> entrySegmentShift))
+        .getLong((int) (address & entrySegmentMask) + Long.BYTES);
+  }
+
+  /**
+   * Returns the number of entries in the index.
+   *
+   * @return the number of entries
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Removes all the entries of the index.
+   */
+  public void clear() {
+    try {
+      offsets.clear();
+      entries.clear();
+      chunkCount = 0;
+      size = 0;
+    } catch (IOException e) {
+      throw new DataCollectionException(e);
+    }
+  }
+
+  private void writeOffset(long chunk, long index) {
+    long address = chunk << OFFSET_SHIFT;
+    offsets.segment((int) (address >>> offsetSegmentShift))
+        .putLong((int) (address & offsetSegmentMask), index);
+  }
+
+  private long readOffset(long chunk) {
+    long address = chunk << OFFSET_SHIFT;
+    return offsets.segment((int) (address >>> offsetSegmentShift))
+        .getLong((int) (address & offsetSegmentMask));
+  }
+}
@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import org.apache.baremaps.data.memory.Memory;
 import org.apache.baremaps.data.type.FixedSizeDataType;
+import org.apache.baremaps.data.type.XYDataType;
 
 /**
  * A {@link DataMap} that can hold a large number of fixed-size memory-aligned data elements.
@@ -84,12 +85,42 @@ public class MemoryAlignedDataMap<E> implements DataMap<Long, E> {
   @Override
   public E get(Object key) {
     long position = (long) key << valueShift;
+    if (position < 0 || position >= memory.size()) {
+      return null;
+    }
     int segmentIndex = (int) (position >>> segmentShift);
     int segmentOffset = (int) (position & segmentMask);
     ByteBuffer segment = memory.segment(segmentIndex);
     return dataType.read(segment, segmentOffset);
   }
 
+  /**
+   * Reads the coordinates associated with the specified keys into an array of x and y values. The
+   * keys are read in ascending order so that the memory is accessed sequentially, and the values of
+   * the keys beyond the allocated memory are set to {@code NaN}. The data type of the map must be a
+   * {@link XYDataType}.
+   *
+   * @param keys the keys
+   * @param xy the array of x and y values, of length {@code 2 * keys.length}
+   */
+  public void getAll(long[] keys, double[] xy) {
+    if (!(dataType instanceof XYDataType<?> xyDataType)) {
+      throw new UnsupportedOperationException("The data type does not store coordinates");
+    }
+    long size = memory.size();
+    SortedXYReads.getAll(keys, xy, (key, array, index) -> {
+      long position = key << valueShift;
+      if (position < 0 || position >= size) {
+        array[index] = Double.NaN;
+        array[index + 1] = Double.NaN;
+        return;
+      }
+      int segmentIndex = (int) (position >>> segmentShift);
+      int segmentOffset = (int) (position & segmentMask);
+      xyDataType.readXY(memory.segment(segmentIndex), segmentOffset, array, index);
+    });
+  }
+
   /** {@inheritDoc} */
   @Override
   public boolean containsKey(Object keyObject) {
@@ -22,8 +22,7 @@ package org.apache.baremaps.data.collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import org.apache.baremaps.data.type.LongDataType;
-import org.apache.baremaps.data.type.PairDataType;
+import java.util.stream.LongStream;
 import org.apache.baremaps.data.type.PairDataType.Pair;
 
 /**
@@ -39,22 +38,16 @@ import org.apache.baremaps.data.type.PairDataType.Pair;
  */
 public class MonotonicDataMap<E> implements DataMap<Long, E> {
 
-  private final DataList<Long> offsets;
-  private final DataList<Pair<Long, Long>> keys;
+  private final LongLongMonotonicIndex index;
   private final AppendOnlyLog<E> values;
 
-  private long lastChunk = -1;
-
   /**
-   * Constructs a {@link MonotonicDataMap} with default lists for storing offsets.
+   * Constructs a {@link MonotonicDataMap} with a default index.
    *
    * @param values the buffer of values
    */
   public MonotonicDataMap(AppendOnlyLog<E> values) {
-    this(
-        new MemoryAlignedDataList<>(new LongDataType()),
-        new MemoryAlignedDataList<>(new PairDataType<>(new LongDataType(), new LongDataType())),
-        values);
+    this(new LongLongMonotonicIndex(), values);
   }
 
   /**
@@ -62,12 +55,13 @@ public class MonotonicDataMap<E> implements DataMap<Long, E> {
    *
    * @param keys the list of keys
    * @param values the buffer of values
+   * @deprecated use {@link #MonotonicDataMap(LongLongMonotonicIndex, AppendOnlyLog)} instead. The
+   *             keys of the list are copied in an off-heap index, and the keys put in the map are
+   *             not added to the list.
    */
+  @Deprecated
   public MonotonicDataMap(DataList<Pair<Long, Long>> keys, AppendOnlyLog<E> values) {
-    this(
-        new MemoryAlignedDataList<>(new LongDataType()),
-        keys,
-        values);
+    this(copyOf(keys), values);
   }
 
   /**
@@ -76,76 +70,92 @@ public class MonotonicDataMap<E> implements DataMap<Long, E> {
    * @param offsets the list of offsets
    * @param keys the list of keys
    * @param values the buffer of values
+   * @deprecated use {@link #MonotonicDataMap(LongLongMonotonicIndex, AppendOnlyLog)} instead. The
+   *             offsets are recomputed and the keys of the list are copied in an off-heap index,
+   *             and the keys put in the map are not added to the lists.
    */
+  @Deprecated
   public MonotonicDataMap(DataList<Long> offsets, DataList<Pair<Long, Long>> keys,
       AppendOnlyLog<E> values) {
-    this.offsets = offsets;
-    this.keys = keys;
+    this(copyOf(keys), values);
+  }
+
+  /**
+   * Constructs a {@link MonotonicDataMap}.
+   *
+   * @param index the index of the positions of the values
+   * @param values the buffer of values
+   */
+  public MonotonicDataMap(LongLongMonotonicIndex index, AppendOnlyLog<E> values) {
+    this.index = index;
     this.values = values;
   }
 
+  /**
+   * Copies a list of keys and positions sorted by key in an off-heap index.
+   */
+  private static LongLongMonotonicIndex copyOf(DataList<Pair<Long, Long>> keys) {
+    var index = new LongLongMonotonicIndex();
+    for (long i = 0; i < keys.size(); i++) {
+      var pair = keys.get(i);
+      index.putLong(pair.left(), pair.right());
+    }
+    return index;
+  }
+
   /** {@inheritDoc} */
   public E put(Long key, E value) {
-    long index = keys.size();
-    long chunk = key >>> 8;
-    if (chunk != lastChunk) {
-      while (offsets.size() <= chunk) {
-        offsets.add(index);
-      }
-      lastChunk = chunk;
-    }
     long position = values.addPositioned(value);
-    keys.add(new Pair<>(key, position));
+    index.putLong(key, position);
     return null;
   }
 
+  /**
+   * Appends a value to the map without its key and returns its position. The values can be
+   * appended by several threads if the log of values is in concurrent mode.
+   *
+   * @param value the value
+   * @return the position of the value
+   */
+  public long append(E value) {
+    return values.addPositioned(value);
+  }
+
+  /**
+   * Associates a key with the position of an appended value. The keys must be added in increasing
+   * order.
+   *
+   * @param key the key
+   * @param position the position of the value
+   */
+  public void putPosition(long key, long position) {
+    index.putLong(key, position);
+  }
+
   /** {@inheritDoc} */
   public E get(Object keyObject) {
-    long key = (long) keyObject;
-    long chunk = key >>> 8;
-    if (chunk >= offsets.size()) {
-      return null;
-    }
-    long lo = offsets.get(chunk);
-    long hi =
-        Math.min(
-            keys.size(),
-            chunk >= offsets.size() - 1
-                ? keys.size()
-                : offsets.get(chunk + 1))
-            - 1;
-    while (lo <= hi) {
-      long index = (lo + hi) >>> 1;
-      Pair<Long, Long> pair = keys.get(index);
-      long value = pair.left();
-      if (value < key) {
-        lo = index + 1;
-      } else if (value > key) {
-        hi = index - 1;
-      } else {
-        // found
-        return values.getPositioned(pair.right());
-      }
-    }
-    return null;
+    long position = index.getPosition((long) keyObject);
+    return position < 0 ? null : values.getPositioned(position);
   }
 
   /** {@inheritDoc} */
   @Override
   public Iterator<Long> keyIterator() {
-    return keys.stream().map(Pair::left).iterator();
+    return LongStream.range(0, index.size()).mapToObj(index::keyAt).iterator();
   }
 
   /** {@inheritDoc} */
   @Override
   public Iterator<E> valueIterator() {
-    return keys.stream().map(Pair::right).map(values::getPositioned).iterator();
+    return LongStream.range(0, index.size())
+        .mapToObj(i -> values.getPositioned(index.positionAt(i)))
+        .iterator();
   }
 
   @Override
   public Iterator<Entry<Long, E>> entryIterator() {
-    return keys.stream()
-        .map(p -> Map.entry(p.left(), values.getPositioned(p.right())))
+    return LongStream.range(0, index.size())
+        .mapToObj(i -> Map.entry(index.keyAt(i), values.getPositioned(index.positionAt(i))))
         .iterator();
   }
 
@@ -153,13 +163,13 @@ public class MonotonicDataMap<E> implements DataMap<Long, E> {
   /** {@inheritDoc} */
   @Override
   public long size() {
-    return keys.size();
+    return index.size();
   }
 
   /** {@inheritDoc} */
   @Override
   public boolean containsKey(Object key) {
-    return get(key) != null;
+    return key instanceof Long k && index.getPosition(k) >= 0;
   }
 
   /** {@inheritDoc} */
@@ -171,8 +181,7 @@ public class MonotonicDataMap<E> implements DataMap<Long, E> {
   /** {@inheritDoc} */
   @Override
   public void clear() {
-    offsets.clear();
-    keys.clear();
+    index.clear();
     values.clear();
   }
 
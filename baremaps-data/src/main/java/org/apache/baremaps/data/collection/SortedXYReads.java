@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.data.collection;
+
+
+
+import java.util.Arrays;
+
+/**
+ * Reads the coordinates of many keys in ascending key order, so that the underlying memory is
+ * accessed sequentially, and stores them in the order of the keys.
+ */
+final class SortedXYReads {
+
+  /**
+   * Reads the x and y values associated with a key.
+   */
+  @FunctionalInterface
+  interface XYReader {
+
+    void read(long key, double[] xy, int index);
+  }
+
+  private SortedXYReads() {
+    // Utility class
+  }
+
+  static void getAll(long[] keys, double[] xy, XYReader reader) {
+    if (xy.length < keys.length * 2) {
+      throw new IllegalArgumentException("The array of coordinates is too small");
+    }
+    long[] sorted = keys.clone();
+    Arrays.sort(sorted);
+    double[] sortedXY = new double[sorted.length * 2];
+    for (int i = 0; i < sorted.length; i++) {
+      if (i > 0 && sorted[i] == sorted[i - 1]) {
+        sortedXY[2 * i] = sortedXY[2 * i - 2];
+        sortedXY[2 * i + 1] = sortedXY[2 * i - 1];
+      } else {
+        reader.read(sorted[i], sortedXY, 2 * i);
+      }
+    }
+    for (int i = 0; i < keys.length; i++) {
+      int index = Arrays.binarySearch(sorted, keys[i]);
+      xy[2 * i] = sortedXY[2 * index];
+      xy[2 * i + 1] = sortedXY[2 * index + 1];
+    }
+  }
+}
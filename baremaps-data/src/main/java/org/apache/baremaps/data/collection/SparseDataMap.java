@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.data.collection;
+
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.baremaps.data.memory.Memory;
+import org.apache.baremaps.data.type.FixedSizeDataType;
+import org.apache.baremaps.data.type.XYDataType;
+
+/**
+ * A {@link DataMap} that can hold fixed-size data elements indexed by sparse keys.
+ *
+ * <p>
+ * The keys are split into small pages that are only allocated when a key they contain is written.
+ * The pages are packed contiguously in memory and referenced by a two-level page table, so that
+ * the memory used by the map is proportional to the number of pages touched rather than to the
+ * largest key. Writes of distinct keys can be performed concurrently.
+ */
+public class SparseDataMap<E> implements DataMap<Long, E> {
+
+  private static final int DEFAULT_PAGE_BITS = 8;
+
+  private static final int DIRECTORY_BITS = 16;
+
+  private static final int DIRECTORY_MASK = (1 << DIRECTORY_BITS) - 1;
+
+  private final FixedSizeDataType<E> dataType;
+
+  private final Memory memory;
+
+  private final int valueShift;
+
+  private final int pageBits;
+
+  private final long pageMask;
+
+  private final AtomicLong size = new AtomicLong();
+
+  private volatile Page[][] directories = new Page[0][];
+
+  private long pageCount = 0;
+
+  /**
+   * Constructs a {@link SparseDataMap} with pages of 256 elements.
+   *
+   * @param dataType the data type
+   * @param memory the memory
+   */
+  public SparseDataMap(FixedSizeDataType<E> dataType, Memory memory) {
+    this(dataType, memory, DEFAULT_PAGE_BITS);
+  }
+
+  /**
+   * Constructs a {@link SparseDataMap}.
+   *
+   * @param dataType the data type
+   * @param memory the memory
+   * @param pageBits the number of bits of the keys addressed by a page
+   */
+  public SparseDataMap(FixedSizeDataType<E> dataType, Memory memory, int pageBits) {
+    if ((dataType.size() & -dataType.size()) != dataType.size()) {
+      throw new IllegalArgumentException("The data type size must be a fixed power of 2");
+    }
+    this.valueShift = Integer.numberOfTrailingZeros(dataType.size());
+    if (pageBits < 6) {
+      throw new IllegalArgumentException("A page must hold at least 64 elements");
+    }
+    if ((1L << (pageBits + valueShift)) > memory.segmentSize()) {
+      throw new DataCollectionException("The segment size is too small for the page size");
+    }
+    this.dataType = dataType;
+    this.memory = memory;
+    this.pageBits = pageBits;
+    this.pageMask = (1L << pageBits) - 1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public E put(Long key, E value) {
+    Page page = page(key, true);
+    int index = (int) (key & pageMask);
+    int position = page.offset + (index << valueShift);
+    E previous = page.isSet(index) ? dataType.read(page.segment, position) : null;
+    dataType.write(page.segment, position, value);
+    if (page.set(index)) {
+      size.incrementAndGet();
+    }
+    return previous;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public E get(Object keyObject) {
+    if (!(keyObject instanceof Long key)) {
+      return null;
+    }
+    Page page = page(key, false);
+    int index = (int) (key & pageMask);
+    if (page == null || !page.isSet(index)) {
+      return null;
+    }
+    return dataType.read(page.segment, page.offset + (index << valueShift));
+  }
+
+  /**
+   * Reads the coordinates associated with the specified keys into an array of x and y values. The
+   * keys are read in ascending order so that the pages are accessed sequentially, and the values of
+   * the missing keys are set to {@code NaN}. The data type of the map must be a
+   * {@link XYDataType}.
+   *
+   * @param keys the keys
+   * @param xy the array of x and y values, of length {@code 2 * keys.length}
+   */
+  public void getAll(long[] keys, double[] xy) {
+    if (!(dataType instanceof XYDataType<?> xyDataType)) {
+      throw new UnsupportedOperationException("The data type does not store coordinates");
+    }
+    SortedXYReads.getAll(keys, xy, (key, array, index) -> {
+      Page page = page(key, false);
+      int pageIndex = (int) (key & pageMask);
+      if (page == null || !page.isSet(pageIndex)) {
+        array[index] = Double.NaN;
+        array[index + 1] = Double.NaN;
+      } else {
+        xyDataType.readXY(page.segment, page.offset + (pageIndex << valueShift), array, index);
+      }
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsKey(Object keyObject) {
+    if (!(keyObject instanceof Long key)) {
+      return false;
+    }
+    Page page = page(key, false);
+    return page != null && page.isSet((int) (key & pageMask));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsValue(E value) {
+    Iterator<E> iterator = valueIterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long size() {
+    return size.get();
+  }
+
+  /**
+   * Returns the number of pages allocated by the map.
+   *
+   * @return the number of pages
+   */
+  public synchronized long pageCount() {
+    return pageCount;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void clear() {
+    try {
+      memory.clear();
+      directories = new Page[0][];
+      pageCount = 0;
+      size.set(0);
+    } catch (IOException e) {
+      throw new DataCollectionException(e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterator<Long> keyIterator() {
+    return new KeyIterator();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterator<E> valueIterator() {
+    Iterator<Long> keys = keyIterator();
+    return new Iterator<>() {
+
+      @Override
+      public boolean hasNext() {
+        return keys.hasNext();
+      }
+
+      @Override
+      public E next() {
+        return get(keys.next());
+      }
+    };
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterator<Entry<Long, E>> entryIterator() {
+    Iterator<Long> keys = keyIterator();
+    return new Iterator<>() {
+
+      @Override
+      public boolean hasNext() {
+        return keys.hasNext();
+      }
+
+      @Override
+      public Entry<Long, E> next() {
+        long key = keys.next();
+        return Map.entry(key, get(key));
+      }
+    };
+  }
+
+  private Page page(long key, boolean allocate) {
+    if (key < 0) {
+      if (allocate) {
+        throw new IllegalArgumentException("The key must be positive");
+      }
+      return null;
+    }
+    long pageIndex = key >>> pageBits;
+    long directoryIndex = pageIndex >>> DIRECTORY_BITS;
+    Page[][] current = directories;
+    if (directoryIndex < current.length) {
+      Page[] directory = current[(int) directoryIndex];
+      if (directory != null) {
+        Page page = directory[(int) (pageIndex & DIRECTORY_MASK)];
+        if (page != null) {
+          return page;
+        }
+      }
+    }
+    return allocate ? allocate(pageIndex) : null;
+  }
+
+  private synchronized Page allocate(long pageIndex) {
+    long directoryIndex = pageIndex >>> DIRECTORY_BITS;
+    if (directoryIndex > Integer.MAX_VALUE - 8) {
+      throw new DataCollectionException("The key is too large");
+    }
+    Page[][] current = directories;
+    if (directoryIndex >= current.length) {
+      current = Arrays.copyOf(current, (int) directoryIndex + 1);
+    }
+    Page[] directory = current[(int) directoryIndex];
+    if (directory == null) {
+      directory = new Page[1 << DIRECTORY_BITS];
+      current[(int) directoryIndex] = directory;
+    }
+    int pageOffset = (int) (pageIndex & DIRECTORY_MASK);
+    Page page = directory[pageOffset];
+    if (page == null) {
+      long position = pageCount++ << (pageBits + valueShift);
+      ByteBuffer segment = memory.segment((int) (position >>> memory.segmentShift()));
+      page = new Page(segment, (int) (position & memory.segmentMask()), 1 << pageBits);
+      directory[pageOffset] = page;
+    }
+    // Publish the page table through the volatile field
+    directories = current;
+    return page;
+  }
+
+  /**
+   * A page of elements and the bitmap of the elements that have been written.
+   */
+  private static final class Page {
+
+    private final ByteBuffer segment;
+
+    private final int offset;
+
+    private final AtomicLongArray bitmap;
+
+    private Page(ByteBuffer segment, int offset, int capacity) {
+      this.segment = segment;
+      this.offset = offset;
+      this.bitmap = new AtomicLongArray(capacity >>> 6);
+    }
+
+    private boolean isSet(int index) {
+      return (bitmap.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    private boolean set(int index) {
+      long mask = 1L << index;
+      long word = bitmap.getAndUpdate(index >>> 6, w -> w | mask);
+      return (word & mask) == 0;
+    }
+  }
+
+  /**
+   * Iterates over the keys of the map in ascending order.
+   */
+  private class KeyIterator implements Iterator<Long> {
+
+    private final Page[][] snapshot = directories;
+
+    private long next = -1;
+
+    private long cursor = 0;
+
+    @Override
+    public boolean hasNext() {
+      if (next < 0) {
+        next = advance();
+      }
+      return next >= 0;
+    }
+
+    @Override
+    public Long next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      long key = next;
+      next = -1;
+      return key;
+    }
+
+    private long advance() {
+      long pageSize = 1L << pageBits;
+      long directorySize = 1L << (pageBits + DIRECTORY_BITS);
+      while (cursor >>> (pageBits + DIRECTORY_BITS) < snapshot.length) {
+        Page[] directory = snapshot[(int) (cursor >>> (pageBits + DIRECTORY_BITS))];
+        if (directory == null) {
+          cursor = (cursor / directorySize + 1) * directorySize;
+          continue;
+        }
+        Page page = directory[(int) ((cursor >>> pageBits) & DIRECTORY_MASK)];
+        if (page == null) {
+          cursor = (cursor / pageSize + 1) * pageSize;
+          continue;
+        }
+        int index = (int) (cursor & pageMask);
+        cursor++;
+        if (page.isSet(index)) {
+          return cursor - 1;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /** A base class to manage segments of on-heap, off-heap, or on-disk memory. */
@@ -36,6 +37,8 @@ public abstract class Memory<T extends ByteBuffer> implements Closeable {
 
   protected final List<T> segments = new ArrayList<>();
 
+  private volatile ByteBuffer[] snapshot = new ByteBuffer[0];
+
   /**
    * Constructs a memory with a given segment size.
    *
@@ -84,17 +87,21 @@ public abstract class Memory<T extends ByteBuffer> implements Closeable {
    * @return the segment
    */
   public ByteBuffer segment(int index) {
-    if (segments.size() <= index) {
-      return allocate(index);
-    }
-    ByteBuffer segment = segments.get(index);
-    if (segment == null) {
-      return allocate(index);
+    ByteBuffer[] current = snapshot;
+    if (index < current.length) {
+      ByteBuffer segment = current[index];
+      if (segment != null) {
+        return segment;
+      }
     }
-    return segment;
+    return allocate(index);
   }
 
-  /** The allocation of segments is synchronized to enable access by multiple threads. */
+  /**
+   * The allocation of segments is synchronized to enable access by multiple threads. The allocated
+   * segments are published in a volatile snapshot, so that reads never observe the list of segments
+   * while it grows.
+   */
   private synchronized ByteBuffer allocate(int index) {
     while (segments.size() <= index) {
       segments.add(null);
@@ -104,9 +111,21 @@ public abstract class Memory<T extends ByteBuffer> implements Closeable {
       segment = allocate(index, segmentSize);
       segments.set(index, segment);
     }
+    ByteBuffer[] current = snapshot;
+    if (current.length <= index) {
+      current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+    }
+    current[index] = segment;
+    snapshot = current;
     return segment;
   }
 
+  /** Releases the references to the segments after they have been closed. */
+  protected synchronized void clearSegments() {
+    segments.clear();
+    snapshot = new ByteBuffer[0];
+  }
+
   /** Returns the size of the allocated memory. */
   public long size() {
     return (long) segments.size() * (long) segmentSize;
@@ -83,7 +83,7 @@ public class MemoryMappedDirectory extends Memory<MappedByteBuffer> {
   @Override
   public void clear() throws IOException {
     close();
-    segments.clear();
+    clearSegments();
     FileUtils.deleteRecursively(directory);
   }
 
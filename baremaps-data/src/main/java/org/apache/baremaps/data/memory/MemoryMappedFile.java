@@ -78,7 +78,7 @@ public class MemoryMappedFile extends Memory<MappedByteBuffer> {
   @Override
   public void clear() throws IOException {
     close();
-    segments.clear();
+    clearSegments();
     Files.delete(file);
   }
 }
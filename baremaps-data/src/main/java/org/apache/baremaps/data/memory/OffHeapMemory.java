@@ -48,12 +48,13 @@ public class OffHeapMemory extends Memory<ByteBuffer> {
   /** {@inheritDoc} */
   @Override
   public void close() throws IOException {
-    // Nothing to close
+    // Release the references to the direct buffers so that they can be reclaimed
+    clearSegments();
   }
 
   /** {@inheritDoc} */
   @Override
   public void clear() throws IOException {
-    // Nothing to clean
+    clearSegments();
   }
 }
@@ -23,7 +23,8 @@ import java.nio.ByteBuffer;
 import org.locationtech.jts.geom.Coordinate;
 
 /** A {@link DataType} for reading and writing {@link Coordinate}s in {@link ByteBuffer}s. */
-public class CoordinateDataType extends MemoryAlignedDataType<Coordinate> {
+public class CoordinateDataType extends MemoryAlignedDataType<Coordinate>
+    implements XYDataType<Coordinate> {
 
   /** Constructs a {@link CoordinateDataType}. */
   public CoordinateDataType() {
@@ -44,4 +45,12 @@ public class CoordinateDataType extends MemoryAlignedDataType<Coordinate> {
     double y = buffer.getDouble(position + Double.BYTES);
     return new Coordinate(x, y);
   }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readXY(final ByteBuffer buffer, final int position, final double[] xy,
+      final int index) {
+    xy[index] = buffer.getDouble(position);
+    xy[index + 1] = buffer.getDouble(position + Double.BYTES);
+  }
 }
@@ -26,7 +26,8 @@ import org.locationtech.jts.geom.Coordinate;
  * A {@link DataType} for reading and writing longitude/latitude coordinates in {@link ByteBuffer}s.
  * An integer is used to compress the coordinates to the detriment of precision (centimeters).
  */
-public class LonLatDataType extends MemoryAlignedDataType<Coordinate> {
+public class LonLatDataType extends MemoryAlignedDataType<Coordinate>
+    implements XYDataType<Coordinate> {
 
   private static final double BITS = Math.pow(2, 31);
   private static final long SHIFT = 32;
@@ -67,4 +68,12 @@ public class LonLatDataType extends MemoryAlignedDataType<Coordinate> {
     var value = buffer.getLong(position);
     return new Coordinate(decodeLon(value), decodeLat(value));
   }
+
+  @Override
+  public void readXY(final ByteBuffer buffer, final int position, final double[] xy,
+      final int index) {
+    var value = buffer.getLong(position);
+    xy[index] = decodeLon(value);
+    xy[index + 1] = decodeLat(value);
+  }
 }
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.data.type;
+
+
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DataType} of coordinates whose x and y values can be read as primitives, without
+ * creating coordinate objects.
+ *
+ * @param <E> the type of the coordinates
+ */
+public interface XYDataType<E> {
+
+  /**
+   * Reads the x and y values of the coordinate at the specified position and stores them in the
+   * array at the specified index and the next one.
+   *
+   * @param buffer the buffer
+   * @param position the position of the coordinate
+   * @param xy the array of x and y values
+   * @param index the index of the x value in the array
+   */
+  void readXY(ByteBuffer buffer, int position, double[] xy, int index);
+}
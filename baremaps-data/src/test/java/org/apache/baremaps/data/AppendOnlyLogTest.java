@@ -20,14 +20,19 @@ package org.apache.baremaps.data;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Random;
 import org.apache.baremaps.data.collection.AppendOnlyLog;
+import org.apache.baremaps.data.memory.MemoryMappedDirectory;
 import org.apache.baremaps.data.memory.OffHeapMemory;
 import org.apache.baremaps.data.type.DataType;
 import org.apache.baremaps.data.type.IntegerDataType;
 import org.apache.baremaps.data.type.IntegerListDataType;
+import org.apache.baremaps.data.type.LongDataType;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
@@ -65,6 +70,84 @@ class AppendOnlyLogTest {
     }
   }
 
+  @Test
+  void addConcurrently() throws InterruptedException {
+    var collection = new AppendOnlyLog<>(new LongDataType(), new OffHeapMemory(1 << 10), true);
+    var threads = new ArrayList<Thread>();
+    var positions = new long[8][1 << 16];
+    for (int t = 0; t < positions.length; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < positions[thread].length; i++) {
+          positions[thread][i] = collection.addPositioned(((long) thread << 32) | i);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (var thread : threads) {
+      thread.join();
+    }
+
+    // every value is readable at its position
+    for (int t = 0; t < positions.length; t++) {
+      for (int i = 0; i < positions[t].length; i++) {
+        assertEquals(((long) t << 32) | i, collection.getPositioned(positions[t][i]));
+      }
+    }
+
+    // the iterator sees every value once and the values of a thread in order
+    var next = new int[positions.length];
+    for (long value : collection) {
+      int thread = (int) (value >>> 32);
+      assertEquals(next[thread]++, (int) value);
+    }
+    for (int t = 0; t < positions.length; t++) {
+      assertEquals(positions[t].length, next[t]);
+    }
+    assertEquals(positions.length * (1 << 16), collection.size());
+  }
+
+  @Test
+  void reopenConcurrently(@TempDir Path directory) throws IOException, InterruptedException {
+    var positions = new long[4][1 << 16];
+    try (var memory = new MemoryMappedDirectory(directory, 1 << 20)) {
+      var collection = new AppendOnlyLog<>(new LongDataType(), memory, true);
+      var threads = new ArrayList<Thread>();
+      for (int t = 0; t < positions.length; t++) {
+        int thread = t;
+        threads.add(new Thread(() -> {
+          for (int i = 0; i < positions[thread].length; i++) {
+            positions[thread][i] = collection.addPositioned(((long) thread << 32) | i);
+          }
+        }));
+      }
+      threads.forEach(Thread::start);
+      for (var thread : threads) {
+        thread.join();
+      }
+    }
+
+    try (var memory = new MemoryMappedDirectory(directory, 1 << 20)) {
+      var collection = new AppendOnlyLog<>(new LongDataType(), memory, true);
+      assertEquals(positions.length * (1 << 16), collection.size());
+
+      // the new values are appended after the existing ones
+      long position = collection.addPositioned(-1L);
+      for (int t = 0; t < positions.length; t++) {
+        for (int i = 0; i < positions[t].length; i++) {
+          assertEquals(((long) t << 32) | i, collection.getPositioned(positions[t][i]));
+        }
+      }
+      assertEquals(-1L, collection.getPositioned(position));
+
+      var count = 0;
+      for (long value : collection) {
+        count++;
+      }
+      assertEquals(positions.length * (1 << 16) + 1, count);
+    }
+  }
+
   @ParameterizedTest
   @MethodSource("org.apache.baremaps.data.type.DataTypeProvider#dataTypes")
   void testAllDataTypes(DataType dataType, Object value) {
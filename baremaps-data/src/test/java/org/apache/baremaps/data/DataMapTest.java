@@ -24,11 +24,14 @@ import java.util.Map.Entry;
 import java.util.stream.Stream;
 import org.apache.baremaps.data.collection.*;
 import org.apache.baremaps.data.memory.OffHeapMemory;
+import org.apache.baremaps.data.type.LonLatDataType;
 import org.apache.baremaps.data.type.LongDataType;
 import org.apache.baremaps.data.type.PairDataType;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.locationtech.jts.geom.Coordinate;
 
 class DataMapTest {
 
@@ -160,6 +163,84 @@ class DataMapTest {
     assertEquals(Set.of(10l, 15l, 20l), DataConversions.asMap(map).keySet());;
   }
 
+  @Test
+  void sparseKeys() {
+    var map = new SparseDataMap<>(new LongDataType(), new OffHeapMemory());
+    var keys = List.of(3l, 1_000l, 4_000_000_000l, 4_000_000_001l, 12_000_000_000l);
+    for (long key : keys) {
+      map.put(key, key * 2);
+    }
+    for (long key : keys) {
+      assertEquals(key * 2, map.get(key));
+    }
+    assertNull(map.get(4l));
+    assertNull(map.get(8_000_000_000l));
+    assertEquals(5, map.size());
+    assertEquals(4, map.pageCount());
+    assertEquals(keys, new ArrayList<>(DataConversions.asMap(map).keySet()));
+  }
+
+  @Test
+  void monotonicIndex() {
+    var index = new LongLongMonotonicIndex(new OffHeapMemory(1 << 10), new OffHeapMemory(1 << 10));
+    for (long key = 0; key < 100_000; key += 3) {
+      index.putLong(key, key * 2);
+    }
+    index.putLong(10_000_000_000l, 1);
+    for (long key = 0; key < 100_000; key++) {
+      assertEquals(key % 3 == 0 ? key * 2 : -1, index.getPosition(key));
+    }
+    assertEquals(1, index.getPosition(10_000_000_000l));
+    assertEquals(-1, index.getPosition(10_000_000_001l));
+    assertEquals(-1, index.getPosition(-1));
+    assertEquals(33_335, index.size());
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  void monotonicDataMapOfLists() {
+    var values = new AppendOnlyLog<>(new LongDataType(), new OffHeapMemory());
+    var keys = new MemoryAlignedDataList<>(
+        new PairDataType<>(new LongDataType(), new LongDataType()), new OffHeapMemory());
+    for (long key = 0; key < 1000; key += 2) {
+      keys.add(new PairDataType.Pair<>(key, values.addPositioned(key * 10)));
+    }
+    var map = new MonotonicDataMap<>(new MemoryAlignedDataList<>(new LongDataType()), keys,
+        values);
+    map.put(1000l, 10_000l);
+    assertEquals(501, map.size());
+    for (long key = 0; key <= 1000; key++) {
+      assertEquals(key % 2 == 0 ? key * 10 : null, map.get(key));
+    }
+  }
+
+  @Test
+  void getAllCoordinates() {
+    var dense = new MemoryAlignedDataMap<>(new LonLatDataType(), new OffHeapMemory());
+    var sparse = new SparseDataMap<>(new LonLatDataType(), new OffHeapMemory());
+    for (long key = 0; key < 1000; key += 2) {
+      var coordinate = new Coordinate(key / 10d, key / 20d);
+      dense.put(key, coordinate);
+      sparse.put(key, coordinate);
+    }
+    long[] keys = {998, 4, 10, 4, 3};
+    for (var map : List.of(dense, sparse)) {
+      double[] xy = new double[keys.length * 2];
+      if (map instanceof MemoryAlignedDataMap<Coordinate> denseMap) {
+        denseMap.getAll(keys, xy);
+      } else {
+        ((SparseDataMap<Coordinate>) map).getAll(keys, xy);
+      }
+      for (int i = 0; i < 4; i++) {
+        var expected = map.get(keys[i]);
+        assertEquals(expected.x, xy[2 * i]);
+        assertEquals(expected.y, xy[2 * i + 1]);
+      }
+    }
+    double[] xy = new double[keys.length * 2];
+    sparse.getAll(keys, xy);
+    assertTrue(Double.isNaN(xy[8]));
+  }
 
   static Stream<Arguments> mapProvider() {
     return Stream
@@ -170,11 +251,10 @@ class DataMapTest {
             Arguments.of(new MonotonicFixedSizeDataMap<>(
                 new MemoryAlignedDataList<>(new LongDataType(), new OffHeapMemory()))),
             Arguments.of(new MonotonicDataMap<>(
-                new MemoryAlignedDataList<>(
-                    new PairDataType<>(new LongDataType(), new LongDataType()),
-                    new OffHeapMemory()),
+                new LongLongMonotonicIndex(new OffHeapMemory(), new OffHeapMemory()),
                 new AppendOnlyLog<>(new LongDataType(), new OffHeapMemory()))),
             Arguments.of(new MonotonicPairedDataMap<>(new MemoryAlignedDataList<>(
-                new PairDataType<>(new LongDataType(), new LongDataType())))));
+                new PairDataType<>(new LongDataType(), new LongDataType())))),
+            Arguments.of(new SparseDataMap<>(new LongDataType(), new OffHeapMemory())));
   }
 }
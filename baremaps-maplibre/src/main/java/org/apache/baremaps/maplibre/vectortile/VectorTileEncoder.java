@@ -20,11 +20,18 @@ package org.apache.baremaps.maplibre.vectortile;
 import static org.apache.baremaps.maplibre.vectortile.VectorTileFunctions.*;
 
 import com.google.common.collect.Lists;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import org.apache.baremaps.maplibre.binary.VectorTile;
 import org.locationtech.jts.geom.*;
 
@@ -32,16 +39,72 @@ import org.locationtech.jts.geom.*;
  * A vector tile encoder.
  *
  * This implementation is based on the Vector Tile Specification 2.1.
+ *
+ * <p>
+ * The keys and values of a layer are indexed in hash maps. The tiles can either be encoded as
+ * protobuf messages or written directly in a {@code CodedOutputStream}, in which case the commands
+ * and tags are accumulated in reusable buffers and no intermediate message is created. An encoder
+ * is not thread safe.
  */
 public class VectorTileEncoder {
 
+  private static final int TILE_LAYERS = 3;
+
+  private static final int LAYER_NAME = 1;
+
+  private static final int LAYER_FEATURES = 2;
+
+  private static final int LAYER_KEYS = 3;
+
+  private static final int LAYER_VALUES = 4;
+
+  private static final int LAYER_EXTENT = 5;
+
+  private static final int LAYER_VERSION = 15;
+
+  private static final int FEATURE_ID = 1;
+
+  private static final int FEATURE_TAGS = 2;
+
+  private static final int FEATURE_TYPE = 3;
+
+  private static final int FEATURE_GEOMETRY = 4;
+
+  private static final int VALUE_STRING = 1;
+
+  private static final int VALUE_FLOAT = 2;
+
+  private static final int VALUE_DOUBLE = 3;
+
+  private static final int VALUE_INT = 4;
+
+  private static final int VALUE_BOOL = 7;
+
   private int cx = 0;
 
   private int cy = 0;
 
-  private List<String> keys = new ArrayList<>();
+  private final List<String> keys = new ArrayList<>();
+
+  private final Map<String, Integer> keyIndexes = new HashMap<>();
+
+  private final List<Object> values = new ArrayList<>();
+
+  private final Map<Object, Integer> valueIndexes = new HashMap<>();
+
+  private final IntArray tags = new IntArray();
+
+  private final IntArray commands = new IntArray();
+
+  private long[] featureIds = new long[64];
+
+  private int[] featureTypes = new int[64];
+
+  private int[] featureTagEnds = new int[64];
+
+  private int[] featureCommandEnds = new int[64];
 
-  private List<Object> values = new ArrayList<>();
+  private int[] featureSizes = new int[64];
 
   /**
    * Constructs a vector tile encoder.
@@ -69,8 +132,7 @@ public class VectorTileEncoder {
    * @return The vector tile layer
    */
   public VectorTile.Tile.Layer encodeLayer(Layer layer) {
-    keys = new ArrayList<>();
-    values = new ArrayList<>();
+    clearDictionaries();
 
     VectorTile.Tile.Layer.Builder builder = VectorTile.Tile.Layer.newBuilder();
     builder.setName(layer.getName());
@@ -88,6 +150,195 @@ public class VectorTileEncoder {
     return builder.build();
   }
 
+  /**
+   * Encodes a tile and writes it directly in protobuf format.
+   *
+   * @param tile The tile to encode
+   * @return The bytes of the vector tile
+   */
+  public byte[] encodeTileToBytes(Tile tile) {
+    try {
+      var bytes = new ByteArrayOutputStream();
+      var output = CodedOutputStream.newInstance(bytes);
+      encodeTile(tile, output);
+      output.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Encodes a tile and writes it directly in a protobuf output stream.
+   *
+   * @param tile The tile to encode
+   * @param output The output stream
+   * @throws IOException if an I/O error occurs
+   */
+  public void encodeTile(Tile tile, CodedOutputStream output) throws IOException {
+    for (Layer layer : tile.getLayers()) {
+      output.writeTag(TILE_LAYERS, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      encodeLayer(layer, output);
+    }
+  }
+
+  /**
+   * Encodes a layer and writes it directly in a protobuf output stream, prefixed by its length.
+   *
+   * @param layer The layer to encode
+   * @param output The output stream
+   * @throws IOException if an I/O error occurs
+   */
+  public void encodeLayer(Layer layer, CodedOutputStream output) throws IOException {
+    clearDictionaries();
+    tags.clear();
+    commands.clear();
+
+    // Encode the features in the buffers to compute the size of the layer
+    var features = layer.getFeatures();
+    ensureFeatureCapacity(features.size());
+    int layerSize = CodedOutputStream.computeStringSize(LAYER_NAME, layer.getName());
+    for (int i = 0; i < features.size(); i++) {
+      var feature = features.get(i);
+      int tagStart = tags.size();
+      int commandStart = commands.size();
+      cx = 0;
+      cy = 0;
+      encodeTag(feature.getTags(), tags);
+      encodeGeometry(feature.getGeometry(), commands);
+      featureIds[i] = feature.getId();
+      featureTypes[i] = encodeGeometryType(feature.getGeometry()).getNumber();
+      featureTagEnds[i] = tags.size();
+      featureCommandEnds[i] = commands.size();
+      featureSizes[i] = CodedOutputStream.computeUInt64Size(FEATURE_ID, featureIds[i])
+          + packedSize(FEATURE_TAGS, tags, tagStart, featureTagEnds[i])
+          + CodedOutputStream.computeEnumSize(FEATURE_TYPE, featureTypes[i])
+          + packedSize(FEATURE_GEOMETRY, commands, commandStart, featureCommandEnds[i]);
+      layerSize += CodedOutputStream.computeTagSize(LAYER_FEATURES)
+          + CodedOutputStream.computeUInt32SizeNoTag(featureSizes[i])
+          + featureSizes[i];
+    }
+    for (String key : keys) {
+      layerSize += CodedOutputStream.computeStringSize(LAYER_KEYS, key);
+    }
+    for (Object value : values) {
+      int valueSize = valueSize(value);
+      layerSize += CodedOutputStream.computeTagSize(LAYER_VALUES)
+          + CodedOutputStream.computeUInt32SizeNoTag(valueSize)
+          + valueSize;
+    }
+    layerSize += CodedOutputStream.computeUInt32Size(LAYER_EXTENT, layer.getExtent());
+    layerSize += CodedOutputStream.computeUInt32Size(LAYER_VERSION, 2);
+
+    // Write the fields of the layer in the order of their numbers
+    output.writeUInt32NoTag(layerSize);
+    output.writeString(LAYER_NAME, layer.getName());
+    int tagStart = 0;
+    int commandStart = 0;
+    for (int i = 0; i < features.size(); i++) {
+      output.writeTag(LAYER_FEATURES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      output.writeUInt32NoTag(featureSizes[i]);
+      output.writeUInt64(FEATURE_ID, featureIds[i]);
+      writePacked(output, FEATURE_TAGS, tags, tagStart, featureTagEnds[i]);
+      output.writeEnum(FEATURE_TYPE, featureTypes[i]);
+      writePacked(output, FEATURE_GEOMETRY, commands, commandStart, featureCommandEnds[i]);
+      tagStart = featureTagEnds[i];
+      commandStart = featureCommandEnds[i];
+    }
+    for (String key : keys) {
+      output.writeString(LAYER_KEYS, key);
+    }
+    for (Object value : values) {
+      output.writeTag(LAYER_VALUES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      output.writeUInt32NoTag(valueSize(value));
+      writeValue(output, value);
+    }
+    output.writeUInt32(LAYER_EXTENT, layer.getExtent());
+    output.writeUInt32(LAYER_VERSION, 2);
+  }
+
+  private void clearDictionaries() {
+    keys.clear();
+    keyIndexes.clear();
+    values.clear();
+    valueIndexes.clear();
+  }
+
+  private void ensureFeatureCapacity(int size) {
+    if (featureIds.length < size) {
+      int capacity = Math.max(size, featureIds.length * 2);
+      featureIds = Arrays.copyOf(featureIds, capacity);
+      featureTypes = Arrays.copyOf(featureTypes, capacity);
+      featureTagEnds = Arrays.copyOf(featureTagEnds, capacity);
+      featureCommandEnds = Arrays.copyOf(featureCommandEnds, capacity);
+      featureSizes = Arrays.copyOf(featureSizes, capacity);
+    }
+  }
+
+  private static int packedDataSize(IntArray array, int start, int end) {
+    int size = 0;
+    for (int i = start; i < end; i++) {
+      size += CodedOutputStream.computeUInt32SizeNoTag(array.get(i));
+    }
+    return size;
+  }
+
+  private static int packedSize(int field, IntArray array, int start, int end) {
+    if (start == end) {
+      return 0;
+    }
+    int dataSize = packedDataSize(array, start, end);
+    return CodedOutputStream.computeTagSize(field)
+        + CodedOutputStream.computeUInt32SizeNoTag(dataSize)
+        + dataSize;
+  }
+
+  private static void writePacked(CodedOutputStream output, int field, IntArray array, int start,
+      int end) throws IOException {
+    if (start == end) {
+      return;
+    }
+    output.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    output.writeUInt32NoTag(packedDataSize(array, start, end));
+    for (int i = start; i < end; i++) {
+      output.writeUInt32NoTag(array.get(i));
+    }
+  }
+
+  private static int valueSize(Object object) {
+    if (object instanceof String value) {
+      return CodedOutputStream.computeStringSize(VALUE_STRING, value);
+    } else if (object instanceof Float value) {
+      return CodedOutputStream.computeFloatSize(VALUE_FLOAT, value);
+    } else if (object instanceof Double value) {
+      return CodedOutputStream.computeDoubleSize(VALUE_DOUBLE, value);
+    } else if (object instanceof Integer value) {
+      return CodedOutputStream.computeInt64Size(VALUE_INT, value);
+    } else if (object instanceof Long value) {
+      return CodedOutputStream.computeInt64Size(VALUE_INT, value);
+    } else if (object instanceof Boolean value) {
+      return CodedOutputStream.computeBoolSize(VALUE_BOOL, value);
+    } else {
+      return 0;
+    }
+  }
+
+  private static void writeValue(CodedOutputStream output, Object object) throws IOException {
+    if (object instanceof String value) {
+      output.writeString(VALUE_STRING, value);
+    } else if (object instanceof Float value) {
+      output.writeFloat(VALUE_FLOAT, value);
+    } else if (object instanceof Double value) {
+      output.writeDouble(VALUE_DOUBLE, value);
+    } else if (object instanceof Integer value) {
+      output.writeInt64(VALUE_INT, value);
+    } else if (object instanceof Long value) {
+      output.writeInt64(VALUE_INT, value);
+    } else if (object instanceof Boolean value) {
+      output.writeBool(VALUE_BOOL, value);
+    }
+  }
+
   /**
    * Encodes a Java object into a vector tile value.
    * 
@@ -159,17 +410,19 @@ public class VectorTileEncoder {
    * @param tags The tags of a feature.
    * @param encoding The consumer of the tags.
    */
-  protected void encodeTag(Map<String, Object> tags, Consumer<Integer> encoding) {
+  protected void encodeTag(Map<String, Object> tags, IntConsumer encoding) {
     for (Entry<String, Object> tag : tags.entrySet()) {
-      int keyIndex = keys.indexOf(tag.getKey());
-      if (keyIndex == -1) {
+      Integer keyIndex = keyIndexes.get(tag.getKey());
+      if (keyIndex == null) {
         keyIndex = keys.size();
         keys.add(tag.getKey());
+        keyIndexes.put(tag.getKey(), keyIndex);
       }
-      int valueIndex = values.indexOf(tag.getValue());
-      if (valueIndex == -1) {
+      Integer valueIndex = valueIndexes.get(tag.getValue());
+      if (valueIndex == null) {
         valueIndex = values.size();
         values.add(tag.getValue());
+        valueIndexes.put(tag.getValue(), valueIndex);
       }
       encoding.accept(keyIndex);
       encoding.accept(valueIndex);
@@ -182,7 +435,7 @@ public class VectorTileEncoder {
    * @param geometry The geometry to encode.
    * @param encoding The consumer of commands and parameters.
    */
-  protected void encodeGeometry(Geometry geometry, Consumer<Integer> encoding) {
+  protected void encodeGeometry(Geometry geometry, IntConsumer encoding) {
     if (geometry instanceof Point) {
       encodePoint((Point) geometry, encoding);
     } else if (geometry instanceof MultiPoint) {
@@ -206,7 +459,7 @@ public class VectorTileEncoder {
    * @param point The point to encode.
    * @param encoding The consumer of commands and parameters.
    */
-  protected void encodePoint(Point point, Consumer<Integer> encoding) {
+  protected void encodePoint(Point point, IntConsumer encoding) {
     encoding.accept(command(MOVE_TO, 1));
     Coordinate coordinate = point.getCoordinate();
     int dx = (int) Math.round(coordinate.getX()) - cx;
@@ -223,7 +476,7 @@ public class VectorTileEncoder {
    * @param multiPoint The multipoint to encode.
    * @param encoding The consumer of commands and parameters.
    */
-  protected void encodeMultiPoint(MultiPoint multiPoint, Consumer<Integer> encoding) {
+  protected void encodeMultiPoint(MultiPoint multiPoint, IntConsumer encoding) {
     List<Coordinate> coordinates = List.of(multiPoint.getCoordinates());
     encoding.accept(command(MOVE_TO, coordinates.size()));
     encodeCoordinates(coordinates, encoding);
@@ -235,7 +488,7 @@ public class VectorTileEncoder {
    * @param lineString The linestring to encode.
    * @param encoding The consumer of commands and parameters.
    */
-  protected void encodeLineString(LineString lineString, Consumer<Integer> encoding) {
+  protected void encodeLineString(LineString lineString, IntConsumer encoding) {
     List<Coordinate> coordinates = List.of(lineString.getCoordinates());
     encoding.accept(command(MOVE_TO, 1));
     encodeCoordinates(coordinates.subList(0, 1), encoding);
@@ -250,7 +503,7 @@ public class VectorTileEncoder {
    * @param encoding The consumer of commands and parameters.
    */
   protected void encodeMultiLineString(MultiLineString multiLineString,
-      Consumer<Integer> encoding) {
+      IntConsumer encoding) {
     for (int i = 0; i < multiLineString.getNumGeometries(); i++) {
       Geometry geometry = multiLineString.getGeometryN(i);
       if (geometry instanceof LineString lineString) {
@@ -265,7 +518,7 @@ public class VectorTileEncoder {
    * @param polygon The polygon to encode.
    * @param encoding The consumer of commands and parameters.
    */
-  protected void encodePolygon(Polygon polygon, Consumer<Integer> encoding) {
+  protected void encodePolygon(Polygon polygon, IntConsumer encoding) {
     LinearRing exteriorRing = polygon.getExteriorRing();
     List<Coordinate> exteriorRingCoordinates = List.of(exteriorRing.getCoordinates());
 
@@ -282,7 +535,7 @@ public class VectorTileEncoder {
 
       // Exterior ring must be counter-clockwise
       if (isClockWise(interiorRing)) {
-        interiorRingCoordinates = Lists.reverse(exteriorRingCoordinates);
+        interiorRingCoordinates = Lists.reverse(interiorRingCoordinates);
       }
 
       encodeRing(interiorRingCoordinates, encoding);
@@ -295,7 +548,7 @@ public class VectorTileEncoder {
    * @param coordinates The coordinates of the ring
    * @param encoding The consumer of commands and parameters
    */
-  protected void encodeRing(List<Coordinate> coordinates, Consumer<Integer> encoding) {
+  protected void encodeRing(List<Coordinate> coordinates, IntConsumer encoding) {
     // Move to first point
     List<Coordinate> head = coordinates.subList(0, 1);
     encoding.accept(command(MOVE_TO, 1));
@@ -316,7 +569,7 @@ public class VectorTileEncoder {
    * @param multiPolygon The multipolygon to encode
    * @param encoding The consumer of commands and parameters
    */
-  protected void encodeMultiPolygon(MultiPolygon multiPolygon, Consumer<Integer> encoding) {
+  protected void encodeMultiPolygon(MultiPolygon multiPolygon, IntConsumer encoding) {
     for (int i = 0; i < multiPolygon.getNumGeometries(); i++) {
       Geometry geometry = multiPolygon.getGeometryN(i);
       if (geometry instanceof Polygon polygon) {
@@ -331,7 +584,7 @@ public class VectorTileEncoder {
    * @param coordinates The coordinates to encode
    * @param encoding The consumer of parameters
    */
-  protected void encodeCoordinates(List<Coordinate> coordinates, Consumer<Integer> encoding) {
+  protected void encodeCoordinates(List<Coordinate> coordinates, IntConsumer encoding) {
     for (Coordinate coordinate : coordinates) {
       int dx = (int) Math.round(coordinate.getX()) - cx;
       int dy = (int) Math.round(coordinate.getY()) - cy;
@@ -362,4 +615,34 @@ public class VectorTileEncoder {
   protected static int parameter(int value) {
     return (value << 1) ^ (value >> 31);
   }
+
+  /**
+   * A growable array of ints that is reused across the layers.
+   */
+  private static final class IntArray implements IntConsumer {
+
+    private int[] array = new int[1024];
+
+    private int size = 0;
+
+    @Override
+    public void accept(int value) {
+      if (size == array.length) {
+        array = Arrays.copyOf(array, size * 2);
+      }
+      array[size++] = value;
+    }
+
+    private int get(int index) {
+      return array[index];
+    }
+
+    private int size() {
+      return size;
+    }
+
+    private void clear() {
+      size = 0;
+    }
+  }
 }
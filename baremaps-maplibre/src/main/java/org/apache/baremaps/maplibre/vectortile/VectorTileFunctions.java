@@ -94,11 +94,8 @@ public class VectorTileFunctions {
    * @return The transformed tile
    */
   public static ByteBuffer asVectorTile(Tile vectorTile) {
-    return new VectorTileEncoder()
-        .encodeTile(vectorTile)
-        .toByteString()
-        .asReadOnlyByteBuffer();
-
+    return ByteBuffer.wrap(new VectorTileEncoder().encodeTileToBytes(vectorTile))
+        .asReadOnlyBuffer();
   }
 
   /**
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.maplibre.vectortile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the encoding of a dense synthetic tile with the protobuf builders and with the direct
+ * output of the {@link VectorTileEncoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorTileEncoderBenchmark {
+
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  @Param({"10000"})
+  private int features;
+
+  @Param({"1000"})
+  private int distinctValues;
+
+  private Tile tile;
+
+  private VectorTileEncoder encoder;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    var random = new Random(0);
+    var points = new ArrayList<Feature>();
+    var lines = new ArrayList<Feature>();
+    for (int i = 0; i < features; i++) {
+      points.add(new Feature(i, tags(random),
+          GEOMETRY_FACTORY.createPoint(coordinate(random))));
+      lines.add(new Feature(i, tags(random), line(random)));
+    }
+    tile = new Tile(List.of(
+        new Layer("points", 4096, points),
+        new Layer("lines", 4096, lines)));
+    encoder = new VectorTileEncoder();
+  }
+
+  private Map<String, Object> tags(Random random) {
+    var tags = new HashMap<String, Object>();
+    tags.put("name", "name-" + random.nextInt(distinctValues));
+    tags.put("class", "class-" + random.nextInt(16));
+    tags.put("rank", random.nextInt(distinctValues));
+    tags.put("height", (double) random.nextInt(distinctValues));
+    tags.put("key-" + random.nextInt(64), random.nextBoolean());
+    return tags;
+  }
+
+  private Coordinate coordinate(Random random) {
+    return new Coordinate(random.nextInt(4096), random.nextInt(4096));
+  }
+
+  private Geometry line(Random random) {
+    var coordinates = new Coordinate[16];
+    for (int i = 0; i < coordinates.length; i++) {
+      coordinates[i] = coordinate(random);
+    }
+    return GEOMETRY_FACTORY.createLineString(coordinates);
+  }
+
+  @Benchmark
+  public byte[] builder() {
+    return new VectorTileEncoder().encodeTile(tile).toByteArray();
+  }
+
+  @Benchmark
+  public byte[] direct() {
+    return encoder.encodeTileToBytes(tile);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    var options = new OptionsBuilder()
+        .include(VectorTileEncoderBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
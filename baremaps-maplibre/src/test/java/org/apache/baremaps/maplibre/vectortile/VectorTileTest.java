@@ -17,6 +17,7 @@
 
 package org.apache.baremaps.maplibre.vectortile;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.util.List;
@@ -43,4 +44,27 @@ public class VectorTileTest {
 
     assertEquals(tile, decoded);
   }
+
+  @Test
+  public void encodeDirectly() {
+    var tile = new Tile(List.of(
+        new Layer("points", 4096, List.of(
+            new Feature(0, Map.of(), GEOMETRY_FACTORY.createPoint(new Coordinate(1, 2))),
+            new Feature(1, Map.of("a", 1, "b", "2", "c", 3.0f),
+                GEOMETRY_FACTORY.createPoint(new Coordinate(-1, 3))))),
+        new Layer("lines", 4096, List.of(
+            new Feature(2, Map.of("a", 2L, "d", true, "e", 4.0),
+                GEOMETRY_FACTORY.createLineString(new Coordinate[] {
+                    new Coordinate(0, 0), new Coordinate(300, 200), new Coordinate(10, 5)})),
+            new Feature(Long.MAX_VALUE, Map.of("a", 1, "b", "2"),
+                GEOMETRY_FACTORY.createLineString(new Coordinate[] {
+                    new Coordinate(5, 5), new Coordinate(-300, 20)})))),
+        new Layer("empty", 256, List.of())));
+
+    var encoder = new VectorTileEncoder();
+    var expected = encoder.encodeTile(tile).toByteArray();
+
+    assertArrayEquals(expected, encoder.encodeTileToBytes(tile));
+    assertArrayEquals(expected, encoder.encodeTileToBytes(tile));
+  }
 }
@@ -22,6 +22,7 @@ package org.apache.baremaps.openstreetmap.function;
 import java.util.function.Consumer;
 import org.apache.baremaps.openstreetmap.model.Block;
 import org.apache.baremaps.openstreetmap.model.DataBlock;
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
 import org.apache.baremaps.openstreetmap.model.Entity;
 import org.apache.baremaps.openstreetmap.model.HeaderBlock;
 import org.apache.baremaps.openstreetmap.stream.StreamException;
@@ -31,13 +32,29 @@ public class BlockEntitiesHandler implements Consumer<Block> {
 
   private final Consumer<Entity> consumer;
 
+  private final Consumer<DenseNodeColumns> denseNodesConsumer;
+
   /**
    * Constructs a block consumer that applies the specified consumer to the block entities.
    *
    * @param consumer the entity consumer
    */
   public BlockEntitiesHandler(Consumer<Entity> consumer) {
+    this(consumer, null);
+  }
+
+  /**
+   * Constructs a block consumer that applies the specified consumers to the block entities. When
+   * the dense nodes of a block are stored as columns, the columns are passed to the dense nodes
+   * consumer instead of creating and passing each node to the entity consumer.
+   *
+   * @param consumer the entity consumer
+   * @param denseNodesConsumer the consumer of dense node columns
+   */
+  public BlockEntitiesHandler(Consumer<Entity> consumer,
+      Consumer<DenseNodeColumns> denseNodesConsumer) {
     this.consumer = consumer;
+    this.denseNodesConsumer = denseNodesConsumer;
   }
 
   @Override
@@ -46,7 +63,11 @@ public class BlockEntitiesHandler implements Consumer<Block> {
       consumer.accept(headerBlock.getHeader());
       consumer.accept(headerBlock.getBound());
     } else if (block instanceof DataBlock dataBlock) {
-      dataBlock.getDenseNodes().forEach(consumer);
+      if (denseNodesConsumer != null && dataBlock.getDenseNodeColumns() != null) {
+        denseNodesConsumer.accept(dataBlock.getDenseNodeColumns());
+      } else {
+        dataBlock.getDenseNodes().forEach(consumer);
+      }
       dataBlock.getNodes().forEach(consumer);
       dataBlock.getWays().forEach(consumer);
       dataBlock.getRelations().forEach(consumer);
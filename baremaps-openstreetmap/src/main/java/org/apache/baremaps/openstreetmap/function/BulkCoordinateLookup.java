@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.openstreetmap.function;
+
+/**
+ * A coordinate cache that can look up the coordinates of many nodes at once without creating
+ * {@code Long} and {@code Coordinate} objects. The maps of coordinates passed to the geometry
+ * builders can implement this interface to speed up the construction of ways and relations.
+ */
+public interface BulkCoordinateLookup {
+
+  /**
+   * Looks up the coordinates of the specified nodes. The x and y values of the node {@code i} are
+   * stored at the indexes {@code 2 * i} and {@code 2 * i + 1} of the array, or set to {@code NaN}
+   * if the node is missing.
+   *
+   * @param ids the ids of the nodes
+   * @param xy the array of x and y values, of length {@code 2 * ids.length}
+   */
+  void getAll(long[] ids, double[] xy);
+}
@@ -21,6 +21,7 @@ package org.apache.baremaps.openstreetmap.function;
 
 import java.util.Map;
 import java.util.function.Consumer;
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
 import org.apache.baremaps.openstreetmap.model.Entity;
 import org.apache.baremaps.openstreetmap.model.Node;
 import org.locationtech.jts.geom.Coordinate;
@@ -46,4 +47,18 @@ public class CoordinateMapBuilder implements Consumer<Entity> {
       coordinateMap.put(node.getId(), new Coordinate(node.getLon(), node.getLat()));
     }
   }
+
+  /**
+   * Stores the coordinates of the dense nodes without creating {@code Node} objects.
+   *
+   * @param columns the columns of the dense nodes
+   */
+  public void acceptDenseNodes(DenseNodeColumns columns) {
+    long[] ids = columns.getIds();
+    double[] lons = columns.getLons();
+    double[] lats = columns.getLats();
+    for (int i = 0; i < columns.size(); i++) {
+      coordinateMap.put(ids[i], new Coordinate(lons[i], lats[i]));
+    }
+  }
 }
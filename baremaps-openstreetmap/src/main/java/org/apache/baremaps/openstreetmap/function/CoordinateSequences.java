@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.openstreetmap.function;
+
+import java.util.List;
+import java.util.Map;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * Builds the coordinate sequences of ways from a coordinate cache.
+ */
+final class CoordinateSequences {
+
+  private CoordinateSequences() {
+    // Utility class
+  }
+
+  /**
+   * Returns the sequence of the coordinates of the specified nodes. Missing nodes and consecutive
+   * duplicate coordinates are removed. The coordinates are looked up in bulk when the map
+   * implements {@link BulkCoordinateLookup}.
+   *
+   * @param coordinateMap the coordinate cache
+   * @param ids the ids of the nodes
+   * @return the coordinate sequence
+   */
+  static CoordinateSequence of(Map<Long, Coordinate> coordinateMap, List<Long> ids) {
+    double[] xy = new double[ids.size() * 2];
+    if (coordinateMap instanceof BulkCoordinateLookup lookup) {
+      long[] array = new long[ids.size()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = ids.get(i);
+      }
+      lookup.getAll(array, xy);
+    } else {
+      for (int i = 0; i < ids.size(); i++) {
+        Coordinate coordinate = coordinateMap.get(ids.get(i));
+        xy[2 * i] = coordinate != null ? coordinate.x : Double.NaN;
+        xy[2 * i + 1] = coordinate != null ? coordinate.y : Double.NaN;
+      }
+    }
+
+    // Compact the array in place by removing the missing and duplicate coordinates
+    int size = 0;
+    for (int i = 0; i < ids.size(); i++) {
+      double x = xy[2 * i];
+      double y = xy[2 * i + 1];
+      if (Double.isNaN(x) || Double.isNaN(y)
+          || size > 0 && xy[2 * size - 2] == x && xy[2 * size - 1] == y) {
+        continue;
+      }
+      xy[2 * size] = x;
+      xy[2 * size + 1] = y;
+      size++;
+    }
+    if (size < ids.size()) {
+      double[] compacted = new double[size * 2];
+      System.arraycopy(xy, 0, compacted, 0, compacted.length);
+      xy = compacted;
+    }
+    return new PackedCoordinateSequence.Double(xy, 2, 0);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.openstreetmap.function;
+
+
+import java.util.function.Consumer;
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
+
+/**
+ * A consumer that sets the point geometries of dense nodes as columns of coordinates via side
+ * effects. The coordinates are reprojected in bulk and no geometry object is created.
+ */
+public class DenseNodeGeometryBuilder implements Consumer<DenseNodeColumns> {
+
+  private final int targetSrid;
+
+  private final ProjectionTransformer projectionTransformer;
+
+  /**
+   * Constructs a dense node geometry builder.
+   *
+   * @param targetSrid the SRID of the geometries
+   */
+  public DenseNodeGeometryBuilder(int targetSrid) {
+    this.targetSrid = targetSrid;
+    this.projectionTransformer =
+        targetSrid == 4326 ? null : new ProjectionTransformer(4326, targetSrid);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void accept(DenseNodeColumns columns) {
+    if (projectionTransformer == null) {
+      // The columns of longitudes and latitudes can be shared
+      columns.setGeometries(targetSrid, columns.getLons(), columns.getLats());
+    } else {
+      double[] xs = new double[columns.size()];
+      double[] ys = new double[columns.size()];
+      projectionTransformer.transformCoordinates(columns.getLons(), columns.getLats(), xs, ys);
+      columns.setGeometries(targetSrid, xs, ys);
+    }
+  }
+}
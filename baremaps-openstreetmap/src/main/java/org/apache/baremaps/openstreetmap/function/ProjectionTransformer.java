@@ -78,6 +78,32 @@ public class ProjectionTransformer extends GeometryTransformer {
     return new Coordinate(c2.x, c2.y);
   }
 
+  /**
+   * Reprojects columns of coordinates without creating intermediate coordinate objects.
+   *
+   * @param xs the source x coordinates
+   * @param ys the source y coordinates
+   * @param targetXs the array receiving the target x coordinates
+   * @param targetYs the array receiving the target y coordinates
+   */
+  public void transformCoordinates(double[] xs, double[] ys, double[] targetXs,
+      double[] targetYs) {
+    if (sourceSrid == targetSrid) {
+      System.arraycopy(xs, 0, targetXs, 0, xs.length);
+      System.arraycopy(ys, 0, targetYs, 0, ys.length);
+      return;
+    }
+    ProjCoordinate source = new ProjCoordinate();
+    ProjCoordinate target = new ProjCoordinate();
+    for (int i = 0; i < xs.length; i++) {
+      source.x = Math.max(Math.min(xs[i], max.x), min.x);
+      source.y = Math.max(Math.min(ys[i], max.y), min.y);
+      transform.transform(source, target);
+      targetXs[i] = target.x;
+      targetYs[i] = target.y;
+    }
+  }
+
   @Override
   protected CoordinateSequence transformCoordinates(
       CoordinateSequence coordinateSequence,
@@ -207,21 +207,9 @@ public class RelationMultiPolygonBuilder implements Consumer<Entity> {
   private LineString createLineString(Member member) {
     List<Long> refs = referenceMap.get(member.getRef());
 
-    // Build the coordinate list and remove duplicates.
-    List<Coordinate> list = new ArrayList<>();
-    Coordinate previous = null;
-    for (Long id : refs) {
-      Coordinate coordinate = coordinateMap.get(id);
-
-      // remove duplicate coordinates
-      if (coordinate != null && !coordinate.equals(previous)) {
-        list.add(coordinate);
-        previous = coordinate;
-      }
-    }
-
-    Coordinate[] array = list.toArray(new Coordinate[0]);
-    return GeometryUtils.GEOMETRY_FACTORY_WGS84.createLineString(array);
+    // Build the coordinate sequence and remove duplicates.
+    CoordinateSequence sequence = CoordinateSequences.of(coordinateMap, refs);
+    return GeometryUtils.GEOMETRY_FACTORY_WGS84.createLineString(sequence);
   }
 
   private List<Polygon> combinePolygons(List<Polygon> polygons) {
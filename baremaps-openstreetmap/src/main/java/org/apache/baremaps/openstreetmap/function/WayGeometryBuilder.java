@@ -18,8 +18,6 @@
 package org.apache.baremaps.openstreetmap.function;
 
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import org.apache.baremaps.openstreetmap.model.Entity;
@@ -55,19 +53,9 @@ public class WayGeometryBuilder implements Consumer<Entity> {
   public void accept(Entity entity) {
     if (entity instanceof Way way) {
       try {
-        // Build the coordinate list and remove duplicates.
-        List<Coordinate> list = new ArrayList<>();
-        Coordinate previous = null;
-        for (Long id : way.getNodes()) {
-          Coordinate coordinate = coordinateMap.get(id);
-          if (coordinate != null && !coordinate.equals(previous)) {
-            list.add(coordinate);
-            previous = coordinate;
-          }
-        }
-
-        Coordinate[] array = list.toArray(new Coordinate[0]);
-        LineString line = geometryFactory.createLineString(array);
+        // Build the coordinate sequence and remove duplicates.
+        CoordinateSequence sequence = CoordinateSequences.of(coordinateMap, way.getNodes());
+        LineString line = geometryFactory.createLineString(sequence);
 
         if (!line.isEmpty()) {
           // Ways can be open or closed depending on the geometry or the tags:
@@ -78,7 +66,7 @@ public class WayGeometryBuilder implements Consumer<Entity> {
               || way.getTags().containsKey("barrier")) {
             way.setGeometry(line);
           } else {
-            Polygon polygon = geometryFactory.createPolygon(line.getCoordinates());
+            Polygon polygon = geometryFactory.createPolygon(line.getCoordinateSequence());
             if (polygon.isValid()) {
               way.setGeometry(polygon);
             } else {
@@ -21,6 +21,8 @@ package org.apache.baremaps.openstreetmap.model;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import java.nio.ByteBuffer;
 import java.util.StringJoiner;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -31,7 +33,7 @@ import org.apache.baremaps.osm.binary.Fileformat.BlobHeader;
 public final class Blob {
 
   private final BlobHeader header;
-  private final byte[] rawData;
+  private final ByteBuffer rawData;
   private final int size;
 
   /**
@@ -42,6 +44,18 @@ public final class Blob {
    * @param size the size
    */
   public Blob(BlobHeader header, byte[] rawData, int size) {
+    this(header, ByteBuffer.wrap(rawData), size);
+  }
+
+  /**
+   * Constructs a OpenStreetMap {@code Blob} backed by a buffer, such as a slice of a memory-mapped
+   * file. The buffer is not copied.
+   *
+   * @param header the header
+   * @param rawData the raw data
+   * @param size the size
+   */
+  public Blob(BlobHeader header, ByteBuffer rawData, int size) {
     this.header = header;
     this.rawData = rawData;
     this.size = size;
@@ -64,16 +78,17 @@ public final class Blob {
    * @throws InvalidProtocolBufferException
    */
   public ByteString data() throws DataFormatException, InvalidProtocolBufferException {
-    Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawData);
+    Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawData.duplicate());
     if (blob.hasRaw()) {
       return blob.getRaw();
     } else if (blob.hasZlibData()) {
       byte[] bytes = new byte[blob.getRawSize()];
       Inflater inflater = new Inflater();
-      inflater.setInput(blob.getZlibData().toByteArray());
+      inflater.setInput(blob.getZlibData().asReadOnlyByteBuffer());
       inflater.inflate(bytes);
       inflater.end();
-      return ByteString.copyFrom(bytes);
+      // The inflated bytes are owned by this method and can be wrapped without a copy
+      return UnsafeByteOperations.unsafeWrap(bytes);
     } else {
       throw new DataFormatException("Unsupported toPrimitiveBlock format");
     }
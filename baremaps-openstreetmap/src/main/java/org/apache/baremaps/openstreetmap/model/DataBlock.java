@@ -19,12 +19,14 @@ package org.apache.baremaps.openstreetmap.model;
 
 
 
+import java.util.ArrayList;
 import java.util.List;
 
 /** Represents a data block in an OpenStreetMap dataset. */
 public final class DataBlock extends Block {
 
-  private final List<Node> denseNodes;
+  private final DenseNodeColumns denseNodeColumns;
+  private volatile List<Node> denseNodes;
   private final List<Node> nodes;
   private final List<Way> ways;
   private final List<Relation> relations;
@@ -41,6 +43,7 @@ public final class DataBlock extends Block {
   public DataBlock(Blob blob, List<Node> denseNodes, List<Node> nodes, List<Way> ways,
       List<Relation> relations) {
     super(blob);
+    this.denseNodeColumns = null;
     this.denseNodes = denseNodes;
     this.nodes = nodes;
     this.ways = ways;
@@ -48,12 +51,53 @@ public final class DataBlock extends Block {
   }
 
   /**
-   * Returns the dense nodes.
+   * Constructs an OpenStreetMap {@code DataBlock} whose dense nodes are stored as columns.
+   *
+   * @param blob the blob
+   * @param denseNodeColumns the columns of the dense nodes
+   * @param nodes the nodes
+   * @param ways the ways
+   * @param relations the relations
+   */
+  public DataBlock(Blob blob, DenseNodeColumns denseNodeColumns, List<Node> nodes, List<Way> ways,
+      List<Relation> relations) {
+    super(blob);
+    this.denseNodeColumns = denseNodeColumns;
+    this.nodes = nodes;
+    this.ways = ways;
+    this.relations = relations;
+  }
+
+  /**
+   * Returns the columns of the dense nodes, or null if the dense nodes are stored as objects.
+   *
+   * @return the columns of the dense nodes
+   */
+  public DenseNodeColumns getDenseNodeColumns() {
+    return denseNodeColumns;
+  }
+
+  /**
+   * Returns the dense nodes. If the dense nodes are stored as columns, the nodes are created on the
+   * first call.
    *
    * @return the dense nodes
    */
   public List<Node> getDenseNodes() {
-    return denseNodes;
+    List<Node> result = denseNodes;
+    if (result == null) {
+      synchronized (this) {
+        result = denseNodes;
+        if (result == null) {
+          result = new ArrayList<>(denseNodeColumns.size());
+          for (int i = 0; i < denseNodeColumns.size(); i++) {
+            result.add(denseNodeColumns.getNode(i));
+          }
+          denseNodes = result;
+        }
+      }
+    }
+    return result;
   }
 
   /**
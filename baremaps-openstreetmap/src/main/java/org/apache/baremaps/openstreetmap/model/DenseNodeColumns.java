@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.openstreetmap.model;
+
+
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Represents the dense nodes of a data block as primitive columns. The tags of a node are
+ * represented by a range of indexes in the key and value columns, which refer to the string table
+ * of the block. {@code Node} objects are only created on demand.
+ */
+public final class DenseNodeColumns {
+
+  private final int size;
+  private final long[] ids;
+  private final double[] lons;
+  private final double[] lats;
+  private final int[] versions;
+  private final long[] timestamps;
+  private final long[] changesets;
+  private final int[] uids;
+  private final int[] tagOffsets;
+  private final int[] tagKeys;
+  private final int[] tagValues;
+  private final String[] strings;
+
+  private int srid;
+  private GeometryFactory geometryFactory;
+  private double[] xs;
+  private double[] ys;
+
+  /**
+   * Constructs a {@code DenseNodeColumns} with the specified columns.
+   *
+   * @param size the number of nodes
+   * @param ids the ids
+   * @param lons the longitudes
+   * @param lats the latitudes
+   * @param versions the versions
+   * @param timestamps the timestamps in milliseconds since the epoch
+   * @param changesets the changesets
+   * @param uids the user ids
+   * @param tagOffsets the offsets of the tags of each node (of length {@code size + 1})
+   * @param tagKeys the indexes of the tag keys in the string table
+   * @param tagValues the indexes of the tag values in the string table
+   * @param strings the string table
+   */
+  @SuppressWarnings("squid:S107")
+  public DenseNodeColumns(int size, long[] ids, double[] lons, double[] lats, int[] versions,
+      long[] timestamps, long[] changesets, int[] uids, int[] tagOffsets, int[] tagKeys,
+      int[] tagValues, String[] strings) {
+    this.size = size;
+    this.ids = ids;
+    this.lons = lons;
+    this.lats = lats;
+    this.versions = versions;
+    this.timestamps = timestamps;
+    this.changesets = changesets;
+    this.uids = uids;
+    this.tagOffsets = tagOffsets;
+    this.tagKeys = tagKeys;
+    this.tagValues = tagValues;
+    this.strings = strings;
+  }
+
+  /**
+   * Returns the number of nodes.
+   *
+   * @return the number of nodes
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the ids of the nodes.
+   *
+   * @return the ids
+   */
+  public long[] getIds() {
+    return ids;
+  }
+
+  /**
+   * Returns the longitudes of the nodes.
+   *
+   * @return the longitudes
+   */
+  public double[] getLons() {
+    return lons;
+  }
+
+  /**
+   * Returns the latitudes of the nodes.
+   *
+   * @return the latitudes
+   */
+  public double[] getLats() {
+    return lats;
+  }
+
+  /**
+   * Returns the versions of the nodes.
+   *
+   * @return the versions
+   */
+  public int[] getVersions() {
+    return versions;
+  }
+
+  /**
+   * Returns the timestamps of the nodes in milliseconds since the epoch.
+   *
+   * @return the timestamps
+   */
+  public long[] getTimestamps() {
+    return timestamps;
+  }
+
+  /**
+   * Returns the changesets of the nodes.
+   *
+   * @return the changesets
+   */
+  public long[] getChangesets() {
+    return changesets;
+  }
+
+  /**
+   * Returns the user ids of the nodes.
+   *
+   * @return the user ids
+   */
+  public int[] getUids() {
+    return uids;
+  }
+
+  /**
+   * Returns the offsets of the tags of the nodes. The tags of the node {@code i} are stored between
+   * {@code tagOffsets[i]} (inclusive) and {@code tagOffsets[i + 1]} (exclusive).
+   *
+   * @return the tag offsets
+   */
+  public int[] getTagOffsets() {
+    return tagOffsets;
+  }
+
+  /**
+   * Returns the indexes of the tag keys in the string table.
+   *
+   * @return the tag keys
+   */
+  public int[] getTagKeys() {
+    return tagKeys;
+  }
+
+  /**
+   * Returns the indexes of the tag values in the string table.
+   *
+   * @return the tag values
+   */
+  public int[] getTagValues() {
+    return tagValues;
+  }
+
+  /**
+   * Returns the string table.
+   *
+   * @return the string table
+   */
+  public String[] getStrings() {
+    return strings;
+  }
+
+  /**
+   * Returns true if the node at the specified index has tags.
+   *
+   * @param index the index of the node
+   * @return true if the node has tags
+   */
+  public boolean hasTags(int index) {
+    return tagOffsets[index] < tagOffsets[index + 1];
+  }
+
+  /**
+   * Returns the tags of the node at the specified index.
+   *
+   * @param index the index of the node
+   * @return the tags
+   */
+  public Map<String, Object> getTags(int index) {
+    Map<String, Object> tags = new HashMap<>();
+    for (int t = tagOffsets[index]; t < tagOffsets[index + 1]; t++) {
+      tags.put(strings[tagKeys[t]], strings[tagValues[t]]);
+    }
+    return tags;
+  }
+
+  /**
+   * Returns true if the geometries of the nodes have been set.
+   *
+   * @return true if the geometries have been set
+   */
+  public boolean hasGeometries() {
+    return xs != null && ys != null;
+  }
+
+  /**
+   * Returns the SRID of the geometries of the nodes.
+   *
+   * @return the SRID
+   */
+  public int getSrid() {
+    return srid;
+  }
+
+  /**
+   * Returns the x coordinates of the geometries of the nodes.
+   *
+   * @return the x coordinates
+   */
+  public double[] getXs() {
+    return xs;
+  }
+
+  /**
+   * Returns the y coordinates of the geometries of the nodes.
+   *
+   * @return the y coordinates
+   */
+  public double[] getYs() {
+    return ys;
+  }
+
+  /**
+   * Sets the geometries of the nodes as columns of point coordinates.
+   *
+   * @param srid the SRID of the coordinates
+   * @param xs the x coordinates
+   * @param ys the y coordinates
+   */
+  public void setGeometries(int srid, double[] xs, double[] ys) {
+    this.srid = srid;
+    this.geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+    this.xs = xs;
+    this.ys = ys;
+  }
+
+  /**
+   * Creates the node at the specified index.
+   *
+   * @param index the index of the node
+   * @return the node
+   */
+  public Node getNode(int index) {
+    LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamps[index]),
+        TimeZone.getDefault().toZoneId());
+    Info info = new Info(versions[index], timestamp, changesets[index], uids[index]);
+    Node node = new Node(ids[index], info, getTags(index), lons[index], lats[index]);
+    if (hasGeometries()) {
+      node.setGeometry(geometryFactory.createPoint(new Coordinate(xs[index], ys[index])));
+    }
+    return node;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.openstreetmap.pbf;
+
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import org.apache.baremaps.openstreetmap.model.Blob;
+import org.apache.baremaps.openstreetmap.stream.StreamException;
+import org.apache.baremaps.osm.binary.Fileformat;
+
+/**
+ * An index of the blobs of an OpenStreetMap PBF file. The offsets of the blobs are scanned up front
+ * and the file is memory-mapped in regions that never split a blob, so that each blob can be
+ * sliced and decoded independently without copying its bytes on the heap.
+ */
+class BlobIndex {
+
+  private static final long MAX_REGION_SIZE = 1 << 30;
+
+  private final MappedByteBuffer[] regions;
+
+  private final long[] regionPositions;
+
+  private final long[] blobPositions;
+
+  private final int[] blobRegions;
+
+  private final int size;
+
+  private BlobIndex(MappedByteBuffer[] regions, long[] regionPositions, long[] blobPositions,
+      int[] blobRegions, int size) {
+    this.regions = regions;
+    this.regionPositions = regionPositions;
+    this.blobPositions = blobPositions;
+    this.blobRegions = blobRegions;
+    this.size = size;
+  }
+
+  /**
+   * Scans the blobs of the specified channel and maps the file in memory. The channel can be closed
+   * once the index has been created.
+   *
+   * @param channel the channel
+   * @return the index
+   * @throws IOException
+   */
+  public static BlobIndex scan(FileChannel channel) throws IOException {
+    long fileSize = channel.size();
+    long[] blobPositions = new long[1024];
+    int[] blobRegions = new int[1024];
+    long[] regionPositions = new long[16];
+    long[] regionSizes = new long[16];
+    int blobCount = 0;
+    int regionCount = 0;
+
+    ByteBuffer headerSizeBuffer = ByteBuffer.allocate(Integer.BYTES);
+    long position = 0;
+    while (position < fileSize) {
+      headerSizeBuffer.clear();
+      readFully(channel, headerSizeBuffer, position);
+      int headerSize = headerSizeBuffer.getInt(0);
+      ByteBuffer headerBuffer = ByteBuffer.allocate(headerSize);
+      readFully(channel, headerBuffer, position + Integer.BYTES);
+      headerBuffer.flip();
+      int dataSize = Fileformat.BlobHeader.parseFrom(headerBuffer).getDatasize();
+      long blobSize = (long) Integer.BYTES + headerSize + dataSize;
+
+      // Start a new region if the blob does not fit in the current one
+      if (regionCount == 0
+          || regionSizes[regionCount - 1] + blobSize > MAX_REGION_SIZE) {
+        if (regionCount == regionPositions.length) {
+          regionPositions = Arrays.copyOf(regionPositions, regionCount * 2);
+          regionSizes = Arrays.copyOf(regionSizes, regionCount * 2);
+        }
+        regionPositions[regionCount] = position;
+        regionSizes[regionCount] = 0;
+        regionCount++;
+      }
+      regionSizes[regionCount - 1] += blobSize;
+
+      if (blobCount == blobPositions.length) {
+        blobPositions = Arrays.copyOf(blobPositions, blobCount * 2);
+        blobRegions = Arrays.copyOf(blobRegions, blobCount * 2);
+      }
+      blobPositions[blobCount] = position;
+      blobRegions[blobCount] = regionCount - 1;
+      blobCount++;
+
+      position += blobSize;
+    }
+
+    MappedByteBuffer[] regions = new MappedByteBuffer[regionCount];
+    for (int i = 0; i < regionCount; i++) {
+      regions[i] = channel.map(MapMode.READ_ONLY, regionPositions[i], regionSizes[i]);
+    }
+
+    return new BlobIndex(regions, regionPositions, blobPositions, blobRegions, blobCount);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new StreamException("Unexpected end of file");
+      }
+    }
+  }
+
+  /**
+   * Returns the number of blobs in the index.
+   *
+   * @return the number of blobs
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the blob at the specified index. The data of the blob is a slice of the mapped region
+   * that contains it.
+   *
+   * @param index the index of the blob
+   * @return the blob
+   */
+  public Blob get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    try {
+      int region = blobRegions[index];
+      int offset = (int) (blobPositions[index] - regionPositions[region]);
+      ByteBuffer buffer = regions[region];
+      int headerSize = buffer.getInt(offset);
+      Fileformat.BlobHeader header = Fileformat.BlobHeader.parseFrom(
+          buffer.slice(offset + Integer.BYTES, headerSize));
+      int dataSize = header.getDatasize();
+      ByteBuffer data = buffer.slice(offset + Integer.BYTES + headerSize, dataSize);
+      return new Blob(header, data, Integer.BYTES + headerSize + dataSize);
+    } catch (IOException e) {
+      throw new StreamException(e);
+    }
+  }
+}
@@ -31,6 +31,7 @@ import java.util.function.Consumer;
 import java.util.zip.DataFormatException;
 import org.apache.baremaps.openstreetmap.model.Blob;
 import org.apache.baremaps.openstreetmap.model.DataBlock;
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
 import org.apache.baremaps.openstreetmap.model.Entity;
 import org.apache.baremaps.openstreetmap.model.Info;
 import org.apache.baremaps.openstreetmap.model.Member;
@@ -80,8 +81,7 @@ public class DataBlockReader {
    * @return the data block
    */
   public DataBlock read() {
-    List<Node> denseNodes = new ArrayList<>();
-    readDenseNodes(denseNodes::add);
+    DenseNodeColumns denseNodes = readDenseNodeColumns();
     List<Node> nodes = new ArrayList<>();
     readNodes(nodes::add);
     List<Way> ways = new ArrayList<>();
@@ -151,6 +151,83 @@ public class DataBlockReader {
     }
   }
 
+  /**
+   * Read the dense nodes as primitive columns without creating {@code Node} objects.
+   *
+   * @return the columns of the dense nodes
+   */
+  public DenseNodeColumns readDenseNodeColumns() {
+    int size = 0;
+    int tagCount = 0;
+    for (PrimitiveGroup group : primitiveBlock.getPrimitivegroupList()) {
+      size += group.getDense().getIdCount();
+      tagCount += group.getDense().getKeysValsCount() / 2;
+    }
+
+    long[] ids = new long[size];
+    double[] lons = new double[size];
+    double[] lats = new double[size];
+    int[] versions = new int[size];
+    long[] timestamps = new long[size];
+    long[] changesets = new long[size];
+    int[] uids = new int[size];
+    int[] tagOffsets = new int[size + 1];
+    int[] tagKeys = new int[tagCount];
+    int[] tagValues = new int[tagCount];
+
+    int n = 0;
+    int t = 0;
+    for (PrimitiveGroup group : primitiveBlock.getPrimitivegroupList()) {
+      DenseNodes denseNodes = group.getDense();
+      Osmformat.DenseInfo denseInfo = denseNodes.getDenseinfo();
+      boolean hasInfo = denseInfo.getVersionCount() > 0;
+
+      long id = 0;
+      long lat = 0;
+      long lon = 0;
+      long timestamp = 0;
+      long changeset = 0;
+      int uid = 0;
+
+      // Index into the keysvals array.
+      int j = 0;
+      for (int i = 0; i < denseNodes.getIdCount(); i++) {
+        id = denseNodes.getId(i) + id;
+        lat = denseNodes.getLat(i) + lat;
+        lon = denseNodes.getLon(i) + lon;
+        ids[n] = id;
+        lons[n] = getLon(lon);
+        lats[n] = getLat(lat);
+
+        if (hasInfo) {
+          uid = denseInfo.getUid(i) + uid;
+          timestamp = denseInfo.getTimestamp(i) + timestamp;
+          changeset = denseInfo.getChangeset(i) + changeset;
+          versions[n] = denseInfo.getVersion(i);
+          timestamps[n] = dateGranularity * timestamp;
+          changesets[n] = changeset;
+          uids[n] = uid;
+        }
+
+        // If empty, assume that nothing here has keys or vals.
+        tagOffsets[n] = t;
+        if (denseNodes.getKeysValsCount() > 0) {
+          while (denseNodes.getKeysVals(j) != 0) {
+            tagKeys[t] = denseNodes.getKeysVals(j++);
+            tagValues[t] = denseNodes.getKeysVals(j++);
+            t++;
+          }
+          j++; // Skip over the '0' delimiter.
+        }
+        n++;
+      }
+    }
+    tagOffsets[n] = t;
+
+    return new DenseNodeColumns(size, ids, lons, lats, versions, timestamps, changesets, uids,
+        tagOffsets, tagKeys, tagValues, stringTable);
+  }
+
   /**
    * Read the nodes with the provided consumer.
    *
@@ -17,12 +17,25 @@
 
 package org.apache.baremaps.openstreetmap.pbf;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.apache.baremaps.openstreetmap.function.*;
 import org.apache.baremaps.openstreetmap.model.Block;
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
 import org.apache.baremaps.openstreetmap.stream.ConsumerUtils;
 import org.apache.baremaps.openstreetmap.stream.StreamUtils;
 import org.locationtech.jts.geom.Coordinate;
@@ -32,6 +45,8 @@ public class PbfBlockReader implements PbfReader<Stream<Block>> {
 
   private int buffer = Runtime.getRuntime().availableProcessors();
 
+  private int threads = Runtime.getRuntime().availableProcessors();
+
   private boolean geometry = false;
 
   private int srid = 4326;
@@ -51,6 +66,17 @@ public class PbfBlockReader implements PbfReader<Stream<Block>> {
     return this;
   }
 
+  @Override
+  public int getThreads() {
+    return threads;
+  }
+
+  @Override
+  public PbfBlockReader setThreads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
   @Override
   public boolean getGeometries() {
     return geometry;
@@ -100,7 +126,51 @@ public class PbfBlockReader implements PbfReader<Stream<Block>> {
     var blocks = StreamUtils.bufferInSourceOrder(
         StreamUtils.stream(new BlobIterator(inputStream)),
         new BlobToBlockMapper(),
-        Runtime.getRuntime().availableProcessors());
+        buffer);
+    return handleGeometries(blocks);
+  }
+
+  /**
+   * Creates an ordered stream of blocks from a memory-mapped file. The offsets of the blobs are
+   * scanned up front and the blobs are decoded in source order by a dedicated pool of threads, so
+   * that decoding does not compete with the other users of the common pool.
+   *
+   * @param path the path of the file
+   * @return a stream of blocks
+   * @throws IOException
+   */
+  @Override
+  public Stream<Block> read(Path path) throws IOException {
+    return handleGeometries(read(path, Function.identity()));
+  }
+
+  /**
+   * Creates an ordered stream of the results of a function applied to the blocks of a
+   * memory-mapped file. The function is applied by the pool of threads that decodes the blocks,
+   * without handling the geometries, and its results are returned in source order.
+   *
+   * @param path the path of the file
+   * @param mapper the function applied to each block
+   * @param <T> the type of the results
+   * @return a stream of results
+   * @throws IOException
+   */
+  public <T> Stream<T> read(Path path, Function<Block, T> mapper) throws IOException {
+    BlobIndex index;
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      index = BlobIndex.scan(channel);
+    }
+    var executor = createExecutor(threads);
+    var blobToBlockMapper = new BlobToBlockMapper();
+    return StreamUtils.bufferInSourceOrder(
+        IntStream.range(0, index.size()).boxed(),
+        i -> mapper.apply(blobToBlockMapper.apply(index.get(i))),
+        Math.max(buffer, threads),
+        executor)
+        .onClose(executor::shutdownNow);
+  }
+
+  private Stream<Block> handleGeometries(Stream<Block> blocks) {
     if (geometry) {
       // Initialize and chain the entity handlers
       var coordinateMapBuilder = new CoordinateMapBuilder(coordinateMap);
@@ -112,10 +182,35 @@ public class PbfBlockReader implements PbfReader<Stream<Block>> {
           .andThen(entityGeometryBuilder)
           .andThen(entityProjectionTransformer);
 
+      // Handle the dense nodes as columns to avoid creating node objects
+      var denseNodeGeometryBuilder = new DenseNodeGeometryBuilder(srid);
+      Consumer<DenseNodeColumns> denseNodesHandler = columns -> {
+        coordinateMapBuilder.acceptDenseNodes(columns);
+        denseNodeGeometryBuilder.accept(columns);
+      };
+
       // Initialize the block mapper
-      var blockMapper = ConsumerUtils.consumeThenReturn(new BlockEntitiesHandler(entityHandler));
+      var blockMapper = ConsumerUtils.consumeThenReturn(
+          new BlockEntitiesHandler(entityHandler, denseNodesHandler));
       blocks = blocks.map(blockMapper);
     }
     return blocks;
   }
+
+  /**
+   * Creates a pool of daemon threads for decoding blobs. Idle threads are released, so that an
+   * unclosed stream does not retain them.
+   */
+  private static ThreadPoolExecutor createExecutor(int threads) {
+    var counter = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      var thread = new Thread(runnable, "pbf-decoder-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    var executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), threadFactory);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
 }
@@ -19,10 +19,13 @@ package org.apache.baremaps.openstreetmap.pbf;
 
 
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
+import org.apache.baremaps.openstreetmap.model.Block;
 import org.apache.baremaps.openstreetmap.model.DataBlock;
 import org.apache.baremaps.openstreetmap.model.Entity;
 import org.apache.baremaps.openstreetmap.model.HeaderBlock;
@@ -52,6 +55,17 @@ public class PbfEntityReader implements PbfReader<Stream<Entity>> {
     return this;
   }
 
+  @Override
+  public int getThreads() {
+    return reader.getThreads();
+  }
+
+  @Override
+  public PbfEntityReader setThreads(int threads) {
+    reader.setThreads(threads);
+    return this;
+  }
+
   @Override
   public boolean getGeometries() {
     return reader.getGeometries();
@@ -104,7 +118,23 @@ public class PbfEntityReader implements PbfReader<Stream<Entity>> {
    */
   @Override
   public Stream<Entity> read(InputStream inputStream) {
-    return reader.read(inputStream).flatMap(block -> {
+    return flatten(reader.read(inputStream));
+  }
+
+  /**
+   * Creates an ordered stream of entities from a memory-mapped file.
+   *
+   * @param path the path of the file
+   * @return a stream of entities
+   * @throws IOException
+   */
+  @Override
+  public Stream<Entity> read(Path path) throws IOException {
+    return flatten(reader.read(path));
+  }
+
+  private Stream<Entity> flatten(Stream<Block> blocks) {
+    return blocks.flatMap(block -> {
       try {
         Stream.Builder<Entity> entities = Stream.builder();
         if (block instanceof HeaderBlock headerBlock) {
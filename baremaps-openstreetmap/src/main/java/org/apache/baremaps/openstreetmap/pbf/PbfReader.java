@@ -19,6 +19,8 @@ package org.apache.baremaps.openstreetmap.pbf;
 
 
 
+import java.io.IOException;
+import java.nio.file.Path;
 import org.apache.baremaps.openstreetmap.OpenStreetMap.EntityReader;
 
 public interface PbfReader<T> extends EntityReader<T> {
@@ -38,4 +40,29 @@ public interface PbfReader<T> extends EntityReader<T> {
    */
   PbfReader<T> setBuffer(int buffer);
 
+  /**
+   * Gets the number of threads used to decode the blobs of memory-mapped files.
+   *
+   * @return the number of threads
+   */
+  int getThreads();
+
+  /**
+   * Sets the number of threads used to decode the blobs of memory-mapped files.
+   *
+   * @param threads the number of threads
+   * @return the reader
+   */
+  PbfReader<T> setThreads(int threads);
+
+  /**
+   * Reads the specified file by memory-mapping it and decoding its blobs in parallel on a dedicated
+   * pool of threads. The returned stream should be closed to release the threads.
+   *
+   * @param path the path of the file
+   * @return the result
+   * @throws IOException
+   */
+  T read(Path path) throws IOException;
+
 }
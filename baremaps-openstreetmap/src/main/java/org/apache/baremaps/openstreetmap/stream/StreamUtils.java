@@ -25,6 +25,8 @@ import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -138,6 +140,7 @@ public class StreamUtils {
    * @param stream
    * @param asyncMapper
    * @param bufferSize
+   * @param executor
    * @param <T>
    * @return a buffered stream
    */
@@ -145,9 +148,10 @@ public class StreamUtils {
       Stream<T> stream,
       Function<T, U> asyncMapper,
       CompletionOrder completionOrder,
-      int bufferSize) {
+      int bufferSize,
+      Executor executor) {
     Stream<CompletableFuture<U>> asyncStream =
-        stream.map(t -> CompletableFuture.supplyAsync(() -> asyncMapper.apply(t)));
+        stream.map(t -> CompletableFuture.supplyAsync(() -> asyncMapper.apply(t), executor));
     return buffer(asyncStream, completionOrder, bufferSize).map(f -> {
       try {
         return f.get();
@@ -173,7 +177,8 @@ public class StreamUtils {
       Stream<T> stream,
       Function<T, U> asyncMapper,
       int bufferSize) {
-    return buffer(stream, asyncMapper, InCompletionOrder.INSTANCE, bufferSize);
+    return buffer(stream, asyncMapper, InCompletionOrder.INSTANCE, bufferSize,
+        ForkJoinPool.commonPool());
   }
 
   /**
@@ -189,7 +194,26 @@ public class StreamUtils {
       Stream<T> stream,
       Function<T, U> asyncMapper,
       int bufferSize) {
-    return buffer(stream, asyncMapper, InSourceOrder.INSTANCE, bufferSize);
+    return bufferInSourceOrder(stream, asyncMapper, bufferSize, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Buffer the asynchronous mapping of the provided stream according to a buffer size. The mapping
+   * is executed by the provided executor instead of the common pool.
+   *
+   * @param stream
+   * @param asyncMapper
+   * @param bufferSize
+   * @param executor
+   * @param <T>
+   * @return a buffered stream
+   */
+  public static <T, U> Stream<U> bufferInSourceOrder(
+      Stream<T> stream,
+      Function<T, U> asyncMapper,
+      int bufferSize,
+      Executor executor) {
+    return buffer(stream, asyncMapper, InSourceOrder.INSTANCE, bufferSize, executor);
   }
 
   /** Partition the provided stream according to a partition size. */
@@ -24,13 +24,17 @@ import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
+import org.apache.baremaps.openstreetmap.model.Block;
 import org.apache.baremaps.openstreetmap.model.Bound;
+import org.apache.baremaps.openstreetmap.model.DataBlock;
+import org.apache.baremaps.openstreetmap.model.DenseNodeColumns;
 import org.apache.baremaps.openstreetmap.model.Entity;
 import org.apache.baremaps.openstreetmap.model.Header;
 import org.apache.baremaps.openstreetmap.model.Node;
 import org.apache.baremaps.openstreetmap.model.Relation;
 import org.apache.baremaps.openstreetmap.model.State;
 import org.apache.baremaps.openstreetmap.model.Way;
+import org.apache.baremaps.openstreetmap.pbf.PbfBlockReader;
 import org.apache.baremaps.openstreetmap.pbf.PbfEntityReader;
 import org.apache.baremaps.openstreetmap.state.StateReader;
 import org.apache.baremaps.openstreetmap.xml.XmlEntityReader;
@@ -57,6 +61,37 @@ class OsmSampleTest {
     }
   }
 
+  @Test
+  void sampleOsmPbfMapped() throws IOException {
+    try (Stream<Entity> stream =
+        new PbfEntityReader().setThreads(2).read(TestFiles.SAMPLE_OSM_PBF)) {
+      process(stream, 1, 1, 27, 7, 2);
+    }
+  }
+
+  @Test
+  void sampleOsmPbfDenseNodeColumns() throws IOException {
+    try (Stream<Block> blocks = new PbfBlockReader().read(TestFiles.SAMPLE_OSM_PBF)) {
+      AtomicLong denseNodes = new AtomicLong(0);
+      blocks.forEach(block -> {
+        if (block instanceof DataBlock dataBlock) {
+          DenseNodeColumns columns = dataBlock.getDenseNodeColumns();
+          Assertions.assertNotNull(columns);
+          Assertions.assertEquals(columns.size(), dataBlock.getDenseNodes().size());
+          for (int i = 0; i < columns.size(); i++) {
+            Node node = dataBlock.getDenseNodes().get(i);
+            Assertions.assertEquals(columns.getIds()[i], node.getId());
+            Assertions.assertEquals(columns.getLons()[i], node.getLon());
+            Assertions.assertEquals(columns.getLats()[i], node.getLat());
+            Assertions.assertEquals(columns.hasTags(i), !node.getTags().isEmpty());
+          }
+          denseNodes.addAndGet(columns.size());
+        }
+      });
+      Assertions.assertEquals(27, denseNodes.get());
+    }
+  }
+
   @Test
   void sampleOsmXml() throws IOException {
     try (InputStream inputStream = Files.newInputStream(TestFiles.SAMPLE_OSM_XML)) {
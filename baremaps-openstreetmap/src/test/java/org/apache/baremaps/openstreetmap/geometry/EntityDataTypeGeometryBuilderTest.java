@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.apache.baremaps.openstreetmap.function.BulkCoordinateLookup;
 import org.apache.baremaps.openstreetmap.function.EntityGeometryBuilder;
 import org.apache.baremaps.openstreetmap.model.Info;
 import org.apache.baremaps.openstreetmap.model.Member;
@@ -159,6 +160,23 @@ class EntityDataTypeGeometryBuilderTest {
   static final EntityGeometryBuilder GEOMETRY_BUILDER =
       new EntityGeometryBuilder(COORDINATE_CACHE, REFERENCE_CACHE);
 
+  static class BulkCoordinateCache extends HashMap<Long, Coordinate>
+      implements BulkCoordinateLookup {
+
+    BulkCoordinateCache(Map<Long, Coordinate> coordinates) {
+      super(coordinates);
+    }
+
+    @Override
+    public void getAll(long[] ids, double[] xy) {
+      for (int i = 0; i < ids.length; i++) {
+        Coordinate coordinate = get(ids[i]);
+        xy[2 * i] = coordinate != null ? coordinate.x : Double.NaN;
+        xy[2 * i + 1] = coordinate != null ? coordinate.y : Double.NaN;
+      }
+    }
+  }
+
   @Test
   void handleNode() {
     GEOMETRY_BUILDER.accept(NODE_0);
@@ -181,6 +199,23 @@ class EntityDataTypeGeometryBuilderTest {
     assertInstanceOf(Polygon.class, WAY_2.getGeometry());
   }
 
+  @Test
+  void handleWithBulkLookup() {
+    var bulkBuilder =
+        new EntityGeometryBuilder(new BulkCoordinateCache(COORDINATE_CACHE), REFERENCE_CACHE);
+    for (var way : List.of(WAY_1, WAY_2, WAY_3)) {
+      var copy = new Way(way.getId(), INFO, way.getTags(), way.getNodes());
+      GEOMETRY_BUILDER.accept(way);
+      bulkBuilder.accept(copy);
+      assertTrue(way.getGeometry().equalsExact(copy.getGeometry()));
+    }
+    var copy = new Relation(RELATION_5.getId(), INFO, RELATION_5.getTags(),
+        RELATION_5.getMembers());
+    GEOMETRY_BUILDER.accept(RELATION_5);
+    bulkBuilder.accept(copy);
+    assertTrue(RELATION_5.getGeometry().equalsExact(copy.getGeometry()));
+  }
+
   @Test
   void handleRelation() {
     GEOMETRY_BUILDER.accept(RELATION_0);
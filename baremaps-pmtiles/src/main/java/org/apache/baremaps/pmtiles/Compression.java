@@ -21,13 +21,30 @@ import java.io.*;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
-enum Compression {
+/** The compression of the tiles and of the directories of a PMTiles archive. */
+public enum Compression {
   UNKNOWN,
   NONE,
   GZIP,
   BROTLI,
   ZSTD;
 
+  /**
+   * Returns the HTTP content coding of the data compressed with this compression.
+   *
+   * @return the content coding, or null if the data is not compressed
+   * @throws IllegalStateException if the compression is unknown
+   */
+  public String contentEncoding() {
+    return switch (this) {
+      case NONE -> null;
+      case GZIP -> "gzip";
+      case BROTLI -> "br";
+      case ZSTD -> "zstd";
+      default -> throw new IllegalStateException("The compression of the data is unknown");
+    };
+  }
+
   InputStream decompress(InputStream inputStream) throws IOException {
     return switch (this) {
       case NONE -> inputStream;
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.pmtiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A decoded directory of a PMTiles archive. The entries are stored in primitive arrays so that the
+ * directories can be cached and searched without allocating objects.
+ */
+final class Directory {
+
+  private final long[] tileIds;
+
+  private final long[] offsets;
+
+  private final long[] lengths;
+
+  private final long[] runLengths;
+
+  private Directory(long[] tileIds, long[] offsets, long[] lengths, long[] runLengths) {
+    this.tileIds = tileIds;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.runLengths = runLengths;
+  }
+
+  /**
+   * Decodes a directory.
+   *
+   * @param input the decompressed input stream of the directory
+   * @return the directory
+   * @throws IOException
+   */
+  static Directory deserialize(InputStream input) throws IOException {
+    int size = (int) PMTiles.readVarInt(input);
+    var tileIds = new long[size];
+    var offsets = new long[size];
+    var lengths = new long[size];
+    var runLengths = new long[size];
+    long lastId = 0;
+    for (int i = 0; i < size; i++) {
+      lastId += PMTiles.readVarInt(input);
+      tileIds[i] = lastId;
+    }
+    for (int i = 0; i < size; i++) {
+      runLengths[i] = PMTiles.readVarInt(input);
+    }
+    for (int i = 0; i < size; i++) {
+      lengths[i] = PMTiles.readVarInt(input);
+    }
+    for (int i = 0; i < size; i++) {
+      long value = PMTiles.readVarInt(input);
+      if (value == 0 && i > 0) {
+        offsets[i] = offsets[i - 1] + lengths[i - 1];
+      } else {
+        offsets[i] = value - 1;
+      }
+    }
+    return new Directory(tileIds, offsets, lengths, runLengths);
+  }
+
+  /**
+   * Returns the index of the entry that addresses a tile, with the same semantics as
+   * {@link PMTiles#findTile(java.util.List, long)}.
+   *
+   * @param tileId the tile id
+   * @return the index of the entry, or -1 if no entry addresses the tile
+   */
+  int find(long tileId) {
+    int m = 0;
+    int n = tileIds.length - 1;
+    while (m <= n) {
+      int k = (n + m) >>> 1;
+      long cmp = tileId - tileIds[k];
+      if (cmp > 0) {
+        m = k + 1;
+      } else if (cmp < 0) {
+        n = k - 1;
+      } else {
+        return k;
+      }
+    }
+    if (n >= 0 && (runLengths[n] == 0 || tileId - tileIds[n] < runLengths[n])) {
+      return n;
+    }
+    return -1;
+  }
+
+  int size() {
+    return tileIds.length;
+  }
+
+  long offset(int index) {
+    return offsets[index];
+  }
+
+  long length(int index) {
+    return lengths[index];
+  }
+
+  long runLength(int index) {
+    return runLengths[index];
+  }
+
+  /**
+   * Returns the approximate number of bytes used by the directory.
+   *
+   * @return the size in bytes
+   */
+  int weight() {
+    return 32 + tileIds.length * 4 * Long.BYTES;
+  }
+}
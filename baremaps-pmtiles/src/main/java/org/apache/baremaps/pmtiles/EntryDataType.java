@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.pmtiles;
+
+import java.nio.ByteBuffer;
+import org.apache.baremaps.data.type.FixedSizeDataType;
+
+/** A {@code DataType} for reading and writing the entries of a directory in buffers. */
+class EntryDataType extends FixedSizeDataType<Entry> {
+
+  public EntryDataType() {
+    super(4 * Long.BYTES);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(ByteBuffer buffer, int position, Entry value) {
+    buffer.putLong(position, value.getTileId());
+    buffer.putLong(position + Long.BYTES, value.getOffset());
+    buffer.putLong(position + 2 * Long.BYTES, value.getLength());
+    buffer.putLong(position + 3 * Long.BYTES, value.getRunLength());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry read(ByteBuffer buffer, int position) {
+    return new Entry(
+        buffer.getLong(position),
+        buffer.getLong(position + Long.BYTES),
+        buffer.getLong(position + 2 * Long.BYTES),
+        buffer.getLong(position + 3 * Long.BYTES));
+  }
+}
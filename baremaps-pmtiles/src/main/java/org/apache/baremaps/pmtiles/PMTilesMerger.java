@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.pmtiles;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the PMTiles archives produced by the workers of a distributed export into a single
+ * archive.
+ *
+ * <p>
+ * The shards must contain disjoint sets of tiles. Their directories are streamed and merged in the
+ * order of the tile ids, so that the merged archive is clustered, and the tile contents are copied
+ * from the mapped shards to a {@link PMTilesWriter}, which coalesces the runs of identical tiles
+ * and deduplicates the small contents across shards.
+ */
+public class PMTilesMerger {
+
+  private PMTilesMerger() {
+    // Prevent instantiation
+  }
+
+  /**
+   * Merges the specified shards into the target archive. The metadata and the center of the merged
+   * archive are those of the first shard, and its bounds and zoom levels cover those of all the
+   * shards.
+   *
+   * @param shards the paths of the shards
+   * @param target the path of the merged archive
+   * @throws IOException
+   */
+  public static void merge(List<Path> shards, Path target) throws IOException {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is required");
+    }
+    var readers = new ArrayList<PMTilesReader>(shards.size());
+    try {
+      for (var shard : shards) {
+        var reader = new PMTilesReader(shard);
+        readers.add(reader);
+        var header = reader.getHeader();
+        if (header.getTileCompression() != Compression.GZIP
+            || header.getTileType() != TileType.MVT) {
+          throw new IOException("The tiles of the shard " + shard + " are not gzipped vectors");
+        }
+      }
+
+      try (var writer = new PMTilesWriter(target)) {
+        var first = readers.get(0).getHeader();
+        writer.setMetadata(readers.get(0).getMetadata());
+        int minZoom = first.getMinZoom();
+        int maxZoom = first.getMaxZoom();
+        double minLon = first.getMinLon();
+        double minLat = first.getMinLat();
+        double maxLon = first.getMaxLon();
+        double maxLat = first.getMaxLat();
+        for (var reader : readers) {
+          var header = reader.getHeader();
+          minZoom = Math.min(minZoom, header.getMinZoom());
+          maxZoom = Math.max(maxZoom, header.getMaxZoom());
+          minLon = Math.min(minLon, header.getMinLon());
+          minLat = Math.min(minLat, header.getMinLat());
+          maxLon = Math.max(maxLon, header.getMaxLon());
+          maxLat = Math.max(maxLat, header.getMaxLat());
+        }
+        writer.setMinZoom(minZoom);
+        writer.setMaxZoom(maxZoom);
+        writer.setMinLon(minLon);
+        writer.setMinLat(minLat);
+        writer.setMaxLon(maxLon);
+        writer.setMaxLat(maxLat);
+        writer.setCenterZoom(first.getCenterZoom());
+        writer.setCenterLat(first.getCenterLat());
+        writer.setCenterLon(first.getCenterLon());
+
+        // Merge the entries of the shards with a priority queue ordered by tile id
+        var queue = new PriorityQueue<Cursor>(
+            (a, b) -> Long.compare(a.entry.getTileId(), b.entry.getTileId()));
+        for (var reader : readers) {
+          var entries = reader.getEntries();
+          if (entries.hasNext()) {
+            queue.add(new Cursor(reader, entries, entries.next()));
+          }
+        }
+        long nextTileId = 0;
+        while (!queue.isEmpty()) {
+          var cursor = queue.poll();
+          var entry = cursor.entry;
+          if (entry.getTileId() < nextTileId) {
+            throw new IOException("The shards overlap at the tile " + entry.getTileId());
+          }
+          var data = cursor.reader.getTileData(entry);
+          var bytes = new byte[data.remaining()];
+          data.get(bytes);
+          writer.setTiles(entry.getTileId(), entry.getRunLength(), bytes);
+          nextTileId = entry.getTileId() + entry.getRunLength();
+          if (cursor.entries.hasNext()) {
+            cursor.entry = cursor.entries.next();
+            queue.add(cursor);
+          }
+        }
+
+        writer.write();
+      }
+    } finally {
+      for (var reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * The position of the merge in a shard.
+   */
+  private static class Cursor {
+
+    private final PMTilesReader reader;
+
+    private final Iterator<Entry> entries;
+
+    private Entry entry;
+
+    private Cursor(PMTilesReader reader, Iterator<Entry> entries, Entry entry) {
+      this.reader = reader;
+      this.entries = entries;
+      this.entry = entry;
+    }
+  }
+}
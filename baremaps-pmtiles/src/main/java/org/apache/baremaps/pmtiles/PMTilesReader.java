@@ -17,82 +17,346 @@
 
 package org.apache.baremaps.pmtiles;
 
-import com.google.common.io.LittleEndianDataInputStream;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
-public class PMTilesReader {
+/**
+ * A reader of PMTiles archives.
+ *
+ * <p>
+ * The archive is memory-mapped, the root directory is decoded once, and the leaf directories are
+ * decoded on demand and kept in a bounded cache. The tiles are returned as read-only slices of the
+ * mapped archive, without being copied or decompressed, so that the reader can be shared by
+ * concurrent threads and serve tiles at a high rate.
+ */
+public class PMTilesReader implements Closeable {
+
+  /** The size of the mapped segments of the archive. */
+  private static final long SEGMENT_SIZE = 1L << 30;
+
+  /**
+   * The overlap of the mapped segments, so that the tiles and directories smaller than this size
+   * are always contained in a single segment and can be sliced.
+   */
+  private static final long SEGMENT_OVERLAP = 1L << 24;
+
+  private static final int HEADER_SIZE = 127;
+
+  /** The maximum depth of the directories defined by the specification. */
+  private static final int MAX_DEPTH = 4;
+
+  /** The default maximum weight of the cached leaf directories in bytes. */
+  public static final long DEFAULT_LEAF_CACHE_SIZE = 64L << 20;
 
   private final Path path;
 
-  private Header header;
+  private final FileChannel channel;
 
-  private List<Entry> rootEntries;
+  private final MappedByteBuffer[] segments;
 
-  public PMTilesReader(Path path) {
-    this.path = path;
+  private final Header header;
+
+  private final Directory rootDirectory;
+
+  private final Cache<Long, Directory> leafDirectories;
+
+  /**
+   * Opens a PMTiles archive with the default cache of leaf directories.
+   *
+   * @param path the path of the archive
+   * @throws IOException
+   */
+  public PMTilesReader(Path path) throws IOException {
+    this(path, DEFAULT_LEAF_CACHE_SIZE);
   }
 
-  public Header getHeader() {
-    if (header == null) {
-      try (var inputStream = new LittleEndianDataInputStream(Files.newInputStream(path))) {
-        header = PMTiles.deserializeHeader(inputStream);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+  /**
+   * Opens a PMTiles archive.
+   *
+   * @param path the path of the archive
+   * @param leafCacheSize the maximum weight of the cached leaf directories in bytes
+   * @throws IOException
+   */
+  public PMTilesReader(Path path, long leafCacheSize) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path);
+    try {
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Invalid header size");
+      }
+      int count = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+      this.segments = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long position = i * SEGMENT_SIZE;
+        segments[i] = channel.map(MapMode.READ_ONLY, position,
+            Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - position));
       }
+      this.header = PMTiles.deserializeHeader(inputStream(slice(0, HEADER_SIZE)));
+      this.rootDirectory = readDirectory(header.getRootDirectoryOffset(),
+          header.getRootDirectoryLength());
+      this.leafDirectories = Caffeine.newBuilder()
+          .maximumWeight(leafCacheSize)
+          .weigher((Long offset, Directory directory) -> directory.weight())
+          .build();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
     }
+  }
+
+  /**
+   * Returns the path of the archive.
+   *
+   * @return the path
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the header of the archive.
+   *
+   * @return the header
+   */
+  public Header getHeader() {
     return header;
   }
 
+  /**
+   * Returns the compression of the tiles of the archive.
+   *
+   * @return the compression of the tiles
+   */
+  public Compression getTileCompression() {
+    return header.getTileCompression();
+  }
+
+  /**
+   * Returns the entries of the root directory.
+   *
+   * @return the entries
+   */
   public List<Entry> getRootDirectory() {
-    if (rootEntries == null) {
-      var header = getHeader();
-      rootEntries = getDirectory(header.getRootDirectoryOffset());
-    }
-    return rootEntries;
+    return getDirectory(header.getRootDirectoryOffset(), header.getRootDirectoryLength());
   }
 
-  public List<Entry> getDirectory(long offset) {
-    var header = getHeader();
-    try (var input = Files.newInputStream(path)) {
-      long skipped = 0;
-      while (skipped < offset) {
-        skipped += input.skip(offset - skipped);
-      }
-      try (var decompressed =
-          new LittleEndianDataInputStream(header.getInternalCompression().decompress(input))) {
-        return PMTiles.deserializeEntries(decompressed);
-      }
+  /**
+   * Returns the entries of a directory.
+   *
+   * @param offset the offset of the directory in the archive
+   * @param length the length of the directory in bytes
+   * @return the entries
+   */
+  public List<Entry> getDirectory(long offset, long length) {
+    try (var input = header.getInternalCompression().decompress(
+        inputStream(slice(offset, (int) length)))) {
+      return PMTiles.deserializeEntries(input);
     } catch (IOException e) {
-      throw new RuntimeException(e);
+      throw new UncheckedIOException(e);
     }
   }
 
+  /**
+   * Returns the metadata of the archive.
+   *
+   * @return the metadata
+   * @throws IOException
+   */
+  public Map<String, Object> getMetadata() throws IOException {
+    try (var input = header.getInternalCompression().decompress(
+        inputStream(slice(header.getJsonMetadataOffset(),
+            (int) header.getJsonMetadataLength())))) {
+      return new ObjectMapper().readValue(input, new TypeReference<Map<String, Object>>() {});
+    }
+  }
+
+  /**
+   * Returns an iterator over the tile entries of the archive in the order of the tile ids. The
+   * leaf directories are read one at a time, bypassing the cache, so that the archive can be
+   * scanned without holding its directories in memory.
+   *
+   * @return the iterator
+   */
+  public Iterator<Entry> getEntries() {
+    return new EntryIterator();
+  }
+
+  /**
+   * Returns the content of a tile entry as stored in the archive.
+   *
+   * @param entry the tile entry
+   * @return a read-only slice of the archive
+   */
+  public ByteBuffer getTileData(Entry entry) {
+    return slice(header.getTileDataOffset() + entry.getOffset(), (int) entry.getLength());
+  }
+
+  /**
+   * Returns the content of a tile as stored in the archive, i.e. compressed with the tile
+   * compression of the header.
+   *
+   * @param z the zoom level
+   * @param x the column
+   * @param y the row
+   * @return a read-only slice of the archive, or null if the tile is not in the archive
+   */
   public ByteBuffer getTile(int z, long x, long y) {
     var tileId = PMTiles.zxyToTileId(z, x, y);
-    var header = getHeader();
-    var entries = getRootDirectory();
-    var entry = PMTiles.findTile(entries, tileId);
+    var directory = rootDirectory;
+    for (int depth = 0; depth < MAX_DEPTH; depth++) {
+      int index = directory.find(tileId);
+      if (index < 0) {
+        return null;
+      }
+      if (directory.runLength(index) > 0) {
+        return slice(header.getTileDataOffset() + directory.offset(index),
+            (int) directory.length(index));
+      }
+      directory = getLeafDirectory(header.getLeafDirectoryOffset() + directory.offset(index),
+          directory.length(index));
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of leaf directories in the cache.
+   *
+   * @return the number of cached leaf directories
+   */
+  public long getCachedLeafDirectories() {
+    return leafDirectories.estimatedSize();
+  }
+
+  private Directory getLeafDirectory(long offset, long length) {
+    return leafDirectories.get(offset, o -> {
+      try {
+        return readDirectory(o, length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private Directory readDirectory(long offset, long length) throws IOException {
+    try (var input = header.getInternalCompression().decompress(
+        inputStream(slice(offset, (int) length)))) {
+      return Directory.deserialize(input);
+    }
+  }
+
+  /**
+   * Returns a read-only view of a range of the archive. The range is copied only if it spans two
+   * segments.
+   */
+  private ByteBuffer slice(long offset, int length) {
+    int segment = (int) (offset / SEGMENT_SIZE);
+    int position = (int) (offset - segment * SEGMENT_SIZE);
+    var buffer = segments[segment];
+    if (position + length <= buffer.limit()) {
+      return buffer.slice(position, length);
+    }
+    var copy = ByteBuffer.allocate(length);
+    while (copy.hasRemaining()) {
+      var source = segments[segment];
+      int count = Math.min(copy.remaining(), source.limit() - position);
+      copy.put(source.slice(position, count));
+      segment++;
+      position = (int) (copy.position() + offset - segment * SEGMENT_SIZE);
+    }
+    return copy.flip().asReadOnlyBuffer();
+  }
 
-    if (entry == null) {
-      return null;
+  /**
+   * Walks the directories depth first, so that the entries are returned in the order of the tile
+   * ids.
+   */
+  private class EntryIterator implements Iterator<Entry> {
+
+    private final Deque<Iterator<Entry>> directories = new ArrayDeque<>();
+
+    private Entry next;
+
+    private EntryIterator() {
+      directories.push(getRootDirectory().iterator());
     }
 
-    try (var channel = FileChannel.open(path)) {
-      var compressed = ByteBuffer.allocate((int) entry.getLength());
-      channel.position(header.getTileDataOffset() + entry.getOffset());
-      channel.read(compressed);
-      compressed.flip();
-      try (var tile = new ByteArrayInputStream(compressed.array())) {
-        return ByteBuffer.wrap(tile.readAllBytes());
+    @Override
+    public boolean hasNext() {
+      while (next == null && !directories.isEmpty()) {
+        var directory = directories.peek();
+        if (!directory.hasNext()) {
+          directories.pop();
+          continue;
+        }
+        var entry = directory.next();
+        if (entry.getRunLength() > 0) {
+          next = entry;
+        } else if (directories.size() < MAX_DEPTH) {
+          directories.push(getDirectory(header.getLeafDirectoryOffset() + entry.getOffset(),
+              entry.getLength()).iterator());
+        }
       }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+      return next != null;
+    }
+
+    @Override
+    public Entry next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      var entry = next;
+      next = null;
+      return entry;
+    }
+  }
+
+  private static InputStream inputStream(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
     }
+    return new InputStream() {
+
+      @Override
+      public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length) {
+        if (!buffer.hasRemaining()) {
+          return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+      }
+    };
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    leafDirectories.invalidateAll();
+    channel.close();
   }
 }
@@ -19,31 +19,75 @@ package org.apache.baremaps.pmtiles;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.hash.Hashing;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import org.apache.baremaps.data.algorithm.ExternalMergeSort;
+import org.apache.baremaps.data.collection.DataList;
+import org.apache.baremaps.data.collection.MemoryAlignedDataList;
+import org.apache.baremaps.data.memory.OffHeapMemory;
 
-public class PMTilesWriter {
+/**
+ * A writer of PMTiles archives whose heap usage does not depend on the number of tiles.
+ *
+ * <p>
+ * The tiles are appended to a temporary file through a single buffered stream. The entries of the
+ * directories are spilled to off-heap memory and sorted with an external merge sort if the tiles
+ * are not written in the order of their ids. The hashes used to deduplicate the contents are kept
+ * in an off-heap hash table, and only the contents smaller than {@link #DEDUPLICATION_THRESHOLD}
+ * are deduplicated, as larger tiles are rarely repeated. The directories are built by streaming
+ * the sorted entries into leaves written to a second temporary file.
+ *
+ * <p>
+ * The temporary files and the off-heap memory are released once the archive has been written. A
+ * writer that is abandoned before {@link #write()} must be closed to release them.
+ */
+public class PMTilesWriter implements AutoCloseable {
+
+  /** The maximum size of the contents that are deduplicated. */
+  public static final int DEDUPLICATION_THRESHOLD = 1 << 10;
+
+  private static final int TARGET_ROOT_LENGTH = 16247;
+
+  private static final int DEFAULT_SORT_BATCH_SIZE = 1 << 20;
+
+  private static final EntryDataType ENTRY_DATA_TYPE = new EntryDataType();
 
   private Compression compression = Compression.GZIP;
 
-  private Path path;
+  private final Path path;
+
+  private final int sortBatchSize;
 
   private Map<String, Object> metadata = new HashMap<>();
 
-  private List<Entry> entries;
+  private final DataList<Entry> entries;
+
+  private final TileHashIndex tileHashToOffset;
+
+  private final Path tilePath;
+
+  private final OutputStream tileOutput;
+
+  private long tileLength = 0;
 
-  private Map<Long, Long> tileHashToOffset;
+  private long tileContents = 0;
 
-  private Long lastTileHash = null;
+  private Entry lastEntry = null;
 
-  private Path tilePath;
+  private long lastTileHash;
 
   private boolean clustered = true;
 
+  private boolean closed = false;
+
   private int minZoom = 0;
 
   private int maxZoom = 14;
@@ -63,15 +107,23 @@ public class PMTilesWriter {
   private double centerLon = 0;
 
   public PMTilesWriter(Path path) throws IOException {
-    this(path, new ArrayList<>(), new HashMap<>());
+    this(path, DEFAULT_SORT_BATCH_SIZE);
   }
 
-  public PMTilesWriter(Path path, List<Entry> entries, Map<Long, Long> tileHashToOffset)
-      throws IOException {
+  /**
+   * Constructs a writer that sorts unclustered entries in batches of the given size.
+   *
+   * @param path the path of the archive
+   * @param sortBatchSize the number of entries sorted in memory at once
+   * @throws IOException if the temporary file cannot be created
+   */
+  PMTilesWriter(Path path, int sortBatchSize) throws IOException {
     this.path = path;
-    this.entries = entries;
-    this.tileHashToOffset = tileHashToOffset;
-    this.tilePath = Files.createTempFile(path.getParent(), "tiles_", ".tmp");
+    this.sortBatchSize = sortBatchSize;
+    this.entries = new MemoryAlignedDataList<>(ENTRY_DATA_TYPE, new OffHeapMemory());
+    this.tileHashToOffset = new TileHashIndex();
+    this.tilePath = Files.createTempFile(path.toAbsolutePath().getParent(), "tiles_", ".tmp");
+    this.tileOutput = new BufferedOutputStream(Files.newOutputStream(tilePath), 1 << 16);
   }
 
   public void setMetadata(Map<String, Object> metadata) {
@@ -79,38 +131,51 @@ public class PMTilesWriter {
   }
 
   public void setTile(int z, int x, int y, byte[] bytes) throws IOException {
-    // Write the tile
-    var tileId = PMTiles.zxyToTileId(z, x, y);
-    var tileLength = bytes.length;
-    Long tileHash = Hashing.farmHashFingerprint64().hashBytes(bytes).asLong();
+    setTiles(PMTiles.zxyToTileId(z, x, y), 1, bytes);
+  }
+
+  /**
+   * Sets the content of a run of tiles with consecutive ids.
+   *
+   * @param tileId the id of the first tile
+   * @param runLength the number of tiles
+   * @param bytes the content of the tiles
+   * @throws IOException
+   */
+  public void setTiles(long tileId, long runLength, byte[] bytes) throws IOException {
+    var tileSize = bytes.length;
+    var tileHash = Hashing.farmHashFingerprint64().hashBytes(bytes).asLong();
 
     // If the tile is not greater than the last one, the index is not clustered
-    if (entries.size() > 0 && tileId < entries.get(entries.size() - 1).getTileId()) {
+    if (lastEntry != null && tileId < lastEntry.getTileId()) {
       clustered = false;
     }
 
     // If the tile is the same as the last one, increment the run length
-    if (clustered && tileHash.equals(lastTileHash)) {
-      var lastEntry = entries.get(entries.size() - 1);
-      lastEntry.setRunLength(lastEntry.getRunLength() + 1);
-    }
-
-    // Else, if the tile is the same as the last one, increment the run length
-    else if (tileHashToOffset.containsKey(tileHash)) {
-      var tileOffset = tileHashToOffset.get(tileHash);
-      entries.add(new Entry(tileId, tileOffset, tileLength, 1));
+    if (clustered && lastEntry != null && tileHash == lastTileHash
+        && tileId == lastEntry.getTileId() + lastEntry.getRunLength()) {
+      lastEntry.setRunLength(lastEntry.getRunLength() + runLength);
+      entries.set(entries.size() - 1, lastEntry);
+      return;
     }
 
-    // Else, write the tile and add it to the index
-    else {
-      var tileOffset = Files.size(tilePath);
-      tileHashToOffset.put(tileHash, tileOffset);
-      lastTileHash = tileHash;
-      try (var output = new FileOutputStream(tilePath.toFile(), true)) {
-        output.write(bytes);
-        entries.add(new Entry(tileId, tileOffset, tileLength, 1));
+    // Else, if the content has already been written, reference it
+    long tileOffset = tileSize <= DEDUPLICATION_THRESHOLD ? tileHashToOffset.get(tileHash) : -1;
+
+    // Else, append the tile to the tile data
+    if (tileOffset < 0) {
+      tileOffset = tileLength;
+      tileOutput.write(bytes);
+      tileLength += tileSize;
+      tileContents++;
+      if (tileSize <= DEDUPLICATION_THRESHOLD) {
+        tileHashToOffset.put(tileHash, tileOffset);
       }
     }
+
+    lastEntry = new Entry(tileId, tileOffset, tileSize, runLength);
+    lastTileHash = tileHash;
+    entries.add(lastEntry);
   }
 
   public void setMinZoom(int minZoom) {
@@ -150,68 +215,174 @@ public class PMTilesWriter {
   }
 
   public void write() throws IOException {
-    // Sort the entries by tile id
-    if (!clustered) {
-      entries.sort(Comparator.comparingLong(Entry::getTileId));
+    if (closed) {
+      throw new IOException("The writer is closed");
     }
+    tileOutput.close();
+    var leavesPath = Files.createTempFile(path.toAbsolutePath().getParent(), "leaves_", ".tmp");
+    var sortedEntries = entries;
+    try {
+      // Sort the entries by tile id
+      if (!clustered) {
+        sortedEntries = new MemoryAlignedDataList<>(ENTRY_DATA_TYPE, new OffHeapMemory());
+        ExternalMergeSort.sort(entries, sortedEntries, Comparator.comparingLong(Entry::getTileId),
+            () -> new MemoryAlignedDataList<>(ENTRY_DATA_TYPE, new OffHeapMemory()),
+            sortBatchSize, false, false);
+        entries.clear();
+      }
+
+      var root = writeDirectories(sortedEntries, leavesPath);
+
+      byte[] metadataBytes;
+      try (var metadataOutput = new ByteArrayOutputStream()) {
+        try (var compressedMetadataOutput = compression.compress(metadataOutput)) {
+          new ObjectMapper().writeValue(compressedMetadataOutput, metadata);
+        }
+        metadataBytes = metadataOutput.toByteArray();
+      }
 
-    var directories = PMTiles.optimizeDirectories(entries, 16247, compression);
+      var rootOffset = 127;
+      var rootLength = root.length;
+      var metadataOffset = rootOffset + rootLength;
+      var metadataLength = metadataBytes.length;
+      var leavesOffset = metadataOffset + metadataLength;
+      var leavesLength = Files.size(leavesPath);
+      var tilesOffset = leavesOffset + leavesLength;
+      var numTiles = sortedEntries.size();
+      long numAddressedTiles = 0;
+      for (var entry : sortedEntries) {
+        numAddressedTiles += entry.getRunLength();
+      }
 
-    byte[] metadataBytes;
-    try (var metadataOutput = new ByteArrayOutputStream()) {
-      try (var compressedMetadataOutput = compression.compress(metadataOutput)) {
-        new ObjectMapper().writeValue(compressedMetadataOutput, metadata);
+      var header = new Header();
+      header.setNumAddressedTiles(numAddressedTiles);
+      header.setNumTileEntries(numTiles);
+      header.setNumTileContents(tileContents);
+      header.setClustered(clustered);
+
+      header.setInternalCompression(compression);
+      header.setTileCompression(compression);
+      header.setTileType(TileType.MVT);
+      header.setRootOffset(rootOffset);
+      header.setRootLength(rootLength);
+      header.setMetadataOffset(metadataOffset);
+      header.setMetadataLength(metadataLength);
+      header.setLeavesOffset(leavesOffset);
+      header.setLeavesLength(leavesLength);
+      header.setTilesOffset(tilesOffset);
+      header.setTilesLength(tileLength);
+
+      header.setMinZoom(minZoom);
+      header.setMaxZoom(maxZoom);
+      header.setMinLon(minLon);
+      header.setMinLat(minLat);
+      header.setMaxLon(maxLon);
+      header.setMaxLat(maxLat);
+      header.setCenterZoom(centerZoom);
+      header.setCenterLat(centerLat);
+      header.setCenterLon(centerLon);
+
+      try (var output = FileChannel.open(path, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        var stream = Channels.newOutputStream(output);
+        stream.write(PMTiles.serializeHeader(header));
+        stream.write(root);
+        stream.write(metadataBytes);
+        transfer(leavesPath, output);
+        transfer(tilePath, output);
+      }
+    } finally {
+      if (sortedEntries != entries) {
+        sortedEntries.clear();
       }
-      metadataBytes = metadataOutput.toByteArray();
+      Files.deleteIfExists(leavesPath);
+      close();
     }
+  }
 
-    var rootOffset = 127;
-    var rootLength = directories.getRoot().length;
-    var metadataOffset = rootOffset + rootLength;
-    var metadataLength = metadataBytes.length;
-    var leavesOffset = metadataOffset + metadataLength;
-    var leavesLength = directories.getLeaves().length;
-    var tilesOffset = leavesOffset + leavesLength;
-    var tilesLength = Files.size(tilePath);
-    var numTiles = entries.size();
-
-    var header = new Header();
-    header.setNumAddressedTiles(numTiles);
-    header.setNumTileEntries(numTiles);
-    header.setNumTileContents(tileHashToOffset.size());
-    header.setClustered(true);
-
-    header.setInternalCompression(compression);
-    header.setTileCompression(compression);
-    header.setTileType(TileType.MVT);
-    header.setRootOffset(rootOffset);
-    header.setRootLength(rootLength);
-    header.setMetadataOffset(metadataOffset);
-    header.setMetadataLength(metadataLength);
-    header.setLeavesOffset(leavesOffset);
-    header.setLeavesLength(leavesLength);
-    header.setTilesOffset(tilesOffset);
-    header.setTilesLength(tilesLength);
-
-    header.setMinZoom(minZoom);
-    header.setMaxZoom(maxZoom);
-    header.setMinLon(minLon);
-    header.setMinLat(minLat);
-    header.setMaxLon(maxLon);
-    header.setMaxLat(maxLat);
-    header.setCenterZoom(centerZoom);
-    header.setCenterLat(centerLat);
-    header.setCenterLon(centerLon);
-
-    try (var output = new FileOutputStream(path.toFile())) {
-      output.write(PMTiles.serializeHeader(header));
-      output.write(directories.getRoot());
-      output.write(metadataBytes);
-      output.write(directories.getLeaves());
-      Files.copy(tilePath, output);
+  /**
+   * Deletes the temporary file of the tiles and releases the off-heap entries and hashes. The
+   * archive is not written if this method is called before {@link #write()}.
+   *
+   * @throws IOException if the temporary file cannot be deleted
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      tileOutput.close();
     } finally {
-      Files.delete(tilePath);
+      entries.clear();
+      tileHashToOffset.close();
+      Files.deleteIfExists(tilePath);
+    }
+  }
+
+  /**
+   * Writes the leaf directories to a file and returns the serialized root directory. The root
+   * directory contains all the entries if it fits in the target length, otherwise the size of the
+   * leaves is increased until the root directory fits.
+   */
+  private byte[] writeDirectories(DataList<Entry> entries, Path leavesPath) throws IOException {
+    if (entries.size() < 16384) {
+      var list = new ArrayList<Entry>((int) entries.size());
+      entries.forEach(list::add);
+      var root = serializeDirectory(list);
+      if (root.length <= TARGET_ROOT_LENGTH) {
+        return root;
+      }
+    }
+    double leafSize = Math.max((double) entries.size() / 3500, 4096);
+    for (;;) {
+      var root = writeLeaves(entries, (int) leafSize, leavesPath);
+      if (root.length <= TARGET_ROOT_LENGTH) {
+        return root;
+      }
+      leafSize = leafSize * 1.2;
     }
   }
 
+  private byte[] writeLeaves(DataList<Entry> entries, int leafSize, Path leavesPath)
+      throws IOException {
+    var rootEntries = new ArrayList<Entry>();
+    var leaf = new ArrayList<Entry>(leafSize);
+    long offset = 0;
+    try (var output = new BufferedOutputStream(Files.newOutputStream(leavesPath,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16)) {
+      var iterator = entries.iterator();
+      while (iterator.hasNext()) {
+        leaf.add(iterator.next());
+        if (leaf.size() == leafSize || !iterator.hasNext()) {
+          var bytes = serializeDirectory(leaf);
+          rootEntries.add(new Entry(leaf.get(0).getTileId(), offset, bytes.length, 0));
+          output.write(bytes);
+          offset += bytes.length;
+          leaf.clear();
+        }
+      }
+    }
+    return serializeDirectory(rootEntries);
+  }
+
+  private byte[] serializeDirectory(List<Entry> entries) throws IOException {
+    try (var output = new ByteArrayOutputStream()) {
+      try (var compressedOutput = compression.compress(output)) {
+        PMTiles.serializeEntries(compressedOutput, entries);
+      }
+      return output.toByteArray();
+    }
+  }
+
+  private static void transfer(Path source, FileChannel target) throws IOException {
+    try (var channel = FileChannel.open(source)) {
+      long position = 0;
+      long size = channel.size();
+      while (position < size) {
+        position += channel.transferTo(position, size - position, target);
+      }
+    }
+  }
 }
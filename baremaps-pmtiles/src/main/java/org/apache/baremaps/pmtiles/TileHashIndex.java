@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.pmtiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.baremaps.data.memory.Memory;
+import org.apache.baremaps.data.memory.OffHeapMemory;
+
+/**
+ * An off-heap hash table that maps the hashes of the tile contents to their offsets in the tile
+ * data section. The table uses open addressing with linear probing and doubles its capacity when
+ * it is half full.
+ */
+final class TileHashIndex implements AutoCloseable {
+
+  private static final int SLOT_SIZE = 2 * Long.BYTES;
+
+  private static final long INITIAL_CAPACITY = 1 << 16;
+
+  private Memory<ByteBuffer> memory;
+
+  private long capacity;
+
+  private long size;
+
+  TileHashIndex() {
+    this.capacity = INITIAL_CAPACITY;
+    this.memory = new OffHeapMemory();
+  }
+
+  /**
+   * Returns the offset of the content with the specified hash.
+   *
+   * @param hash the hash of the content
+   * @return the offset of the content, or -1 if the content is not in the index
+   */
+  long get(long hash) {
+    long mask = capacity - 1;
+    for (long slot = hash & mask;; slot = (slot + 1) & mask) {
+      long value = value(memory, slot);
+      if (value == 0) {
+        return -1;
+      }
+      if (key(memory, slot) == hash) {
+        return value - 1;
+      }
+    }
+  }
+
+  /**
+   * Associates the offset of a content with its hash.
+   *
+   * @param hash the hash of the content
+   * @param offset the offset of the content
+   */
+  void put(long hash, long offset) {
+    if (2 * (size + 1) > capacity) {
+      resize();
+    }
+    if (insert(memory, capacity, hash, offset + 1)) {
+      size++;
+    }
+  }
+
+  /**
+   * Returns the number of contents in the index.
+   *
+   * @return the number of contents
+   */
+  long size() {
+    return size;
+  }
+
+  private void resize() {
+    var resized = new OffHeapMemory();
+    long resizedCapacity = capacity * 2;
+    for (long slot = 0; slot < capacity; slot++) {
+      long value = value(memory, slot);
+      if (value != 0) {
+        insert(resized, resizedCapacity, key(memory, slot), value);
+      }
+    }
+    close();
+    memory = resized;
+    capacity = resizedCapacity;
+  }
+
+  private static boolean insert(Memory<ByteBuffer> memory, long capacity, long key, long value) {
+    long mask = capacity - 1;
+    for (long slot = key & mask;; slot = (slot + 1) & mask) {
+      long address = slot * SLOT_SIZE;
+      var segment = memory.segment((int) (address >>> memory.segmentShift()));
+      int position = (int) (address & memory.segmentMask());
+      long current = segment.getLong(position + Long.BYTES);
+      if (current == 0 || segment.getLong(position) == key) {
+        segment.putLong(position, key);
+        segment.putLong(position + Long.BYTES, value);
+        return current == 0;
+      }
+    }
+  }
+
+  private static long key(Memory<ByteBuffer> memory, long slot) {
+    long address = slot * SLOT_SIZE;
+    return memory.segment((int) (address >>> memory.segmentShift()))
+        .getLong((int) (address & memory.segmentMask()));
+  }
+
+  private static long value(Memory<ByteBuffer> memory, long slot) {
+    long address = slot * SLOT_SIZE;
+    return memory.segment((int) (address >>> memory.segmentShift()))
+        .getLong((int) (address & memory.segmentMask()) + Long.BYTES);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    try {
+      memory.close();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
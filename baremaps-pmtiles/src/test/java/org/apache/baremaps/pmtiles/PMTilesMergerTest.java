@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.pmtiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PMTilesMergerTest {
+
+  private static final byte[] OCEAN = {1, 2, 3};
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void mergeShards() throws IOException {
+    int count = 200_000;
+    var shards = List.of(directory.resolve("shard-0.pmtiles"),
+        directory.resolve("shard-1.pmtiles"));
+    var writers = List.of(new PMTilesWriter(shards.get(0)), new PMTilesWriter(shards.get(1)));
+    for (long tileId = 0; tileId < count; tileId++) {
+      var writer = writers.get((int) (tileId / 1000 % 2));
+      var zxy = PMTiles.tileIdToZxy(tileId);
+      writer.setTile((int) zxy[0], (int) zxy[1], (int) zxy[2], content(tileId));
+    }
+    for (var writer : writers) {
+      writer.write();
+    }
+
+    var merged = directory.resolve("merged.pmtiles");
+    PMTilesMerger.merge(shards, merged);
+
+    try (var reader = new PMTilesReader(merged)) {
+      var header = reader.getHeader();
+      assertTrue(header.isClustered());
+      assertEquals(count, header.getNumAddressedTiles());
+      // The runs of ocean tiles are coalesced across the shards
+      assertEquals(2 * ((count + 6) / 7), header.getNumTileEntries());
+      assertEquals((count + 6) / 7 + 1, header.getNumTileContents());
+      for (long tileId = 0; tileId < count; tileId += 997) {
+        var zxy = PMTiles.tileIdToZxy(tileId);
+        assertEquals(ByteBuffer.wrap(content(tileId)),
+            reader.getTile((int) zxy[0], zxy[1], zxy[2]));
+      }
+    }
+  }
+
+  @Test
+  void rejectOverlappingShards() throws IOException {
+    var shards = List.of(directory.resolve("shard-0.pmtiles"),
+        directory.resolve("shard-1.pmtiles"));
+    for (var shard : shards) {
+      var writer = new PMTilesWriter(shard);
+      writer.setTile(0, 0, 0, OCEAN);
+      writer.write();
+    }
+    assertThrows(IOException.class,
+        () -> PMTilesMerger.merge(shards, directory.resolve("merged.pmtiles")));
+
+    // The temporary files of the merged archive have been deleted
+    try (var files = Files.list(directory)) {
+      assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+    }
+  }
+
+  private static byte[] content(long tileId) {
+    return tileId % 7 == 0 ? ByteBuffer.allocate(8).putLong(tileId).array() : OCEAN;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.pmtiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import org.apache.baremaps.testing.TestFiles;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PMTilesReaderTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void readTile() throws IOException {
+    var file = TestFiles.resolve("baremaps-testing/data/pmtiles/test_fixture_1.pmtiles");
+    try (var reader = new PMTilesReader(file)) {
+      assertEquals(1, reader.getRootDirectory().size());
+      assertEquals("gzip", reader.getTileCompression().contentEncoding());
+      var tile = reader.getTile(0, 0, 0);
+      assertEquals(69, tile.remaining());
+      assertTrue(tile.isReadOnly());
+      assertNull(reader.getTile(1, 0, 0));
+    }
+  }
+
+  @Test
+  void readEmptyArchive() {
+    var file = TestFiles.resolve("baremaps-testing/data/pmtiles/empty.pmtiles");
+    assertThrows(IOException.class, () -> new PMTilesReader(file));
+  }
+
+  @Test
+  void readLeafDirectories() throws IOException {
+    var file = directory.resolve("leaves.pmtiles");
+    var writer = new PMTilesWriter(file);
+    int z = 8;
+    for (int x = 0; x < 1 << z; x++) {
+      for (int y = 0; y < 1 << z; y++) {
+        writer.setTile(z, x, y, ByteBuffer.allocate(8).putInt(x).putInt(y).array());
+      }
+    }
+    writer.write();
+
+    try (var reader = new PMTilesReader(file)) {
+      assertTrue(reader.getHeader().getLeafDirectoryLength() > 0);
+      for (int x = 0; x < 1 << z; x += 7) {
+        for (int y = 0; y < 1 << z; y += 11) {
+          var tile = reader.getTile(z, x, y);
+          assertEquals(x, tile.getInt(0));
+          assertEquals(y, tile.getInt(4));
+        }
+      }
+      assertNull(reader.getTile(z + 1, 0, 0));
+      assertTrue(reader.getCachedLeafDirectories() > 0);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.pmtiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PMTilesWriterTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void writeUnclusteredTiles() throws IOException {
+    var file = directory.resolve("unclustered.pmtiles");
+    var writer = new PMTilesWriter(file);
+    int z = 8;
+    for (int x = (1 << z) - 1; x >= 0; x--) {
+      for (int y = 0; y < 1 << z; y++) {
+        writer.setTile(z, x, y, ByteBuffer.allocate(8).putInt(x).putInt(y).array());
+      }
+    }
+    writer.write();
+
+    try (var reader = new PMTilesReader(file)) {
+      var header = reader.getHeader();
+      assertFalse(header.isClustered());
+      assertEquals(1 << (2 * z), header.getNumTileEntries());
+      for (int x = 0; x < 1 << z; x += 5) {
+        for (int y = 0; y < 1 << z; y += 3) {
+          var tile = reader.getTile(z, x, y);
+          assertEquals(x, tile.getInt(0));
+          assertEquals(y, tile.getInt(4));
+        }
+      }
+    }
+  }
+
+  @Test
+  void sortUnclusteredTilesInBatches() throws IOException {
+    var file = directory.resolve("batches.pmtiles");
+    var writer = new PMTilesWriter(file, 16);
+    int z = 5;
+    for (int x = (1 << z) - 1; x >= 0; x--) {
+      for (int y = (1 << z) - 1; y >= 0; y--) {
+        writer.setTile(z, x, y, ByteBuffer.allocate(8).putInt(x).putInt(y).array());
+      }
+    }
+    writer.write();
+
+    try (var reader = new PMTilesReader(file)) {
+      var header = reader.getHeader();
+      assertFalse(header.isClustered());
+      assertEquals(1 << (2 * z), header.getNumTileEntries());
+      for (int x = 0; x < 1 << z; x++) {
+        for (int y = 0; y < 1 << z; y++) {
+          var tile = reader.getTile(z, x, y);
+          assertEquals(x, tile.getInt(0));
+          assertEquals(y, tile.getInt(4));
+        }
+      }
+    }
+  }
+
+  @Test
+  void deduplicateTiles() throws IOException {
+    var file = directory.resolve("deduplicated.pmtiles");
+    var writer = new PMTilesWriter(file);
+    var ocean = new byte[] {1, 2, 3};
+    var land = new byte[] {4};
+    var base = PMTiles.zxyToTileId(2, 0, 0);
+    var contents = List.of(ocean, ocean, land, ocean);
+    for (int i = 0; i < contents.size(); i++) {
+      var zxy = PMTiles.tileIdToZxy(base + i);
+      writer.setTile((int) zxy[0], (int) zxy[1], (int) zxy[2], contents.get(i));
+    }
+    writer.write();
+
+    try (var reader = new PMTilesReader(file)) {
+      var header = reader.getHeader();
+      assertTrue(header.isClustered());
+      assertEquals(2, header.getNumTileContents());
+      assertEquals(3, header.getNumTileEntries());
+      assertEquals(4, header.getNumAddressedTiles());
+      assertEquals(4, header.getTileDataLength());
+      for (int i = 0; i < contents.size(); i++) {
+        var zxy = PMTiles.tileIdToZxy(base + i);
+        assertEquals(ByteBuffer.wrap(contents.get(i)),
+            reader.getTile((int) zxy[0], zxy[1], zxy[2]));
+      }
+      assertNull(reader.getTile(3, 0, 0));
+    }
+  }
+}
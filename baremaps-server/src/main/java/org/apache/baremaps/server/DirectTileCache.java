@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.server;
+
+
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.baremaps.tilestore.MetatileLoader;
+import org.apache.baremaps.tilestore.TileCache;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStore;
+import org.apache.baremaps.tilestore.TileStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@code TileStore} decorator that caches the content of tiles in pooled direct buffers.
+ *
+ * <p>
+ * The cached buffers are reference counted: the cache holds one reference that is released when a
+ * tile is evicted, and {@link #readBuffer(TileCoord)} returns a retained duplicate that can be
+ * handed to Armeria without copying the content of the tile, Armeria releasing it once the response
+ * has been written. The tiles therefore stay out of the heap and the serving path does not allocate
+ * a copy of each tile.
+ *
+ * <p>
+ * As the removal listener of the cache runs asynchronously, a buffer returned by a lookup may be
+ * released and recycled by the pool before it is retained. The buffers are therefore held by
+ * entries that retain and release them under the same lock, so that a released buffer is never
+ * retained again.
+ *
+ * <p>
+ * As in {@link TileCache}, the empty tiles are not held in direct buffers. They are recorded in a
+ * separate cache of sentinels, with their own time to live, and served as empty buffers.
+ */
+public class DirectTileCache implements TileStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(DirectTileCache.class);
+
+  private final TileStore tileStore;
+
+  private final ByteBufAllocator allocator;
+
+  private final Cache<TileCoord, CachedBuffer> cache;
+
+  private final Cache<TileCoord, Boolean> emptyTiles;
+
+  private final MetatileLoader<CachedBuffer> metatileLoader;
+
+  /**
+   * Decorates the TileStore with a cache of pooled direct buffers.
+   *
+   * @param tileStore the tile store
+   * @param spec the caffeine specification of the cache
+   */
+  public DirectTileCache(TileStore tileStore, CaffeineSpec spec) {
+    this(tileStore, spec, TileCache.DEFAULT_EMPTY_TILE_TTL);
+  }
+
+  /**
+   * Decorates the TileStore with a cache of pooled direct buffers.
+   *
+   * @param tileStore the tile store
+   * @param spec the caffeine specification of the cache
+   * @param emptyTileTtl the time to live of the empty tiles
+   */
+  public DirectTileCache(TileStore tileStore, CaffeineSpec spec, Duration emptyTileTtl) {
+    this(tileStore, spec, emptyTileTtl, PooledByteBufAllocator.DEFAULT);
+  }
+
+  /**
+   * Decorates the TileStore with a cache of direct buffers.
+   *
+   * @param tileStore the tile store
+   * @param spec the caffeine specification of the cache
+   * @param allocator the allocator of the buffers
+   */
+  public DirectTileCache(TileStore tileStore, CaffeineSpec spec, ByteBufAllocator allocator) {
+    this(tileStore, spec, TileCache.DEFAULT_EMPTY_TILE_TTL, allocator);
+  }
+
+  /**
+   * Decorates the TileStore with a cache of direct buffers.
+   *
+   * @param tileStore the tile store
+   * @param spec the caffeine specification of the cache
+   * @param emptyTileTtl the time to live of the empty tiles
+   * @param allocator the allocator of the buffers
+   */
+  public DirectTileCache(TileStore tileStore, CaffeineSpec spec, Duration emptyTileTtl,
+      ByteBufAllocator allocator) {
+    this.tileStore = tileStore;
+    this.allocator = allocator;
+    this.emptyTiles = Caffeine.newBuilder()
+        .maximumSize(TileCache.EMPTY_TILE_CACHE_SIZE)
+        .expireAfterWrite(emptyTileTtl)
+        .build();
+    this.cache = Caffeine.from(spec)
+        .weigher((TileCoord tileCoord, CachedBuffer entry) -> 28 + entry.buffer.capacity())
+        .removalListener((TileCoord tileCoord, CachedBuffer entry, RemovalCause cause) -> {
+          if (entry != null) {
+            entry.release();
+          }
+        })
+        .build();
+    this.metatileLoader = new MetatileLoader<>(tileStore.metatileSize(), this::load);
+  }
+
+  /**
+   * Reads the content of a tile as a retained buffer. The caller is responsible for releasing the
+   * buffer, for instance by wrapping it in the {@code HttpData} of a response.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the content of the tile, or null if the tile cannot be read
+   */
+  public ByteBuf readBuffer(TileCoord tileCoord) {
+    while (true) {
+      if (emptyTiles.getIfPresent(tileCoord) != null) {
+        return Unpooled.EMPTY_BUFFER;
+      }
+      var entry = cache.getIfPresent(tileCoord);
+      if (entry == null) {
+        entry = metatileLoader.load(tileCoord).get(tileCoord);
+      }
+      if (entry == null) {
+        return emptyTiles.getIfPresent(tileCoord) != null ? Unpooled.EMPTY_BUFFER : null;
+      }
+      var buffer = entry.retain();
+      if (buffer != null) {
+        return buffer;
+      }
+      // The buffer has been evicted and released concurrently, load it again
+    }
+  }
+
+  /**
+   * Returns the content of a tile as a retained buffer if it is in the cache, without reading the
+   * decorated store. The caller is responsible for releasing the buffer.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the content of the tile, or null if the tile is not cached
+   */
+  public ByteBuf readBufferIfPresent(TileCoord tileCoord) {
+    if (emptyTiles.getIfPresent(tileCoord) != null) {
+      return Unpooled.EMPTY_BUFFER;
+    }
+    var entry = cache.getIfPresent(tileCoord);
+    return entry != null ? entry.retain() : null;
+  }
+
+  /**
+   * Reads a metatile from the decorated store and caches all its tiles in direct buffers. The
+   * concurrent misses of the tiles of a metatile are coalesced in a single read.
+   */
+  private Map<TileCoord, CachedBuffer> load(List<TileCoord> metatile) {
+    var tiles = new HashMap<TileCoord, CachedBuffer>();
+    try {
+      var blobs = tileStore.read(metatile);
+      for (int i = 0; i < metatile.size(); i++) {
+        var blob = blobs.get(i);
+        if (TileStore.isEmptyTile(blob)) {
+          emptyTiles.put(metatile.get(i), Boolean.TRUE);
+        } else if (blob != null) {
+          var buffer = allocator.directBuffer(blob.remaining(), blob.remaining());
+          buffer.writeBytes(blob.duplicate());
+          tiles.put(metatile.get(i), new CachedBuffer(buffer));
+        }
+      }
+    } catch (TileStoreException e) {
+      logger.error("Unable to read the tile.", e);
+    }
+    cache.putAll(tiles);
+    return tiles;
+  }
+
+  /**
+   * Reads the content of a tile. The content is copied in a heap buffer, prefer
+   * {@link #readBuffer(TileCoord)} to avoid the copy.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the content of the tile
+   */
+  @Override
+  public ByteBuffer read(TileCoord tileCoord) {
+    var buffer = readBuffer(tileCoord);
+    if (buffer == null) {
+      return null;
+    }
+    try {
+      var bytes = new byte[buffer.readableBytes()];
+      buffer.readBytes(bytes);
+      return ByteBuffer.wrap(bytes);
+    } finally {
+      buffer.release();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(TileCoord tileCoord, ByteBuffer bytes) throws TileStoreException {
+    tileStore.write(tileCoord, bytes);
+    cache.invalidate(tileCoord);
+    emptyTiles.invalidate(tileCoord);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void delete(TileCoord tileCoord) throws TileStoreException {
+    tileStore.delete(tileCoord);
+    cache.invalidate(tileCoord);
+    emptyTiles.invalidate(tileCoord);
+  }
+
+  @Override
+  public void close() throws Exception {
+    tileStore.close();
+    cache.invalidateAll();
+    cache.cleanUp();
+    emptyTiles.cleanUp();
+  }
+
+  /**
+   * A cached buffer whose reference is retained and released atomically.
+   */
+  private static final class CachedBuffer {
+
+    private final ByteBuf buffer;
+
+    private boolean released = false;
+
+    private CachedBuffer(ByteBuf buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Returns a retained duplicate of the buffer, or null if the buffer has been released.
+     */
+    private synchronized ByteBuf retain() {
+      return released ? null : buffer.retainedDuplicate();
+    }
+
+    private synchronized void release() {
+      if (!released) {
+        released = true;
+        buffer.release();
+      }
+    }
+  }
+}
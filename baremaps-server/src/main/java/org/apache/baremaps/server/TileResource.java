@@ -22,14 +22,20 @@ import static com.google.common.net.HttpHeaders.*;
 import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.ResponseHeaders;
-import com.linecorp.armeria.server.annotation.Blocking;
 import com.linecorp.armeria.server.annotation.Get;
 import com.linecorp.armeria.server.annotation.Param;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
+import org.apache.baremaps.tilestore.TileCache;
 import org.apache.baremaps.tilestore.TileCoord;
 import org.apache.baremaps.tilestore.TileStore;
-import org.apache.baremaps.tilestore.TileStoreException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,34 +52,112 @@ public class TileResource {
 
   private final Supplier<TileStore> tileStoreSupplier;
 
+  private final TileScheduler tileScheduler;
+
+  private final String tileEncoding;
+
   public TileResource(Supplier<TileStore> tileStoreSupplier) {
+    this(tileStoreSupplier, TILE_ENCODING);
+  }
+
+  /**
+   * Constructs a {@code TileResource} whose tiles are compressed with the given content coding.
+   *
+   * @param tileStoreSupplier the supplier of the tile store
+   * @param tileEncoding the content coding of the tiles, or null if they are not compressed
+   */
+  public TileResource(Supplier<TileStore> tileStoreSupplier, String tileEncoding) {
+    this(tileStoreSupplier, new TileScheduler(tileStoreSupplier,
+        Map.of(0, Runtime.getRuntime().availableProcessors()), 1024, Duration.ofSeconds(30)),
+        tileEncoding);
+  }
+
+  public TileResource(Supplier<TileStore> tileStoreSupplier, TileScheduler tileScheduler) {
+    this(tileStoreSupplier, tileScheduler, TILE_ENCODING);
+  }
+
+  /**
+   * Constructs a {@code TileResource} whose tiles are compressed with the given content coding.
+   *
+   * @param tileStoreSupplier the supplier of the tile store
+   * @param tileScheduler the scheduler of the tile reads
+   * @param tileEncoding the content coding of the tiles, or null if they are not compressed
+   */
+  public TileResource(Supplier<TileStore> tileStoreSupplier, TileScheduler tileScheduler,
+      String tileEncoding) {
     this.tileStoreSupplier = tileStoreSupplier;
+    this.tileScheduler = tileScheduler;
+    this.tileEncoding = tileEncoding;
   }
 
   @Get("regex:^/tiles/(?<z>[0-9]+)/(?<x>[0-9]+)/(?<y>[0-9]+).mvt$")
-  @Blocking
-  public HttpResponse tile(@Param("z") int z, @Param("x") int x, @Param("y") int y) {
+  public CompletableFuture<HttpResponse> tile(@Param("z") int z, @Param("x") int x,
+      @Param("y") int y) {
     TileCoord tileCoord = new TileCoord(x, y, z);
-    try {
-      TileStore tileStore = tileStoreSupplier.get();
-      ByteBuffer blob = tileStore.read(tileCoord);
+
+    // Serve the cached tiles directly from the event loop
+    TileStore tileStore = tileStoreSupplier.get();
+    if (tileStore instanceof DirectTileCache directTileCache) {
+      // Hand the retained buffer of the cache to the response, which releases it
+      ByteBuf buffer = directTileCache.readBufferIfPresent(tileCoord);
+      if (buffer != null && buffer.isReadable()) {
+        return CompletableFuture.completedFuture(response(HttpData.wrap(buffer)));
+      } else if (buffer != null) {
+        buffer.release();
+        return CompletableFuture.completedFuture(HttpResponse.of(204));
+      }
+    } else if (tileStore instanceof TileCache tileCache) {
+      ByteBuffer blob = tileCache.readIfPresent(tileCoord);
       if (blob != null) {
-        var headers = ResponseHeaders.builder(200)
-            .add(CONTENT_TYPE, TILE_TYPE)
-            .add(CONTENT_ENCODING, TILE_ENCODING)
-            .add(ACCESS_CONTROL_ALLOW_ORIGIN, "*")
-            .build();
-        byte[] bytes = new byte[blob.remaining()];
-        blob.get(bytes);
-        HttpData data = HttpData.wrap(bytes);
-        return HttpResponse.of(headers, data);
-
-      } else {
-        return HttpResponse.of(204);
+        return CompletableFuture.completedFuture(response(blob));
       }
-    } catch (TileStoreException ex) {
-      logger.error("Error while reading tile.", ex);
-      return HttpResponse.of(404);
+    }
+
+    // Schedule the other reads with the admission control
+    return tileScheduler.read(tileCoord)
+        .handle((blob, error) -> {
+          if (error == null) {
+            return response(blob);
+          }
+          Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+          if (cause instanceof RejectedExecutionException) {
+            logger.warn("Tile request rejected: {}", cause.getMessage());
+            return HttpResponse.of(ResponseHeaders.builder(503)
+                .add(RETRY_AFTER, "1")
+                .add(ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .build());
+          }
+          logger.error("Error while reading tile.", cause);
+          return HttpResponse.of(404);
+        });
+  }
+
+  private HttpResponse response(ByteBuffer blob) {
+    // The missing and empty tiles are answered without content
+    if (blob == null || TileStore.isEmptyTile(blob)) {
+      return HttpResponse.of(204);
+    }
+    return response(wrap(blob));
+  }
+
+  private HttpResponse response(HttpData data) {
+    var headers = ResponseHeaders.builder(200)
+        .add(CONTENT_TYPE, TILE_TYPE)
+        .add(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+    if (tileEncoding != null) {
+      headers.add(CONTENT_ENCODING, tileEncoding);
+    }
+    return HttpResponse.of(headers.build(), data);
+  }
+
+  /**
+   * Wraps the content of a tile in an {@code HttpData}, without copying the heap buffers.
+   */
+  private static HttpData wrap(ByteBuffer blob) {
+    if (blob.hasArray()) {
+      return HttpData.wrap(blob.array(), blob.arrayOffset() + blob.position(), blob.remaining());
+    } else {
+      return HttpData.wrap(Unpooled.wrappedBuffer(blob));
     }
   }
 
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.server;
+
+
+
+import com.linecorp.armeria.common.CommonPools;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStore;
+import org.apache.baremaps.tilestore.TileStoreException;
+
+/**
+ * Schedules the reads of tiles on a blocking executor and applies an admission control per zoom
+ * level.
+ *
+ * <p>
+ * Identical requests that are in flight share the same read, so that a burst of requests for a
+ * tile that is not cached results in a single query. The number of concurrent reads is limited
+ * for each zoom level and for all the zoom levels together, the reads in excess wait in a bounded
+ * queue, and they are rejected with a {@link RejectedExecutionException} when the queue is full or
+ * when they waited for longer than the queue timeout. The low zoom levels, whose tiles are the most
+ * expensive to generate, can therefore not exhaust the connections of the database, and the total
+ * limit can be set to the size of the connection pool.
+ */
+public class TileScheduler {
+
+  private final Supplier<TileStore> tileStoreSupplier;
+
+  private final NavigableMap<Integer, Integer> concurrency;
+
+  private final int maxConcurrency;
+
+  private final int queueSize;
+
+  private final Duration queueTimeout;
+
+  private final ScheduledExecutorService executor;
+
+  private final Map<TileCoord, CompletableFuture<ByteBuffer>> inFlight = new ConcurrentHashMap<>();
+
+  private final NavigableMap<Integer, Lane> lanes = new TreeMap<>();
+
+  private int running = 0;
+
+  private final LongAdder coalesced = new LongAdder();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final LongAdder timedOut = new LongAdder();
+
+  /**
+   * Constructs a {@code TileScheduler} that executes the reads on the common blocking executor of
+   * Armeria.
+   *
+   * @param tileStoreSupplier the tile store supplier
+   * @param concurrency the maximum number of concurrent reads, by first zoom level of a range
+   * @param queueSize the maximum number of reads waiting for each zoom level
+   * @param queueTimeout the maximum time a read can wait before being rejected
+   */
+  public TileScheduler(Supplier<TileStore> tileStoreSupplier, Map<Integer, Integer> concurrency,
+      int queueSize, Duration queueTimeout) {
+    this(tileStoreSupplier, concurrency, queueSize, queueTimeout,
+        CommonPools.blockingTaskExecutor());
+  }
+
+  /**
+   * Constructs a {@code TileScheduler} that executes the reads on the common blocking executor of
+   * Armeria.
+   *
+   * @param tileStoreSupplier the tile store supplier
+   * @param concurrency the maximum number of concurrent reads, by first zoom level of a range
+   * @param maxConcurrency the maximum number of concurrent reads for all the zoom levels
+   * @param queueSize the maximum number of reads waiting for each zoom level
+   * @param queueTimeout the maximum time a read can wait before being rejected
+   */
+  public TileScheduler(Supplier<TileStore> tileStoreSupplier, Map<Integer, Integer> concurrency,
+      int maxConcurrency, int queueSize, Duration queueTimeout) {
+    this(tileStoreSupplier, concurrency, maxConcurrency, queueSize, queueTimeout,
+        CommonPools.blockingTaskExecutor());
+  }
+
+  /**
+   * Constructs a {@code TileScheduler} whose zoom levels share a total number of concurrent reads
+   * equal to the sum of the limits of the ranges of zoom levels.
+   *
+   * @param tileStoreSupplier the tile store supplier
+   * @param concurrency the maximum number of concurrent reads, by first zoom level of a range
+   * @param queueSize the maximum number of reads waiting for each zoom level
+   * @param queueTimeout the maximum time a read can wait before being rejected
+   * @param executor the executor of the reads and of the timeouts
+   */
+  public TileScheduler(Supplier<TileStore> tileStoreSupplier, Map<Integer, Integer> concurrency,
+      int queueSize, Duration queueTimeout, ScheduledExecutorService executor) {
+    this(tileStoreSupplier, concurrency,
+        concurrency.values().stream().mapToInt(Integer::intValue).sum(), queueSize, queueTimeout,
+        executor);
+  }
+
+  /**
+   * Constructs a {@code TileScheduler}.
+   *
+   * <p>
+   * The concurrency map associates the first zoom level of a range of zoom levels with the maximum
+   * number of concurrent reads for each zoom level of this range. For instance, {@code {0=2, 8=16}}
+   * allows 2 concurrent reads for each zoom level lower than 8 and 16 for the other zoom levels.
+   * The reads of all the zoom levels together are limited by the maximum concurrency.
+   *
+   * @param tileStoreSupplier the tile store supplier
+   * @param concurrency the maximum number of concurrent reads, by first zoom level of a range
+   * @param maxConcurrency the maximum number of concurrent reads for all the zoom levels
+   * @param queueSize the maximum number of reads waiting for each zoom level
+   * @param queueTimeout the maximum time a read can wait before being rejected
+   * @param executor the executor of the reads and of the timeouts
+   */
+  public TileScheduler(Supplier<TileStore> tileStoreSupplier, Map<Integer, Integer> concurrency,
+      int maxConcurrency, int queueSize, Duration queueTimeout,
+      ScheduledExecutorService executor) {
+    if (!concurrency.containsKey(0)) {
+      throw new IllegalArgumentException("The concurrency of the zoom level 0 must be specified");
+    }
+    if (maxConcurrency < 1 || concurrency.values().stream().anyMatch(limit -> limit < 1)) {
+      throw new IllegalArgumentException("The concurrency must be strictly positive");
+    }
+    this.tileStoreSupplier = tileStoreSupplier;
+    this.concurrency = new TreeMap<>(concurrency);
+    this.maxConcurrency = maxConcurrency;
+    this.queueSize = queueSize;
+    this.queueTimeout = queueTimeout;
+    this.executor = executor;
+  }
+
+  /**
+   * Reads a tile asynchronously. The future completes with null if the tile is empty and
+   * exceptionally with a {@link RejectedExecutionException} if the read has been rejected.
+   *
+   * @param tileCoord the tile coordinate
+   * @return the future content of the tile
+   */
+  public CompletableFuture<ByteBuffer> read(TileCoord tileCoord) {
+    var created = new CompletableFuture<ByteBuffer>();
+    var future = inFlight.putIfAbsent(tileCoord, created);
+    if (future == null) {
+      future = created;
+      future.whenComplete((blob, error) -> inFlight.remove(tileCoord, created));
+      submit(new Task(tileCoord, created));
+    } else {
+      coalesced.increment();
+    }
+    // Each caller gets its own view of the shared buffer
+    return future.thenApply(blob -> blob != null ? blob.duplicate() : null);
+  }
+
+  private void submit(Task task) {
+    Lane lane;
+    boolean start = false;
+    synchronized (this) {
+      lane = lanes.computeIfAbsent(task.tileCoord.z(),
+          z -> new Lane(z, concurrency.floorEntry(z).getValue()));
+      if (lane.running < lane.limit && running < maxConcurrency) {
+        lane.running++;
+        running++;
+        start = true;
+      } else if (lane.queue.size() < queueSize) {
+        lane.queue.add(task);
+      } else {
+        rejected.increment();
+        task.future.completeExceptionally(new RejectedExecutionException(
+            String.format("Too many pending reads at zoom level %d", task.tileCoord.z())));
+        return;
+      }
+    }
+    if (start) {
+      execute(lane, task);
+    } else {
+      // Cancel the timeout once the read completes, so that the timeouts do not pile up
+      var timeout = executor.schedule(() -> expire(lane, task), queueTimeout.toNanos(),
+          TimeUnit.NANOSECONDS);
+      task.future.whenComplete((blob, error) -> timeout.cancel(false));
+    }
+  }
+
+  private void expire(Lane lane, Task task) {
+    boolean removed;
+    synchronized (this) {
+      removed = lane.queue.remove(task);
+    }
+    if (removed) {
+      timedOut.increment();
+      task.future.completeExceptionally(new RejectedExecutionException(
+          String.format("Timeout while waiting to read the tile %s", task.tileCoord)));
+    }
+  }
+
+  private void execute(Lane lane, Task task) {
+    try {
+      executor.execute(() -> {
+        try {
+          task.future.complete(tileStoreSupplier.get().read(task.tileCoord));
+        } catch (TileStoreException | RuntimeException e) {
+          task.future.completeExceptionally(e);
+        } finally {
+          release(lane);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      task.future.completeExceptionally(e);
+      release(lane);
+    }
+  }
+
+  /**
+   * Releases the place of a read and starts the next read waiting in the same lane, or in the next
+   * lane whose reads only waited for a place in the total limit.
+   */
+  private void release(Lane lane) {
+    Lane nextLane;
+    Task next = null;
+    synchronized (this) {
+      lane.running--;
+      running--;
+      nextLane = lane.queue.isEmpty() ? nextLane(lane.zoom) : lane;
+      if (nextLane != null) {
+        next = nextLane.queue.poll();
+        nextLane.running++;
+        running++;
+      }
+    }
+    if (next != null) {
+      execute(nextLane, next);
+    }
+  }
+
+  private Lane nextLane(int zoom) {
+    for (var candidates : List.of(lanes.tailMap(zoom, false), lanes.headMap(zoom, false))) {
+      for (var candidate : candidates.values()) {
+        if (!candidate.queue.isEmpty() && candidate.running < candidate.limit) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the statistics of the scheduler.
+   *
+   * @return the statistics
+   */
+  public Stats stats() {
+    return new Stats(inFlight.size(), coalesced.sum(), rejected.sum(), timedOut.sum());
+  }
+
+  /**
+   * The statistics of a {@code TileScheduler}.
+   *
+   * @param inFlight the number of reads in progress or waiting
+   * @param coalesced the number of requests that joined a read in flight
+   * @param rejected the number of reads rejected because the queue was full
+   * @param timedOut the number of reads rejected because they waited for too long
+   */
+  public record Stats(long inFlight, long coalesced, long rejected, long timedOut) {
+  }
+
+  private record Task(TileCoord tileCoord, CompletableFuture<ByteBuffer> future) {
+  }
+
+  /**
+   * The reads running or waiting for a zoom level.
+   */
+  private static final class Lane {
+
+    private final int zoom;
+
+    private final int limit;
+
+    private final ArrayDeque<Task> queue = new ArrayDeque<>();
+
+    private int running = 0;
+
+    private Lane(int zoom, int limit) {
+      this.zoom = zoom;
+      this.limit = limit;
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.server;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStore;
+import org.apache.baremaps.tilestore.TileStoreException;
+import org.junit.jupiter.api.Test;
+
+class DirectTileCacheTest {
+
+  /** The weight of a cached tile of 12 bytes. */
+  private static final int TILE_WEIGHT = 28 + 12;
+
+  private static class CoordTileStore implements TileStore {
+
+    private final int metatileSize;
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private CoordTileStore(int metatileSize) {
+      this.metatileSize = metatileSize;
+    }
+
+    @Override
+    public ByteBuffer read(TileCoord tileCoord) {
+      reads.incrementAndGet();
+      return content(tileCoord);
+    }
+
+    @Override
+    public int metatileSize() {
+      return metatileSize;
+    }
+
+    @Override
+    public void write(TileCoord tileCoord, ByteBuffer blob) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(TileCoord tileCoord) {
+      // do nothing
+    }
+
+    @Override
+    public void close() {
+      // do nothing
+    }
+  }
+
+  private static class SlowTileStore extends CoordTileStore {
+
+    private final AtomicInteger metatileReads = new AtomicInteger();
+
+    private SlowTileStore(int metatileSize) {
+      super(metatileSize);
+    }
+
+    @Override
+    public List<ByteBuffer> read(List<TileCoord> tileCoords) throws TileStoreException {
+      metatileReads.incrementAndGet();
+      try {
+        // Leave time for the other threads to miss the tiles of the metatile
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TileStoreException(e);
+      }
+      return super.read(tileCoords);
+    }
+  }
+
+  private static class EmptyTileStore extends CoordTileStore {
+
+    private EmptyTileStore() {
+      super(1);
+    }
+
+    @Override
+    public ByteBuffer read(TileCoord tileCoord) {
+      super.read(tileCoord);
+      return TileStore.emptyTile();
+    }
+  }
+
+  private static ByteBuffer content(TileCoord tileCoord) {
+    return ByteBuffer.allocate(12).putInt(tileCoord.x()).putInt(tileCoord.y())
+        .putInt(tileCoord.z()).flip();
+  }
+
+  @Test
+  void releaseOnEviction() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=" + TILE_WEIGHT);
+    try (var cache =
+        new DirectTileCache(new CoordTileStore(1), spec, UnpooledByteBufAllocator.DEFAULT)) {
+      var first = cache.readBuffer(new TileCoord(0, 0, 1));
+      assertEquals(2, first.refCnt());
+      first.release();
+      assertEquals(1, first.refCnt());
+
+      // Caching a second tile evicts one of the two tiles, whose buffer is released
+      var second = cache.readBuffer(new TileCoord(1, 0, 1));
+      second.release();
+      await().atMost(Duration.ofSeconds(5))
+          .until(() -> first.refCnt() + second.refCnt() == 1);
+    }
+  }
+
+  @Test
+  void releaseOnInvalidation() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var tileCoord = new TileCoord(0, 0, 1);
+    try (var cache =
+        new DirectTileCache(new CoordTileStore(1), spec, UnpooledByteBufAllocator.DEFAULT)) {
+      var buffer = cache.readBuffer(tileCoord);
+      buffer.release();
+      cache.delete(tileCoord);
+      await().atMost(Duration.ofSeconds(5)).until(() -> buffer.refCnt() == 0);
+      assertNull(cache.readBufferIfPresent(tileCoord));
+    }
+  }
+
+  @Test
+  void releaseOnReplacement() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var a = new TileCoord(0, 0, 1);
+    var b = new TileCoord(1, 0, 1);
+    try (var cache =
+        new DirectTileCache(new CoordTileStore(2), spec, UnpooledByteBufAllocator.DEFAULT)) {
+      // Reading a tile caches its whole metatile
+      var previous = cache.readBuffer(a);
+      previous.release();
+      assertNotNull(previous);
+      var other = cache.readBufferIfPresent(b);
+      assertNotNull(other);
+      other.release();
+
+      // Reloading the metatile replaces the cached tiles, whose buffers are released
+      cache.delete(b);
+      cache.readBuffer(b).release();
+      await().atMost(Duration.ofSeconds(5)).until(() -> previous.refCnt() == 0);
+
+      var current = cache.readBufferIfPresent(a);
+      assertEquals(2, current.refCnt());
+      assertEquals(content(a), current.nioBuffer());
+      current.release();
+    }
+  }
+
+  @Test
+  void balanceReferencesThroughTileResource() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var tileCoord = new TileCoord(3, 4, 5);
+    try (var cache =
+        new DirectTileCache(new CoordTileStore(1), spec, UnpooledByteBufAllocator.DEFAULT)) {
+      var buffer = cache.readBuffer(tileCoord);
+      buffer.release();
+      assertEquals(1, buffer.refCnt());
+
+      var resource = new TileResource(() -> cache);
+      for (int i = 0; i < 10; i++) {
+        var response = resource.tile(tileCoord.z(), tileCoord.x(), tileCoord.y()).join()
+            .aggregate().join();
+        assertEquals(200, response.status().code());
+        assertEquals(content(tileCoord), ByteBuffer.wrap(response.content().array()));
+      }
+
+      // The responses have released the references they retained
+      assertEquals(1, buffer.refCnt());
+    }
+  }
+
+  @Test
+  void cacheEmptyTiles() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var tileCoord = new TileCoord(3, 4, 5);
+    CoordTileStore store = new EmptyTileStore();
+    try (var cache = new DirectTileCache(store, spec, UnpooledByteBufAllocator.DEFAULT)) {
+      assertFalse(cache.readBuffer(tileCoord).isReadable());
+      assertFalse(cache.readBufferIfPresent(tileCoord).isReadable());
+      assertTrue(TileStore.isEmptyTile(cache.read(tileCoord)));
+      assertEquals(1, store.reads.get());
+
+      var response = new TileResource(() -> cache)
+          .tile(tileCoord.z(), tileCoord.x(), tileCoord.y()).join().aggregate().join();
+      assertEquals(204, response.status().code());
+    }
+  }
+
+  @Test
+  void expireEmptyTiles() throws Exception {
+    var spec = CaffeineSpec.parse("maximumWeight=1000000");
+    var tileCoord = new TileCoord(3, 4, 5);
+    CoordTileStore store = new EmptyTileStore();
+    try (var cache = new DirectTileCache(store, spec, Duration.ZERO,
+        UnpooledByteBufAllocator.DEFAULT)) {
+      cache.readBuffer(tileCoord);
+      cache.readBuffer(tileCoord);
+      assertEquals(2, store.reads.get());
+    }
+  }
+
+  @Test
+  void readWhileEvicting() throws Exception {
+    // The cache only holds a few tiles so that the buffers are constantly evicted and recycled
+    var spec = CaffeineSpec.parse("maximumWeight=" + 8 * TILE_WEIGHT);
+    var executor = Executors.newFixedThreadPool(8);
+    try (var cache =
+        new DirectTileCache(new CoordTileStore(1), spec, PooledByteBufAllocator.DEFAULT)) {
+      var tasks = new ArrayList<Callable<Integer>>();
+      for (int t = 0; t < 8; t++) {
+        tasks.add(() -> {
+          int mismatches = 0;
+          var random = ThreadLocalRandom.current();
+          for (int i = 0; i < 20_000; i++) {
+            var tileCoord = new TileCoord(random.nextInt(8), random.nextInt(8), 3);
+            ByteBuf buffer = random.nextBoolean()
+                ? cache.readBuffer(tileCoord)
+                : cache.readBufferIfPresent(tileCoord);
+            if (buffer != null) {
+              if (!content(tileCoord).equals(buffer.nioBuffer())) {
+                mismatches++;
+              }
+              buffer.release();
+            }
+          }
+          return mismatches;
+        });
+      }
+      for (var future : executor.invokeAll(tasks)) {
+        assertEquals(0, future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void coalesceMetatileReads() throws Exception {
+    var store = new SlowTileStore(4);
+    var metatile = new TileCoord(0, 0, 3).metatile(4);
+    var executor = Executors.newFixedThreadPool(metatile.size());
+    try (var cache = new DirectTileCache(store, CaffeineSpec.parse("maximumWeight=1000000"),
+        UnpooledByteBufAllocator.DEFAULT)) {
+      var start = new CountDownLatch(1);
+      var futures = new ArrayList<Future<ByteBuffer>>();
+      for (var tileCoord : metatile) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          return cache.read(tileCoord);
+        }));
+      }
+      start.countDown();
+      for (int i = 0; i < metatile.size(); i++) {
+        assertEquals(content(metatile.get(i)), futures.get(i).get());
+      }
+      assertEquals(1, store.metatileReads.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.server;
+
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.linecorp.armeria.common.HttpHeaderNames;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStore;
+import org.junit.jupiter.api.Test;
+
+class TileResourceTest {
+
+  private static class CoordTileStore implements TileStore {
+
+    @Override
+    public ByteBuffer read(TileCoord tileCoord) {
+      return ByteBuffer.wrap(tileCoord.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void write(TileCoord tileCoord, ByteBuffer blob) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(TileCoord tileCoord) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      // do nothing
+    }
+  }
+
+  @Test
+  void compressedTiles() {
+    var tileStore = new CoordTileStore();
+    var resource = new TileResource(() -> tileStore);
+    var response = resource.tile(1, 0, 0).join().aggregate().join();
+    assertEquals(200, response.status().code());
+    assertEquals(TileResource.TILE_ENCODING,
+        response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+  }
+
+  @Test
+  void uncompressedTiles() {
+    var tileStore = new CoordTileStore();
+    var resource = new TileResource(() -> tileStore, (String) null);
+    var response = resource.tile(1, 0, 0).join().aggregate().join();
+    assertEquals(200, response.status().code());
+    assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+  }
+}
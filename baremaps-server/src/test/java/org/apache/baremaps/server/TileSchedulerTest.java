@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.baremaps.server;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.linecorp.armeria.common.HttpHeaderNames;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.baremaps.tilestore.TileCoord;
+import org.apache.baremaps.tilestore.TileStore;
+import org.apache.baremaps.tilestore.TileStoreException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TileSchedulerTest {
+
+  /**
+   * A store whose reads block until they are released, and that records the reads running for
+   * each zoom level.
+   */
+  private static class BlockingTileStore implements TileStore {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private final Map<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+
+    private final Map<Integer, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+
+    @Override
+    public ByteBuffer read(TileCoord tileCoord) throws TileStoreException {
+      reads.incrementAndGet();
+      var current = running(tileCoord.z()).incrementAndGet();
+      maxRunning.computeIfAbsent(tileCoord.z(), z -> new AtomicInteger())
+          .accumulateAndGet(current, Math::max);
+      try {
+        release.await();
+        return content(tileCoord);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TileStoreException(e);
+      } finally {
+        running(tileCoord.z()).decrementAndGet();
+      }
+    }
+
+    private AtomicInteger running(int z) {
+      return running.computeIfAbsent(z, key -> new AtomicInteger());
+    }
+
+    private int totalRunning() {
+      return running.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    @Override
+    public void write(TileCoord tileCoord, ByteBuffer blob) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(TileCoord tileCoord) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      // do nothing
+    }
+  }
+
+  private static ByteBuffer content(TileCoord tileCoord) {
+    return ByteBuffer.wrap(tileCoord.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void assertRejected(CompletableFuture<ByteBuffer> future) {
+    var error = assertThrows(CompletionException.class, future::join);
+    assertInstanceOf(RejectedExecutionException.class, error.getCause());
+  }
+
+  private BlockingTileStore store;
+
+  private ScheduledExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    store = new BlockingTileStore();
+    executor = Executors.newScheduledThreadPool(16);
+  }
+
+  @AfterEach
+  void tearDown() {
+    store.release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  void coalesceDuplicateRequests() {
+    var scheduler =
+        new TileScheduler(() -> store, Map.of(0, 4), 16, Duration.ofSeconds(30), executor);
+    var tileCoord = new TileCoord(1, 2, 3);
+    var futures = new ArrayList<CompletableFuture<ByteBuffer>>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(scheduler.read(tileCoord));
+    }
+    await().until(() -> store.reads.get() == 1);
+    assertEquals(new TileScheduler.Stats(1, 9, 0, 0), scheduler.stats());
+
+    store.release.countDown();
+    for (var future : futures) {
+      assertEquals(content(tileCoord), future.join());
+    }
+    assertEquals(1, store.reads.get());
+  }
+
+  @Test
+  void rejectWhenQueueIsFull() {
+    var scheduler =
+        new TileScheduler(() -> store, Map.of(0, 1), 1, Duration.ofSeconds(30), executor);
+    var running = scheduler.read(new TileCoord(0, 0, 3));
+    var queued = scheduler.read(new TileCoord(1, 0, 3));
+    var rejected = scheduler.read(new TileCoord(2, 0, 3));
+    assertRejected(rejected);
+    assertEquals(1, scheduler.stats().rejected());
+
+    // The resource answers the rejected requests with a 503
+    var response = new TileResource(() -> store, scheduler).tile(3, 3, 0).join()
+        .aggregate().join();
+    assertEquals(503, response.status().code());
+    assertEquals("1", response.headers().get(HttpHeaderNames.RETRY_AFTER));
+
+    store.release.countDown();
+    assertEquals(content(new TileCoord(0, 0, 3)), running.join());
+    assertEquals(content(new TileCoord(1, 0, 3)), queued.join());
+  }
+
+  @Test
+  void rejectAfterTimeout() {
+    var scheduler =
+        new TileScheduler(() -> store, Map.of(0, 1), 1, Duration.ofMillis(200), executor);
+    var running = scheduler.read(new TileCoord(0, 0, 3));
+    var expired = scheduler.read(new TileCoord(1, 0, 3));
+    assertRejected(expired);
+    assertEquals(1, scheduler.stats().timedOut());
+
+    // The expired read has freed its place in the queue
+    var queued = scheduler.read(new TileCoord(2, 0, 3));
+    store.release.countDown();
+    assertEquals(content(new TileCoord(0, 0, 3)), running.join());
+    assertEquals(content(new TileCoord(2, 0, 3)), queued.join());
+    assertEquals(0, scheduler.stats().rejected());
+    assertEquals(2, store.reads.get());
+  }
+
+  @Test
+  void limitTotalConcurrency() throws InterruptedException {
+    var scheduler = new TileScheduler(() -> store, Map.of(0, 2), 3, 16, Duration.ofSeconds(30),
+        executor);
+    var futures = new ArrayList<CompletableFuture<ByteBuffer>>();
+    for (int z = 3; z < 6; z++) {
+      for (int x = 0; x < 2; x++) {
+        futures.add(scheduler.read(new TileCoord(x, 0, z)));
+      }
+    }
+    await().until(() -> store.totalRunning() == 3);
+    // Leave time for the reads in excess to start if the total limit was not respected
+    Thread.sleep(100);
+    assertEquals(3, store.totalRunning());
+
+    store.release.countDown();
+    futures.forEach(CompletableFuture::join);
+    assertEquals(6, store.reads.get());
+  }
+
+  @Test
+  void cancelTimeoutOfCompletedReads() {
+    var timeouts = new ScheduledThreadPoolExecutor(4);
+    timeouts.setRemoveOnCancelPolicy(true);
+    try {
+      var scheduler =
+          new TileScheduler(() -> store, Map.of(0, 1), 16, Duration.ofHours(1), timeouts);
+      var futures = new ArrayList<CompletableFuture<ByteBuffer>>();
+      for (int x = 0; x < 4; x++) {
+        futures.add(scheduler.read(new TileCoord(x, 0, 3)));
+      }
+      await().until(() -> store.reads.get() == 1);
+      assertEquals(3, timeouts.getQueue().size());
+
+      store.release.countDown();
+      futures.forEach(CompletableFuture::join);
+      assertEquals(0, timeouts.getQueue().size());
+    } finally {
+      timeouts.shutdownNow();
+    }
+  }
+
+  @Test
+  void limitConcurrencyPerZoomLevel() throws InterruptedException {
+    var scheduler =
+        new TileScheduler(() -> store, Map.of(0, 2, 8, 1), 16, Duration.ofSeconds(30), executor);
+    var futures = new ArrayList<CompletableFuture<ByteBuffer>>();
+    for (int x = 0; x < 6; x++) {
+      futures.add(scheduler.read(new TileCoord(x, 0, 5)));
+    }
+    for (int x = 0; x < 3; x++) {
+      futures.add(scheduler.read(new TileCoord(x, 0, 10)));
+    }
+    await().until(() -> store.totalRunning() == 3);
+    // Leave time for the reads in excess to start if the limits were not respected
+    Thread.sleep(100);
+    assertEquals(2, store.running(5).get());
+    assertEquals(1, store.running(10).get());
+
+    store.release.countDown();
+    futures.forEach(CompletableFuture::join);
+    assertEquals(9, store.reads.get());
+    assertEquals(2, store.maxRunning.get(5).get());
+    assertEquals(1, store.maxRunning.get(10).get());
+  }
+}